@@ -0,0 +1,217 @@
+package org.openmastery.publisher.core
+
+import groovy.util.logging.Slf4j
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.api.batch.RandomNewIFMBatchBuilder
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.annotation.AnnotationEntity
+import org.openmastery.publisher.core.embedded.IdeaFlowEmbeddedPersistenceService
+import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.task.TaskEntity
+import org.openmastery.publisher.ideaflow.TaskActivitySnapshot
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.test.util.AopTestUtils
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+/**
+ * Compares the persistence reads behind the timeline endpoints for the relational, in memory and embedded services,
+ * and the ingestion of a task's activities and events for the relational and embedded services, both in rows per
+ * second of row at a time and bulk saves and in time to seed a task, and the activity rows and timeline reads of
+ * editor activities ingested with and without org.ideaflow.batch.coalesceActivities.
+ * Run with ./gradlew benchmark, which requires the same postgres database as the component tests.  Timings are
+ * logged rather than asserted since they depend on the machine and its load.
+ */
+@Slf4j
+@ComponentTest
+@Requires({ Boolean.getBoolean("org.ideaflow.benchmark") })
+class PersistenceServiceBenchmark extends Specification {
+
+	private static final int ACTIVITY_COUNT = 20000
+	private static final int EVENT_COUNT = 2000
+	private static final int ANNOTATION_COUNT = 200
+	private static final int WARMUP_ITERATIONS = 5
+	private static final int MEASURED_ITERATIONS = 20
+	private static final LocalDateTime TASK_START = LocalDateTime.of(2017, 1, 1, 9, 0)
+	private static final int EDITOR_BATCH_COUNT = 10
+	private static final int EDITOR_ACTIVITIES_PER_BATCH = 2000
+	private static final int EDITOR_ACTIVITIES_PER_FILE = 20
+
+	@Autowired
+	private IdeaFlowPersistenceService relationalPersistenceService
+	@Autowired
+	private IFMBatchService ifmBatchService
+	private IdeaFlowInMemoryPersistenceService inMemoryPersistenceService = new IdeaFlowInMemoryPersistenceService()
+
+	@Rule
+	TemporaryFolder tempFolder = new TemporaryFolder()
+	private IdeaFlowEmbeddedPersistenceService embeddedPersistenceService
+
+	def setup() {
+		embeddedPersistenceService = new IdeaFlowEmbeddedPersistenceService(tempFolder.newFolder("ideaflow"), 4096,
+				Duration.ofHours(1), 16 * 1024 * 1024)
+		embeddedPersistenceService.open()
+	}
+
+	def cleanup() {
+		embeddedPersistenceService.close()
+		setCoalesceActivities(true)
+	}
+
+	// the service is proxied for its transactions, the flag is set on the target
+	private void setCoalesceActivities(boolean coalesceActivities) {
+		ReflectionTestUtils.setField(AopTestUtils.getUltimateTargetObject(ifmBatchService), "coalesceActivities", coalesceActivities)
+	}
+
+	/**
+	 * Ingests editor activities as a plugin sends them, a few seconds each and contiguous while the same file is
+	 * open, in several batches so activities are also continued across batches.
+	 */
+	private long ingestEditorActivities(boolean coalesceActivities) {
+		setCoalesceActivities(coalesceActivities)
+		TaskEntity task = relationalPersistenceService.saveTask(aRandom.taskEntity().build())
+		int activityIndex = 0
+		EDITOR_BATCH_COUNT.times {
+			RandomNewIFMBatchBuilder builder = aRandom.batch().timeSent(TASK_START)
+			EDITOR_ACTIVITIES_PER_BATCH.times {
+				String filePath = "src/main/java/org/openmastery/File${(activityIndex / EDITOR_ACTIVITIES_PER_FILE) as int}.java"
+				builder.newEditorActivity(task.id, TASK_START.plusSeconds((activityIndex + 1) * 5), 5, filePath, activityIndex % 3 == 0)
+				activityIndex++
+			}
+			ifmBatchService.applyIFMBatch(task.ownerId, builder.build(), Duration.ZERO)
+		}
+		task.id
+	}
+
+	private List<ActivityEntity> createActivities(TaskEntity task) {
+		(0..<ACTIVITY_COUNT).collect { int i ->
+			LocalDateTime activityStart = TASK_START.plusSeconds(i * 30)
+			ActivityEntity.ActivityEntityBuilder builder = i % 5 == 0 ? aRandom.modificationActivityEntity() : aRandom.activityEntity()
+			builder.ownerId(task.ownerId).taskId(task.id).start(activityStart).end(activityStart.plusSeconds(20)).build()
+		}
+	}
+
+	private List<EventEntity> createEvents(TaskEntity task) {
+		(0..<EVENT_COUNT).collect { int i ->
+			aRandom.eventEntity().ownerId(task.ownerId).taskId(task.id).position(TASK_START.plusSeconds(i * 300)).build()
+		}
+	}
+
+	private long seedTask(IdeaFlowPersistenceService persistenceService) {
+		TaskEntity task = persistenceService.saveTask(aRandom.taskEntity().build())
+		persistenceService.saveActivities(createActivities(task))
+		List<EventEntity> events = persistenceService.saveEvents(createEvents(task))
+
+		List<AnnotationEntity> annotations = (0..<ANNOTATION_COUNT).collect { int i ->
+			aRandom.faqAnnotationEntity().ownerId(task.ownerId).taskId(task.id).eventId(events[i].id).build()
+		}
+		persistenceService.saveAnnotations(annotations)
+		task.id
+	}
+
+	private double measureMillisToSeedTask(IdeaFlowPersistenceService persistenceService) {
+		seedTask(persistenceService)
+		long startNanos = System.nanoTime()
+		seedTask(persistenceService)
+		(System.nanoTime() - startNanos) / 1_000_000d
+	}
+
+	/**
+	 * Saves the activities and events of a task either one row per call, each in its own transaction as
+	 * IFMBatchService did before bulk saves, or in a single saveActivities and saveEvents call.
+	 */
+	private double measureRowsPerSecond(IdeaFlowPersistenceService persistenceService, boolean bulk) {
+		TaskEntity task = persistenceService.saveTask(aRandom.taskEntity().build())
+		List<ActivityEntity> activities = createActivities(task)
+		List<EventEntity> events = createEvents(task)
+
+		long startNanos = System.nanoTime()
+		if (bulk) {
+			persistenceService.saveActivities(activities)
+			persistenceService.saveEvents(events)
+		} else {
+			activities.each { ActivityEntity activity -> persistenceService.saveActivity(activity) }
+			events.each { EventEntity event -> persistenceService.saveEvent(event) }
+		}
+		(activities.size() + events.size()) / ((System.nanoTime() - startNanos) / 1_000_000_000d)
+	}
+
+	private double measureMillisPerTimeline(IdeaFlowPersistenceService persistenceService, long taskId) {
+		Closure loadTimelineData = {
+			TaskActivitySnapshot.load(persistenceService, taskId)
+			persistenceService.getModificationCountsByWindow(taskId, Duration.ofMinutes(10))
+			persistenceService.getMostRecentActivityEnd(taskId)
+		}
+
+		WARMUP_ITERATIONS.times(loadTimelineData)
+		long startNanos = System.nanoTime()
+		MEASURED_ITERATIONS.times(loadTimelineData)
+		(System.nanoTime() - startNanos) / 1_000_000d / MEASURED_ITERATIONS
+	}
+
+	def "measure timeline reads of the relational and in memory services"() {
+		setup:
+		long relationalTaskId = seedTask(relationalPersistenceService)
+		long inMemoryTaskId = seedTask(inMemoryPersistenceService)
+
+		double relationalMillis = measureMillisPerTimeline(relationalPersistenceService, relationalTaskId)
+		double inMemoryMillis = measureMillisPerTimeline(inMemoryPersistenceService, inMemoryTaskId)
+		log.info(String.format("Timeline reads, activities=%d, events=%d, relational=%.2fms, inMemory=%.2fms",
+				ACTIVITY_COUNT, EVENT_COUNT, relationalMillis, inMemoryMillis))
+	}
+
+	def "measure ingestion rows per second of row at a time and bulk saves"() {
+		setup:
+		// warms up the insert statements, sequences and the jit
+		seedTask(relationalPersistenceService)
+		seedTask(embeddedPersistenceService)
+
+		double relationalRowAtATime = measureRowsPerSecond(relationalPersistenceService, false)
+		double relationalBulk = measureRowsPerSecond(relationalPersistenceService, true)
+		double embeddedRowAtATime = measureRowsPerSecond(embeddedPersistenceService, false)
+		double embeddedBulk = measureRowsPerSecond(embeddedPersistenceService, true)
+		log.info(String.format("Ingestion, rows=%d, relational row at a time=%.0f rows/s, relational bulk=%.0f rows/s, " +
+				"embedded row at a time=%.0f rows/s, embedded bulk=%.0f rows/s", ACTIVITY_COUNT + EVENT_COUNT,
+				relationalRowAtATime, relationalBulk, embeddedRowAtATime, embeddedBulk))
+	}
+
+	def "measure activity rows and timeline reads with and without coalescing editor activities"() {
+		setup:
+		long uncoalescedTaskId = ingestEditorActivities(false)
+		long coalescedTaskId = ingestEditorActivities(true)
+
+		int uncoalescedRows = relationalPersistenceService.getActivityList(uncoalescedTaskId).size()
+		int coalescedRows = relationalPersistenceService.getActivityList(coalescedTaskId).size()
+		double uncoalescedMillis = measureMillisPerTimeline(relationalPersistenceService, uncoalescedTaskId)
+		double coalescedMillis = measureMillisPerTimeline(relationalPersistenceService, coalescedTaskId)
+		log.info(String.format("Editor activities, sent=%d, rows without coalescing=%d, rows with coalescing=%d, " +
+				"timeline reads without coalescing=%.2fms, with coalescing=%.2fms", EDITOR_BATCH_COUNT * EDITOR_ACTIVITIES_PER_BATCH,
+				uncoalescedRows, coalescedRows, uncoalescedMillis, coalescedMillis))
+	}
+
+	def "measure ingestion and timeline reads of the relational and embedded services"() {
+		setup:
+		double relationalIngestionMillis = measureMillisToSeedTask(relationalPersistenceService)
+		double embeddedIngestionMillis = measureMillisToSeedTask(embeddedPersistenceService)
+		log.info(String.format("Ingestion, activities=%d, events=%d, relational=%.2fms, embedded=%.2fms",
+				ACTIVITY_COUNT, EVENT_COUNT, relationalIngestionMillis, embeddedIngestionMillis))
+
+		long relationalTaskId = seedTask(relationalPersistenceService)
+		long embeddedTaskId = seedTask(embeddedPersistenceService)
+		double relationalMillis = measureMillisPerTimeline(relationalPersistenceService, relationalTaskId)
+		double embeddedMillis = measureMillisPerTimeline(embeddedPersistenceService, embeddedTaskId)
+		embeddedPersistenceService.compact()
+		double compactedMillis = measureMillisPerTimeline(embeddedPersistenceService, embeddedTaskId)
+		log.info(String.format("Timeline reads, activities=%d, events=%d, relational=%.2fms, embedded=%.2fms, " +
+				"embedded after compaction=%.2fms", ACTIVITY_COUNT, EVENT_COUNT, relationalMillis, embeddedMillis, compactedMillis))
+	}
+
+}
@@ -0,0 +1,241 @@
+package org.openmastery.publisher.core
+
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.core.activity.ActivityRepository
+import org.openmastery.publisher.core.annotation.AnnotationRespository
+import org.openmastery.publisher.core.archive.TaskArchiveRepository
+import org.openmastery.publisher.core.batch.BatchFingerprintRepository
+import org.openmastery.publisher.core.event.EventRepository
+import org.hibernate.engine.spi.SessionFactoryImplementor
+import org.hibernate.hql.internal.ast.ASTQueryTranslatorFactory
+import org.hibernate.hql.spi.ParameterTranslations
+import org.hibernate.hql.spi.QueryTranslator
+import org.openmastery.publisher.core.task.TaskRepository
+import org.openmastery.publisher.core.user.UserRepository
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateRepository
+import org.openmastery.publisher.ideaflow.IdeaFlowStateRepository
+import org.openmastery.storyweb.core.glossary.GlossaryRepository
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.data.domain.Pageable
+import org.springframework.data.domain.Sort
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import org.springframework.data.repository.query.parser.Part
+import org.springframework.data.repository.query.parser.PartTree
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import javax.persistence.EntityManagerFactory
+import java.lang.reflect.Method
+import java.lang.reflect.ParameterizedType
+import java.lang.reflect.Type
+import java.sql.Timestamp
+
+/**
+ * Runs EXPLAIN on every repository query against a seeded dataset and fails if any query plans a
+ * sequential scan of one of the large tables.  JPQL and derived queries are explained using the sql
+ * Hibernate translates them to.
+ */
+@ComponentTest
+class RepositoryQueryPlanSpec extends Specification {
+
+	private static final List<Class> REPOSITORIES = [
+			ActivityRepository, AnnotationRespository, BatchFingerprintRepository, EventRepository,
+			GlossaryRepository, IdeaFlowPartialStateRepository, IdeaFlowStateRepository, TaskArchiveRepository,
+			TaskRepository, UserRepository
+	]
+
+	// matches the parent tables only, partitions created by other tests are empty
+	private static final String LARGE_TABLE_SEQ_SCAN = /Seq Scan on (activity|event|task|annotation|entity_tag) /
+
+	private static final Set<String> SEQ_SCAN_EXPECTED = [
+			// the all owners task listing has to count every task matching the project
+			"TaskRepository.findByProjectLike.countQuery"
+	] as Set
+
+	// every seeded comment contains "seeded", so full text searches get a term which selects nothing
+	private static final Map<String, String> SAMPLE_VALUES_BY_PARAM = [
+			searchText: "'unseeded'"
+	]
+
+	private static final long SEED_ID_BASE = 900000000
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate
+	@Autowired
+	private EntityManagerFactory entityManagerFactory
+
+	private void seedLargeDataset() {
+		jdbcTemplate.execute("insert into task (id, owner_id, name, description, creation_date, modify_date, project) " +
+				"select ${SEED_ID_BASE} + g, g % 200, 'seed-task-' || g, 'seeded task', " +
+				"timestamp '2016-01-01' + g * interval '1 hour', timestamp '2016-01-02' + g * interval '1 hour', 'seed' " +
+				"from generate_series(1, 20000) g")
+		jdbcTemplate.execute("insert into activity (id, owner_id, task_id, start_time, end_time, type, metadata) " +
+				"select ${SEED_ID_BASE} + g, (g % 20000 + 1) % 200, ${SEED_ID_BASE} + g % 20000 + 1, " +
+				"timestamp '2016-01-01' + g * interval '1 minute', timestamp '2016-01-01' + g * interval '1 minute' + interval '30 seconds', " +
+				"(array['editor', 'external', 'idle', 'execution', 'modification', 'block'])[g % 6 + 1], " +
+				"'{\"filePath\":\"src/File.java\",\"modificationCount\":3,\"exitCode\":0}' " +
+				"from generate_series(1, 200000) g")
+		jdbcTemplate.execute("insert into event (id, owner_id, task_id, type, position, comment) " +
+				"select ${SEED_ID_BASE} + g, (g % 20000 + 1) % 200, ${SEED_ID_BASE} + g % 20000 + 1, 'NOTE', " +
+				"timestamp '2016-01-01' + g * interval '2 minutes', 'seeded event ' || g " +
+				"from generate_series(1, 100000) g")
+		jdbcTemplate.execute("insert into annotation (id, owner_id, task_id, event_id, type, metadata) " +
+				"select ${SEED_ID_BASE} + g, (g % 20000 + 1) % 200, ${SEED_ID_BASE} + g % 20000 + 1, ${SEED_ID_BASE} + g * 5, 'faq', " +
+				"'{\"comment\":\"seeded faq\"}' " +
+				"from generate_series(1, 20000) g")
+		jdbcTemplate.execute("insert into entity_tag (tag, owner_id, task_id, event_id, source) " +
+				"select '#tag' || g % 500, (g % 20000 + 1) % 200, ${SEED_ID_BASE} + g % 20000 + 1, ${SEED_ID_BASE} + g, 'event' " +
+				"from generate_series(1, 100000) g")
+		["task", "activity", "event", "annotation", "entity_tag"].each { String table ->
+			jdbcTemplate.execute("analyze " + table)
+		}
+	}
+
+	private String explain(String query) {
+		jdbcTemplate.queryForList("explain " + query, String).join("\n")
+	}
+
+	private Map<String, String> getExplainableSqlByQueryName(Class repository) {
+		Map<String, String> explainableSqlByQueryName = [:]
+		repository.declaredMethods.findAll { Method method ->
+			method.synthetic == false
+		}.each { Method method ->
+			String queryName = repository.simpleName + "." + method.name
+			Query query = method.getAnnotation(Query)
+			if (query == null) {
+				explainableSqlByQueryName[queryName] = toExplainableJpql(method, deriveJpql(repository, method))
+			} else if (query.nativeQuery()) {
+				explainableSqlByQueryName[queryName] = toExplainableNativeSql(method, query.value())
+			} else {
+				explainableSqlByQueryName[queryName] = toExplainableJpql(method, query.value())
+				if (query.countQuery()) {
+					explainableSqlByQueryName[queryName + ".countQuery"] = toExplainableJpql(method, query.countQuery(), false)
+				}
+			}
+		}
+		explainableSqlByQueryName
+	}
+
+	private String toExplainableNativeSql(Method method, String sql) {
+		getSqlLiteralsByParameterName(method).each { String name, String literal ->
+			if (name.isInteger()) {
+				sql = sql.replaceAll(/\?${name}(?!\d)/, literal)
+			} else {
+				sql = sql.replaceAll(/(?<!:):${name}\b/, literal)
+			}
+		}
+		sql
+	}
+
+	private String toExplainableJpql(Method method, String jpql, boolean paged = true) {
+		SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor)
+		QueryTranslator translator = new ASTQueryTranslatorFactory().createQueryTranslator(jpql, jpql, [:], sessionFactory, null)
+		translator.compile([:], false)
+
+		// jpa positional parameters (?1) are translated as named parameters ("1")
+		Map<String, String> literalsByName = getSqlLiteralsByParameterName(method)
+		Map<Integer, String> literalsBySqlLocation = [:]
+		ParameterTranslations parameterTranslations = translator.parameterTranslations
+		parameterTranslations.namedParameterNames.each { String name ->
+			parameterTranslations.getNamedParameterSqlLocations(name).each { int location ->
+				literalsBySqlLocation[location] = literalsByName[name]
+			}
+		}
+
+		int location = 0
+		String sql = translator.SQLString.replaceAll(/\?/) {
+			String literal = literalsBySqlLocation[location++]
+			if (literal == null) {
+				throw new IllegalArgumentException("No sample value for parameter ${location} of ${method}")
+			}
+			literal
+		}
+		if (paged && method.parameterTypes.contains(Pageable)) {
+			sql += " limit 10"
+		}
+		sql
+	}
+
+	/**
+	 * Builds the jpql equivalent of a derived query, only the property comparisons the repositories use are supported
+	 */
+	private String deriveJpql(Class repository, Method method) {
+		Class domainType = ((ParameterizedType) repository.genericInterfaces[0]).actualTypeArguments[0] as Class
+		PartTree partTree = new PartTree(method.name, domainType)
+		int parameterIndex = 1
+		List<String> orClauses = partTree.collect { PartTree.OrPart orPart ->
+			orPart.collect { Part part ->
+				"e.${part.property.toDotPath()} ${toJpqlOperator(part)} ?${parameterIndex++}".toString()
+			}.join(" and ")
+		}
+
+		String entityName = entityManagerFactory.metamodel.entity(domainType).name
+		String jpql = (partTree.countProjection ? "select count(e)" : "select e") + " from ${entityName} e"
+		orClauses ? jpql + " where " + orClauses.join(" or ") : jpql
+	}
+
+	private String toJpqlOperator(Part part) {
+		if (part.type == Part.Type.SIMPLE_PROPERTY) {
+			return "="
+		} else if (part.type == Part.Type.LIKE) {
+			return "like"
+		}
+		throw new IllegalArgumentException("No jpql operator for derived query part " + part)
+	}
+
+	private Map<String, String> getSqlLiteralsByParameterName(Method method) {
+		Map<String, String> literalsByName = [:]
+		method.genericParameterTypes.eachWithIndex { Type type, int index ->
+			if (type == Pageable || type == Sort) {
+				return
+			}
+
+			Param param = method.parameterAnnotations[index].find { it instanceof Param } as Param
+			String literal = SAMPLE_VALUES_BY_PARAM[param?.value()] ?: toSqlLiteral(type)
+			literalsByName[Integer.toString(index + 1)] = literal
+			if (param != null) {
+				literalsByName[param.value()] = literal
+			}
+		}
+		literalsByName
+	}
+
+	private String toSqlLiteral(Type type) {
+		if (type instanceof ParameterizedType) {
+			Type elementType = ((ParameterizedType) type).actualTypeArguments[0]
+			return "${toSqlLiteral(elementType)}, ${toSqlLiteral(elementType)}"
+		}
+
+		if (type == Long || type == Long.TYPE) {
+			return "7"
+		} else if (type == Integer || type == Integer.TYPE) {
+			return "10"
+		} else if (type == Timestamp) {
+			return "timestamp '2016-02-01 12:00'"
+		} else if (type == String) {
+			return "'%seed%'"
+		}
+		throw new IllegalArgumentException("No sample value for parameter type " + type)
+	}
+
+	def "repository queries SHOULD not sequentially scan large tables"() {
+		given:
+		seedLargeDataset()
+
+		when:
+		Map<String, String> plansWithSeqScans = [:]
+		REPOSITORIES.each { Class repository ->
+			getExplainableSqlByQueryName(repository).each { String queryName, String sql ->
+				String plan = explain(sql)
+				if ((plan =~ LARGE_TABLE_SEQ_SCAN).find() && SEQ_SCAN_EXPECTED.contains(queryName) == false) {
+					plansWithSeqScans[queryName] = plan
+				}
+			}
+		}
+
+		then:
+		assert plansWithSeqScans == [:]
+	}
+
+}
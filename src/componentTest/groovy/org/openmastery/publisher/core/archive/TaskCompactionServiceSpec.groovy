@@ -0,0 +1,156 @@
+package org.openmastery.publisher.core.archive
+
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.activity.EditorActivityEntity
+import org.openmastery.publisher.core.activity.ModificationActivityEntity
+import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.task.TaskEntity
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import java.sql.Timestamp
+import java.time.Duration
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+@ComponentTest
+class TaskCompactionServiceSpec extends Specification {
+
+	@Autowired
+	private TaskCompactionService taskCompactionService
+	@Autowired
+	private IdeaFlowPersistenceService persistenceService
+	@Autowired
+	private JdbcTemplate jdbcTemplate
+
+	private LocalDateTime lastYear = LocalDateTime.now().minusYears(1).withNano(0)
+	private TaskEntity task
+	private List<ActivityEntity> activities
+	private List<EventEntity> events
+
+	def setup() {
+		task = saveTask(lastYear)
+		activities = [
+				persistenceService.saveActivity(aRandom.editorActivityEntity().ownerId(task.ownerId).taskId(task.id).start(lastYear).end(lastYear.plusMinutes(5)).build()),
+				persistenceService.saveActivity(aRandom.modificationActivityEntity().ownerId(task.ownerId).taskId(task.id).start(lastYear.plusMinutes(1)).end(lastYear.plusMinutes(2)).build()),
+				persistenceService.saveActivity(aRandom.idleActivityEntity().ownerId(task.ownerId).taskId(task.id).start(lastYear.plusMinutes(5)).end(lastYear.plusMinutes(30)).build()),
+		]
+		events = [
+				persistenceService.saveEvent(aRandom.eventEntity().ownerId(task.ownerId).taskId(task.id).position(lastYear.plusMinutes(3)).comment(null).build())
+		]
+	}
+
+	private TaskEntity saveTask(LocalDateTime modifyDate) {
+		persistenceService.saveTask(aRandom.taskEntity().creationDate(modifyDate).modifyDate(modifyDate).build())
+	}
+
+	private long countRows(String table) {
+		jdbcTemplate.queryForObject("select count(*) from " + table + " where task_id = ?", Long, task.id)
+	}
+
+	def "compactTask SHOULD replace raw rows with an archive which is read transparently"() {
+		given:
+		List<ActivityEntity> activityList = persistenceService.getActivityList(task.id)
+		List<EventEntity> eventList = persistenceService.getEventList(task.id)
+		SortedMap<LocalDateTime, Long> modificationCounts = persistenceService.getModificationCountsByWindow(task.id, Duration.ofMinutes(10))
+
+		when:
+		boolean compacted = taskCompactionService.compactTask(task.id)
+
+		then:
+		assert compacted
+		assert countRows("activity") == 0
+		assert countRows("event") == 0
+		assert countRows("task_archive") == 1
+		assert persistenceService.getActivityList(task.id)*.id == activityList*.id
+		assert persistenceService.getEditorActivityList(task.id)*.filePath == [activities[0].filePath]
+		assert persistenceService.getEventList(task.id)*.comment == eventList*.comment
+		assert persistenceService.getModificationCountsByWindow(task.id, Duration.ofMinutes(10)) == modificationCounts
+		assert persistenceService.getMostRecentActivityEnd(task.id) == lastYear.plusMinutes(30)
+		assert persistenceService.findEventById(events[0].id).id == events[0].id
+		assert persistenceService.findRecentEvents(task.ownerId, Timestamp.valueOf(lastYear), 10)*.id == [events[0].id]
+	}
+
+	def "saving new data for a compacted task SHOULD restore its raw rows"() {
+		given:
+		taskCompactionService.compactTask(task.id)
+
+		when:
+		persistenceService.saveActivity(aRandom.editorActivityEntity().ownerId(task.ownerId).taskId(task.id).start(lastYear.plusHours(1)).end(lastYear.plusHours(2)).build())
+
+		then:
+		assert countRows("task_archive") == 0
+		assert countRows("activity") == 4
+		assert countRows("event") == 1
+		assert persistenceService.getModificationActivityList(task.id)*.modificationCount ==
+				[((ModificationActivityEntity) activities[1]).modificationCount]
+		assert persistenceService.getEditorActivityList(task.id).size() == 2
+	}
+
+	def "rows written after compaction SHOULD be read alongside the archive"() {
+		given:
+		taskCompactionService.compactTask(task.id)
+		jdbcTemplate.update("insert into event (id, task_id, owner_id, position, type) values (?, ?, ?, ?, 'NOTE')",
+				aRandom.id(), task.id, task.ownerId, Timestamp.valueOf(lastYear.plusMinutes(1)))
+
+		expect:
+		assert persistenceService.getEventList(task.id).size() == 2
+		assert persistenceService.getEventList(task.id)[1].id == events[0].id
+	}
+
+	def "findCompactableTaskIds SHOULD only find idle tasks with rows to compact"() {
+		given:
+		TaskEntity activeTask = saveTask(LocalDateTime.now())
+		persistenceService.saveActivity(aRandom.idleActivityEntity().ownerId(activeTask.ownerId).taskId(activeTask.id).build())
+		TaskEntity emptyTask = saveTask(lastYear)
+
+		when:
+		List<Long> taskIds = taskCompactionService.findCompactableTaskIds()
+
+		then:
+		assert taskIds == [task.id]
+		assert taskCompactionService.compactTask(activeTask.id) == false
+		assert taskCompactionService.compactTask(emptyTask.id) == false
+	}
+
+	def "compactTask SHOULD leave events with a comment or faq as rows"() {
+		given:
+		EventEntity commentedEvent = persistenceService.saveEvent(aRandom.eventEntity().ownerId(task.ownerId).taskId(task.id)
+				.position(lastYear.plusMinutes(4)).comment("#blocked on the build").build())
+		EventEntity faqEvent = persistenceService.saveEvent(aRandom.eventEntity().ownerId(task.ownerId).taskId(task.id)
+				.position(lastYear.plusMinutes(6)).comment(null).build())
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().ownerId(task.ownerId).taskId(task.id).eventId(faqEvent.id).build())
+
+		when:
+		taskCompactionService.compactTask(task.id)
+
+		then:
+		assert countRows("task_archive") == 1
+		assert jdbcTemplate.queryForList("select id from event where task_id = ? order by position", Long, task.id) ==
+				[commentedEvent.id, faqEvent.id]
+		assert persistenceService.getEventList(task.id)*.id == [events[0].id, commentedEvent.id, faqEvent.id]
+	}
+
+	def "findCompactableTaskIds SHOULD find a compacted task with rows written beside its archive"() {
+		given:
+		taskCompactionService.compactTask(task.id)
+		jdbcTemplate.update("insert into event (id, task_id, owner_id, position, type) values (?, ?, ?, ?, 'NOTE')",
+				aRandom.id(), task.id, task.ownerId, Timestamp.valueOf(lastYear.plusMinutes(1)))
+
+		when:
+		List<Long> taskIds = taskCompactionService.findCompactableTaskIds()
+		boolean compacted = taskCompactionService.compactTask(task.id)
+
+		then:
+		assert taskIds == [task.id]
+		assert compacted
+		assert countRows("event") == 0
+		assert persistenceService.getEventList(task.id).size() == 2
+		assert taskCompactionService.findCompactableTaskIds() == []
+	}
+
+}
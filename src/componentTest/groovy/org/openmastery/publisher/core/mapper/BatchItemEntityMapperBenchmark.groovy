@@ -0,0 +1,114 @@
+package org.openmastery.publisher.core.mapper
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.openmastery.mapper.ValueObjectMapper
+import org.openmastery.publisher.api.activity.NewActivity
+import org.openmastery.publisher.api.batch.NewBatchEvent
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.batch.RandomNewIFMBatchBuilder
+import org.openmastery.publisher.api.event.EventType
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.activity.BlockActivityEntity
+import org.openmastery.publisher.core.activity.EditorActivityEntity
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity
+import org.openmastery.publisher.core.activity.ExternalActivityEntity
+import org.openmastery.publisher.core.activity.IdleActivityEntity
+import org.openmastery.publisher.core.activity.ModificationActivityEntity
+import org.openmastery.publisher.core.event.EventEntity
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+/**
+ * Compares mapping batch items to entities with Dozer (ValueObjectMapper) and with BatchItemEntityMapper, as done
+ * for every item of a batch on the ingestion path.  Run with ./gradlew benchmark; timings are logged rather than
+ * asserted since they depend on the machine and its load.
+ */
+@Slf4j
+@Requires({ Boolean.getBoolean("org.ideaflow.benchmark") })
+class BatchItemEntityMapperBenchmark extends Specification {
+
+	private static final int ITEMS_PER_TYPE = 1000
+	private static final int WARMUP_ITERATIONS = 20
+	private static final int MEASURED_ITERATIONS = 50
+
+	private NewIFMBatch createBatch() {
+		long taskId = aRandom.id()
+		LocalDateTime now = LocalDateTime.of(2017, 1, 1, 12, 0)
+		RandomNewIFMBatchBuilder builder = aRandom.batch().timeSent(now)
+		ITEMS_PER_TYPE.times { int i ->
+			LocalDateTime position = now.minusSeconds(i)
+			builder.newEditorActivity(taskId, position, 5, "src/main/java/org/openmastery/File${i % 20}.java", i % 2 == 0)
+					.newExternalActivity(taskId, position, 5, "browser")
+					.newIdleActivity(taskId, position, 30)
+					.newExecutionActivity(taskId, position, 5, "UnitTests", "JUnit", i % 3 - 1, false)
+					.newModificationActivity(taskId, position, 5, i % 50)
+					.newBlockActivity(taskId, position, 5, "blocked")
+					.newEvent(taskId, position, EventType.NOTE, "note ${i}")
+		}
+		builder.build()
+	}
+
+	private static Map<NewActivity, Class<? extends ActivityEntity>> activitiesWithEntityType(NewIFMBatch batch) {
+		Map<NewActivity, Class<? extends ActivityEntity>> activities = new IdentityHashMap<>()
+		batch.editorActivityList.each { activities.put(it, EditorActivityEntity) }
+		batch.externalActivityList.each { activities.put(it, ExternalActivityEntity) }
+		batch.idleActivityList.each { activities.put(it, IdleActivityEntity) }
+		batch.executionActivityList.each { activities.put(it, ExecutionActivityEntity) }
+		batch.modificationActivityList.each { activities.put(it, ModificationActivityEntity) }
+		batch.blockActivityList.each { activities.put(it, BlockActivityEntity) }
+		activities
+	}
+
+	@CompileStatic
+	private static long mapWithDozer(ValueObjectMapper dozerMapper, Map<NewActivity, Class<? extends ActivityEntity>> activities,
+	                                 List<NewBatchEvent> events) {
+		long checksum = 0
+		for (Map.Entry<NewActivity, Class<? extends ActivityEntity>> entry : activities.entrySet()) {
+			checksum += dozerMapper.mapIfNotNull(entry.key, entry.value).hashCode()
+		}
+		for (NewBatchEvent event : events) {
+			checksum += dozerMapper.mapIfNotNull(event, EventEntity).hashCode()
+		}
+		checksum
+	}
+
+	@CompileStatic
+	private static long mapWithBatchItemEntityMapper(Map<NewActivity, Class<? extends ActivityEntity>> activities,
+	                                                 List<NewBatchEvent> events) {
+		long checksum = 0
+		for (Map.Entry<NewActivity, Class<? extends ActivityEntity>> entry : activities.entrySet()) {
+			checksum += BatchItemEntityMapper.toActivityEntity(entry.key, entry.value).hashCode()
+		}
+		for (NewBatchEvent event : events) {
+			checksum += BatchItemEntityMapper.toEventEntity(event).hashCode()
+		}
+		checksum
+	}
+
+	private static double measureNanosPerItem(int itemCount, Closure mapItems) {
+		WARMUP_ITERATIONS.times(mapItems)
+		long startNanos = System.nanoTime()
+		MEASURED_ITERATIONS.times(mapItems)
+		(System.nanoTime() - startNanos) / (double) MEASURED_ITERATIONS / itemCount
+	}
+
+	def "measure mapping batch items with dozer and with BatchItemEntityMapper"() {
+		setup:
+		NewIFMBatch batch = createBatch()
+		Map<NewActivity, Class<? extends ActivityEntity>> activities = activitiesWithEntityType(batch)
+		List<NewBatchEvent> events = batch.eventList
+		int itemCount = activities.size() + events.size()
+		ValueObjectMapper dozerMapper = new ValueObjectMapper()
+
+		double dozerNanos = measureNanosPerItem(itemCount) { mapWithDozer(dozerMapper, activities, events) }
+		double mapperNanos = measureNanosPerItem(itemCount) { mapWithBatchItemEntityMapper(activities, events) }
+		log.info(String.format("Batch item mapping, items=%d, dozer=%.0fns/item, BatchItemEntityMapper=%.0fns/item, speedup=%.1fx",
+				itemCount, dozerNanos, mapperNanos, dozerNanos / mapperNanos))
+	}
+
+}
@@ -0,0 +1,149 @@
+package org.openmastery.publisher.core.partition
+
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.activity.ActivityRepository
+import org.openmastery.publisher.core.activity.IdleActivityEntity
+import org.openmastery.publisher.core.event.EventRepository
+import org.openmastery.publisher.core.task.TaskEntity
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.data.jpa.repository.Query
+import org.springframework.jdbc.core.ConnectionCallback
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.util.AopTestUtils
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.Statement
+import java.sql.Timestamp
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+@ComponentTest
+class PartitionMaintenanceServiceSpec extends Specification {
+
+	@Autowired
+	private PartitionMaintenanceService partitionMaintenanceService
+	@Autowired
+	private IdeaFlowPersistenceService persistenceService
+	@Autowired
+	private ActivityRepository activityRepository
+	@Autowired
+	private EventRepository eventRepository
+	@Autowired
+	private JdbcTemplate jdbcTemplate
+
+	private LocalDateTime january = LocalDateTime.of(2015, 1, 15, 12, 0)
+	private LocalDateTime june = LocalDateTime.of(2015, 6, 15, 12, 0)
+	private TaskEntity task
+
+	def setup() {
+		task = persistenceService.saveTask(aRandom.taskEntity().ownerId(-1).build())
+		[january, june].each { LocalDateTime time ->
+			persistenceService.saveActivity(aRandom.idleActivityEntity().ownerId(-1).taskId(task.id).start(time).end(time.plusHours(1)).build())
+			persistenceService.saveEvent(aRandom.eventEntity().ownerId(-1).taskId(task.id).position(time).build())
+		}
+	}
+
+	def cleanup() {
+		setRowsPerMove(10000)
+	}
+
+	private void setRowsPerMove(int rowsPerMove) {
+		ReflectionTestUtils.setField(AopTestUtils.getUltimateTargetObject(partitionMaintenanceService), "rowsPerMove", rowsPerMove)
+	}
+
+	/**
+	 * Explains the repository query the way it's executed, as a prepared statement with bound parameters
+	 */
+	private String explainRepositoryQuery(Class repository, String methodName, List<String> parameterValues) {
+		String sql = repository.declaredMethods.find { it.name == methodName }.getAnnotation(Query).value()
+		String preparableSql = sql.replaceAll(/\?(\d+)/, '\\$$1')
+		jdbcTemplate.execute({ Connection connection ->
+			Statement statement = connection.createStatement()
+			try {
+				statement.execute("prepare repository_query as " + preparableSql)
+				ResultSet resultSet = statement.executeQuery("explain execute repository_query(" + parameterValues.join(", ") + ")")
+				List<String> plan = []
+				while (resultSet.next()) {
+					plan << resultSet.getString(1)
+				}
+				return plan.join("\n")
+			} finally {
+				statement.execute("deallocate repository_query")
+				statement.close()
+			}
+		} as ConnectionCallback<String>)
+	}
+
+	def "maintainPartitions SHOULD move rows of completed months into monthly partitions"() {
+		when:
+		long movedCount = partitionMaintenanceService.maintainPartitions()
+
+		then:
+		assert movedCount == 4
+		assert jdbcTemplate.queryForObject("select count(*) from only activity where task_id = ?", Long, task.id) == 0
+		assert jdbcTemplate.queryForObject("select count(*) from activity_2015_01 where task_id = ?", Long, task.id) == 1
+		assert jdbcTemplate.queryForObject("select count(*) from event_2015_06 where task_id = ?", Long, task.id) == 1
+		assert persistenceService.getIdleActivityList(task.id).size() == 2
+		assert persistenceService.getEventList(task.id).size() == 2
+	}
+
+	def "maintainPartitions SHOULD move rows in chunks of rowsPerMove"() {
+		given:
+		persistenceService.saveActivity(aRandom.idleActivityEntity().ownerId(-1).taskId(task.id).start(january.plusDays(1)).end(january.plusDays(1).plusHours(1)).build())
+		setRowsPerMove(1)
+
+		when:
+		long movedCount = partitionMaintenanceService.maintainPartitions()
+
+		then:
+		assert movedCount == 5
+		assert jdbcTemplate.queryForObject("select count(*) from only activity where task_id = ?", Long, task.id) == 0
+		assert jdbcTemplate.queryForObject("select count(*) from activity_2015_01 where task_id = ?", Long, task.id) == 2
+	}
+
+	def "findEventsWithinsRange SHOULD only scan the parent and partitions covering the range"() {
+		given:
+		partitionMaintenanceService.maintainPartitions()
+
+		when:
+		String plan = explainRepositoryQuery(EventRepository, "findEventsWithinsRange",
+				["-1", "timestamp '2015-01-01'", "timestamp '2015-01-31'"])
+
+		then:
+		assert plan.contains("event_2015_01")
+		assert plan.contains("event_2015_06") == false
+		assert eventRepository.findEventsWithinsRange(-1, Timestamp.valueOf(january.minusDays(1)), Timestamp.valueOf(january.plusDays(1))).size() == 1
+	}
+
+	def "findIdlesWithinRange SHOULD not scan partitions after the range"() {
+		given:
+		partitionMaintenanceService.maintainPartitions()
+
+		when:
+		String plan = explainRepositoryQuery(ActivityRepository, "findIdlesWithinRange",
+				["-1", "timestamp '2015-01-01'", "timestamp '2015-01-31'"])
+
+		then:
+		assert plan.contains("activity_2015_01")
+		assert plan.contains("activity_2015_06") == false
+		List<IdleActivityEntity> idles = activityRepository.findIdlesWithinRange(-1, Timestamp.valueOf(january.minusDays(1)), Timestamp.valueOf(january.plusDays(1)))
+		assert idles.size() == 1
+	}
+
+	def "maintainPartitions SHOULD keep updating metadata columns of partitioned activity"() {
+		given:
+		partitionMaintenanceService.maintainPartitions()
+
+		when:
+		jdbcTemplate.update("update activity set metadata = '{\"filePath\":\"a\"}'::jsonb where task_id = ?", task.id)
+
+		then:
+		assert jdbcTemplate.queryForList("select file_path from activity where task_id = ?", String, task.id) == ["a", "a"]
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.openmastery.publisher.core.tag
+
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.api.PagedResult
+import org.openmastery.publisher.api.task.Task
+import org.openmastery.publisher.core.EventService
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.TaskService
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.archive.TaskArchiveCodec
+import org.openmastery.publisher.core.archive.TaskArchiveEntity
+import org.openmastery.publisher.core.archive.TaskArchiveRepository
+import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.event.EventRepository
+import org.openmastery.publisher.core.task.TaskEntity
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+@ComponentTest
+class EntityTagIndexSpec extends Specification {
+
+	@Autowired
+	private IdeaFlowPersistenceService persistenceService
+	@Autowired
+	private TaskService taskService
+	@Autowired
+	private EventService eventService
+	@Autowired
+	private EventRepository eventRepository
+	@Autowired
+	private TaskArchiveRepository taskArchiveRepository
+	@Autowired
+	private EntityTagBackfillService entityTagBackfillService
+	@Autowired
+	private JdbcTemplate jdbcTemplate
+
+	private long ownerId = -1
+	private TaskEntity task
+
+	def setup() {
+		task = persistenceService.saveTask(aRandom.taskEntity().ownerId(ownerId).project("project").build())
+	}
+
+	private List<String> findTags(long eventId, String source) {
+		jdbcTemplate.queryForList("select tag from entity_tag where event_id = ? and source = ? order by tag", String, eventId, source)
+	}
+
+	private List<Long> findTaskIdsMatchingTags(List<String> tags) {
+		PagedResult<Task> result = taskService.findRecentTasksMatchingTags(ownerId, null, tags, 0, 10)
+		result.contents.collect { it.id }
+	}
+
+	def "saveEvent and saveAnnotation SHOULD index the tags of the event and faq comment"() {
+		given:
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().ownerId(ownerId).taskId(task.id)
+				.comment("Comment with #Tag and #other").build())
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().ownerId(ownerId).taskId(task.id).eventId(event.id)
+				.comment("faq for #faqtag").build())
+
+		expect:
+		assert findTags(event.id, EntityTagIndex.EVENT_SOURCE) == ["#Tag", "#other"]
+		assert findTags(event.id, EntityTagIndex.FAQ_SOURCE) == ["#faqtag"]
+		assert findTaskIdsMatchingTags(["tag"]) == [task.id]
+		assert findTaskIdsMatchingTags(["#FAQTAG"]) == [task.id]
+		assert findTaskIdsMatchingTags(["#ta"]) == []
+	}
+
+	def "updateEvent and annotateWithFAQ SHOULD replace the previous tags"() {
+		given:
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().ownerId(ownerId).taskId(task.id)
+				.comment("#before").build())
+		eventService.annotateWithFAQ(ownerId, event.id, "#faqbefore")
+
+		when:
+		eventService.updateEvent(ownerId, event.id, "#after")
+		eventService.annotateWithFAQ(ownerId, event.id, "#faqafter")
+
+		then:
+		assert findTags(event.id, EntityTagIndex.EVENT_SOURCE) == ["#after"]
+		assert findTags(event.id, EntityTagIndex.FAQ_SOURCE) == ["#faqafter"]
+		assert findTaskIdsMatchingTags(["before", "faqbefore"]) == []
+	}
+
+	def "deleteFAQAnnotation SHOULD delete the tags of the faq"() {
+		given:
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().ownerId(ownerId).taskId(task.id)
+				.comment("#eventtag").build())
+		eventService.annotateWithFAQ(ownerId, event.id, "#faqtag")
+
+		when:
+		persistenceService.deleteFAQAnnotation(event.id)
+
+		then:
+		assert findTags(event.id, EntityTagIndex.FAQ_SOURCE) == []
+		assert findTags(event.id, EntityTagIndex.EVENT_SOURCE) == ["#eventtag"]
+		assert findTaskIdsMatchingTags(["faqtag"]) == []
+	}
+
+	def "backfillNextChunk SHOULD index events compacted into task_archive"() {
+		given:
+		List<EventEntity> events = (1..2).collect { int i ->
+			aRandom.eventEntity().id(-i).ownerId(ownerId).taskId(task.id).comment("archived #tag${i}").build()
+		}
+		taskArchiveRepository.save(TaskArchiveEntity.builder()
+				.taskId(task.id)
+				.ownerId(ownerId)
+				.eventCount(events.size())
+				.archiveDate(LocalDateTime.now())
+				.data(new TaskArchiveCodec().encode([], events))
+				.build())
+		jdbcTemplate.update("update entity_tag_backfill set last_id = 0, completed = false")
+
+		when:
+		while (entityTagBackfillService.backfillNextChunk()) {
+		}
+
+		then:
+		assert findTags(-1, EntityTagIndex.EVENT_SOURCE) == ["#tag1"]
+		assert findTags(-2, EntityTagIndex.EVENT_SOURCE) == ["#tag2"]
+		assert findTaskIdsMatchingTags(["tag2"]) == [task.id]
+	}
+
+	def "backfillNextChunk SHOULD index events and faqs written before the index existed"() {
+		given:
+		List<EventEntity> events = (1..5).collect { int i ->
+			eventRepository.save(aRandom.eventEntity().ownerId(ownerId).taskId(task.id).comment("backfill #tag${i}").build())
+		}
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().ownerId(ownerId).taskId(task.id).eventId(events[0].id)
+				.comment("#faqtag").build())
+		jdbcTemplate.update("delete from entity_tag")
+		jdbcTemplate.update("update entity_tag_backfill set last_id = 0, completed = false")
+
+		when:
+		int chunkCount = 0
+		while (entityTagBackfillService.backfillNextChunk()) {
+			chunkCount++
+		}
+
+		then:
+		assert chunkCount == 3
+		events.eachWithIndex { EventEntity event, int i ->
+			assert findTags(event.id, EntityTagIndex.EVENT_SOURCE) == ["#tag${i + 1}".toString()]
+		}
+		assert findTags(events[0].id, EntityTagIndex.FAQ_SOURCE) == ["#faqtag"]
+		assert jdbcTemplate.queryForObject("select count(*) from entity_tag_backfill where completed = false", Long) == 0
+	}
+
+}
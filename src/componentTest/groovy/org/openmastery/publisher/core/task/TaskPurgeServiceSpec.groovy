@@ -0,0 +1,107 @@
+package org.openmastery.publisher.core.task
+
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.event.EventEntity
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.util.AopTestUtils
+import spock.lang.Specification
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+@ComponentTest
+class TaskPurgeServiceSpec extends Specification {
+
+	@Autowired
+	private TaskPurgeService taskPurgeService
+	@Autowired
+	private IdeaFlowPersistenceService persistenceService
+	@Autowired
+	private TaskRepository taskRepository
+	@Autowired
+	private JdbcTemplate jdbcTemplate
+
+	private TaskEntity task
+
+	def setup() {
+		AopTestUtils.getTargetObject(taskPurgeService).chunkSize = 2
+
+		task = persistenceService.saveTask(aRandom.taskEntity().project("project").build())
+		3.times {
+			persistenceService.saveActivity(aRandom.executionActivityEntity().ownerId(task.ownerId).taskId(task.id).build())
+		}
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().ownerId(task.ownerId).taskId(task.id)
+				.comment("#purged").build())
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().ownerId(task.ownerId).taskId(task.id).eventId(event.id).build())
+		persistenceService.saveActiveState(aRandom.ideaFlowPartialStateEntity().taskId(task.id).build())
+	}
+
+	def cleanup() {
+		AopTestUtils.getTargetObject(taskPurgeService).chunkSize = 1000
+	}
+
+	private long countRows(String table) {
+		jdbcTemplate.queryForObject("select count(*) from " + table + " where task_id = ?", Long, task.id)
+	}
+
+	private long countTaskRows() {
+		jdbcTemplate.queryForObject("select count(*) from task where id = ?", Long, task.id)
+	}
+
+	def "deleteTask SHOULD hide the task and its rows without deleting them"() {
+		when:
+		persistenceService.deleteTask(task)
+
+		then:
+		assert persistenceService.findTaskWithId(task.id) == null
+		assert persistenceService.findTaskWithName(task.ownerId, task.name) == null
+		assert taskRepository.findRecent(task.ownerId, 10) == []
+		assert persistenceService.getActivityList(task.id) == []
+		assert persistenceService.getEventList(task.id) == []
+		assert persistenceService.getActiveState(task.id) == null
+		assert countTaskRows() == 1
+		assert countRows("activity") == 3
+		assert taskPurgeService.findDeletedTaskIds() == [task.id]
+	}
+
+	def "deleteTask SHOULD allow a new task with the same name before the deleted task is purged"() {
+		given:
+		persistenceService.deleteTask(task)
+
+		when:
+		TaskEntity newTask = persistenceService.saveTask(aRandom.taskEntity().ownerId(task.ownerId).name(task.name).build())
+
+		then:
+		assert persistenceService.findTaskWithName(task.ownerId, task.name).id == newTask.id
+	}
+
+	def "purgeNextChunk SHOULD delete at most chunkSize rows per call and the task row last"() {
+		given:
+		persistenceService.deleteTask(task)
+
+		when:
+		int chunkCount = 0
+		while (taskPurgeService.purgeNextChunk(task.id)) {
+			chunkCount++
+			assert countTaskRows() == 1
+		}
+
+		then:
+		// entity_tag, annotation and event once, activity twice and idea_flow_partial_state once
+		assert chunkCount == 6
+		["entity_tag", "annotation", "event", "activity", "idea_flow_partial_state"].each { String table ->
+			assert countRows(table) == 0
+		}
+		assert countTaskRows() == 0
+		assert taskPurgeService.findDeletedTaskIds() == []
+	}
+
+	def "purgeNextChunk SHOULD not touch a task which is not deleted"() {
+		expect:
+		assert taskPurgeService.purgeNextChunk(task.id) == false
+		assert countRows("activity") == 3
+		assert countTaskRows() == 1
+	}
+
+}
@@ -5,6 +5,7 @@ import org.openmastery.publisher.api.batch.NewIFMBatch
 import org.openmastery.publisher.api.event.EventType
 import org.openmastery.publisher.api.event.NewSnippetEvent
 import org.openmastery.publisher.client.BatchClient
+import org.openmastery.publisher.client.BufferedBatchClient
 import org.openmastery.publisher.core.IdeaFlowPersistenceService
 import org.openmastery.publisher.core.activity.ActivityEntity
 import org.openmastery.publisher.core.activity.BlockActivityEntity
@@ -20,7 +21,9 @@ import org.openmastery.publisher.core.user.UserEntity
 import org.openmastery.testsupport.BeanCompare
 import org.openmastery.time.TimeService
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import spock.lang.Specification
+import spock.lang.Timeout
 
 import java.time.Duration
 
@@ -37,6 +40,8 @@ class BatchResourceSpec extends Specification {
 	private TimeService timeService
 	@Autowired
 	private UserEntity testUser
+	@Value('${test-server.base_url:http://localhost}:${server.port}')
+	private String hostUri
 	private BeanCompare comparator = new BeanCompare().excludeFields("id", "ownerId", "metadata", "metadataContainer")
 
 	private Long taskId
@@ -232,4 +237,69 @@ class BatchResourceSpec extends Specification {
 		assert snippets.get(0).snippet == "foreach { loop(); }"
 	}
 
+	def "SHOULD store resent batch only once"() {
+		given:
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(timeService.now())
+				.newEvent(taskId, timeService.now(), EventType.NOTE, "note")
+				.newIdleActivity(taskId, timeService.now(), 30)
+				.build()
+
+		when:
+		client.addIFMBatch(batch)
+		client.addIFMBatch(batch)
+
+		then:
+		assert persistenceService.getEventList(taskId).size() == 1
+		assert persistenceService.getIdleActivityList(taskId).size() == 1
+	}
+
+	def "SHOULD post batch as gzipped smile"() {
+		given:
+		BatchClient compressedClient = new BatchClient(hostUri)
+				.apiKey(testUser.apiKey)
+				.compressedTransport()
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(timeService.now())
+				.newEvent(taskId, timeService.now(), EventType.NOTE, "note")
+				.newEditorActivity(taskId, timeService.now(), 5, "file1", true)
+				.build()
+
+		when:
+		compressedClient.addIFMBatch(batch)
+
+		then:
+		assert persistenceService.getEventList(taskId).last().comment == "note"
+		assert persistenceService.getEditorActivityList(taskId).last().filePath == "file1"
+	}
+
+	@Timeout(60)
+	def "buffered client SHOULD merge single item batches into full batches"() {
+		given:
+		int itemCount = 2000
+		List<Integer> sentBatchSizes = Collections.synchronizedList([])
+		BatchClient serverClient = client
+		BatchClient countingClient = new BatchClient(hostUri) {
+			@Override
+			void addIFMBatch(NewIFMBatch batch) {
+				sentBatchSizes << batch.batchItems.size()
+				serverClient.addIFMBatch(batch)
+			}
+		}
+		BufferedBatchClient bufferedClient = new BufferedBatchClient(countingClient, timeService, 500, Duration.ofMinutes(5),
+				10, Duration.ofSeconds(30))
+
+		when:
+		itemCount.times { int i ->
+			bufferedClient.addIFMBatch(aRandom.batch()
+					.newEvent(taskId, timeService.now(), EventType.NOTE, "note ${i}")
+					.build())
+		}
+		bufferedClient.close()
+
+		then:
+		assert sentBatchSizes == [500, 500, 500, 500]
+		assert persistenceService.getEventList(taskId).size() == itemCount
+	}
+
 }
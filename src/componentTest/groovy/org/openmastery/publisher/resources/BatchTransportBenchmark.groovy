@@ -0,0 +1,125 @@
+package org.openmastery.publisher.resources
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import groovy.util.logging.Slf4j
+import org.openmastery.publisher.ComponentTest
+import org.openmastery.publisher.api.ResourcePaths
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.batch.RandomNewIFMBatchBuilder
+import org.openmastery.publisher.api.event.EventType
+import org.openmastery.publisher.client.BatchClient
+import org.openmastery.publisher.config.CustomValueTypeResolver
+import org.openmastery.publisher.config.SmileMessageBodyProvider
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.user.UserEntity
+import org.openmastery.time.TimeService
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import spock.lang.Requires
+import spock.lang.Specification
+
+import javax.ws.rs.core.MediaType
+import javax.ws.rs.core.MultivaluedHashMap
+import java.lang.annotation.Annotation
+import java.time.LocalDateTime
+import java.util.zip.GZIPOutputStream
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+/**
+ * Compares sending a large batch as JSON and as gzipped Jackson Smile: payload bytes, encode and decode time with
+ * the server's mapper, and the end to end time of posting the batch through BatchClient.  Run with ./gradlew
+ * benchmark, which requires the same postgres database as the component tests.  Timings are logged rather than
+ * asserted since they depend on the machine and its load.
+ */
+@Slf4j
+@ComponentTest
+@Requires({ Boolean.getBoolean("org.ideaflow.benchmark") })
+class BatchTransportBenchmark extends Specification {
+
+	private static final int ITEM_COUNT = 5000
+	private static final int WARMUP_ITERATIONS = 5
+	private static final int MEASURED_ITERATIONS = 20
+	private static final int POST_WARMUP_ITERATIONS = 2
+	private static final int POST_MEASURED_ITERATIONS = 5
+
+	@Autowired
+	private IdeaFlowPersistenceService persistenceService
+	@Autowired
+	private TimeService timeService
+	@Autowired
+	private UserEntity testUser
+	@Value('${test-server.base_url:http://localhost}:${server.port}')
+	private String hostUri
+
+	private ObjectMapper mapper = new CustomValueTypeResolver().getContext(null)
+	private SmileMessageBodyProvider smileProvider = new SmileMessageBodyProvider(mapper)
+	private MediaType smileMediaType = MediaType.valueOf(ResourcePaths.SMILE_MEDIA_TYPE)
+
+	private NewIFMBatch createBatch(long taskId) {
+		LocalDateTime now = timeService.now()
+		RandomNewIFMBatchBuilder builder = aRandom.batch().timeSent(now)
+		(ITEM_COUNT / 2).times { int i ->
+			builder.newEditorActivity(taskId, now.minusSeconds(i), 5, "src/main/java/org/openmastery/File${i % 20}.java", true)
+			builder.newEvent(taskId, now.minusSeconds(i), EventType.NOTE, "note ${i}")
+		}
+		builder.build()
+	}
+
+	private byte[] toSmile(NewIFMBatch batch) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream()
+		smileProvider.writeTo(batch, NewIFMBatch, NewIFMBatch, new Annotation[0], smileMediaType, new MultivaluedHashMap<String, Object>(), outputStream)
+		outputStream.toByteArray()
+	}
+
+	private NewIFMBatch fromSmile(byte[] bytes) {
+		(NewIFMBatch) smileProvider.readFrom((Class) NewIFMBatch, NewIFMBatch, new Annotation[0], smileMediaType,
+				new MultivaluedHashMap<String, String>(), new ByteArrayInputStream(bytes))
+	}
+
+	private static byte[] gzip(byte[] bytes) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream()
+		new GZIPOutputStream(outputStream).withStream { it.write(bytes) }
+		outputStream.toByteArray()
+	}
+
+	private static double measureMillis(int warmupIterations, int measuredIterations, Closure operation) {
+		warmupIterations.times(operation)
+		long startNanos = System.nanoTime()
+		measuredIterations.times(operation)
+		(System.nanoTime() - startNanos) / 1_000_000d / measuredIterations
+	}
+
+	private double measureMillisPerPost(BatchClient client, NewIFMBatch batch) {
+		measureMillis(POST_WARMUP_ITERATIONS, POST_MEASURED_ITERATIONS) {
+			// a batch which was already stored is discarded by its batch id, each post must be stored
+			batch.batchId = UUID.randomUUID().toString()
+			client.addIFMBatch(batch)
+		}
+	}
+
+	def "measure payload size, encoding and posting of json and smile batches"() {
+		setup:
+		long taskId = persistenceService.saveTask(aRandom.taskEntity().ownerId(testUser.id).build()).id
+		NewIFMBatch batch = createBatch(taskId)
+		byte[] json = mapper.writeValueAsBytes(batch)
+		byte[] smile = toSmile(batch)
+		log.info(String.format("Batch payload, items=%d, json=%d bytes, gzipped json=%d bytes, smile=%d bytes, " +
+				"gzipped smile=%d bytes", ITEM_COUNT, json.length, gzip(json).length, smile.length, gzip(smile).length))
+
+		double jsonEncodeMillis = measureMillis(WARMUP_ITERATIONS, MEASURED_ITERATIONS) { mapper.writeValueAsBytes(batch) }
+		double jsonDecodeMillis = measureMillis(WARMUP_ITERATIONS, MEASURED_ITERATIONS) { mapper.readValue(json, NewIFMBatch) }
+		double smileEncodeMillis = measureMillis(WARMUP_ITERATIONS, MEASURED_ITERATIONS) { toSmile(batch) }
+		double smileDecodeMillis = measureMillis(WARMUP_ITERATIONS, MEASURED_ITERATIONS) { fromSmile(smile) }
+		log.info(String.format("Batch encoding, items=%d, json encode=%.2fms, json decode=%.2fms, smile encode=%.2fms, " +
+				"smile decode=%.2fms", ITEM_COUNT, jsonEncodeMillis, jsonDecodeMillis, smileEncodeMillis, smileDecodeMillis))
+
+		BatchClient jsonClient = new BatchClient(hostUri).apiKey(testUser.apiKey)
+		BatchClient compressedClient = new BatchClient(hostUri).apiKey(testUser.apiKey).compressedTransport()
+		double jsonPostMillis = measureMillisPerPost(jsonClient, batch)
+		double compressedPostMillis = measureMillisPerPost(compressedClient, batch)
+		log.info(String.format("Batch post, items=%d, json=%.2fms, gzipped smile=%.2fms", ITEM_COUNT,
+				jsonPostMillis, compressedPostMillis))
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.openmastery.publisher.resources
 
+import com.bancvue.rest.exception.NotFoundException
 import org.openmastery.publisher.api.event.Event
 import org.openmastery.publisher.api.journey.FormattableSnippet
 import org.openmastery.publisher.client.BatchClient
@@ -105,4 +106,24 @@ class TaskEventResourceSpec extends Specification {
 		assert savedEvent != null
 
 	}
+
+	def "Should not update event description or FAQ WHEN the task was deleted"() {
+		given:
+		EventEntity eventEntity = createRandomEvent()
+		eventEntity.type = EventType.SUBTASK
+		eventEntity = persistenceService.saveEvent(eventEntity)
+		persistenceService.deleteTask(persistenceService.findTaskWithId(taskId))
+
+		when:
+		eventClient.updateEventDescription("/task/id/$taskId/subtask/${eventEntity.id}", "hello")
+
+		then:
+		thrown(NotFoundException)
+
+		when:
+		eventClient.updateEventFaq("/task/id/$taskId/subtask/${eventEntity.id}", "My FAQ!")
+
+		then:
+		thrown(NotFoundException)
+	}
 }
@@ -9,6 +9,7 @@ import org.openmastery.publisher.api.task.TaskPatch
 import org.openmastery.publisher.client.TaskClient
 import org.openmastery.publisher.core.IdeaFlowPersistenceService
 import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.task.TaskEntity
 import org.openmastery.testsupport.BeanCompare
 import org.openmastery.time.MockTimeService
 import org.springframework.beans.factory.annotation.Autowired
@@ -180,6 +181,72 @@ class TaskResourceSpec extends Specification {
 		assert taskPage.hasPrevious == false
 	}
 
+	def "findRecentTasksAfter SHOULD walk all tasks by cursor, including tasks with the same modify date"() {
+		given:
+		List<Task> expectedTasks = []
+		for (int i = 0; i < 7; i++) {
+			expectedTasks.add(taskClient.createTask("${aRandom.text(10)}-${i}", aRandom.text(50), aRandom.text(50)))
+			if (i % 2 == 0) {
+				timeService.plusMinutes(10)
+			}
+		}
+		expectedTasks = expectedTasks.sort { Task a, Task b -> b.modifyDate <=> a.modifyDate ?: b.id <=> a.id }
+
+		when:
+		List<PagedResult<Task>> pages = [taskClient.findRecentTasksAfter(null, 3)]
+		while (pages.last().nextCursor != null) {
+			pages << taskClient.findRecentTasksAfter(pages.last().nextCursor, 3)
+		}
+
+		then:
+		assert pages.collect { it.contents.size() } == [3, 3, 1]
+		assert pages.collectMany { it.contents } == expectedTasks
+		assert pages.collect { it.hasNext } == [true, true, false]
+		assert pages.collect { it.hasPrevious } == [false, true, true]
+		assert pages.first().totalElements == PagedResult.UNKNOWN_TOTAL
+	}
+
+	def "findRecentTasks SHOULD return a cursor that continues from the page number"() {
+		given:
+		List<Task> expectedTasks = []
+		for (int i = 0; i < 6; i++) {
+			expectedTasks.add(taskClient.createTask("${aRandom.text(10)}-${i}", aRandom.text(50), "project"))
+			timeService.plusMinutes(10)
+		}
+		expectedTasks = expectedTasks.reverse()
+
+		when:
+		PagedResult<Task> firstPage = taskClient.findRecentTasksForProject("project", 0, 4)
+		PagedResult<Task> secondPage = taskClient.findRecentTasksForProjectAfter("project", firstPage.nextCursor, 4)
+
+		then:
+		assert firstPage.contents == expectedTasks.subList(0, 4)
+		assert secondPage.contents == expectedTasks.subList(4, 6)
+		assert secondPage.nextCursor == null
+		assert secondPage.hasNext == false
+	}
+
+	def "findRecentTasksAfter SHOULD order tasks which were never modified by creation date"() {
+		given:
+		String project = aRandom.text(10)
+		TaskEntity unmodified = persistenceService.saveTask(aRandom.taskEntity().project(project)
+				.creationDate(timeService.now()).modifyDate(null).build())
+		timeService.plusMinutes(10)
+		Task modified = taskClient.createTask(aRandom.text(10), "description", project)
+		timeService.plusMinutes(10)
+		TaskEntity otherUnmodified = persistenceService.saveTask(aRandom.taskEntity().project(project)
+				.creationDate(timeService.now()).modifyDate(null).build())
+
+		when:
+		PagedResult<Task> firstPage = taskClient.findRecentTasksForProjectAfter(project, null, 1)
+		PagedResult<Task> secondPage = taskClient.findRecentTasksForProjectAfter(project, firstPage.nextCursor, 1)
+		PagedResult<Task> thirdPage = taskClient.findRecentTasksForProjectAfter(project, secondPage.nextCursor, 1)
+
+		then:
+		assert [firstPage, secondPage, thirdPage].collectMany { it.contents }*.id == [otherUnmodified.id, modified.id, unmodified.id]
+		assert thirdPage.hasNext == false
+	}
+
 	@spock.lang.Ignore //TODO tag search is being pulled out for now, so not going to worry about implementing this
 	def "findRecentTasksMatchingTags SHOULD filter tasks according to #tags in FAQ or event comments"() {
 		given:
@@ -48,4 +48,25 @@ class StoryWebServiceSpec extends Specification {
 		assert faqs.get(0).tags == ["#this", "#that"].toSet()
 	}
 
+	def "findTopFaqsMatchingText SHOULD return the most relevant event and faq comments first"() {
+		given:
+		EventEntity faqEvent = persistenceService.saveEvent(aRandom.eventEntity().taskId(taskId).comment("Build broke").build())
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().taskId(taskId).eventId(faqEvent.id)
+				.comment("Gradle daemon failing, gradle cache was corrupt so clear the gradle cache").build())
+		EventEntity commentEvent = persistenceService.saveEvent(aRandom.eventEntity().taskId(taskId)
+				.comment("gradle failed once").build())
+		persistenceService.saveEvent(aRandom.eventEntity().taskId(taskId).comment("nothing relevant").build())
+
+		when:
+		List<FaqSummary> faqs = storyWebService.findTopFaqsMatchingText("gradle fails", 10)
+		List<FaqSummary> topFaq = storyWebService.findTopFaqsMatchingText("gradle fails", 1)
+
+		then:
+		assert faqs.collect { it.eventId } == [faqEvent.id, commentEvent.id]
+		assert faqs[0].faqComment.startsWith("Gradle daemon failing")
+		assert faqs[0].eventComment == "Build broke"
+		assert faqs[1].faqComment == null
+		assert topFaq.collect { it.eventId } == [faqEvent.id]
+	}
+
 }
@@ -2,7 +2,9 @@ package org.openmastery.storyweb.core
 
 import org.openmastery.publisher.ComponentTest
 import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.archive.TaskCompactionService
 import org.openmastery.publisher.ideaflow.timeline.IdeaFlowTimelineElementBuilder
+import org.openmastery.storyweb.core.metrics.spc.FilterlessTaskDataGenerator
 import org.openmastery.storyweb.core.metrics.spc.TaskData
 import org.openmastery.storyweb.core.metrics.spc.TaskDataGenerator
 import org.openmastery.time.MockTimeService
@@ -19,9 +21,15 @@ class TaskDataGeneratorSpec extends Specification {
 	@Autowired
 	TaskDataGenerator taskDataGenerator
 
+	@Autowired
+	FilterlessTaskDataGenerator filterlessTaskDataGenerator
+
 	@Autowired
 	FixturePersistenceHelper fixturePersistenceHelper
 
+	@Autowired
+	TaskCompactionService taskCompactionService
+
 	@Autowired
 	private IdeaFlowPersistenceService persistenceService
 
@@ -72,4 +80,35 @@ class TaskDataGeneratorSpec extends Specification {
 		then:
 		assert taskDataList.size() == 0
 	}
+
+	def "generateTaskData SHOULD include the rows of compacted tasks"() {
+		given:
+		Long compactedTaskId = persistenceService.saveTask(aRandom.taskEntity().ownerId(-1)
+				.creationDate(mockTimeService.now()).modifyDate(mockTimeService.now()).build()).id
+		builder.activate()
+				.wtf()
+				.advanceMinutes(30)
+				.wtf()
+				.advanceMinutes(30)
+				.idleDays(1)
+				.advanceMinutes(5)
+				.awesome()
+				.advanceMinutes(5)
+				.deactivate()
+
+		fixturePersistenceHelper.saveIdeaFlow(-1, compactedTaskId, builder)
+		assert taskCompactionService.compactTask(compactedTaskId)
+
+		when:
+		List<TaskData> taskDataList =
+				taskDataGenerator.generate(-1, builder.startTime.toLocalDate(), builder.deactivationTime.toLocalDate())
+		List<TaskData> filterlessTaskDataList = filterlessTaskDataGenerator.generate(-1)
+
+		then:
+		assert taskDataList*.taskId == [compactedTaskId]
+		assert taskDataList.get(0).troubleshootingBands.size() == 1
+		assert taskDataList.get(0).troubleshootingBands.get(0).duration == Duration.ofMinutes(65)
+		assert filterlessTaskDataList*.taskId == [compactedTaskId]
+		assert filterlessTaskDataList.get(0).troubleshootingBands.get(0).duration == Duration.ofMinutes(65)
+	}
 }
@@ -5,6 +5,7 @@ import org.openmastery.publisher.api.PagedResult
 import org.openmastery.publisher.core.IdeaFlowPersistenceService
 import org.openmastery.publisher.core.user.UserEntity
 import org.openmastery.publisher.ideaflow.timeline.IdeaFlowTimelineElementBuilder
+import org.openmastery.storyweb.api.FaqSummary
 import org.openmastery.storyweb.api.StoryPoint
 import org.openmastery.storyweb.client.FaqClient
 import org.openmastery.storyweb.core.FixturePersistenceHelper
@@ -88,4 +89,20 @@ class FaqResourceSpec extends Specification {
 //		assert faqs.get(0).tags == ["#this", "#that"].toSet()
 
 	}
+
+	def "findTopFaqsMatchingText SHOULD return the limit most relevant hits WHEN there are more matches"() {
+		given:
+		(1..3).each { int i ->
+			persistenceService.saveEvent(aRandom.eventEntity().ownerId(testUser.id).taskId(taskId)
+					.comment("flaky test number ${i}").build())
+		}
+
+		when:
+		PagedResult<FaqSummary> results = faqClient.findTopFaqsMatchingText("flaky", 2)
+
+		then:
+		assert results.contents.size() == 2
+		assert results.hasNext == true
+		assert results.totalElements == PagedResult.UNKNOWN_TOTAL
+	}
 }
@@ -5,4 +5,7 @@ truncate table idea_flow_partial_state cascade;
 truncate table task cascade;
 truncate table om_user cascade;
 truncate table annotation cascade;
-truncate table glossary cascade;
\ No newline at end of file
+truncate table glossary cascade;
+truncate table batch_fingerprint cascade;
+truncate table task_archive cascade;
+truncate table entity_tag cascade;
\ No newline at end of file
@@ -17,16 +17,23 @@ package org.openmastery;
 
 import org.openmastery.publisher.core.IdeaFlowPersistenceService;
 import org.openmastery.publisher.core.IdeaFlowRelationalPersistenceService;
+import org.openmastery.publisher.core.embedded.IdeaFlowEmbeddedPersistenceService;
 import org.openmastery.time.LocalDateTimeService;
 import org.openmastery.time.TimeService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.autoconfigure.ManagementWebSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.security.SecurityAutoConfiguration;
 import org.springframework.boot.orm.jpa.EntityScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+
 @SpringBootApplication
 @ComponentScan({"org.openmastery.publisher", "org.openmastery.storyweb"})
 @EnableAutoConfiguration(exclude = {
@@ -35,10 +42,28 @@ import org.springframework.context.annotation.ComponentScan;
 public class IfmPublisherConfig {
 
 	@Bean
+	@ConditionalOnProperty(name = "org.ideaflow.embedded.enabled", havingValue = "false", matchIfMissing = true)
 	public IdeaFlowPersistenceService ideaFlowPersistenceService() {
 		return new IdeaFlowRelationalPersistenceService();
 	}
 
+	@Bean(destroyMethod = "close")
+	@ConditionalOnProperty(name = "org.ideaflow.embedded.enabled", havingValue = "true")
+	public IdeaFlowPersistenceService embeddedIdeaFlowPersistenceService(
+			@Value("${org.ideaflow.embedded.dataDirectory}") String dataDirectory,
+			@Value("${org.ideaflow.embedded.segmentCapacity:4096}") int segmentCapacity,
+			@Value("${org.ideaflow.embedded.compactionIntervalInMinutes:10}") long compactionIntervalInMinutes,
+			@Value("${org.ideaflow.embedded.compactionIdleTimeInMinutes:60}") long compactionIdleTimeInMinutes,
+			@Value("${org.ideaflow.embedded.maxJournalSizeInBytes:16777216}") long maxJournalSizeInBytes) throws IOException {
+		IdeaFlowEmbeddedPersistenceService persistenceService = new IdeaFlowEmbeddedPersistenceService(
+				new File(dataDirectory), segmentCapacity, Duration.ofMinutes(compactionIdleTimeInMinutes), maxJournalSizeInBytes);
+		persistenceService.open();
+		if (compactionIntervalInMinutes > 0) {
+			persistenceService.startCompaction(Duration.ofMinutes(compactionIntervalInMinutes));
+		}
+		return persistenceService;
+	}
+
 	@Bean
 	public TimeService timeService() {
 		return new LocalDateTimeService();
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config;
+
+import org.openmastery.storyweb.api.ResourcePaths;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Registered when org.ideaflow.embedded.enabled is set.  Tasks and ideaflow data are then stored in local files (see
+ * IdeaFlowEmbeddedPersistenceService), but the storyweb faq search, glossary and metrics read the relational tables
+ * directly, which are never written in embedded mode; their requests are rejected with 501 rather than answered from
+ * empty tables.  Users, api keys and batch fingerprints are still kept in the database, so a datasource is required.
+ */
+@Provider
+@Priority(Priorities.USER)
+public class EmbeddedModeRequestFilter implements ContainerRequestFilter {
+
+	@Override
+	public void filter(ContainerRequestContext request) {
+		String path = request.getUriInfo().getPath();
+		if (isUnsupported(path)) {
+			throw new ServerErrorException("Not supported with embedded persistence, path=" + path,
+					Response.Status.NOT_IMPLEMENTED);
+		}
+	}
+
+	static boolean isUnsupported(String path) {
+		String absolutePath = path.startsWith("/") ? path : "/" + path;
+		return absolutePath.equals(ResourcePaths.STORY_WEB_PATH) || absolutePath.startsWith(ResourcePaths.STORY_WEB_PATH + "/");
+	}
+
+}
@@ -18,10 +18,13 @@ package org.openmastery.publisher.config;
 import com.bancvue.rest.exception.mapper.ExceptionMapperConfig;
 import com.bancvue.rest.exception.mapper.GenericExceptionMapper;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 import org.openmastery.logging.LoggingFilter;
 import org.openmastery.publisher.security.AuthorizationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
@@ -34,6 +37,8 @@ public class JerseyConfig extends ResourceConfig {
 
 	@Autowired
 	protected AuthorizationFilter authorizationFilter;
+	@Value("${org.ideaflow.embedded.enabled:false}")
+	private boolean embeddedEnabled;
 
 	@PostConstruct
 	public void initialize() {
@@ -45,7 +50,13 @@ public class JerseyConfig extends ResourceConfig {
 		register(LoggingFilter.class);
 		register(CORSResponseFilter.class);
 		register(CustomValueTypeResolver.class);
+		register(SmileMessageBodyProvider.class);
+		// decodes request bodies sent with Content-Encoding: gzip and compresses responses for Accept-Encoding: gzip
+		EncodingFilter.enableFor(this, GZipEncoder.class);
 		register(authorizationFilter);
+		if (embeddedEnabled) {
+			register(EmbeddedModeRequestFilter.class);
+		}
 	}
 
 }
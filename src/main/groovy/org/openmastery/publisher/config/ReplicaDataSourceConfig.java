@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured DataSource with one which sends read-only transactions to the read replicas listed
+ * in org.ideaflow.datasource.replicaUrls.  Replicas share the credentials of the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "org.ideaflow.datasource.replicaUrls")
+public class ReplicaDataSourceConfig {
+
+	@Value("${org.ideaflow.datasource.replicaUrls}")
+	private String[] replicaUrls;
+	@Value("${org.ideaflow.datasource.replicaMaxLagInSeconds:30}")
+	private long replicaMaxLagInSeconds;
+	@Value("${org.ideaflow.datasource.replicaLagCheckIntervalInSeconds:10}")
+	private long replicaLagCheckIntervalInSeconds;
+
+	@Bean
+	@ConfigurationProperties(prefix = "spring.datasource")
+	public DataSource primaryDataSource(DataSourceProperties properties) {
+		return createDataSource(properties, properties.getUrl());
+	}
+
+	@Bean(destroyMethod = "stop")
+	public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+	                                                         DataSourceProperties properties) {
+		List<DataSource> replicas = new ArrayList<>();
+		for (String replicaUrl : replicaUrls) {
+			replicas.add(createDataSource(properties, replicaUrl.trim()));
+		}
+
+		ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primaryDataSource, replicas,
+				Duration.ofSeconds(replicaMaxLagInSeconds));
+		routingDataSource.start(Duration.ofSeconds(replicaLagCheckIntervalInSeconds));
+		return routingDataSource;
+	}
+
+	@Bean
+	@Primary
+	public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+		return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+	}
+
+	private DataSource createDataSource(DataSourceProperties properties, String url) {
+		return DataSourceBuilder.create(properties.getClassLoader())
+				.driverClassName(properties.getDriverClassName())
+				.url(url)
+				.username(properties.getUsername())
+				.password(properties.getPassword())
+				.build();
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes connections for read-only transactions to a read replica and all other connections to the primary.
+ * Replicas are used round-robin; a replica which lags the primary by more than maxLag, or whose lag can not be
+ * determined, is skipped until a later lag check finds it caught up.  With no usable replica, reads go to the primary.
+ *
+ * The read-only flag is only set once the transaction has begun, so this must be wrapped in a
+ * LazyConnectionDataSourceProxy to defer fetching the connection until the first statement.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	public interface LagProbe {
+
+		/**
+		 * @return how far the replica is behind the primary
+		 */
+		Duration getLag(DataSource replica) throws SQLException;
+
+	}
+
+	static final String PRIMARY_KEY = "primary";
+
+	private static final String REPLICA_LAG_QUERY = "select case " +
+			"when pg_last_xlog_receive_location() = pg_last_xlog_replay_location() then 0 " +
+			"else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+	private final List<Replica> replicas = new ArrayList<>();
+	private final Duration maxLag;
+	private final LagProbe lagProbe;
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	private ScheduledExecutorService lagCheckExecutor;
+
+	public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources, Duration maxLag) {
+		this(primary, replicaDataSources, maxLag, ReplicaRoutingDataSource::queryReplicaLag);
+	}
+
+	ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources, Duration maxLag, LagProbe lagProbe) {
+		this.maxLag = maxLag;
+		this.lagProbe = lagProbe;
+
+		Map<Object, Object> targetDataSources = new HashMap<>();
+		targetDataSources.put(PRIMARY_KEY, primary);
+		for (int i = 0; i < replicaDataSources.size(); i++) {
+			Replica replica = new Replica("replica-" + i, replicaDataSources.get(i));
+			replicas.add(replica);
+			targetDataSources.put(replica.key, replica.dataSource);
+		}
+		setTargetDataSources(targetDataSources);
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+
+	public void start(Duration lagCheckInterval) {
+		checkReplicaLag();
+		lagCheckExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("replica-lag-check")
+				.setDaemon(true)
+				.build());
+		lagCheckExecutor.scheduleWithFixedDelay(this::checkReplicaLag, lagCheckInterval.toMillis(),
+				lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	public void stop() {
+		if (lagCheckExecutor != null) {
+			lagCheckExecutor.shutdownNow();
+		}
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() == false) {
+			return PRIMARY_KEY;
+		}
+
+		int replicaCount = replicas.size();
+		int start = nextReplica.getAndIncrement();
+		for (int i = 0; i < replicaCount; i++) {
+			Replica replica = replicas.get(Math.floorMod(start + i, replicaCount));
+			if (replica.available) {
+				return replica.key;
+			}
+		}
+		return PRIMARY_KEY;
+	}
+
+	void checkReplicaLag() {
+		for (Replica replica : replicas) {
+			boolean available;
+			try {
+				Duration lag = lagProbe.getLag(replica.dataSource);
+				available = lag.compareTo(maxLag) <= 0;
+				if (available == false && replica.available) {
+					log.warn("Replica lag exceeds maximum, routing reads away from replica, replica={}, lag={}", replica.key, lag);
+				}
+			} catch (SQLException | RuntimeException ex) {
+				available = false;
+				if (replica.available) {
+					log.warn("Failed to check replica lag, routing reads away from replica, replica={}", replica.key, ex);
+				}
+			}
+
+			if (available && replica.available == false) {
+				log.info("Replica available, routing reads to replica, replica={}", replica.key);
+			}
+			replica.available = available;
+		}
+	}
+
+	private static Duration queryReplicaLag(DataSource replica) throws SQLException {
+		try (Connection connection = replica.getConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet resultSet = statement.executeQuery(REPLICA_LAG_QUERY)) {
+			resultSet.next();
+			return Duration.ofMillis((long) (resultSet.getDouble(1) * 1000));
+		}
+	}
+
+	private static class Replica {
+
+		private final String key;
+		private final DataSource dataSource;
+		// replicas are not used until the first lag check
+		private volatile boolean available;
+
+		private Replica(String key, DataSource dataSource) {
+			this.key = key;
+			this.dataSource = dataSource;
+		}
+
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openmastery.publisher.api.ResourcePaths;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Reads and writes entities as binary Jackson Smile.  Data binding is done by the same ObjectMapper used for
+ * JSON so both representations of an entity are equivalent; only the parser and generator differ.
+ */
+@Provider
+@Consumes(ResourcePaths.SMILE_MEDIA_TYPE)
+@Produces(ResourcePaths.SMILE_MEDIA_TYPE)
+public class SmileMessageBodyProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+	private final SmileFactory smileFactory = new SmileFactory();
+	private final ObjectMapper mapper;
+
+	public SmileMessageBodyProvider() {
+		this(new CustomValueTypeResolver().getContext(null));
+	}
+
+	public SmileMessageBodyProvider(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	@Override
+	public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return isSmile(mediaType);
+	}
+
+	@Override
+	public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+	                       MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
+		return mapper.readValue(smileFactory.createParser(entityStream), mapper.constructType(genericType));
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return isSmile(mediaType);
+	}
+
+	@Override
+	public long getSize(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+	                    MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+		mapper.writeValue(smileFactory.createGenerator(entityStream), value);
+	}
+
+	private boolean isSmile(MediaType mediaType) {
+		return mediaType != null && mediaType.isCompatible(MediaType.valueOf(ResourcePaths.SMILE_MEDIA_TYPE));
+	}
+
+}
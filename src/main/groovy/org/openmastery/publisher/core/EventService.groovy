@@ -23,14 +23,13 @@ import org.openmastery.publisher.api.event.AnnotatedEvent
 import org.openmastery.publisher.api.event.Event
 import org.openmastery.publisher.api.event.EventType
 import org.openmastery.publisher.api.journey.FormattableSnippet
-import org.openmastery.publisher.core.annotation.AnnotationRespository
 import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
 import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
 import org.openmastery.publisher.core.event.EventEntity
-import org.openmastery.publisher.core.event.EventRepository
 import org.openmastery.time.TimeConverter
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
 
 import java.time.LocalDateTime
 
@@ -38,10 +37,7 @@ import java.time.LocalDateTime
 class EventService {
 
 	@Autowired
-	private EventRepository eventRepository
-
-	@Autowired
-	private AnnotationRespository annotationRespository
+	private IdeaFlowPersistenceService persistenceService
 
 
 	public List<Event> getLatestEventsByType(Long userId, EventType eventType, LocalDateTime afterDate, Integer limit) {
@@ -50,7 +46,7 @@ class EventService {
 
 
 	public List<Event> getLatestEvents(Long userId, LocalDateTime afterDate, Integer limit) {
-		List<EventEntity> eventEntityList = eventRepository.findRecentEvents(userId, TimeConverter.toSqlTimestamp(afterDate), limit)
+		List<EventEntity> eventEntityList = persistenceService.findRecentEvents(userId, TimeConverter.toSqlTimestamp(afterDate), limit)
 
 		List<Event> eventList = eventEntityList.collect() { EventEntity entity ->
 			ValueObjectMapper mapper = new ValueObjectMapper()
@@ -68,10 +64,10 @@ class EventService {
 	Event updateEvent(Long userId, Long eventId, String comment) {
 		//TODO this query should take userId too, but ignoring because of UI hacks
 
-		EventEntity entity = eventRepository.findById(eventId)
-		entity.comment = comment
-
-		EventEntity savedEntity = eventRepository.save(entity);
+		EventEntity savedEntity = persistenceService.updateEventComment(eventId, comment)
+		if (savedEntity == null) {
+			throw new NotFoundException("Unable to update event.  EventId = $eventId not found.")
+		}
 		return toApi(savedEntity)
 	}
 
@@ -89,13 +85,20 @@ class EventService {
 		return entity
 	}
 
-	AnnotatedEvent annotateWithFAQ(Long userId, Long eventId, String faqComment) {
-		EventEntity eventEntity = eventRepository.findByOwnerIdAndId(userId, eventId)
-		if (eventEntity == null) {
+	private EventEntity findOwnedEvent(Long userId, Long eventId) {
+		EventEntity eventEntity = persistenceService.findEventById(eventId)
+		if (eventEntity == null || eventEntity.ownerId != userId) {
 			throw new NotFoundException("Unable to annotate event.  EventId = $eventId not found.")
 		}
+		return eventEntity
+	}
+
+	// the previous faq and its tags are replaced within one transaction
+	@Transactional
+	AnnotatedEvent annotateWithFAQ(Long userId, Long eventId, String faqComment) {
+		EventEntity eventEntity = findOwnedEvent(userId, eventId)
 
-		annotationRespository.deleteByEventAndType(eventId, "faq");
+		persistenceService.deleteFAQAnnotation(eventId);
 
 		FaqAnnotationEntity faqAnnotationEntity = FaqAnnotationEntity.builder()
 				.ownerId(userId)
@@ -103,7 +106,7 @@ class EventService {
 				.eventId(eventId)
 				.comment(faqComment).build()
 
-		annotationRespository.save(faqAnnotationEntity)
+		persistenceService.saveAnnotation(faqAnnotationEntity)
 
 		AnnotatedEvent event = new AnnotatedEvent()
 		event.taskId = eventEntity.taskId
@@ -116,11 +119,9 @@ class EventService {
 	}
 
 
+	@Transactional
 	AnnotatedEvent annotateWithSnippet(long userId, Long eventId, FormattableSnippet formattableSnippet) {
-		EventEntity eventEntity = eventRepository.findByOwnerIdAndId(userId, eventId)
-		if (eventEntity == null) {
-			throw new NotFoundException("Unable to annotate event.  EventId = $eventId not found.")
-		}
+		EventEntity eventEntity = findOwnedEvent(userId, eventId)
 
 		SnippetAnnotationEntity snippetAnnotationEntity = SnippetAnnotationEntity.builder()
 			.ownerId(userId)
@@ -130,8 +131,8 @@ class EventService {
 			.source(formattableSnippet.source)
 			.build()
 
-		annotationRespository.deleteByEventAndType(eventId, "snippet")
-		annotationRespository.save(snippetAnnotationEntity)
+		persistenceService.deleteSnippetAnnotation(eventId)
+		persistenceService.saveAnnotation(snippetAnnotationEntity)
 
 		AnnotatedEvent event = new AnnotatedEvent()
 		event.taskId = eventEntity.taskId
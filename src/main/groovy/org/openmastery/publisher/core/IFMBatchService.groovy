@@ -17,11 +17,11 @@ package org.openmastery.publisher.core
 
 import com.bancvue.rest.exception.ForbiddenException
 import groovy.util.logging.Slf4j
-import org.openmastery.mapper.ValueObjectMapper
 import org.openmastery.publisher.api.activity.NewActivity
 import org.openmastery.publisher.api.batch.NewBatchEvent
 import org.openmastery.publisher.api.batch.NewIFMBatch
 import org.openmastery.publisher.api.event.NewSnippetEvent
+import org.openmastery.publisher.core.activity.ActivityCoalescer
 import org.openmastery.publisher.core.activity.ActivityEntity
 import org.openmastery.publisher.core.activity.BlockActivityEntity
 import org.openmastery.publisher.core.activity.EditorActivityEntity
@@ -30,13 +30,16 @@ import org.openmastery.publisher.core.activity.ExternalActivityEntity
 import org.openmastery.publisher.core.activity.IdleActivityEntity
 import org.openmastery.publisher.core.activity.ModificationActivityEntity
 import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
+import org.openmastery.publisher.core.batch.BatchFingerprintStore
 import org.openmastery.publisher.core.event.EventEntity
-import org.openmastery.publisher.core.task.TaskEntity
+import org.openmastery.publisher.core.mapper.BatchItemEntityMapper
 import org.openmastery.publisher.security.InvocationContext
 import org.openmastery.time.TimeService
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Component
 
+import javax.transaction.Transactional
 import java.time.Duration
 import java.time.LocalDateTime
 
@@ -50,7 +53,10 @@ class IFMBatchService {
 	private TimeService timeService;
 	@Autowired
 	private InvocationContext invocationContext;
-
+	@Autowired
+	private BatchFingerprintStore batchFingerprintStore;
+	@Value('${org.ideaflow.batch.coalesceActivities:true}')
+	private boolean coalesceActivities = true
 
 	Duration determineTimeAdjustment(LocalDateTime messageSentAt) {
 		LocalDateTime now = timeService.now()
@@ -58,36 +64,85 @@ class IFMBatchService {
 		Duration.between(messageSentAt, now)
 	}
 
+	@Transactional
 	public void addIFMBatch(NewIFMBatch batch) {
-		assertAllBatchItemsAreAssociatedWithTasksOwnedByCaller(batch)
+		long userId = invocationContext.getUserId()
+		assertAllBatchItemsAreAssociatedWithTasksOwnedByUser(userId, batch)
 
-		Duration adjustment = determineTimeAdjustment(batch.timeSent)
+		if (batch.isEmpty() == false && batchFingerprintStore.recordIfAbsent(userId, batch) == false) {
+			log.info("Discarding duplicate batch, userId={}, batchId={}", userId, batch.batchId)
+			return
+		}
 
-		EntityBuilder entityBuilder = new EntityBuilder(invocationContext.getUserId())
+		applyIFMBatch(userId, batch, determineTimeAdjustment(batch.timeSent))
+	}
+
+	/**
+	 * Persists a batch which has already been validated, independent of the current request.  The adjustment
+	 * is the clock skew between the client and the server at the time the batch was received.
+	 */
+	@Transactional
+	public void applyIFMBatch(long userId, NewIFMBatch batch, Duration adjustment) {
+		EntityBuilder entityBuilder = new EntityBuilder(userId)
 		List<ActivityEntity> activityEntities = entityBuilder.buildActivities(batch, adjustment)
 		List<EventEntity> eventEntities = entityBuilder.buildEvents(batch, adjustment)
+		List<EventEntity> snippetEventEntities = entityBuilder.buildSnippetEvents(batch, adjustment)
+
+		if (coalesceActivities) {
+			activityEntities = coalesceContiguousActivities(activityEntities)
+		}
 
-		saveActivities(activityEntities)
-		saveEvents(eventEntities)
+		persistenceService.saveActivities(activityEntities)
+		// snippet events are saved in the same pass as all other events; ids are assigned from the pooled sequence
+		// on save, before the batched insert, so the snippet annotations can reference them right away
+		List<EventEntity> savedEvents = persistenceService.saveEvents(eventEntities + snippetEventEntities)
+		List<EventEntity> savedSnippetEvents = savedEvents.subList(eventEntities.size(), savedEvents.size())
+		persistenceService.saveAnnotations(entityBuilder.buildSnippetAnnotations(batch, savedSnippetEvents))
 
-		//TODO clean this up, coupled to persistance because eventId is used in snippet annotation, and coupled to taskModifyDates too
-		entityBuilder.buildAndSaveSnippets(batch, adjustment, persistenceService)
+		persistenceService.updateTaskModifyDates(entityBuilder.getTaskModificationDates())
+	}
+
+	/**
+	 * Merges contiguous editor and external activities within the batch and extends stored activities which
+	 * the batch continues, see ActivityCoalescer.
+	 *
+	 * @return the activities which remain to be inserted
+	 */
+	private List<ActivityEntity> coalesceContiguousActivities(List<ActivityEntity> activityEntities) {
+		List<ActivityEntity> coalescableActivities = activityEntities.findAll { ActivityCoalescer.isCoalescable(it) }
+		if (coalescableActivities.isEmpty()) {
+			return activityEntities
+		}
 
-		saveTaskModifyDates(entityBuilder.getTaskModificationDates())
+		Set<Long> taskIds = coalescableActivities.collect { it.taskId } as Set
+		Set<LocalDateTime> startTimes = coalescableActivities.collect { it.start } as Set
+		List<ActivityEntity> continuedActivities = persistenceService.findEditorAndExternalActivitiesEndingAt(taskIds, startTimes)
 
+		ActivityCoalescer coalescer = new ActivityCoalescer(continuedActivities)
+		List<ActivityEntity> activitiesToInsert = coalescer.coalesce(activityEntities)
+		persistenceService.updateActivityEndTimes(coalescer.extendedActivityEndTimes)
+		activitiesToInsert
 	}
 
-	private void assertAllBatchItemsAreAssociatedWithTasksOwnedByCaller(NewIFMBatch batch) {
+	public void assertAllBatchItemsAreAssociatedWithTasksOwnedByUser(long userId, NewIFMBatch batch) {
 		Set<Long> taskIds = []
 		batch.getBatchItems().each {
 			taskIds.add(it.taskId)
 		}
 
-		long userId = invocationContext.getUserId();
+		assertAllTasksOwnedByUser(userId, taskIds)
+	}
+
+	public void assertAllTasksOwnedByUser(long userId, Collection<Long> taskIds) {
+		if (taskIds.isEmpty()) {
+			return
+		}
+
+		Map<Long, Long> taskOwnerIds = persistenceService.findTaskOwnerIds(taskIds)
 		for (Long taskId : taskIds) {
-			TaskEntity task = persistenceService.findTaskWithId(taskId)
-			if (task == null || task.ownerId != userId) {
-				if (task == null) {
+			Long ownerId = taskOwnerIds.get(taskId)
+			if (ownerId == null || ownerId != userId) {
+				if (ownerId == null) {
 					// TODO: warning almost meaningless... should be saving the entire batch for reference
 					log.warn("Attempting to add batch item non-existent taskId, taskId={}", taskId)
 				}
@@ -96,29 +151,8 @@ class IFMBatchService {
 		}
 	}
 
-	private void saveActivities(List<ActivityEntity> activityList) {
-		activityList.each { ActivityEntity entity ->
-			persistenceService.saveActivity(entity)
-		}
-	}
-
-	private void saveEvents(List<EventEntity> eventEntityList) {
-		eventEntityList.each { EventEntity entity ->
-			persistenceService.saveEvent(entity)
-		}
-	}
-
-	private void saveTaskModifyDates(Map<Long, LocalDateTime> taskModifyDates) {
-		taskModifyDates.each { Long taskId, LocalDateTime modifyDate ->
-			TaskEntity taskEntity = persistenceService.findTaskWithId(taskId)
-			taskEntity.modifyDate = modifyDate
-			persistenceService.saveTask(taskEntity)
-		}
-	}
-
 	static class EntityBuilder {
 
-		private ValueObjectMapper entityMapper = new ValueObjectMapper()
 		private long userId
 
 		private Map<Long, LocalDateTime> taskModificationDates = [:]
@@ -147,26 +181,31 @@ class IFMBatchService {
 			}
 		}
 
-		void buildAndSaveSnippets(NewIFMBatch batch, Duration adjustment, IdeaFlowPersistenceService persistenceService) {
-			ValueObjectMapper entityMapper = new ValueObjectMapper()
-
-			batch.snippetEventList.each { NewSnippetEvent snippet ->
-				EventEntity eventEntity = entityMapper.mapIfNotNull(snippet, EventEntity.class)
+		List<EventEntity> buildSnippetEvents(NewIFMBatch batch, Duration adjustment) {
+			batch.snippetEventList.collect { NewSnippetEvent snippet ->
+				EventEntity eventEntity = BatchItemEntityMapper.toEventEntity(snippet)
 				LocalDateTime endTime = snippet.position
 				eventEntity.position = endTime.plus(adjustment)
 				eventEntity.ownerId = userId
 				eventEntity.type = snippet.eventType
 
-				EventEntity savedEvent = persistenceService.saveEvent(eventEntity)
+				recordTaskModification(eventEntity.taskId, eventEntity.position)
+				return eventEntity
+			}
+		}
 
-				SnippetAnnotationEntity annotationEntity = entityMapper.mapIfNotNull(snippet, SnippetAnnotationEntity.class)
+		/**
+		 * @param savedSnippetEvents the saved result of buildSnippetEvents, in the same order
+		 */
+		List<SnippetAnnotationEntity> buildSnippetAnnotations(NewIFMBatch batch, List<EventEntity> savedSnippetEvents) {
+			List<SnippetAnnotationEntity> annotations = []
+			batch.snippetEventList.eachWithIndex { NewSnippetEvent snippet, int i ->
+				SnippetAnnotationEntity annotationEntity = BatchItemEntityMapper.toSnippetAnnotationEntity(snippet)
 				annotationEntity.ownerId = userId
-				annotationEntity.eventId = savedEvent.id
-
-				persistenceService.saveAnnotation(annotationEntity)
-
-				recordTaskModification(savedEvent.taskId, savedEvent.position)
+				annotationEntity.eventId = savedSnippetEvents[i].id
+				annotations << annotationEntity
 			}
+			annotations
 		}
 
 		Map<Long, LocalDateTime> getTaskModificationDates() {
@@ -182,7 +221,7 @@ class IFMBatchService {
 		}
 
 		private ActivityEntity buildActivityEntity( NewActivity activity, Duration adjustment, Class clazz) {
-			ActivityEntity entity = entityMapper.mapIfNotNull(activity, clazz) as ActivityEntity
+			ActivityEntity entity = BatchItemEntityMapper.toActivityEntity(activity, clazz)
 
 			LocalDateTime endTime = activity.endTime
 			entity.start = endTime.plus(adjustment).minusSeconds(activity.durationInSeconds)
@@ -194,7 +233,7 @@ class IFMBatchService {
 		}
 
 		private EventEntity buildEventEntity ( NewBatchEvent event, Duration adjustment) {
-			EventEntity entity = entityMapper.mapIfNotNull(event, EventEntity.class)
+			EventEntity entity = BatchItemEntityMapper.toEventEntity(event)
 
 			LocalDateTime endTime = event.position
 			entity.position = endTime.plus(adjustment)
@@ -27,47 +27,106 @@ import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
 import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
 import org.openmastery.publisher.core.event.EventEntity
 import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateScope
 import org.openmastery.publisher.ideaflow.IdeaFlowStateEntity
+import org.openmastery.publisher.core.task.TaskCursor
 import org.openmastery.publisher.core.task.TaskEntity
+import org.openmastery.publisher.core.task.TaskListing
 import org.openmastery.time.TimeConverter
 import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.data.domain.Page
+import org.springframework.data.domain.Pageable
 
 import java.sql.Timestamp
+import java.time.Duration
 import java.time.LocalDateTime
-
+import java.time.ZoneOffset
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ConcurrentSkipListSet
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.BinaryOperator
+
+/**
+ * Thread-safe in memory store.  Rows are indexed by task, activities by task and type, and activities and events are
+ * kept sorted by start and position so per-task reads need no filtering or sorting and time range lookups are
+ * O(log n).  Saved entities are stored as is, not copied.
+ */
 public class IdeaFlowInMemoryPersistenceService implements IdeaFlowPersistenceService {
 
-	private long ideaFlowStateId = 1L
-	private long eventId = 1L
-	private long taskId = 1L
-	private long activityId = 1L
-	private long annotationId = 1L
-	private IdeaFlowPartialStateEntity activeState
-	private IdeaFlowPartialStateEntity containingState
-	private List<IdeaFlowStateEntity> stateList = []
-	private List<ActivityEntity> activityList = []
-	private List<EventEntity> eventList = []
-	private List<TaskEntity> taskList = []
-	private List<AnnotationEntity> annotationList = []
+	private static final Comparator<ActivityEntity> ACTIVITY_ORDER = { ActivityEntity a, ActivityEntity b ->
+		a.start <=> b.start ?: a.id <=> b.id
+	} as Comparator
+	private static final Comparator<EventEntity> EVENT_ORDER = { EventEntity a, EventEntity b ->
+		a.position <=> b.position ?: a.id <=> b.id
+	} as Comparator
+	private static final BinaryOperator<LocalDateTime> LATEST = { LocalDateTime a, LocalDateTime b ->
+		(a == null || (b != null && b.isAfter(a))) ? b : a
+	} as BinaryOperator
+
+	private final AtomicLong ideaFlowStateId = new AtomicLong(1L)
+	private final AtomicLong eventId = new AtomicLong(1L)
+	private final AtomicLong taskId = new AtomicLong(1L)
+	private final AtomicLong activityId = new AtomicLong(1L)
+	private final AtomicLong annotationId = new AtomicLong(1L)
+
+	private final ConcurrentMap<Long, TaskData> taskDataMap = new ConcurrentHashMap<>()
+	private final ConcurrentMap<Long, TaskEntity> taskMap = new ConcurrentHashMap<>()
+	// owner id and name -> task, enforces the same uniqueness as the task table
+	private final ConcurrentMap<String, TaskEntity> taskByOwnerAndNameMap = new ConcurrentHashMap<>()
+	private final ConcurrentMap<Long, ActivityEntity> activityMap = new ConcurrentHashMap<>()
+	private final ConcurrentMap<Long, EventEntity> eventMap = new ConcurrentHashMap<>()
+	private final ConcurrentMap<Long, NavigableSet<EventEntity>> ownerEventMap = new ConcurrentHashMap<>()
+
+	private static class TaskData {
+
+		private final NavigableSet<ActivityEntity> activities = new ConcurrentSkipListSet<>(IdeaFlowInMemoryPersistenceService.ACTIVITY_ORDER)
+		private final ConcurrentMap<Class, NavigableSet<ActivityEntity>> activitiesByType = new ConcurrentHashMap<>()
+		private final NavigableSet<EventEntity> events = new ConcurrentSkipListSet<>(IdeaFlowInMemoryPersistenceService.EVENT_ORDER)
+		private final List<AnnotationEntity> annotations = new CopyOnWriteArrayList<>()
+		private final List<IdeaFlowStateEntity> states = new CopyOnWriteArrayList<>()
+		private final ConcurrentMap<IdeaFlowPartialStateScope, IdeaFlowPartialStateEntity> partialStates = new ConcurrentHashMap<>()
+		private final AtomicReference<LocalDateTime> mostRecentActivityEnd = new AtomicReference<>()
+
+		private NavigableSet<ActivityEntity> getActivities(Class type) {
+			activitiesByType.computeIfAbsent(type, { new ConcurrentSkipListSet<>(IdeaFlowInMemoryPersistenceService.ACTIVITY_ORDER) })
+		}
+
+	}
+
+	private TaskData getTaskData(Long taskId) {
+		taskDataMap.computeIfAbsent(taskId, { new TaskData() })
+	}
+
+	// reads must not create entries for tasks which have no data
+	private TaskData findTaskData(long taskId) {
+		taskDataMap.get(taskId) ?: new TaskData()
+	}
+
+	private static String taskNameKey(Long ownerId, String name) {
+		String.valueOf(ownerId) + ":" + name
+	}
 
 	@Override
 	public IdeaFlowPartialStateEntity getActiveState(long taskId) {
-		activeState
+		findTaskData(taskId).partialStates.get(IdeaFlowPartialStateScope.ACTIVE)
 	}
 
 	@Override
 	public IdeaFlowPartialStateEntity getContainingState(long taskId) {
-		containingState
+		findTaskData(taskId).partialStates.get(IdeaFlowPartialStateScope.CONTAINING)
 	}
 
 	@Override
 	public List<IdeaFlowStateEntity> getStateList(long taskId) {
-		stateList.findAll { it.taskId == taskId }
+		new ArrayList<>(findTaskData(taskId).states)
 	}
 
 	@Override
 	public List<ActivityEntity> getActivityList(long taskId) {
-		activityList.findAll { it.taskId == taskId }
+		new ArrayList<>(findTaskData(taskId).activities)
 	}
 
 	@Override
@@ -100,6 +159,11 @@ public class IdeaFlowInMemoryPersistenceService implements IdeaFlowPersistenceSe
 		findAllActivitiesOfType(BlockActivityEntity, taskId)
 	}
 
+	@Override
+	public List<AnnotationEntity> getAnnotationList(long taskId) {
+		new ArrayList<>(findTaskData(taskId).annotations)
+	}
+
 	@Override
 	public List<FaqAnnotationEntity> getFaqAnnotationList(long taskId) {
 		return findAllAnnotationsByType(FaqAnnotationEntity, taskId);
@@ -112,37 +176,57 @@ public class IdeaFlowInMemoryPersistenceService implements IdeaFlowPersistenceSe
 
 	@Override
 	EventEntity findEventById(long eventId) {
-		return eventList.find { it.id == eventId }
+		eventMap.get(eventId)
 	}
 
 	@Override
 	void deleteFAQAnnotation(long eventId) {
-		annotationList.removeAll { it.eventId == eventId && it instanceof FaqAnnotationEntity}
+		deleteAnnotationsOfType(FaqAnnotationEntity, eventId)
+	}
+
+	@Override
+	void deleteSnippetAnnotation(long eventId) {
+		deleteAnnotationsOfType(SnippetAnnotationEntity, eventId)
+	}
+
+	private void deleteAnnotationsOfType(Class<? extends AnnotationEntity> type, long eventId) {
+		taskDataMap.values().each { TaskData taskData ->
+			taskData.annotations.removeIf { AnnotationEntity annotation ->
+				annotation.eventId == eventId && type.isInstance(annotation)
+			}
+		}
 	}
 
 	private <T> List<T> findAllActivitiesOfType(Class<T> type, long taskId) {
-		activityList.findAll { type.isInstance(it) && it.taskId == taskId }
+		NavigableSet<ActivityEntity> activities = findTaskData(taskId).activitiesByType.get(type)
+		activities != null ? new ArrayList<>(activities) : []
 	}
 
 	private <T> List<T> findAllAnnotationsByType(Class<T> type, long taskId) {
-		annotationList.findAll { type.isInstance(it) && it.taskId == taskId }
+		findTaskData(taskId).annotations.findAll { type.isInstance(it) }
 	}
 
 
 	@Override
 	LocalDateTime getMostRecentActivityEnd(long taskId) {
-		LocalDateTime mostRecentActivity = null
-		activityList.each { ActivityEntity activity ->
-			if ((mostRecentActivity == null) || (mostRecentActivity.isBefore(activity.end))) {
-				mostRecentActivity = activity.end
-			}
+		findTaskData(taskId).mostRecentActivityEnd.get()
+	}
+
+	@Override
+	SortedMap<LocalDateTime, Long> getModificationCountsByWindow(long taskId, Duration window) {
+		SortedMap<LocalDateTime, Long> modificationCounts = new TreeMap<>()
+		findAllActivitiesOfType(ModificationActivityEntity, taskId).each { ModificationActivityEntity activity ->
+			long startSeconds = activity.start.toEpochSecond(ZoneOffset.UTC)
+			long windowStartSeconds = Math.floorDiv(startSeconds, window.seconds) * window.seconds
+			LocalDateTime windowStart = LocalDateTime.ofEpochSecond(windowStartSeconds, 0, ZoneOffset.UTC)
+			modificationCounts[windowStart] = (modificationCounts[windowStart] ?: 0L) + activity.modificationCount
 		}
-		mostRecentActivity
+		modificationCounts
 	}
 
 	@Override
 	public List<EventEntity> getEventList(long taskId) {
-		eventList.findAll { it.taskId == taskId }
+		new ArrayList<>(findTaskData(taskId).events)
 	}
 
 	@Override
@@ -152,81 +236,242 @@ public class IdeaFlowInMemoryPersistenceService implements IdeaFlowPersistenceSe
 
 	@Override
 	public void saveActiveState(IdeaFlowPartialStateEntity activeState, IdeaFlowPartialStateEntity containingState) {
-		this.activeState = activeState
-		this.containingState = containingState
+		Map<IdeaFlowPartialStateScope, IdeaFlowPartialStateEntity> partialStates = getTaskData(activeState.taskId).partialStates
+		activeState.scope = IdeaFlowPartialStateScope.ACTIVE
+		partialStates.put(IdeaFlowPartialStateScope.ACTIVE, activeState)
+		if (containingState != null) {
+			containingState.scope = IdeaFlowPartialStateScope.CONTAINING
+			partialStates.put(IdeaFlowPartialStateScope.CONTAINING, containingState)
+		} else {
+			partialStates.remove(IdeaFlowPartialStateScope.CONTAINING)
+		}
 	}
 
 	@Override
 	public void saveTransition(IdeaFlowStateEntity stateToSave, IdeaFlowPartialStateEntity activeState) {
-		stateToSave.id = ideaFlowStateId++
-		stateList.add(stateToSave)
+		stateToSave.id = ideaFlowStateId.getAndIncrement()
+		getTaskData(stateToSave.taskId).states.add(stateToSave)
 		saveActiveState(activeState)
 	}
 
 	@Override
 	public <T extends ActivityEntity> T saveActivity(T activity) {
-		activity.id = activityId++
-		activityList.add(activity)
+		activity.id = activityId.getAndIncrement()
+		TaskData taskData = getTaskData(activity.taskId)
+		activityMap.put(activity.id, activity)
+		taskData.getActivities(activity.class).add(activity)
+		taskData.activities.add(activity)
+		taskData.mostRecentActivityEnd.accumulateAndGet(activity.end, LATEST)
 		activity
 	}
 
+	@Override
+	public <T extends ActivityEntity> List<T> saveActivities(List<T> activities) {
+		activities.collect { T activity ->
+			saveActivity(activity)
+		}
+	}
+
+	@Override
+	List<ActivityEntity> findEditorAndExternalActivitiesEndingAt(Collection<Long> taskIds, Collection<LocalDateTime> endTimes) {
+		if (endTimes.isEmpty()) {
+			return []
+		}
+
+		Set<LocalDateTime> endTimeSet = new HashSet<>(endTimes)
+		// an activity can't start after it ends, so only activities starting by the latest end time can match
+		ActivityEntity latestStart = IdleActivityEntity.builder().id(Long.MAX_VALUE).start(endTimeSet.max()).build()
+		List<ActivityEntity> activities = []
+		taskIds.each { Long taskId ->
+			TaskData taskData = taskDataMap.get(taskId)
+			[EditorActivityEntity, ExternalActivityEntity].each { Class type ->
+				NavigableSet<ActivityEntity> typedActivities = taskData?.activitiesByType?.get(type)
+				if (typedActivities != null) {
+					activities.addAll(typedActivities.headSet(latestStart, true).findAll { endTimeSet.contains(it.end) })
+				}
+			}
+		}
+		activities
+	}
+
+	@Override
+	void updateActivityEndTimes(Map<Long, LocalDateTime> activityEndTimes) {
+		activityEndTimes.each { Long activityId, LocalDateTime end ->
+			ActivityEntity activity = activityMap.get(activityId)
+			if (activity != null) {
+				synchronized (activity) {
+					if (end.isAfter(activity.end)) {
+						activity.end = end
+					}
+				}
+				getTaskData(activity.taskId).mostRecentActivityEnd.accumulateAndGet(end, LATEST)
+			}
+		}
+	}
+
 	@Override
 	public <T extends AnnotationEntity> T saveAnnotation(T annotation) {
-		annotation.id = annotationId++
-		annotationList.add(annotation)
+		annotation.id = annotationId.getAndIncrement()
+		getTaskData(annotation.taskId).annotations.add(annotation)
 		annotation
 	}
 
+	@Override
+	public <T extends AnnotationEntity> List<T> saveAnnotations(List<T> annotations) {
+		annotations.collect { T annotation ->
+			saveAnnotation(annotation)
+		}
+	}
+
 	@Override
 	public EventEntity saveEvent(EventEntity event) {
-		event.id = eventId++
-		eventList.add(event)
+		event.id = eventId.getAndIncrement()
+		eventMap.put(event.id, event)
+		getTaskData(event.taskId).events.add(event)
+		if (event.ownerId != null) {
+			ownerEventMap.computeIfAbsent(event.ownerId, { new ConcurrentSkipListSet<>(EVENT_ORDER) }).add(event)
+		}
 		event
 	}
 
+	@Override
+	EventEntity updateEventComment(long eventId, String comment) {
+		EventEntity event = eventMap.get(eventId)
+		if (event != null) {
+			event.comment = comment
+		}
+		event
+	}
+
+	@Override
+	public List<EventEntity> saveEvents(List<EventEntity> events) {
+		events.collect { EventEntity event ->
+			saveEvent(event)
+		}
+	}
+
 	@Override
 	TaskEntity saveTask(TaskEntity task) {
-		if (taskList.find { it.name == task.name }) {
-			throw new DataIntegrityViolationException("Duplicate task");
+		TaskEntity existingTask = task.id != null ? taskMap.get(task.id) : null
+		String nameKey = taskNameKey(task.ownerId, task.name)
+		if (existingTask != null && taskNameKey(existingTask.ownerId, existingTask.name) == nameKey) {
+			taskMap.put(task.id, task)
+			taskByOwnerAndNameMap.put(nameKey, task)
+			return task
 		}
 
-		task.id = taskId++
-		taskList.add(task)
+		if (taskByOwnerAndNameMap.putIfAbsent(nameKey, task) != null) {
+			throw new DataIntegrityViolationException("Duplicate task");
+		}
+		if (existingTask != null) {
+			taskByOwnerAndNameMap.remove(taskNameKey(existingTask.ownerId, existingTask.name), existingTask)
+		} else {
+			task.id = taskId.getAndIncrement()
+		}
+		taskMap.put(task.id, task)
 		task
 	}
 
 	@Override
 	void deleteTask(TaskEntity task) {
-		taskList.remove(task)
+		TaskEntity existingTask = taskMap.remove(task.id)
+		if (existingTask != null) {
+			taskByOwnerAndNameMap.remove(taskNameKey(existingTask.ownerId, existingTask.name), existingTask)
+		}
+
+		TaskData taskData = taskDataMap.remove(task.id)
+		if (taskData != null) {
+			taskData.activities.each { ActivityEntity activity ->
+				activityMap.remove(activity.id)
+			}
+			taskData.events.each { EventEntity event ->
+				eventMap.remove(event.id)
+				ownerEventMap.get(event.ownerId)?.remove(event)
+			}
+		}
+	}
+
+	@Override
+	void updateTaskModifyDates(Map<Long, LocalDateTime> taskModifyDates) {
+		taskModifyDates.each { Long taskId, LocalDateTime modifyDate ->
+			TaskEntity task = findTaskWithId(taskId)
+			if (task != null) {
+				synchronized (task) {
+					if (task.modifyDate == null || modifyDate.isAfter(task.modifyDate)) {
+						task.modifyDate = modifyDate
+					}
+				}
+			}
+		}
 	}
 
 	@Override
 	TaskEntity findTaskWithId(long taskId) {
-		taskList.find {
-			it.id == taskId
+		taskMap.get(taskId)
+	}
+
+	@Override
+	Map<Long, Long> findTaskOwnerIds(Collection<Long> taskIds) {
+		Map<Long, Long> taskOwnerIds = [:]
+		taskIds.each { Long taskId ->
+			TaskEntity task = taskMap.get(taskId)
+			if (task != null) {
+				taskOwnerIds[taskId] = task.ownerId
+			}
 		}
+		taskOwnerIds
 	}
 
 	@Override
 	TaskEntity findTaskWithName(Long userId, String taskName) {
-		taskList.find {
-			it.name == taskName
-		}
+		taskByOwnerAndNameMap.get(taskNameKey(userId, taskName))
+	}
+
+	@Override
+	Page<TaskEntity> findRecentTasks(Long ownerId, String projectLike, Pageable pageable) {
+		TaskListing.toPage(TaskListing.findRecent(taskMap.values(), ownerId, projectLike, { true }), pageable)
+	}
+
+	@Override
+	List<TaskEntity> findRecentTasksAfter(Long ownerId, String projectLike, TaskCursor cursor, int limit) {
+		TaskListing.after(TaskListing.findRecent(taskMap.values(), ownerId, projectLike, { true }), cursor, limit)
+	}
+
+	@Override
+	int countTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags) {
+		findTasksMatchingTags(ownerId, projectLike, normalizedTags).size()
+	}
+
+	@Override
+	List<TaskEntity> findTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags, int limit, int offset) {
+		TaskListing.slice(findTasksMatchingTags(ownerId, projectLike, normalizedTags), limit, offset)
+	}
+
+	@Override
+	List<TaskEntity> findTasksMatchingTagsAfter(long ownerId, String projectLike, Collection<String> normalizedTags,
+	                                            TaskCursor cursor, int limit) {
+		TaskListing.after(findTasksMatchingTags(ownerId, projectLike, normalizedTags), cursor, limit)
+	}
+
+	private List<TaskEntity> findTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags) {
+		TaskListing.findRecent(taskMap.values(), ownerId, projectLike, { TaskEntity task ->
+			findTaskData(task.id).events.any { EventEntity event -> TaskListing.hasAnyTag(event.comment, normalizedTags) } ||
+					getFaqAnnotationList(task.id).any { FaqAnnotationEntity faq -> TaskListing.hasAnyTag(faq.comment, normalizedTags) }
+		})
 	}
 
 	@Override
 	List<EventEntity> findRecentEvents(Long userId, Timestamp afterDate, Integer limit) {
-		List<EventEntity> eventList = eventList.findAll() { EventEntity event ->
-			event.position.equals(TimeConverter.toLocalDateTime(afterDate)) ||
-					event.position.isAfter(TimeConverter.toLocalDateTime(afterDate))
-		}.sort {
-			eventList.position
-		}
-		if (eventList.size() > limit) {
-			eventList = eventList.subList(0, limit)
+		NavigableSet<EventEntity> ownerEvents = ownerEventMap.get(userId)
+		if (ownerEvents == null) {
+			return []
 		}
-		return eventList
-	}
 
+		EventEntity earliestPosition = EventEntity.builder()
+				.id(Long.MIN_VALUE)
+				.position(TimeConverter.toLocalDateTime(afterDate))
+				.build()
+		ownerEvents.tailSet(earliestPosition, true).take(limit).toList()
+	}
 
 }
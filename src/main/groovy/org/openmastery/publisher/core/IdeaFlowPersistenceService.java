@@ -22,13 +22,18 @@ import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity;
 import org.openmastery.publisher.core.event.EventEntity;
 import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity;
 import org.openmastery.publisher.ideaflow.IdeaFlowStateEntity;
+import org.openmastery.publisher.core.task.TaskCursor;
 import org.openmastery.publisher.core.task.TaskEntity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 public interface IdeaFlowPersistenceService {
 
@@ -54,8 +59,16 @@ public interface IdeaFlowPersistenceService {
 
 	List<EventEntity> getEventList(long taskId);
 
+	List<AnnotationEntity> getAnnotationList(long taskId);
+
 	LocalDateTime getMostRecentActivityEnd(long taskId);
 
+	/**
+	 * @return the sum of modification counts of the task's modification activities, grouped into windows of the given
+	 * duration by activity start and keyed by window start
+	 */
+	SortedMap<LocalDateTime, Long> getModificationCountsByWindow(long taskId, Duration window);
+
 	void saveActiveState(IdeaFlowPartialStateEntity activeState);
 
 	void saveActiveState(IdeaFlowPartialStateEntity activeState, IdeaFlowPartialStateEntity containingState);
@@ -65,18 +78,75 @@ public interface IdeaFlowPersistenceService {
 
 	<T extends ActivityEntity> T saveActivity(T activity);
 
+	<T extends ActivityEntity> List<T> saveActivities(List<T> activities);
+
+	/**
+	 * @return the editor and external activities of the given tasks which end at any of the given times
+	 */
+	List<ActivityEntity> findEditorAndExternalActivitiesEndingAt(Collection<Long> taskIds, Collection<LocalDateTime> endTimes);
+
+	/**
+	 * Moves the end time of each activity forward to the given time; an end time is never moved backwards.
+	 */
+	void updateActivityEndTimes(Map<Long, LocalDateTime> activityEndTimes);
+
 	EventEntity saveEvent(EventEntity event);
 
+	List<EventEntity> saveEvents(List<EventEntity> events);
+
+	/**
+	 * @return the updated event, or null if there is no event with the id
+	 */
+	EventEntity updateEventComment(long eventId, String comment);
+
 	TaskEntity saveTask(TaskEntity task);
 
+	/**
+	 * The task and every entity referring to it are no longer returned once this returns; an implementation may
+	 * remove the data itself later, in the background.
+	 */
 	void deleteTask(TaskEntity task);
 
+	/**
+	 * Moves the modify date of each task forward to the given date; a modify date is never moved backwards.
+	 */
+	void updateTaskModifyDates(Map<Long, LocalDateTime> taskModifyDates);
+
 	<T extends AnnotationEntity> T saveAnnotation(T annotation);
 
+	<T extends AnnotationEntity> List<T> saveAnnotations(List<T> annotations);
+
 	TaskEntity findTaskWithId(long taskId);
 
+	/**
+	 * @return the owner id of each task in taskIds, keyed by task id; tasks which do not exist are absent
+	 */
+	Map<Long, Long> findTaskOwnerIds(Collection<Long> taskIds);
+
 	TaskEntity findTaskWithName(Long userId, String taskName);
 
+	/**
+	 * Task listings, each returns tasks whose project is like projectLike ordered by modify date, falling back to
+	 * the creation date, then id, most recent first.  A null ownerId lists the tasks of all owners.
+	 */
+	Page<TaskEntity> findRecentTasks(Long ownerId, String projectLike, Pageable pageable);
+
+	/**
+	 * @return up to limit tasks strictly after the cursor
+	 */
+	List<TaskEntity> findRecentTasksAfter(Long ownerId, String projectLike, TaskCursor cursor, int limit);
+
+	/**
+	 * @param normalizedTags lower cased tags prefixed with #, matched against the hashtags of the task's event and
+	 * faq comments
+	 */
+	int countTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags);
+
+	List<TaskEntity> findTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags, int limit, int offset);
+
+	List<TaskEntity> findTasksMatchingTagsAfter(long ownerId, String projectLike, Collection<String> normalizedTags,
+	                                            TaskCursor cursor, int limit);
+
 	List<EventEntity> findRecentEvents(Long userId, Timestamp afterDate, Integer limit);
 
 	List<FaqAnnotationEntity> getFaqAnnotationList(long taskId);
@@ -87,4 +157,6 @@ public interface IdeaFlowPersistenceService {
 	EventEntity findEventById(long eventId);
 
 	void deleteFAQAnnotation(long eventId);
+
+	void deleteSnippetAnnotation(long eventId);
 }
@@ -15,33 +15,78 @@
  */
 package org.openmastery.publisher.core;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hibernate.Session;
 import org.openmastery.publisher.core.activity.*;
 import org.openmastery.publisher.core.annotation.AnnotationEntity;
 import org.openmastery.publisher.core.annotation.AnnotationRespository;
 import org.openmastery.publisher.core.annotation.FaqAnnotationEntity;
 import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity;
+import org.openmastery.publisher.core.archive.TaskArchive;
+import org.openmastery.publisher.core.archive.TaskArchiveCodec;
+import org.openmastery.publisher.core.archive.TaskArchiveEntity;
+import org.openmastery.publisher.core.archive.TaskArchiveRepository;
 import org.openmastery.publisher.core.event.EventEntity;
 import org.openmastery.publisher.core.event.EventRepository;
+import org.openmastery.publisher.core.tag.EntityTagIndex;
 import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity;
 import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateRepository;
 import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateScope;
 import org.openmastery.publisher.ideaflow.IdeaFlowStateEntity;
 import org.openmastery.publisher.ideaflow.IdeaFlowStateRepository;
+import org.openmastery.publisher.core.task.TaskCursor;
 import org.openmastery.publisher.core.task.TaskEntity;
 import org.openmastery.publisher.core.task.TaskRepository;
+import org.openmastery.time.TimeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.DiscriminatorValue;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.transaction.Transactional;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Transactional
 public class IdeaFlowRelationalPersistenceService implements IdeaFlowPersistenceService {
 
+	private static final Comparator<ActivityEntity> ACTIVITY_ORDER = Comparator
+			.comparing(ActivityEntity::getStart)
+			.thenComparing(ActivityEntity::getId);
+	private static final Comparator<EventEntity> EVENT_ORDER = Comparator
+			.comparing(EventEntity::getPosition)
+			.thenComparing(EventEntity::getId);
+
 	@Autowired
 	private IdeaFlowStateRepository ideaFlowStateRepository;
 	@Autowired
@@ -54,8 +99,63 @@ public class IdeaFlowRelationalPersistenceService implements IdeaFlowPersistence
 	private TaskRepository taskRepository;
 	@Autowired
 	private AnnotationRespository annotationRespository;
+	@Autowired
+	private TaskArchiveRepository taskArchiveRepository;
+	@Autowired
+	private EntityTagIndex entityTagIndex;
+	@Autowired
+	private TimeService timeService;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	private int jdbcBatchSize;
+	@Value("${org.ideaflow.taskOwnerCacheSize:10000}")
+	private long taskOwnerCacheSize;
+
+	// task id -> owner id, consulted on every batch upload to verify ownership without a round trip
+	private Cache<Long, Long> taskOwnerCache;
+
+	private TaskArchiveCodec taskArchiveCodec = new TaskArchiveCodec();
+	// key of the transaction resource holding the archives decoded in the current transaction
+	private final Object decodedArchivesKey = new Object();
+
+	@PostConstruct
+	private void initTaskOwnerCache() {
+		taskOwnerCache = CacheBuilder.newBuilder()
+				.maximumSize(taskOwnerCacheSize)
+				.build();
+	}
+
+	/**
+	 * Evicting before the commit would let a concurrent reader cache the owner from before the commit again.
+	 */
+	private void invalidateTaskOwnerAfterCommit(long taskId) {
+		if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+			taskOwnerCache.invalidate(taskId);
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				taskOwnerCache.invalidate(taskId);
+			}
+		});
+	}
+
+	/**
+	 * A deleted task keeps its rows until TaskPurgeService removes them, reads for the task must not return them.
+	 */
+	private boolean isDeleted(long taskId) {
+		return taskRepository.isDeleted(taskId);
+	}
 
 	private IdeaFlowPartialStateEntity getPartialState(long taskId, IdeaFlowPartialStateScope scope) {
+		if (isDeleted(taskId)) {
+			return null;
+		}
+
 		IdeaFlowPartialStateEntity.PrimaryKey pk = IdeaFlowPartialStateEntity.PrimaryKey.builder()
 				.taskId(taskId)
 				.scope(scope)
@@ -75,73 +175,162 @@ public class IdeaFlowRelationalPersistenceService implements IdeaFlowPersistence
 
 	@Override
 	public List<IdeaFlowStateEntity> getStateList(long taskId) {
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
 		return ideaFlowStateRepository.findByTaskId(taskId);
 	}
 
 	@Override
 	public List<ActivityEntity> getActivityList(long taskId) {
-		return activityRepository.findByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, ActivityEntity.class, activityRepository.findByTaskId(taskId));
 	}
 
 	@Override
 	public List<IdleActivityEntity> getIdleActivityList(long taskId) {
-		return activityRepository.findIdleActivityByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, IdleActivityEntity.class, activityRepository.findIdleActivityByTaskId(taskId));
 	}
 
 	@Override
 	public List<ExternalActivityEntity> getExternalActivityList(long taskId) {
-		return activityRepository.findExternalActivityByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, ExternalActivityEntity.class, activityRepository.findExternalActivityByTaskId(taskId));
 	}
 
 	@Override
 	public List<EventEntity> getEventList(long taskId) {
-		return eventRepository.findByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedEvents(taskId, eventRepository.findByTaskId(taskId));
 	}
 
 	@Override
 	public List<EditorActivityEntity> getEditorActivityList(long taskId) {
-		return activityRepository.findEditorActivityByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, EditorActivityEntity.class, activityRepository.findEditorActivityByTaskId(taskId));
 	}
 
 	@Override
 	public List<ModificationActivityEntity> getModificationActivityList(long taskId) {
-		return activityRepository.findModificationActivityByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, ModificationActivityEntity.class, activityRepository.findModificationActivityByTaskId(taskId));
 	}
 
 	@Override
 	public List<ExecutionActivityEntity> getExecutionActivityList(long taskId) {
-		return activityRepository.findExecutionActivityByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, ExecutionActivityEntity.class, activityRepository.findExecutionActivityByTaskId(taskId));
 	}
 
 	@Override
 	public List<BlockActivityEntity> getBlockActivityList(long taskId) {
-		return activityRepository.findBlockActivityByTaskId(taskId);
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return addArchivedActivities(taskId, BlockActivityEntity.class, activityRepository.findBlockActivityByTaskId(taskId));
+	}
+
+	@Override
+	public List<AnnotationEntity> getAnnotationList(long taskId) {
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
+		return annotationRespository.findByTaskId(taskId);
 	}
 
 	@Override
 	public List<FaqAnnotationEntity> getFaqAnnotationList(long taskId) {
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
 		return annotationRespository.findFaqAnnotationsByTaskId(taskId);
 	}
 
 	@Override
 	public List<SnippetAnnotationEntity> getSnippetAnnotationList(long taskId) {
+		if (isDeleted(taskId)) {
+			return new ArrayList<>();
+		}
 		return annotationRespository.findSnippetsByTaskId(taskId);
 	}
 
 	@Override
 	public EventEntity findEventById(long eventId) {
-		return eventRepository.findOne(eventId);
+		EventEntity event = eventRepository.findOne(eventId);
+		if (event == null) {
+			event = findArchivedEventById(eventId);
+		} else if (isDeleted(event.getTaskId())) {
+			event = null;
+		}
+		return event;
 	}
 
 	@Override
 	public void deleteFAQAnnotation(long eventId) {
 		annotationRespository.deleteByEventAndType(eventId, "faq");
+		entityTagIndex.deleteFaqTags(eventId);
+	}
+
+	@Override
+	public void deleteSnippetAnnotation(long eventId) {
+		annotationRespository.deleteByEventAndType(eventId, "snippet");
 	}
 
 	@Override
 	public LocalDateTime getMostRecentActivityEnd(long taskId) {
+		if (isDeleted(taskId)) {
+			return null;
+		}
 		ActivityEntity activity = activityRepository.findMostRecentActivityForTask(taskId);
-		return activity != null ? activity.getEnd() : null;
+		LocalDateTime mostRecentActivityEnd = activity != null ? activity.getEnd() : null;
+
+		TaskArchive archive = findTaskArchive(taskId);
+		if (archive != null) {
+			for (ActivityEntity archivedActivity : archive.getActivities()) {
+				if (mostRecentActivityEnd == null || archivedActivity.getEnd().isAfter(mostRecentActivityEnd)) {
+					mostRecentActivityEnd = archivedActivity.getEnd();
+				}
+			}
+		}
+		return mostRecentActivityEnd;
+	}
+
+	@Override
+	public SortedMap<LocalDateTime, Long> getModificationCountsByWindow(long taskId, Duration window) {
+		SortedMap<LocalDateTime, Long> modificationCounts = new TreeMap<>();
+		if (isDeleted(taskId)) {
+			return modificationCounts;
+		}
+		for (Object[] row : activityRepository.sumModificationCountByWindow(taskId, window.getSeconds())) {
+			modificationCounts.put(((Timestamp) row[0]).toLocalDateTime(), ((Number) row[1]).longValue());
+		}
+
+		TaskArchive archive = findTaskArchive(taskId);
+		if (archive != null) {
+			long windowSeconds = window.getSeconds();
+			for (ModificationActivityEntity activity : archive.getActivities(ModificationActivityEntity.class)) {
+				long startSecond = activity.getStart().toEpochSecond(ZoneOffset.UTC);
+				LocalDateTime windowStart = LocalDateTime.ofEpochSecond(Math.floorDiv(startSecond, windowSeconds) * windowSeconds,
+						0, ZoneOffset.UTC);
+				modificationCounts.merge(windowStart, (long) activity.getModificationCount(), Long::sum);
+			}
+		}
+		return modificationCounts;
 	}
 
 	@Override
@@ -169,45 +358,390 @@ public class IdeaFlowRelationalPersistenceService implements IdeaFlowPersistence
 
 	@Override
 	public <T extends ActivityEntity> T saveActivity(T activity) {
+		restoreArchivedTasks(Collections.singleton(activity.getTaskId()));
 		return activityRepository.save(activity);
 	}
 
+	@Override
+	public <T extends ActivityEntity> List<T> saveActivities(List<T> activities) {
+		restoreArchivedTasks(activities.stream().map(ActivityEntity::getTaskId).collect(Collectors.toSet()));
+		return saveInBatches(activities, activityRepository::save);
+	}
+
+
+	@Override
+	public List<ActivityEntity> findEditorAndExternalActivitiesEndingAt(Collection<Long> taskIds, Collection<LocalDateTime> endTimes) {
+		if (taskIds.isEmpty() || endTimes.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		// the activities found are updated, so they must be rows rather than archive entries
+		restoreArchivedTasks(taskIds);
+		List<Timestamp> endTimestamps = new ArrayList<>(endTimes.size());
+		for (LocalDateTime endTime : endTimes) {
+			endTimestamps.add(Timestamp.valueOf(endTime));
+		}
+		return activityRepository.findEditorAndExternalActivitiesEndingAt(taskIds, endTimestamps);
+	}
+
+	@Override
+	public void updateActivityEndTimes(Map<Long, LocalDateTime> activityEndTimes) {
+		moveTimestampsForward("activity", "end_time", activityEndTimes);
+	}
 
 	@Override
 	public <T extends AnnotationEntity> T saveAnnotation(T annotation) {
-		return annotationRespository.save(annotation);
+		restoreArchivedTasks(Collections.singleton(annotation.getTaskId()));
+		T savedAnnotation = annotationRespository.save(annotation);
+		indexFaqTags(Collections.singletonList(savedAnnotation));
+		return savedAnnotation;
+	}
+
+	@Override
+	public <T extends AnnotationEntity> List<T> saveAnnotations(List<T> annotations) {
+		restoreArchivedTasks(annotations.stream().map(AnnotationEntity::getTaskId).collect(Collectors.toSet()));
+		List<T> savedAnnotations = saveInBatches(annotations, annotationRespository::save);
+		indexFaqTags(savedAnnotations);
+		return savedAnnotations;
+	}
+
+	private void indexFaqTags(List<? extends AnnotationEntity> annotations) {
+		List<FaqAnnotationEntity> faqs = annotations.stream()
+				.filter(annotation -> annotation instanceof FaqAnnotationEntity)
+				.map(annotation -> (FaqAnnotationEntity) annotation)
+				.collect(Collectors.toList());
+		if (faqs.isEmpty() == false) {
+			entityTagIndex.indexFaqs(faqs);
+		}
 	}
 
 	@Override
 	public EventEntity saveEvent(EventEntity event) {
-		return eventRepository.save(event);
+		restoreArchivedTasks(Collections.singleton(event.getTaskId()));
+		EventEntity savedEvent = eventRepository.save(event);
+		entityTagIndex.indexEvents(Collections.singletonList(savedEvent));
+		return savedEvent;
+	}
+
+	@Override
+	public EventEntity updateEventComment(long eventId, String comment) {
+		EventEntity event = findEventById(eventId);
+		if (event == null) {
+			return null;
+		}
+		event.setComment(comment);
+		return saveEvent(event);
+	}
+
+	@Override
+	public List<EventEntity> saveEvents(List<EventEntity> events) {
+		restoreArchivedTasks(events.stream().map(EventEntity::getTaskId).collect(Collectors.toSet()));
+		List<EventEntity> savedEvents = saveInBatches(events, eventRepository::save);
+		entityTagIndex.indexEvents(savedEvents);
+		return savedEvents;
+	}
+
+	/**
+	 * Flushes and clears the persistence context every jdbcBatchSize entities so hibernate writes each chunk as a
+	 * single JDBC batch and the session doesn't grow unbounded for large IFM batches.
+	 */
+	private <T> List<T> saveInBatches(List<T> entities, Function<T, T> saveFunction) {
+		List<T> savedEntities = new ArrayList<>(entities.size());
+		for (T entity : entities) {
+			savedEntities.add(saveFunction.apply(entity));
+			if (savedEntities.size() % jdbcBatchSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+		return savedEntities;
 	}
 
 	@Override
 	public TaskEntity saveTask(TaskEntity task) {
-		return taskRepository.save(task);
+		TaskEntity savedTask = taskRepository.save(task);
+		invalidateTaskOwnerAfterCommit(savedTask.getId());
+		return savedTask;
 	}
 
 	@Override
 	public void deleteTask(TaskEntity task) {
-		taskRepository.delete(task);
+		// deleting the rows of a long task in one transaction would lock and bloat every table, only mark it here
+		taskRepository.markDeleted(task.getId(), Timestamp.valueOf(timeService.now()));
+		invalidateTaskOwnerAfterCommit(task.getId());
 	}
 
 
 
+	@Override
+	public void updateTaskModifyDates(Map<Long, LocalDateTime> taskModifyDates) {
+		moveTimestampsForward("task", "modify_date", taskModifyDates);
+	}
+
+	/**
+	 * Updates the column of every row in a single statement, never moving a timestamp backwards.
+	 */
+	private void moveTimestampsForward(String table, String column, Map<Long, LocalDateTime> timestampsById) {
+		if (timestampsById.isEmpty()) {
+			return;
+		}
+
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < timestampsById.size(); i++) {
+			values.append(i == 0 ? "" : ", ").append("(?, cast(? as timestamp))");
+		}
+		Query query = entityManager.createNativeQuery("update " + table + " set " + column + " = " +
+				"greatest(" + table + "." + column + ", v.value) " +
+				"from (values " + values + ") as v(id, value) where " + table + ".id = v.id");
+
+		int position = 1;
+		for (Map.Entry<Long, LocalDateTime> entry : timestampsById.entrySet()) {
+			query.setParameter(position++, entry.getKey());
+			query.setParameter(position++, Timestamp.valueOf(entry.getValue()));
+		}
+		query.executeUpdate();
+	}
+
 	@Override
 	public TaskEntity findTaskWithId(long taskId) {
 		return taskRepository.findOne(taskId);
 	}
 
+	@Override
+	public Map<Long, Long> findTaskOwnerIds(Collection<Long> taskIds) {
+		Map<Long, Long> taskOwnerIds = new HashMap<>();
+		Set<Long> uncachedTaskIds = new HashSet<>();
+		for (Long taskId : taskIds) {
+			Long ownerId = taskOwnerCache.getIfPresent(taskId);
+			if (ownerId != null) {
+				taskOwnerIds.put(taskId, ownerId);
+			} else {
+				uncachedTaskIds.add(taskId);
+			}
+		}
+
+		if (uncachedTaskIds.isEmpty() == false) {
+			for (Object[] row : taskRepository.findIdAndOwnerIdWithIds(uncachedTaskIds)) {
+				Long taskId = ((Number) row[0]).longValue();
+				Long ownerId = ((Number) row[1]).longValue();
+				taskOwnerCache.put(taskId, ownerId);
+				taskOwnerIds.put(taskId, ownerId);
+			}
+		}
+		return taskOwnerIds;
+	}
+
 	@Override
 	public TaskEntity findTaskWithName(Long userId, String taskName) {
 		return taskRepository.findByOwnerIdAndName(userId, taskName);
 	}
 
+	@Override
+	public Page<TaskEntity> findRecentTasks(Long ownerId, String projectLike, Pageable pageable) {
+		if (ownerId == null) {
+			return taskRepository.findByProjectLike(projectLike, pageable);
+		}
+		return taskRepository.findByOwnerIdAndProjectLike(ownerId, projectLike, pageable);
+	}
+
+	@Override
+	public List<TaskEntity> findRecentTasksAfter(Long ownerId, String projectLike, TaskCursor cursor, int limit) {
+		if (ownerId == null) {
+			return taskRepository.findByProjectLikeAfter(projectLike, cursor.getModifyDateAsTimestamp(), cursor.getId(), limit);
+		}
+		return taskRepository.findByOwnerIdAndProjectLikeAfter(ownerId, projectLike, cursor.getModifyDateAsTimestamp(),
+				cursor.getId(), limit);
+	}
+
+	@Override
+	public int countTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags) {
+		return taskRepository.countTasksMatchingTags(ownerId, projectLike, normalizedTags);
+	}
+
+	@Override
+	public List<TaskEntity> findTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags,
+	                                              int limit, int offset) {
+		return taskRepository.findByOwnerIdAndMatchingTags(ownerId, projectLike, normalizedTags, limit, offset);
+	}
+
+	@Override
+	public List<TaskEntity> findTasksMatchingTagsAfter(long ownerId, String projectLike, Collection<String> normalizedTags,
+	                                                   TaskCursor cursor, int limit) {
+		return taskRepository.findByOwnerIdAndMatchingTagsAfter(ownerId, projectLike, normalizedTags,
+				cursor.getModifyDateAsTimestamp(), cursor.getId(), limit);
+	}
+
 	@Override
 	public List<EventEntity> findRecentEvents(Long userId, Timestamp afterDate, Integer limit) {
-		return eventRepository.findRecentEvents(userId, afterDate, limit);
+		List<EventEntity> events = eventRepository.findRecentEvents(userId, afterDate, limit);
+
+		List<TaskArchiveEntity> archives = taskArchiveRepository.findByOwnerIdWithEventsAfter(userId, afterDate);
+		if (archives.isEmpty()) {
+			return events;
+		}
+		List<EventEntity> mergedEvents = new ArrayList<>(events);
+		for (TaskArchiveEntity archive : archives) {
+			for (EventEntity event : decode(archive).getEvents()) {
+				if (userId.equals(event.getOwnerId()) && event.getPosition().isBefore(afterDate.toLocalDateTime()) == false) {
+					mergedEvents.add(event);
+				}
+			}
+		}
+		mergedEvents.sort(EVENT_ORDER);
+		return mergedEvents.size() > limit ? new ArrayList<>(mergedEvents.subList(0, limit)) : mergedEvents;
+	}
+
+	private TaskArchive decode(TaskArchiveEntity archive) {
+		return taskArchiveCodec.decode(archive.getTaskId(), archive.getData());
+	}
+
+	/**
+	 * Archives are decoded once per transaction, so reading a task snapshot (activities, then events) within one
+	 * transaction decodes the archive of the task once rather than for each list.
+	 *
+	 * @return the rows of the task compacted into an archive, or null if the task has not been compacted
+	 */
+	private TaskArchive findTaskArchive(long taskId) {
+		Map<Long, Optional<TaskArchive>> decodedArchives = getDecodedArchives();
+		if (decodedArchives == null) {
+			return loadTaskArchive(taskId);
+		}
+		return decodedArchives.computeIfAbsent(taskId, id -> Optional.ofNullable(loadTaskArchive(id))).orElse(null);
+	}
+
+	private TaskArchive loadTaskArchive(long taskId) {
+		TaskArchiveEntity archive = taskArchiveRepository.findByTaskId(taskId);
+		return archive != null ? decode(archive) : null;
+	}
+
+	/**
+	 * @return the archives decoded in the current transaction by task id, or null if there is no transaction
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Long, Optional<TaskArchive>> getDecodedArchives() {
+		if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+			return null;
+		}
+
+		Map<Long, Optional<TaskArchive>> decodedArchives =
+				(Map<Long, Optional<TaskArchive>>) TransactionSynchronizationManager.getResource(decodedArchivesKey);
+		if (decodedArchives == null) {
+			decodedArchives = new HashMap<>();
+			TransactionSynchronizationManager.bindResource(decodedArchivesKey, decodedArchives);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(decodedArchivesKey);
+				}
+			});
+		}
+		return decodedArchives;
+	}
+
+	private <T extends ActivityEntity> List<T> addArchivedActivities(long taskId, Class<T> type, List<T> activities) {
+		TaskArchive archive = findTaskArchive(taskId);
+		if (archive == null) {
+			return activities;
+		}
+
+		// rows written while the task was being compacted are not in the archive
+		List<T> mergedActivities = archive.getActivities(type);
+		mergedActivities.addAll(activities);
+		mergedActivities.sort(ACTIVITY_ORDER);
+		return mergedActivities;
+	}
+
+	private List<EventEntity> addArchivedEvents(long taskId, List<EventEntity> events) {
+		TaskArchive archive = findTaskArchive(taskId);
+		if (archive == null) {
+			return events;
+		}
+
+		List<EventEntity> mergedEvents = new ArrayList<>(archive.getEvents());
+		mergedEvents.addAll(events);
+		mergedEvents.sort(EVENT_ORDER);
+		return mergedEvents;
+	}
+
+	private EventEntity findArchivedEventById(long eventId) {
+		for (TaskArchiveEntity archive : taskArchiveRepository.findByEventIdInRange(eventId)) {
+			for (EventEntity event : decode(archive).getEvents()) {
+				if (event.getId() == eventId) {
+					return event;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Moves the archived rows of any compacted task back into the activity and event tables before new rows are
+	 * written for it, so a task with new data is read from rows again and only re-compacted once it goes cold.
+	 */
+	private void restoreArchivedTasks(Collection<Long> taskIds) {
+		if (taskIds.isEmpty()) {
+			return;
+		}
+
+		Map<Long, Optional<TaskArchive>> decodedArchives = getDecodedArchives();
+		for (Number taskId : taskArchiveRepository.findTaskIdsWithIds(taskIds)) {
+			entityManager.unwrap(Session.class).doWork(connection -> restoreArchivedTask(connection, taskId.longValue()));
+			if (decodedArchives != null) {
+				decodedArchives.remove(taskId.longValue());
+			}
+		}
+	}
+
+	private void restoreArchivedTask(Connection connection, long taskId) throws SQLException {
+		byte[] data;
+		// deleting first serializes concurrent restores of the same task, the later one finds nothing to restore
+		try (PreparedStatement delete = connection.prepareStatement("delete from task_archive where task_id = ? returning data")) {
+			delete.setLong(1, taskId);
+			try (ResultSet resultSet = delete.executeQuery()) {
+				if (resultSet.next() == false) {
+					return;
+				}
+				data = resultSet.getBytes(1);
+			}
+		}
+
+		TaskArchive archive = taskArchiveCodec.decode(taskId, data);
+		try (PreparedStatement insert = connection.prepareStatement("insert into activity " +
+				"(id, type, task_id, owner_id, start_time, end_time, metadata) values (?, ?, ?, ?, ?, ?, ?::jsonb)")) {
+			int batchCount = 0;
+			for (ActivityEntity activity : archive.getActivities()) {
+				insert.setLong(1, activity.getId());
+				insert.setString(2, activity.getClass().getAnnotation(DiscriminatorValue.class).value());
+				insert.setLong(3, activity.getTaskId());
+				insert.setLong(4, activity.getOwnerId());
+				insert.setTimestamp(5, Timestamp.valueOf(activity.getStart()));
+				insert.setTimestamp(6, Timestamp.valueOf(activity.getEnd()));
+				insert.setString(7, activity.getMetadata());
+				insert.addBatch();
+				if (++batchCount % jdbcBatchSize == 0) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+		}
+
+		try (PreparedStatement insert = connection.prepareStatement("insert into event " +
+				"(id, task_id, owner_id, position, comment, type) values (?, ?, ?, ?, ?, ?)")) {
+			int batchCount = 0;
+			for (EventEntity event : archive.getEvents()) {
+				insert.setLong(1, event.getId());
+				insert.setLong(2, event.getTaskId());
+				insert.setLong(3, event.getOwnerId());
+				insert.setTimestamp(4, Timestamp.valueOf(event.getPosition()));
+				insert.setString(5, event.getComment());
+				insert.setString(6, event.getType() != null ? event.getType().name() : null);
+				insert.addBatch();
+				if (++batchCount % jdbcBatchSize == 0) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+		}
 	}
 
 }
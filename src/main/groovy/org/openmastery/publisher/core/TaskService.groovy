@@ -22,8 +22,8 @@ import org.openmastery.publisher.api.PagedResult
 import org.openmastery.publisher.api.task.NewTask
 import org.openmastery.publisher.api.task.Task
 import org.openmastery.publisher.api.task.TaskPatch
+import org.openmastery.publisher.core.task.TaskCursor
 import org.openmastery.publisher.core.task.TaskEntity
-import org.openmastery.publisher.core.task.TaskRepository
 import org.openmastery.publisher.security.InvocationContext
 import org.openmastery.storyweb.core.SearchUtils
 import org.openmastery.time.TimeService
@@ -31,17 +31,13 @@ import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.dao.DataIntegrityViolationException
 import org.springframework.data.domain.Page
 import org.springframework.data.domain.PageRequest
-import org.springframework.data.domain.Sort
 import org.springframework.stereotype.Component
 
 @Component
 class TaskService {
 
-	//@Autowired
-	//private IdeaFlowPersistenceService persistenceService;
-
 	@Autowired
-	private TaskRepository taskRepository;
+	private IdeaFlowPersistenceService persistenceService;
 
 	@Autowired
 	private TimeService timeService;
@@ -62,15 +58,15 @@ class TaskService {
 				.modifyDate(timeService.now())
 				.build();
 
-		TaskEntity existingTask = taskRepository.findByOwnerIdAndName(userId, task.getName());
+		TaskEntity existingTask = persistenceService.findTaskWithName(userId, task.getName());
 		if (existingTask != null) {
 			throw new ConflictException(toApiTask(existingTask));
 		}
 
 		try {
-			task = taskRepository.save(task);
+			task = persistenceService.saveTask(task);
 		} catch (DataIntegrityViolationException ex) {
-			existingTask = taskRepository.findByOwnerIdAndName(userId, task.getName());
+			existingTask = persistenceService.findTaskWithName(userId, task.getName());
 			throw new ConflictingTaskException(toApiTask(existingTask));
 		}
 
@@ -79,30 +75,27 @@ class TaskService {
 	}
 
 	public Task findTaskWithId(Long taskId) {
-		TaskEntity taskEntity = taskRepository.findOne(taskId);
-		if (taskEntity == null) {
-			throw new NotFoundException("No task found with id=${taskId}");
-		}
-		return toApiTask(taskEntity);
+		return toApiTask(findTaskEntityWithId(taskId));
 	}
 
 	public Task findTaskWithName(String taskName) {
-		TaskEntity taskEntity = taskRepository.findByOwnerIdAndName(invocationContext.getUserId(), taskName);
+		TaskEntity taskEntity = persistenceService.findTaskWithName(invocationContext.getUserId(), taskName);
 		return toApiTask(taskEntity);
 	}
 
 
 	public PagedResult<Task> findRecentTasksMatchingTags(Long userId, String optionalProject, List<String> tags, int pageNumber, int elementsPerPage) {
-		String tagPattern = SearchUtils.createSearchPattern(tags)
+		List<String> normalizedTags = SearchUtils.normalizeTags(tags)
 		String projectLikeClause = generateProjectLikeClause(optionalProject)
 		//Long userId = invocationContext.getUserId()
 
-		int recordCount = taskRepository.countTasksMatchingTags(userId, projectLikeClause, tagPattern)
+		int recordCount = persistenceService.countTasksMatchingTags(userId, projectLikeClause, normalizedTags)
 
 		if (recordCount > 0) {
 			PagedResult<Task> pagedResult = createPagedResult(recordCount, pageNumber, elementsPerPage)
-			List<TaskEntity> taskEntity = taskRepository.findByOwnerIdAndMatchingTags(userId, projectLikeClause, tagPattern, elementsPerPage, pageNumber * elementsPerPage);
+			List<TaskEntity> taskEntity = persistenceService.findTasksMatchingTags(userId, projectLikeClause, normalizedTags, elementsPerPage, pageNumber * elementsPerPage);
 			pagedResult.contents = entityMapper.mapList(taskEntity, Task.class)
+			pagedResult.nextCursor = pagedResult.hasNext ? toNextCursor(taskEntity) : null
 			return pagedResult
 		} else {
 			return createPagedResult(0, pageNumber, elementsPerPage)
@@ -113,19 +106,52 @@ class TaskService {
     public PagedResult<Task> findRecentTasks(Long userId, String optionalProject, int pageNumber, int elementsPerPage) {
 		String projectLikeClause = generateProjectLikeClause(optionalProject)
 
-		PageRequest pageRequest = new PageRequest(pageNumber, elementsPerPage, Sort.Direction.DESC, "modifyDate")
-		Page<TaskEntity> taskEntityPage = taskRepository.findByOwnerIdAndProjectLike(userId, projectLikeClause, pageRequest);
+		PageRequest pageRequest = new PageRequest(pageNumber, elementsPerPage)
+		Page<TaskEntity> taskEntityPage = persistenceService.findRecentTasks(userId, projectLikeClause, pageRequest);
         return toPagedResult(taskEntityPage)
     }
 
 	public PagedResult<Task> findRecentTasksForAllUsers(String optionalProject, int pageNumber, int elementsPerPage) {
 		String projectLikeClause = generateProjectLikeClause(optionalProject)
 
-		PageRequest pageRequest = new PageRequest(pageNumber, elementsPerPage, Sort.Direction.DESC, "modifyDate")
-		Page<TaskEntity> taskEntityPage = taskRepository.findByProjectLike(projectLikeClause, pageRequest);
+		PageRequest pageRequest = new PageRequest(pageNumber, elementsPerPage)
+		Page<TaskEntity> taskEntityPage = persistenceService.findRecentTasks(null, projectLikeClause, pageRequest);
 		return toPagedResult(taskEntityPage)
 	}
 
+	/**
+	 * Keyset variants of the above, each returns the tasks strictly after the cursor (an empty or null cursor
+	 * starts at the most recent task).  Deep pages cost the same as the first and no count query is run, so
+	 * totalPages and totalElements are PagedResult.UNKNOWN_TOTAL.
+	 */
+	public PagedResult<Task> findRecentTasksMatchingTagsAfter(Long userId, String optionalProject, List<String> tags, String cursor, int elementsPerPage) {
+		List<String> normalizedTags = SearchUtils.normalizeTags(tags)
+		String projectLikeClause = generateProjectLikeClause(optionalProject)
+		TaskCursor taskCursor = TaskCursor.decode(cursor)
+
+		List<TaskEntity> taskEntities = persistenceService.findTasksMatchingTagsAfter(userId, projectLikeClause, normalizedTags,
+				taskCursor, elementsPerPage + 1)
+		return toCursorPagedResult(taskEntities, taskCursor, elementsPerPage)
+	}
+
+	public PagedResult<Task> findRecentTasksAfter(Long userId, String optionalProject, String cursor, int elementsPerPage) {
+		String projectLikeClause = generateProjectLikeClause(optionalProject)
+		TaskCursor taskCursor = TaskCursor.decode(cursor)
+
+		List<TaskEntity> taskEntities = persistenceService.findRecentTasksAfter(userId, projectLikeClause,
+				taskCursor, elementsPerPage + 1)
+		return toCursorPagedResult(taskEntities, taskCursor, elementsPerPage)
+	}
+
+	public PagedResult<Task> findRecentTasksForAllUsersAfter(String optionalProject, String cursor, int elementsPerPage) {
+		String projectLikeClause = generateProjectLikeClause(optionalProject)
+		TaskCursor taskCursor = TaskCursor.decode(cursor)
+
+		List<TaskEntity> taskEntities = persistenceService.findRecentTasksAfter(null, projectLikeClause,
+				taskCursor, elementsPerPage + 1)
+		return toCursorPagedResult(taskEntities, taskCursor, elementsPerPage)
+	}
+
 	private String generateProjectLikeClause(String optionalProject) {
 		String projectLikeClause = "%"
 		if (optionalProject != null) {
@@ -149,25 +175,56 @@ class TaskService {
 		pagedResult.totalElements = dataPage.totalElements
 		pagedResult.elementsPerPage = dataPage.size
 		pagedResult.contents = entityMapper.mapList(dataPage.content, Task.class)
+		pagedResult.nextCursor = dataPage.hasNext() ? toNextCursor(dataPage.content) : null
+		pagedResult.addSortOrder("modifyDate", PagedResult.SortOrder.Direction.DESC)
+		return pagedResult
+	}
+
+	// one extra task is fetched to tell whether there is a next page without counting
+	private PagedResult<Task> toCursorPagedResult(List<TaskEntity> taskEntities, TaskCursor taskCursor, int elementsPerPage) {
+		boolean hasNext = taskEntities.size() > elementsPerPage
+		List<TaskEntity> pageEntities = hasNext ? taskEntities.subList(0, elementsPerPage) : taskEntities
+
+		PagedResult pagedResult = PagedResult.createWithoutTotal(hasNext, taskCursor != TaskCursor.FIRST, elementsPerPage)
+		pagedResult.contents = entityMapper.mapList(pageEntities, Task.class)
+		pagedResult.nextCursor = hasNext ? toNextCursor(pageEntities) : null
 		pagedResult.addSortOrder("modifyDate", PagedResult.SortOrder.Direction.DESC)
 		return pagedResult
 	}
 
+	private String toNextCursor(List<TaskEntity> pageEntities) {
+		pageEntities.isEmpty() ? null : TaskCursor.after(pageEntities.last()).encode()
+	}
+
 	private Task toApiTask(TaskEntity taskEntity) {
 		return entityMapper.mapIfNotNull(taskEntity, Task.class);
 	}
 
+	private TaskEntity findTaskEntityWithId(Long taskId) {
+		TaskEntity taskEntity = persistenceService.findTaskWithId(taskId);
+		if (taskEntity == null) {
+			throw new NotFoundException("No task found with id=${taskId}");
+		}
+		return taskEntity;
+	}
+
+	// the embedded and in memory services hand out the stored task, so updates are made to a copy of it
+	private TaskEntity copyTask(TaskEntity taskEntity) {
+		return new TaskEntity(taskEntity.id, taskEntity.ownerId, taskEntity.name, taskEntity.description,
+				taskEntity.project, taskEntity.creationDate, taskEntity.modifyDate)
+	}
+
 	Task updateTask(Task taskWithUpdates) {
-		TaskEntity taskEntity = taskRepository.findOne(taskWithUpdates.id)
+		TaskEntity taskEntity = copyTask(findTaskEntityWithId(taskWithUpdates.id))
 		taskEntity.description = taskWithUpdates.description
 		taskEntity.project = taskWithUpdates.project
 		taskEntity.modifyDate = timeService.now()
-		TaskEntity savedEntity = taskRepository.save(taskEntity)
+		TaskEntity savedEntity = persistenceService.saveTask(taskEntity)
 		return toApiTask(savedEntity);
 	}
 
 	Task updateTask(Long taskId, TaskPatch taskPatch) {
-		TaskEntity taskEntity = taskRepository.findOne(taskId)
+		TaskEntity taskEntity = copyTask(findTaskEntityWithId(taskId))
 
 		if (taskPatch.name) {
 			taskEntity.name = taskPatch.name
@@ -180,7 +237,7 @@ class TaskService {
 		}
 
 		taskEntity.modifyDate = timeService.now()
-		TaskEntity savedEntity = taskRepository.save(taskEntity)
+		TaskEntity savedEntity = persistenceService.saveTask(taskEntity)
 		return toApiTask(savedEntity);
 	}
 
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.activity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges contiguous editor and external activities, so a plugin reporting the same file every few seconds produces
+ * one row rather than hundreds.  Two activities are contiguous if they are for the same task, have the same type and
+ * metadata (file path and modified flag, or comment) and the second starts exactly when the first ends.  Since the
+ * merged activity covers exactly the same time as the activities it replaces, durations aggregated by key (e.g. the
+ * haystack activity summaries) are unchanged.
+ *
+ * New activities are merged with each other and with previously stored activities which they continue.  Stored
+ * activities are not modified; their new end times are available from getExtendedActivityEndTimes.
+ */
+public class ActivityCoalescer {
+
+	private final Map<String, ActivityEntity> storedActivitiesByKeyAndEnd = new HashMap<>();
+	private final Map<Long, LocalDateTime> extendedActivityEndTimes = new HashMap<>();
+
+	/**
+	 * @param storedActivities previously stored activities which new activities may continue
+	 */
+	public ActivityCoalescer(List<? extends ActivityEntity> storedActivities) {
+		for (ActivityEntity storedActivity : storedActivities) {
+			if (isCoalescable(storedActivity)) {
+				storedActivitiesByKeyAndEnd.put(getKey(storedActivity) + storedActivity.getEnd(), storedActivity);
+			}
+		}
+	}
+
+	public static boolean isCoalescable(ActivityEntity activity) {
+		return activity instanceof EditorActivityEntity || activity instanceof ExternalActivityEntity;
+	}
+
+	/**
+	 * @return the activities to insert, coalescable activities ordered by start after all other activities
+	 */
+	public List<ActivityEntity> coalesce(List<? extends ActivityEntity> activities) {
+		List<ActivityEntity> activitiesToInsert = new ArrayList<>(activities.size());
+		List<ActivityEntity> coalescableActivities = new ArrayList<>();
+		for (ActivityEntity activity : activities) {
+			if (isCoalescable(activity)) {
+				coalescableActivities.add(activity);
+			} else {
+				activitiesToInsert.add(activity);
+			}
+		}
+		Collections.sort(coalescableActivities, Comparator.comparing(ActivityEntity::getStart));
+
+		Map<String, ActivityEntity> lastActivityByKey = new HashMap<>();
+		Map<String, LocalDateTime> lastEndByKey = new HashMap<>();
+		for (ActivityEntity activity : coalescableActivities) {
+			String key = getKey(activity);
+			ActivityEntity lastActivity = lastActivityByKey.get(key);
+			if (lastActivity == null || lastEndByKey.get(key).equals(activity.getStart()) == false) {
+				lastActivity = storedActivitiesByKeyAndEnd.remove(key + activity.getStart());
+			}
+
+			if (lastActivity == null) {
+				activitiesToInsert.add(activity);
+				lastActivity = activity;
+			} else if (lastActivity.getId() == null) {
+				lastActivity.setEnd(activity.getEnd());
+			} else {
+				// stored activities are left unmodified, the caller updates them from extendedActivityEndTimes
+				extendedActivityEndTimes.put(lastActivity.getId(), activity.getEnd());
+			}
+			lastActivityByKey.put(key, lastActivity);
+			lastEndByKey.put(key, activity.getEnd());
+		}
+		return activitiesToInsert;
+	}
+
+	/**
+	 * @return the new end time of each stored activity extended by a new activity, keyed by activity id
+	 */
+	public Map<Long, LocalDateTime> getExtendedActivityEndTimes() {
+		return extendedActivityEndTimes;
+	}
+
+	// keyed on the metadata values rather than the json since jsonb does not preserve the formatting of stored json
+	private String getKey(ActivityEntity activity) {
+		String metadataKey;
+		if (activity instanceof EditorActivityEntity) {
+			EditorActivityEntity editorActivity = (EditorActivityEntity) activity;
+			metadataKey = editorActivity.getFilePath() + ":" + editorActivity.isModified();
+		} else {
+			metadataKey = ((ExternalActivityEntity) activity).getComment();
+		}
+		return activity.getClass().getSimpleName() + ":" + activity.getTaskId() + ":" + metadataKey + ":";
+	}
+
+}
@@ -20,6 +20,9 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.Column;
 import javax.persistence.DiscriminatorColumn;
@@ -29,7 +32,6 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.PostLoad;
-import javax.persistence.SequenceGenerator;
 import javax.persistence.Transient;
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -46,7 +48,12 @@ public abstract class ActivityEntity {
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "activity_seq_gen")
-	@SequenceGenerator(name = "activity_seq_gen", sequenceName = "activity_seq")
+	// pooled allocation, increment_size must match the increment of activity_seq (see db/activity/pool_activity_seq.sql)
+	@GenericGenerator(name = "activity_seq_gen", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+			@Parameter(name = "sequence_name", value = "activity_seq"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled")
+	})
 	private Long id;
 	private Long taskId;
 	private Long ownerId;
@@ -56,6 +63,9 @@ public abstract class ActivityEntity {
 	@Column(name = "end_time")
 	private LocalDateTime end;
 
+	// jsonb column, file_path, modification_count and exit_code are projected from it by a trigger
+	// (see db/activity/add_activity_metadata_columns.sql)
+	@ColumnTransformer(write = "?::jsonb")
 	private String metadata;
 	@Transient
 	private MetadataContainer metadataContainer = new MetadataContainer();
@@ -20,15 +20,21 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
 public interface ActivityRepository extends PagingAndSortingRepository<ActivityEntity, Long> {
 
+	@Query(nativeQuery = true, value = "select * from activity where task_id = ?1 order by start_time, id")
 	List<ActivityEntity> findByTaskId(long taskId);
 
 	@Query(nativeQuery = true, value = "select * from activity where task_id = ?1 order by end_time desc limit 1")
 	ActivityEntity findMostRecentActivityForTask(long taskId);
 
+	@Query(nativeQuery = true, value = "select * from activity where type in ('editor', 'external') " +
+			"and task_id in (?1) and end_time in (?2)")
+	List<ActivityEntity> findEditorAndExternalActivitiesEndingAt(Collection<Long> taskIds, Collection<Timestamp> endTimes);
+
 	@Query(nativeQuery = true, value = "select * from activity where type = 'idle' and task_id = ?1")
 	List<IdleActivityEntity> findIdleActivityByTaskId(long taskId);
 
@@ -44,19 +50,27 @@ public interface ActivityRepository extends PagingAndSortingRepository<ActivityE
 	@Query(nativeQuery = true, value = "select * from activity where type = 'execution' and task_id = ?1")
 	List<ExecutionActivityEntity> findExecutionActivityByTaskId(long taskId);
 
+	@Query(nativeQuery = true, value = "select to_timestamp(floor(extract(epoch from start_time) / ?2) * ?2) at time zone 'UTC' as window_start, " +
+			"sum(modification_count) from activity where type = 'modification' and task_id = ?1 " +
+			"group by window_start order by window_start")
+	List<Object[]> sumModificationCountByWindow(long taskId, long windowSeconds);
+
 	@Query(nativeQuery = true, value = "select * from activity where type = 'block' and task_id = ?1")
 	List<BlockActivityEntity> findBlockActivityByTaskId(long taskId);
 
-	@Query(nativeQuery = true, value = "select * from activity where type = 'idle' and owner_id = ?1 " +
-			"and (start_time between (?2) and (?3) or end_time between (?2) and (?3)) order by start_time")
+	// activity is partitioned by start_time, the redundant start_time bound excludes partitions after the range
+	@Query(nativeQuery = true, value = "select * from activity where type = 'idle' and owner_id = ?1 and start_time <= (?3) " +
+			"and (start_time between (?2) and (?3) or end_time between (?2) and (?3)) " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null) order by start_time")
 	List<IdleActivityEntity> findIdlesWithinRange(long userId, Timestamp start, Timestamp end);
 
 	@Query(nativeQuery = true, value = "select * from activity where type = 'idle' and owner_id = ?1 " +
-			"order by start_time")
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null) order by start_time")
 	List<IdleActivityEntity> findAllIdlesForUser(long userId);
 
-	@Query(nativeQuery = true, value = "select * from activity where type = 'execution' and owner_id=(?1) " +
-			"and (start_time between (?2) and (?3) or end_time between (?2) and (?3)) order by start_time")
+	@Query(nativeQuery = true, value = "select * from activity where type = 'execution' and owner_id=(?1) and start_time <= (?3) " +
+			"and (start_time between (?2) and (?3) or end_time between (?2) and (?3)) " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null) order by start_time")
 	List<ExecutionActivityEntity> findExecutionActivityWithinRange(Long userId, Timestamp startTime, Timestamp endTime);
 
 }
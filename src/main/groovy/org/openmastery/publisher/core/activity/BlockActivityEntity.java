@@ -32,7 +32,7 @@ public class BlockActivityEntity extends ActivityEntity {
 
 	private static final String COMMENT_KEY = "description";
 
-	private BlockActivityEntity() {
+	public BlockActivityEntity() {
 	}
 
 	private BlockActivityEntity(long id, long ownerId, long taskId, LocalDateTime start, LocalDateTime end, String comment) {
@@ -33,7 +33,7 @@ public class EditorActivityEntity extends ActivityEntity {
 	private static final String FILE_PATH_KEY = "filePath";
 	private static final String MODIFIED_KEY = "modified";
 
-	private EditorActivityEntity() {}
+	public EditorActivityEntity() {}
 
 	private EditorActivityEntity(long id, long ownerId, long taskId, LocalDateTime start, LocalDateTime end, String filePath, boolean modified) {
 		super(id, ownerId, taskId, start, end);
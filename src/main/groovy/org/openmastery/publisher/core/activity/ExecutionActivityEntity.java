@@ -36,7 +36,7 @@ public class ExecutionActivityEntity extends ActivityEntity {
 	private static final String EXECUTION_TASK_TYPE = "executionTaskType";
 	private static final String IS_DEBUG = "isDebug";
 
-	private ExecutionActivityEntity() {
+	public ExecutionActivityEntity() {
 	}
 
 	@Override
@@ -32,7 +32,7 @@ public class ExternalActivityEntity extends ActivityEntity {
 
 	private static final String COMMENT_KEY = "description";
 
-	private ExternalActivityEntity() {}
+	public ExternalActivityEntity() {}
 
 	private ExternalActivityEntity(long id, long ownerId, long taskId, LocalDateTime start, LocalDateTime end, String comment) {
 		super(id, ownerId, taskId, start, end);
@@ -28,7 +28,7 @@ import java.time.LocalDateTime;
 @EqualsAndHashCode(callSuper = true, of = {})
 public class IdleActivityEntity extends ActivityEntity {
 
-	private IdleActivityEntity() {}
+	public IdleActivityEntity() {}
 
 	private IdleActivityEntity(long id, long ownerId, long taskId, LocalDateTime start, LocalDateTime end) {
 		super(id, ownerId, taskId, start, end);
@@ -15,61 +15,196 @@
  */
 package org.openmastery.publisher.core.activity;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.util.HashMap;
 
+/**
+ * Metadata json is decoded lazily, once, on first access, so entities which are loaded only for their start and end
+ * never decode it.  The hot fields read for every activity of a timeline (file path, modified, modification count,
+ * exit code and process name) are decoded by a single streaming pass into typed fields without building the map;
+ * the map is only built for other fields or once a field is set.  Until a field is set, toJson returns the loaded
+ * json unchanged.  The mapper is shared by all containers since it is thread-safe once configured.
+ */
 @Slf4j
 public class MetadataContainer {
 
-	private HashMap container = new HashMap();
-	private ObjectMapper mapper = new ObjectMapper();
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ObjectReader MAP_READER = MAPPER.readerFor(HashMap.class);
+
+	private String json;
+	private HotFields hotFields;
+	private HashMap container;
+	private boolean modified;
 
 	public void setMetadataField(String key, Object value) {
-		container.put(key, value);
+		getContainer().put(key, value);
+		modified = true;
 	}
 
 	public boolean getMetadataValueAsBoolean(String key) {
-		Object value = container.get(key);
+		Object value = getValue(key);
 		return value != null ? (Boolean) value : false;
 	}
 
 	public int getMetadataValueAsInteger(String key) {
-		Object value = container.get(key);
+		Object value = getValue(key);
 		return value != null ? (Integer) value : Integer.MIN_VALUE;
 	}
 
 	public String getMetadataValue(String key) {
-		Object value = container.get(key);
+		Object value = getValue(key);
 		return value != null ? value.toString() : null;
 	}
 
 	public void fromJson(String metadata) {
-		try {
-			container = toMetadataMap(metadata);
-		} catch (IOException ex) {
-			log.error("Failed to convert metadata into map, json=" + metadata, ex);
+		json = metadata;
+		hotFields = null;
+		container = null;
+		modified = false;
+	}
+
+	private Object getValue(String key) {
+		if (container == null && HotFields.isHotKey(key)) {
+			return getHotFields().get(key);
+		}
+		return getContainer().get(key);
+	}
+
+	private HotFields getHotFields() {
+		if (hotFields == null) {
+			hotFields = new HotFields();
+			if (json != null) {
+				try {
+					hotFields.decode(json);
+				} catch (IOException ex) {
+					log.error("Failed to read metadata fields, json=" + json, ex);
+					hotFields = new HotFields();
+				}
+			}
+		}
+		return hotFields;
+	}
+
+	private HashMap getContainer() {
+		if (container == null) {
+			container = toMetadataMap(json);
 		}
+		return container;
 	}
 
-	private HashMap toMetadataMap(String metadata) throws IOException {
+	private HashMap toMetadataMap(String metadata) {
 		if (metadata == null) {
 			return new HashMap();
-		} else {
-			return mapper.readValue(metadata, HashMap.class);
+		}
+
+		try {
+			return MAP_READER.readValue(metadata);
+		} catch (IOException ex) {
+			log.error("Failed to convert metadata into map, json=" + metadata, ex);
+			return new HashMap();
 		}
 	}
 
 	public String toJson() {
+		if (modified == false) {
+			return json;
+		}
+
 		try {
-			return mapper.writeValueAsString(container);
+			return MAPPER.writeValueAsString(container);
 		} catch (JsonProcessingException ex) {
 			log.error("Failed to convert metadata into json, map=" + container, ex);
 			return "";
 		}
 	}
 
+	private static class HotFields {
+
+		private static final String FILE_PATH_KEY = "filePath";
+		private static final String MODIFIED_KEY = "modified";
+		private static final String MODIFICATION_COUNT_KEY = "modificationCount";
+		private static final String EXIT_CODE_KEY = "exitCode";
+		private static final String PROCESS_NAME_KEY = "processName";
+
+		private String filePath;
+		private Boolean modified;
+		private Integer modificationCount;
+		private Integer exitCode;
+		private String processName;
+
+		static boolean isHotKey(String key) {
+			switch (key) {
+				case FILE_PATH_KEY:
+				case MODIFIED_KEY:
+				case MODIFICATION_COUNT_KEY:
+				case EXIT_CODE_KEY:
+				case PROCESS_NAME_KEY:
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		Object get(String key) {
+			switch (key) {
+				case FILE_PATH_KEY:
+					return filePath;
+				case MODIFIED_KEY:
+					return modified;
+				case MODIFICATION_COUNT_KEY:
+					return modificationCount;
+				case EXIT_CODE_KEY:
+					return exitCode;
+				case PROCESS_NAME_KEY:
+					return processName;
+				default:
+					throw new IllegalArgumentException("Not a hot metadata field, key=" + key);
+			}
+		}
+
+		void decode(String json) throws IOException {
+			try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					return;
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String key = parser.getCurrentName();
+					JsonToken token = parser.nextToken();
+					switch (key) {
+						case FILE_PATH_KEY:
+							filePath = readText(parser, token);
+							break;
+						case PROCESS_NAME_KEY:
+							processName = readText(parser, token);
+							break;
+						case MODIFIED_KEY:
+							modified = token.isBoolean() ? token == JsonToken.VALUE_TRUE : null;
+							break;
+						case MODIFICATION_COUNT_KEY:
+							modificationCount = token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+							break;
+						case EXIT_CODE_KEY:
+							exitCode = token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+							break;
+						default:
+							break;
+					}
+					parser.skipChildren();
+				}
+			}
+		}
+
+		private static String readText(JsonParser parser, JsonToken token) throws IOException {
+			return token.isScalarValue() && token != JsonToken.VALUE_NULL ? parser.getText() : null;
+		}
+
+	}
+
 }
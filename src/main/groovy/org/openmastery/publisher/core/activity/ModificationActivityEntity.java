@@ -32,7 +32,7 @@ public class ModificationActivityEntity extends ActivityEntity {
 
 	private static final String MODIFICATION_COUNT_KEY = "modificationCount";
 
-	private ModificationActivityEntity() {
+	public ModificationActivityEntity() {
 	}
 
 	private ModificationActivityEntity(long id, long ownerId, long taskId, LocalDateTime start, LocalDateTime end,
@@ -18,6 +18,8 @@ package org.openmastery.publisher.core.annotation;
 
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.openmastery.publisher.api.event.EventType;
 import org.openmastery.publisher.core.activity.MetadataContainer;
 
@@ -37,7 +39,12 @@ public abstract class AnnotationEntity {
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "annotation_seq_gen")
-	@SequenceGenerator(name = "annotation_seq_gen", sequenceName = "annotation_seq")
+	// pooled allocation, increment_size must match the increment of annotation_seq (see db/annotation/pool_annotation_seq.sql)
+	@GenericGenerator(name = "annotation_seq_gen", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+			@Parameter(name = "sequence_name", value = "annotation_seq"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled")
+	})
 
 	private Long id;
 	private Long taskId;
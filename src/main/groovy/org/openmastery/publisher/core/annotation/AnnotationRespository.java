@@ -27,32 +27,56 @@ import org.springframework.transaction.annotation.Transactional;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface AnnotationRespository extends PagingAndSortingRepository<AnnotationEntity, Long> {
 
+	@Query(nativeQuery = true, value = "select * from annotation where task_id = ?1")
+	List<AnnotationEntity> findByTaskId(long taskId);
+
 	@Query(nativeQuery = true, value = "select * from annotation where type = 'faq' and task_id = ?1")
 	List<FaqAnnotationEntity> findFaqAnnotationsByTaskId(long taskId);
 
 	@Query(nativeQuery = true, value = "select * from annotation where type = 'snippet' and task_id = ?1")
 	List<SnippetAnnotationEntity> findSnippetsByTaskId(long taskId);
 
-	@Query(nativeQuery = true, value = "select faq.task_id, faq.event_id, e.comment eventComment, faq.metadata faqJson, e.position " +
-			"from event e left outer join annotation faq on e.id = faq.event_id where (faq.type = 'faq' or faq.type is null) " +
-			"and (lower(faq.metadata) similar to (?1) or lower(e.comment) similar to (?1))")
+	// events whose comment or faq is tagged with any of the tags, see EntityTagIndex
+	@Query(nativeQuery = true, value = "select e.task_id, e.id, e.comment eventComment, faq.comment faqComment, e.position " +
+			"from event e left outer join annotation faq on e.id = faq.event_id and faq.type = 'faq' " +
+			"where e.id in (select et.event_id from entity_tag et where lower(et.tag) in (?1)) " +
+			"and not exists (select 1 from task dt where dt.id = e.task_id and dt.deleted_at is not null)")
+	List<Object []> findFaqsBySearchCriteria(Collection<String> tags);
 
-	List<Object []> findFaqsBySearchCriteria(String pattern);
+	// the limit most relevant events by the words of their comment or faq, faq.comment and faq.comment_search are
+	// projected from the metadata on write (see db/annotation/add_annotation_comment_search.sql)
+	@Query(nativeQuery = true, value = "select e.task_id, e.id, e.comment eventComment, faq.comment faqComment, e.position " +
+			"from (select m.event_id, max(m.rank) as rank from (" +
+			"select a.event_id, ts_rank(a.comment_search, plainto_tsquery('english', :searchText)) as rank from annotation a " +
+			"where a.type = 'faq' and a.comment_search @@ plainto_tsquery('english', :searchText) " +
+			"and not exists (select 1 from task dt where dt.id = a.task_id and dt.deleted_at is not null) " +
+			"union all " +
+			"select ev.id, ts_rank(to_tsvector('english', coalesce(ev.comment, '')), plainto_tsquery('english', :searchText)) from event ev " +
+			"where to_tsvector('english', coalesce(ev.comment, '')) @@ plainto_tsquery('english', :searchText) " +
+			"and not exists (select 1 from task dt where dt.id = ev.task_id and dt.deleted_at is not null)" +
+			") m group by m.event_id order by rank desc, m.event_id desc limit :limit) top " +
+			"join event e on e.id = top.event_id " +
+			"left outer join annotation faq on faq.event_id = top.event_id and faq.type = 'faq' " +
+			"order by top.rank desc, top.event_id desc")
+	List<Object []> findFaqsMatchingText(@Param("searchText") String searchText, @Param("limit") int limit);
 
 	@Query(nativeQuery = true, value = "select a.* from annotation a, event e where a.type = 'faq' " +
 			"and a.event_id=e.id " +
 			"and a.owner_id=(?1) " +
 			"and position between (?2) and (?3) " +
+			"and not exists (select 1 from task dt where dt.id = a.task_id and dt.deleted_at is not null) " +
 			"order by position asc")
 	List<FaqAnnotationEntity> findFaqsWithinRange(Long userId, Timestamp startTime, Timestamp endTime);
 
 	@Query(nativeQuery = true, value = "select a.* from annotation a, event e where a.type = 'faq' " +
 			"and a.event_id=e.id " +
 			"and a.owner_id=(?1) " +
+			"and not exists (select 1 from task dt where dt.id = a.task_id and dt.deleted_at is not null) " +
 			"order by position asc")
 	List<FaqAnnotationEntity> findAllFaqsByUser(Long userId);
 
@@ -32,7 +32,7 @@ public class SnippetAnnotationEntity extends AnnotationEntity {
 	private static final String SOURCE_KEY = "source";
 	private static final String SNIPPET_KEY = "snippet";
 
-	private SnippetAnnotationEntity() {
+	public SnippetAnnotationEntity() {
 	}
 
 	private SnippetAnnotationEntity(long id, long ownerId, long taskId, long eventId, String source, String snippet) {
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The decoded contents of a task archive; activities are ordered by start and events by position.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskArchive {
+
+	private final List<ActivityEntity> activities;
+	private final List<EventEntity> events;
+
+	public <T extends ActivityEntity> List<T> getActivities(Class<T> type) {
+		return activities.stream()
+				.filter(type::isInstance)
+				.map(type::cast)
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,430 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import org.openmastery.publisher.api.event.EventType;
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.activity.BlockActivityEntity;
+import org.openmastery.publisher.core.activity.EditorActivityEntity;
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity;
+import org.openmastery.publisher.core.activity.ExternalActivityEntity;
+import org.openmastery.publisher.core.activity.IdleActivityEntity;
+import org.openmastery.publisher.core.activity.ModificationActivityEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes the activity and event rows of a task as a single deflated, column oriented blob.
+ *
+ * Activities are grouped by type and each group is written column by column in start order: ids and owner ids as
+ * deltas, start as delta encoded epoch seconds, end as seconds after start, with the nano of second of each in its
+ * own (almost always zero) column.  Strings such as file paths and comments are written once to a dictionary and
+ * referenced by index.  All integers are zigzag varints, so the sorted columns shrink to a byte or two per row
+ * before compression.
+ */
+public class TaskArchiveCodec {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final List<Class<? extends ActivityEntity>> ACTIVITY_TYPES = Arrays.asList(
+			IdleActivityEntity.class,
+			EditorActivityEntity.class,
+			ExternalActivityEntity.class,
+			ModificationActivityEntity.class,
+			ExecutionActivityEntity.class,
+			BlockActivityEntity.class
+	);
+
+	private static final Comparator<ActivityEntity> ACTIVITY_ORDER = Comparator
+			.comparing(ActivityEntity::getStart)
+			.thenComparing(ActivityEntity::getId);
+	private static final Comparator<EventEntity> EVENT_ORDER = Comparator
+			.comparing(EventEntity::getPosition)
+			.thenComparing(EventEntity::getId);
+
+	public byte[] encode(List<ActivityEntity> activities, List<EventEntity> events) {
+		Map<String, Integer> dictionary = new HashMap<>();
+		List<String> dictionaryValues = new ArrayList<>();
+		ByteArrayOutputStream columnBytes = new ByteArrayOutputStream();
+		ColumnWriter columns = new ColumnWriter(columnBytes, value -> {
+			Integer index = dictionary.get(value);
+			if (index == null) {
+				index = dictionaryValues.size();
+				dictionary.put(value, index);
+				dictionaryValues.add(value);
+			}
+			return index;
+		});
+
+		try {
+			for (Class<? extends ActivityEntity> type : ACTIVITY_TYPES) {
+				List<ActivityEntity> typedActivities = activities.stream()
+						.filter(type::isInstance)
+						.sorted(ACTIVITY_ORDER)
+						.collect(Collectors.toList());
+				writeActivities(columns, type, typedActivities);
+			}
+			if (activities.stream().anyMatch(activity -> ACTIVITY_TYPES.contains(activity.getClass()) == false)) {
+				throw new IllegalArgumentException("Unsupported activity type in " + activities);
+			}
+
+			List<EventEntity> sortedEvents = new ArrayList<>(events);
+			sortedEvents.sort(EVENT_ORDER);
+			writeEvents(columns, sortedEvents);
+
+			ByteArrayOutputStream archiveBytes = new ByteArrayOutputStream();
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try (DataOutputStream archive = new DataOutputStream(new DeflaterOutputStream(archiveBytes, deflater))) {
+				ColumnWriter header = new ColumnWriter(archive, null);
+				header.writeVarLong(FORMAT_VERSION);
+				header.writeVarLong(dictionaryValues.size());
+				for (String value : dictionaryValues) {
+					byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+					header.writeVarLong(bytes.length);
+					archive.write(bytes);
+				}
+				columnBytes.writeTo(archive);
+			} finally {
+				deflater.end();
+			}
+			return archiveBytes.toByteArray();
+		} catch (IOException ex) {
+			throw new IllegalStateException("Failed to encode task archive", ex);
+		}
+	}
+
+	public TaskArchive decode(long taskId, byte[] data) {
+		try (DataInputStream archive = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+			ColumnReader header = new ColumnReader(archive, null);
+			long version = header.readVarLong();
+			if (version != FORMAT_VERSION) {
+				throw new IllegalStateException("Unsupported task archive version " + version + ", taskId=" + taskId);
+			}
+			String[] dictionary = new String[(int) header.readVarLong()];
+			for (int i = 0; i < dictionary.length; i++) {
+				byte[] bytes = new byte[(int) header.readVarLong()];
+				archive.readFully(bytes);
+				dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			ColumnReader columns = new ColumnReader(archive, index -> dictionary[index]);
+			List<ActivityEntity> activities = new ArrayList<>();
+			for (Class<? extends ActivityEntity> type : ACTIVITY_TYPES) {
+				activities.addAll(readActivities(columns, type, taskId));
+			}
+			activities.sort(ACTIVITY_ORDER);
+			List<EventEntity> events = readEvents(columns, taskId);
+			return new TaskArchive(activities, events);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Failed to decode task archive, taskId=" + taskId, ex);
+		}
+	}
+
+	private void writeActivities(ColumnWriter columns, Class<? extends ActivityEntity> type,
+	                             List<ActivityEntity> activities) throws IOException {
+		columns.writeVarLong(activities.size());
+		columns.writeDeltas(activities, ActivityEntity::getId);
+		columns.writeDeltas(activities, ActivityEntity::getOwnerId);
+		columns.writeTimes(activities, ActivityEntity::getStart);
+		for (ActivityEntity activity : activities) {
+			columns.writeSignedVarLong(toEpochSecond(activity.getEnd()) - toEpochSecond(activity.getStart()));
+		}
+		for (ActivityEntity activity : activities) {
+			columns.writeVarLong(activity.getEnd().getNano());
+		}
+
+		if (type == EditorActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				columns.writeString(((EditorActivityEntity) activity).getFilePath());
+			}
+			for (ActivityEntity activity : activities) {
+				columns.writeBoolean(((EditorActivityEntity) activity).isModified());
+			}
+		} else if (type == ExternalActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				columns.writeString(((ExternalActivityEntity) activity).getComment());
+			}
+		} else if (type == BlockActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				columns.writeString(((BlockActivityEntity) activity).getComment());
+			}
+		} else if (type == ModificationActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				columns.writeSignedVarLong(((ModificationActivityEntity) activity).getModificationCount());
+			}
+		} else if (type == ExecutionActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				columns.writeString(((ExecutionActivityEntity) activity).getProcessName());
+			}
+			for (ActivityEntity activity : activities) {
+				columns.writeSignedVarLong(((ExecutionActivityEntity) activity).getExitCode());
+			}
+			for (ActivityEntity activity : activities) {
+				columns.writeString(((ExecutionActivityEntity) activity).getExecutionTaskType());
+			}
+			for (ActivityEntity activity : activities) {
+				columns.writeBoolean(((ExecutionActivityEntity) activity).isDebug());
+			}
+		}
+	}
+
+	private List<ActivityEntity> readActivities(ColumnReader columns, Class<? extends ActivityEntity> type,
+	                                            long taskId) throws IOException {
+		int count = (int) columns.readVarLong();
+		long[] ids = columns.readDeltas(count);
+		long[] ownerIds = columns.readDeltas(count);
+		LocalDateTime[] starts = columns.readTimes(count);
+		long[] endSeconds = new long[count];
+		for (int i = 0; i < count; i++) {
+			endSeconds[i] = toEpochSecond(starts[i]) + columns.readSignedVarLong();
+		}
+
+		List<ActivityEntity> activities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			ActivityEntity activity = newActivity(type);
+			activity.setId(ids[i]);
+			activity.setOwnerId(ownerIds[i]);
+			activity.setTaskId(taskId);
+			activity.setStart(starts[i]);
+			activity.setEnd(LocalDateTime.ofEpochSecond(endSeconds[i], (int) columns.readVarLong(), ZoneOffset.UTC));
+			activities.add(activity);
+		}
+
+		if (type == EditorActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				((EditorActivityEntity) activity).setFilePath(columns.readString());
+			}
+			for (ActivityEntity activity : activities) {
+				((EditorActivityEntity) activity).setModified(columns.readBoolean());
+			}
+		} else if (type == ExternalActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				((ExternalActivityEntity) activity).setComment(columns.readString());
+			}
+		} else if (type == BlockActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				((BlockActivityEntity) activity).setComment(columns.readString());
+			}
+		} else if (type == ModificationActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				((ModificationActivityEntity) activity).setModificationCount((int) columns.readSignedVarLong());
+			}
+		} else if (type == ExecutionActivityEntity.class) {
+			for (ActivityEntity activity : activities) {
+				((ExecutionActivityEntity) activity).setProcessName(columns.readString());
+			}
+			for (ActivityEntity activity : activities) {
+				((ExecutionActivityEntity) activity).setExitCode((int) columns.readSignedVarLong());
+			}
+			for (ActivityEntity activity : activities) {
+				((ExecutionActivityEntity) activity).setExecutionTaskType(columns.readString());
+			}
+			for (ActivityEntity activity : activities) {
+				((ExecutionActivityEntity) activity).setDebug(columns.readBoolean());
+			}
+		}
+		return activities;
+	}
+
+	private ActivityEntity newActivity(Class<? extends ActivityEntity> type) {
+		try {
+			return type.newInstance();
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException("Failed to create activity of type " + type.getName(), ex);
+		}
+	}
+
+	private void writeEvents(ColumnWriter columns, List<EventEntity> events) throws IOException {
+		columns.writeVarLong(events.size());
+		columns.writeDeltas(events, EventEntity::getId);
+		columns.writeDeltas(events, EventEntity::getOwnerId);
+		columns.writeTimes(events, EventEntity::getPosition);
+		for (EventEntity event : events) {
+			columns.writeString(event.getType() != null ? event.getType().name() : null);
+		}
+		for (EventEntity event : events) {
+			columns.writeString(event.getComment());
+		}
+	}
+
+	private List<EventEntity> readEvents(ColumnReader columns, long taskId) throws IOException {
+		int count = (int) columns.readVarLong();
+		long[] ids = columns.readDeltas(count);
+		long[] ownerIds = columns.readDeltas(count);
+		LocalDateTime[] positions = columns.readTimes(count);
+
+		List<EventEntity> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String type = columns.readString();
+			events.add(EventEntity.builder()
+					.id(ids[i])
+					.ownerId(ownerIds[i])
+					.taskId(taskId)
+					.position(positions[i])
+					.type(type != null ? EventType.valueOf(type) : null)
+					.build());
+		}
+		for (EventEntity event : events) {
+			event.setComment(columns.readString());
+		}
+		return events;
+	}
+
+	private static long toEpochSecond(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	private static class ColumnWriter {
+
+		private final OutputStream out;
+		private final Function<String, Integer> dictionary;
+
+		private ColumnWriter(OutputStream out, Function<String, Integer> dictionary) {
+			this.out = out;
+			this.dictionary = dictionary;
+		}
+
+		private void writeVarLong(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		}
+
+		private void writeSignedVarLong(long value) throws IOException {
+			writeVarLong((value << 1) ^ (value >> 63));
+		}
+
+		private void writeBoolean(boolean value) throws IOException {
+			out.write(value ? 1 : 0);
+		}
+
+		// 0 is null, otherwise the dictionary index + 1
+		private void writeString(String value) throws IOException {
+			writeVarLong(value == null ? 0 : dictionary.apply(value) + 1);
+		}
+
+		private <T> void writeDeltas(List<T> rows, Function<T, Long> column) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				long value = column.apply(row);
+				writeSignedVarLong(value - previous);
+				previous = value;
+			}
+		}
+
+		private <T> void writeTimes(List<T> rows, Function<T, LocalDateTime> column) throws IOException {
+			long previous = 0;
+			for (T row : rows) {
+				long value = toEpochSecond(column.apply(row));
+				writeSignedVarLong(value - previous);
+				previous = value;
+			}
+			for (T row : rows) {
+				writeVarLong(column.apply(row).getNano());
+			}
+		}
+
+	}
+
+	private static class ColumnReader {
+
+		private final InputStream in;
+		private final Function<Integer, String> dictionary;
+
+		private ColumnReader(InputStream in, Function<Integer, String> dictionary) {
+			this.in = in;
+			this.dictionary = dictionary;
+		}
+
+		private long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		private long readSignedVarLong() throws IOException {
+			long value = readVarLong();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private boolean readBoolean() throws IOException {
+			return readByte() != 0;
+		}
+
+		private String readString() throws IOException {
+			long index = readVarLong();
+			return index == 0 ? null : dictionary.apply((int) index - 1);
+		}
+
+		private long[] readDeltas(int count) throws IOException {
+			long[] values = new long[count];
+			long previous = 0;
+			for (int i = 0; i < count; i++) {
+				previous += readSignedVarLong();
+				values[i] = previous;
+			}
+			return values;
+		}
+
+		private LocalDateTime[] readTimes(int count) throws IOException {
+			long[] seconds = readDeltas(count);
+			LocalDateTime[] times = new LocalDateTime[count];
+			for (int i = 0; i < count; i++) {
+				times[i] = LocalDateTime.ofEpochSecond(seconds[i], (int) readVarLong(), ZoneOffset.UTC);
+			}
+			return times;
+		}
+
+		private int readByte() throws IOException {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException("Unexpected end of task archive");
+			}
+			return b;
+		}
+
+	}
+
+}
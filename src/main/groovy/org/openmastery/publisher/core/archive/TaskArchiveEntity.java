@@ -0,0 +1,55 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.LocalDateTime;
+
+/**
+ * The raw activity and event rows of a cold task, encoded by TaskArchiveCodec.  The event id range and last event
+ * position allow event lookups by id or position to find the archive without decoding it.
+ */
+@Entity(name = "task_archive")
+@Data
+@EqualsAndHashCode(of = "taskId")
+@ToString(exclude = "data")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskArchiveEntity {
+
+	@Id
+	private Long taskId;
+	private Long ownerId;
+	private int activityCount;
+	private int eventCount;
+	private Long minEventId;
+	private Long maxEventId;
+	private LocalDateTime lastEventPosition;
+	private LocalDateTime firstPosition;
+	private LocalDateTime lastPosition;
+	private LocalDateTime archiveDate;
+	private byte[] data;
+
+}
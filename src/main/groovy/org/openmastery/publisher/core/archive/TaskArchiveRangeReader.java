@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the archived rows of compacted tasks for owner wide reads (storyweb metrics), which query the activity and
+ * event tables directly and would otherwise miss compacted tasks.
+ */
+@Component
+public class TaskArchiveRangeReader {
+
+	@Autowired
+	private TaskArchiveRepository taskArchiveRepository;
+
+	private TaskArchiveCodec taskArchiveCodec = new TaskArchiveCodec();
+
+	/**
+	 * @return the archived events positioned within the range and the archived activities overlapping it, using the
+	 * same bounds as the range queries of EventRepository and ActivityRepository
+	 */
+	public TaskArchive findArchivedRowsWithinRange(long ownerId, Timestamp start, Timestamp end) {
+		LocalDateTime rangeStart = start.toLocalDateTime();
+		LocalDateTime rangeEnd = end.toLocalDateTime();
+		List<ActivityEntity> activities = new ArrayList<>();
+		List<EventEntity> events = new ArrayList<>();
+		for (TaskArchiveEntity archiveEntity : taskArchiveRepository.findByOwnerIdOverlappingRange(ownerId, start, end)) {
+			TaskArchive archive = taskArchiveCodec.decode(archiveEntity.getTaskId(), archiveEntity.getData());
+			for (ActivityEntity activity : archive.getActivities()) {
+				if (activity.getStart().isAfter(rangeEnd) == false && (isWithin(activity.getStart(), rangeStart, rangeEnd)
+						|| isWithin(activity.getEnd(), rangeStart, rangeEnd))) {
+					activities.add(activity);
+				}
+			}
+			for (EventEntity event : archive.getEvents()) {
+				if (isWithin(event.getPosition(), rangeStart, rangeEnd)) {
+					events.add(event);
+				}
+			}
+		}
+		return new TaskArchive(activities, events);
+	}
+
+	/**
+	 * @return all archived rows of the owner's tasks
+	 */
+	public TaskArchive findArchivedRows(long ownerId) {
+		List<ActivityEntity> activities = new ArrayList<>();
+		List<EventEntity> events = new ArrayList<>();
+		for (TaskArchiveEntity archiveEntity : taskArchiveRepository.findByOwnerId(ownerId)) {
+			TaskArchive archive = taskArchiveCodec.decode(archiveEntity.getTaskId(), archiveEntity.getData());
+			activities.addAll(archive.getActivities());
+			events.addAll(archive.getEvents());
+		}
+		return new TaskArchive(activities, events);
+	}
+
+	private boolean isWithin(LocalDateTime time, LocalDateTime rangeStart, LocalDateTime rangeEnd) {
+		return time.isBefore(rangeStart) == false && time.isAfter(rangeEnd) == false;
+	}
+
+}
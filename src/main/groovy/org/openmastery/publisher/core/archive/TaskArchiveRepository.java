@@ -0,0 +1,52 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+public interface TaskArchiveRepository extends PagingAndSortingRepository<TaskArchiveEntity, Long> {
+
+	// native so a restore earlier in the same transaction, which deletes the row outside of the session, is seen
+	@Query(nativeQuery = true, value = "select * from task_archive where task_id = ?1")
+	TaskArchiveEntity findByTaskId(long taskId);
+
+	@Query(nativeQuery = true, value = "select task_id from task_archive where task_id in (?1)")
+	List<Number> findTaskIdsWithIds(Collection<Long> taskIds);
+
+	@Query(nativeQuery = true, value = "select * from task_archive where min_event_id <= ?1 and max_event_id >= ?1 " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null)")
+	List<TaskArchiveEntity> findByEventIdInRange(long eventId);
+
+	@Query(nativeQuery = true, value = "select * from task_archive where owner_id = ?1 and last_event_position >= ?2 " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null)")
+	List<TaskArchiveEntity> findByOwnerIdWithEventsAfter(long ownerId, Timestamp position);
+
+	// archives without a recorded range are always read
+	@Query(nativeQuery = true, value = "select * from task_archive where owner_id = ?1 " +
+			"and (last_position is null or (first_position <= ?3 and last_position >= ?2)) " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null)")
+	List<TaskArchiveEntity> findByOwnerIdOverlappingRange(long ownerId, Timestamp start, Timestamp end);
+
+	@Query(nativeQuery = true, value = "select * from task_archive where owner_id = ?1 " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null)")
+	List<TaskArchiveEntity> findByOwnerId(long ownerId);
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically compacts idle tasks, each in its own transaction so a failure or a concurrent upload only affects
+ * the one task.
+ */
+@Slf4j
+@Component
+public class TaskCompactionScheduler {
+
+	@Autowired
+	private TaskCompactionService taskCompactionService;
+
+	@Value("${org.ideaflow.archive.compactionIntervalInHours:0}")
+	private long compactionIntervalInHours;
+	@Value("${org.ideaflow.archive.initialDelayInMinutes:30}")
+	private long initialDelayInMinutes;
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		if (compactionIntervalInHours <= 0) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("task-compaction")
+				.setDaemon(true)
+				.build());
+		executor.scheduleWithFixedDelay(this::compactIdleTasks, TimeUnit.MINUTES.toMillis(initialDelayInMinutes),
+				TimeUnit.HOURS.toMillis(compactionIntervalInHours), TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void compactIdleTasks() {
+		// an exception would cancel all later runs
+		try {
+			List<Long> taskIds = taskCompactionService.findCompactableTaskIds();
+			int compactedCount = 0;
+			for (Long taskId : taskIds) {
+				try {
+					if (taskCompactionService.compactTask(taskId)) {
+						compactedCount++;
+					}
+				} catch (RuntimeException ex) {
+					log.error("Failed to compact task, taskId={}", taskId, ex);
+				}
+			}
+			log.info("Compacted idle tasks, candidateCount={}, compactedCount={}", taskIds.size(), compactedCount);
+		} catch (RuntimeException ex) {
+			log.error("Failed to compact idle tasks", ex);
+		}
+	}
+
+}
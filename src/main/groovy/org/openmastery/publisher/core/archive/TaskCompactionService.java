@@ -0,0 +1,164 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.activity.ActivityRepository;
+import org.openmastery.publisher.core.event.EventEntity;
+import org.openmastery.publisher.core.event.EventRepository;
+import org.openmastery.time.TimeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compacts the activity and event rows of tasks which have not been modified for idleTaskAgeInDays into a single
+ * task_archive row (see TaskArchiveCodec).  IdeaFlowRelationalPersistenceService reads archived rows transparently
+ * and restores them when new data is written for the task.  Events with a comment or faq are never archived, the
+ * faq searches only read event rows (see EventRepository.findArchivableByTaskId).
+ */
+@Slf4j
+@Component
+@Transactional
+public class TaskCompactionService {
+
+	private static final int DELETE_CHUNK_SIZE = 1000;
+
+	@Autowired
+	private ActivityRepository activityRepository;
+	@Autowired
+	private EventRepository eventRepository;
+	@Autowired
+	private TaskArchiveRepository taskArchiveRepository;
+	@Autowired
+	private TimeService timeService;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${org.ideaflow.archive.idleTaskAgeInDays:180}")
+	private int idleTaskAgeInDays;
+	@Value("${org.ideaflow.archive.maxTasksPerRun:100}")
+	private int maxTasksPerRun;
+
+	private TaskArchiveCodec taskArchiveCodec = new TaskArchiveCodec();
+
+	/**
+	 * @return the ids of the least recently modified idle tasks which have rows to compact, including compacted
+	 * tasks with rows written beside their archive
+	 */
+	public List<Long> findCompactableTaskIds() {
+		Query query = entityManager.createNativeQuery("select t.id from task t " +
+				"where coalesce(t.modify_date, t.creation_date) < ?1 and t.deleted_at is null " +
+				"and (exists (select 1 from activity a where a.task_id = t.id and a.start_time < ?1) " +
+				"or exists (select 1 from event e where e.task_id = t.id and e.position < ?1 and coalesce(e.comment, '') = '' " +
+				"and not exists (select 1 from annotation an where an.task_id = e.task_id and an.type = 'faq' and an.event_id = e.id))) " +
+				"order by coalesce(t.modify_date, t.creation_date) limit ?2");
+		query.setParameter(1, Timestamp.valueOf(getIdleCutoff()));
+		query.setParameter(2, maxTasksPerRun);
+
+		List<?> taskIds = query.getResultList();
+		return taskIds.stream()
+				.map(taskId -> ((Number) taskId).longValue())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return false if the task was modified since it was found or has no rows to compact
+	 */
+	public boolean compactTask(long taskId) {
+		// the task row lock orders compaction against batch uploads, which move the modify date of the task forward
+		Query lockQuery = entityManager.createNativeQuery("select coalesce(modify_date, creation_date) from task " +
+				"where id = ?1 and deleted_at is null for update");
+		lockQuery.setParameter(1, taskId);
+		List<?> modifyDates = lockQuery.getResultList();
+		if (modifyDates.isEmpty() || ((Timestamp) modifyDates.get(0)).toLocalDateTime().isBefore(getIdleCutoff()) == false) {
+			return false;
+		}
+
+		List<ActivityEntity> activities = activityRepository.findByTaskId(taskId);
+		List<EventEntity> events = eventRepository.findArchivableByTaskId(taskId);
+		if (activities.isEmpty() && events.isEmpty()) {
+			return false;
+		}
+
+		// rows written while the task was last being compacted were left beside its archive, fold them in
+		TaskArchiveEntity existingArchive = taskArchiveRepository.findByTaskId(taskId);
+		List<ActivityEntity> archivedActivities = new ArrayList<>(activities);
+		List<EventEntity> archivedEvents = new ArrayList<>(events);
+		if (existingArchive != null) {
+			TaskArchive archive = taskArchiveCodec.decode(taskId, existingArchive.getData());
+			archivedActivities.addAll(archive.getActivities());
+			archivedEvents.addAll(archive.getEvents());
+		}
+
+		byte[] data = taskArchiveCodec.encode(archivedActivities, archivedEvents);
+		Long ownerId = activities.isEmpty() ? events.get(0).getOwnerId() : activities.get(0).getOwnerId();
+		// the range covered by the archive, so owner wide range reads only decode archives overlapping the range
+		LocalDateTime firstPosition = Stream.concat(archivedActivities.stream().map(ActivityEntity::getStart),
+				archivedEvents.stream().map(EventEntity::getPosition)).min(LocalDateTime::compareTo).orElse(null);
+		LocalDateTime lastPosition = Stream.concat(archivedActivities.stream().map(ActivityEntity::getEnd),
+				archivedEvents.stream().map(EventEntity::getPosition)).max(LocalDateTime::compareTo).orElse(null);
+		TaskArchiveEntity archive = TaskArchiveEntity.builder()
+				.taskId(taskId)
+				.ownerId(ownerId)
+				.activityCount(archivedActivities.size())
+				.eventCount(archivedEvents.size())
+				.minEventId(archivedEvents.stream().map(EventEntity::getId).min(Long::compare).orElse(null))
+				.maxEventId(archivedEvents.stream().map(EventEntity::getId).max(Long::compare).orElse(null))
+				.lastEventPosition(archivedEvents.stream().map(EventEntity::getPosition).max(LocalDateTime::compareTo).orElse(null))
+				.firstPosition(firstPosition)
+				.lastPosition(lastPosition)
+				.archiveDate(timeService.now())
+				.data(data)
+				.build();
+
+		// the rows are deleted below with native statements, don't keep stale copies in the session
+		entityManager.clear();
+		taskArchiveRepository.save(archive);
+		// delete by id rather than task, rows written since the rows were read stay in place
+		deleteByIds("activity", activities.stream().map(ActivityEntity::getId).collect(Collectors.toList()));
+		deleteByIds("event", events.stream().map(EventEntity::getId).collect(Collectors.toList()));
+
+		log.info("Compacted task, taskId={}, activityCount={}, eventCount={}, archiveBytes={}",
+				taskId, archivedActivities.size(), archivedEvents.size(), data.length);
+		return true;
+	}
+
+	private void deleteByIds(String table, List<Long> ids) {
+		for (int i = 0; i < ids.size(); i += DELETE_CHUNK_SIZE) {
+			Query query = entityManager.createNativeQuery("delete from " + table + " where id in (?1)");
+			query.setParameter(1, ids.subList(i, Math.min(i + DELETE_CHUNK_SIZE, ids.size())));
+			query.executeUpdate();
+		}
+	}
+
+	private LocalDateTime getIdleCutoff() {
+		return timeService.now().minusDays(idleTaskAgeInDays);
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.util.List;
+
+public interface BatchFingerprintRepository extends CrudRepository<BatchFingerprintEntity, String> {
+
+	/**
+	 * A fingerprint received before oldestRetained has expired and is replaced, as if it were absent.
+	 *
+	 * @return 1 if the fingerprint was recorded, 0 if it was already present
+	 */
+	@Modifying
+	@Transactional
+	@Query(nativeQuery = true, value = "insert into batch_fingerprint (fingerprint, owner_id, received_at) values (?1, ?2, ?3) " +
+			"on conflict (fingerprint) do update set owner_id = excluded.owner_id, received_at = excluded.received_at " +
+			"where batch_fingerprint.received_at < ?4")
+	int insertIfAbsent(String fingerprint, Long ownerId, Timestamp receivedAt, Timestamp oldestRetained);
+
+	@Query(nativeQuery = true, value = "select count(*) > 0 from batch_fingerprint where fingerprint = ?1 and received_at >= ?2")
+	boolean existsReceivedSince(String fingerprint, Timestamp oldestRetained);
+
+	@Modifying
+	@Transactional
+	@Query(nativeQuery = true, value = "delete from batch_fingerprint where received_at < ?1")
+	int deleteReceivedBefore(Timestamp receivedAt);
+
+	@Query(nativeQuery = true, value = "select fingerprint from batch_fingerprint")
+	List<String> findAllFingerprints();
+
+}
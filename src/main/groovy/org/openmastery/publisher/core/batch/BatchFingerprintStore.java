@@ -0,0 +1,172 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import com.bancvue.rest.config.ObjectMapperContextResolver;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.openmastery.publisher.api.batch.NewIFMBatch;
+import org.openmastery.time.TimeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers recently received batches so a batch resent by a client (e.g. after a timeout) is only stored once.
+ * A batch is identified by its client batch id or, if the client did not supply one, by a hash of its content.
+ *
+ * Fingerprints are kept in the batch_fingerprint table for the retention period; an in-memory bloom filter of the
+ * same fingerprints means the table is only read when a batch is likely to be a duplicate.
+ */
+@Slf4j
+@Component
+public class BatchFingerprintStore {
+
+	public static final String RECEIVED_COUNTER = "ifm.batch.received";
+	public static final String DUPLICATE_COUNTER = "ifm.batch.duplicate";
+
+	@Autowired
+	private BatchFingerprintRepository batchFingerprintRepository;
+	@Autowired
+	private TimeService timeService;
+	@Autowired
+	private CounterService counterService;
+
+	@Value("${org.ideaflow.batch.dedup.retentionInHours:72}")
+	private int retentionInHours;
+	@Value("${org.ideaflow.batch.dedup.expectedFingerprints:1000000}")
+	private int expectedFingerprints;
+
+	private final ObjectMapper mapper = new ObjectMapperContextResolver().getContext(null);
+	private BloomFilter<CharSequence> recentFingerprints;
+	private int recentFingerprintCount;
+
+	@PostConstruct
+	public synchronized void reload() {
+		int expiredCount = batchFingerprintRepository.deleteReceivedBefore(getOldestRetained());
+
+		List<String> fingerprints = batchFingerprintRepository.findAllFingerprints();
+		recentFingerprints = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedFingerprints, 0.01);
+		fingerprints.forEach(recentFingerprints::put);
+		recentFingerprintCount = fingerprints.size();
+		log.info("Loaded batch fingerprints, count={}, expiredCount={}", recentFingerprintCount, expiredCount);
+	}
+
+	/**
+	 * Records the batch as received.  When called within a transaction the record is rolled back with it,
+	 * so a batch which failed to save is not treated as a duplicate when it is resent.
+	 *
+	 * @return false if the batch was already received within the retention period
+	 */
+	public boolean recordIfAbsent(long userId, NewIFMBatch batch) {
+		counterService.increment(RECEIVED_COUNTER);
+
+		String fingerprint = createFingerprint(userId, batch);
+		Timestamp oldestRetained = getOldestRetained();
+		if (mightContain(fingerprint) && batchFingerprintRepository.existsReceivedSince(fingerprint, oldestRetained)) {
+			counterService.increment(DUPLICATE_COUNTER);
+			return false;
+		}
+
+		Timestamp receivedAt = Timestamp.valueOf(timeService.now());
+		if (batchFingerprintRepository.insertIfAbsent(fingerprint, userId, receivedAt, oldestRetained) == 0) {
+			counterService.increment(DUPLICATE_COUNTER);
+			return false;
+		}
+
+		put(fingerprint);
+		return true;
+	}
+
+	/**
+	 * Checks for a duplicate without recording the batch; a batch found to be a duplicate is counted as received.
+	 *
+	 * @return true if the batch was already received within the retention period
+	 */
+	public boolean isRecorded(long userId, NewIFMBatch batch) {
+		String fingerprint = createFingerprint(userId, batch);
+		if (mightContain(fingerprint) && batchFingerprintRepository.existsReceivedSince(fingerprint, getOldestRetained())) {
+			counterService.increment(RECEIVED_COUNTER);
+			counterService.increment(DUPLICATE_COUNTER);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Expired fingerprints are only deleted on reload, so every lookup applies the retention period itself.
+	 */
+	private Timestamp getOldestRetained() {
+		return Timestamp.valueOf(timeService.now().minusHours(retentionInHours));
+	}
+
+	private synchronized boolean mightContain(String fingerprint) {
+		return recentFingerprints.mightContain(fingerprint);
+	}
+
+	private void put(String fingerprint) {
+		boolean reloadRequired;
+		synchronized (this) {
+			recentFingerprints.put(fingerprint);
+			reloadRequired = ++recentFingerprintCount > expectedFingerprints;
+		}
+
+		// the false positive rate degrades past the expected count, drop expired fingerprints and start over
+		if (reloadRequired) {
+			reload();
+		}
+	}
+
+	String createFingerprint(long userId, NewIFMBatch batch) {
+		Hasher hasher = Hashing.sha256().newHasher()
+				.putLong(userId);
+
+		if (batch.getBatchId() != null) {
+			hasher.putString("id:", StandardCharsets.UTF_8)
+					.putString(batch.getBatchId(), StandardCharsets.UTF_8);
+		} else {
+			// timeSent is excluded, a client resending a batch may restamp it
+			hasher.putString("content:", StandardCharsets.UTF_8);
+			for (List<?> items : Arrays.asList(batch.getEditorActivityList(), batch.getExternalActivityList(),
+					batch.getIdleActivityList(), batch.getExecutionActivityList(), batch.getModificationActivityList(),
+					batch.getBlockActivityList(), batch.getEventList(), batch.getSnippetEventList())) {
+				hasher.putBytes(toJson(items));
+			}
+		}
+		return hasher.hash().toString();
+	}
+
+	private byte[] toJson(List<?> items) {
+		try {
+			return mapper.writeValueAsBytes(items);
+		} catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Failed to serialize batch items", ex);
+		}
+	}
+
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import com.bancvue.rest.config.ObjectMapperContextResolver;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.openmastery.publisher.api.batch.BatchItem;
+import org.openmastery.publisher.api.batch.NewIFMBatch;
+import org.openmastery.publisher.core.IFMBatchService;
+import org.openmastery.time.TimeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Accepts validated batches into a local write-ahead log and applies them to the database in the background.
+ * A batch is split by task and each task is always drained by the same thread, so items for a given task
+ * are applied in the order they were received.  Anything not yet applied is replayed on startup.
+ *
+ * A batch which fails with a non-transient error is moved to the dead-letter directory beside the log rather than
+ * dropped, the client has already been told it was accepted; ifm.batch.queue.deadLetterCount counts them.
+ * ifm.batch.queue.skippedLogBytes counts the bytes of corrupt log records skipped on startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "org.ideaflow.batch.async.enabled", havingValue = "true")
+public class BatchIngestionQueue implements PublicMetrics {
+
+	@Autowired
+	private IFMBatchService ifmBatchService;
+	@Autowired
+	private TimeService timeService;
+	@Autowired
+	private BatchFingerprintStore batchFingerprintStore;
+
+	@Value("${org.ideaflow.batch.async.logDirectory}")
+	private String logDirectory;
+	@Value("${org.ideaflow.batch.async.maxSegmentSizeInBytes:67108864}")
+	private long maxSegmentSizeInBytes;
+	@Value("${org.ideaflow.batch.async.drainerCount:4}")
+	private int drainerCount;
+	@Value("${org.ideaflow.batch.async.retryDelayInMillis:5000}")
+	private long retryDelayInMillis;
+
+	private final ObjectMapper mapper = new ObjectMapperContextResolver().getContext(null);
+	private final ConcurrentSkipListMap<Long, LocalDateTime> pendingSequenceToReceivedAt = new ConcurrentSkipListMap<>();
+	private final AtomicInteger deadLetterCount = new AtomicInteger();
+	private BatchWriteAheadLog writeAheadLog;
+	private File deadLetterDirectory;
+	private ExecutorService[] drainers;
+	private volatile boolean running;
+
+	@PostConstruct
+	public void start() throws IOException {
+		writeAheadLog = new BatchWriteAheadLog(new File(logDirectory), maxSegmentSizeInBytes);
+		List<BatchWriteAheadLog.Record> unappliedRecords = writeAheadLog.open();
+
+		deadLetterDirectory = new File(logDirectory, "dead-letter");
+		if (deadLetterDirectory.exists() == false && deadLetterDirectory.mkdirs() == false) {
+			throw new IOException("Failed to create dead-letter directory, path=" + deadLetterDirectory.getAbsolutePath());
+		}
+		String[] deadLetters = deadLetterDirectory.list();
+		deadLetterCount.set(deadLetters != null ? deadLetters.length : 0);
+		if (deadLetterCount.get() > 0) {
+			log.warn("Dead-letter directory contains batches which could not be applied, count={}, path={}",
+					deadLetterCount.get(), deadLetterDirectory.getAbsolutePath());
+		}
+
+		drainers = new ExecutorService[drainerCount];
+		for (int i = 0; i < drainerCount; i++) {
+			drainers[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("ifm-batch-drainer-" + i)
+					.build());
+		}
+		running = true;
+
+		if (unappliedRecords.isEmpty() == false) {
+			log.info("Replaying unapplied batches from write-ahead log, count={}", unappliedRecords.size());
+		}
+		for (BatchWriteAheadLog.Record record : unappliedRecords) {
+			BatchLogEntry entry;
+			try {
+				entry = mapper.readValue(record.getPayload(), BatchLogEntry.class);
+			} catch (IOException ex) {
+				log.error("Discarding unreadable write-ahead log record, sequence={}", record.getSequence(), ex);
+				writeAheadLog.acknowledge(record.getSequence());
+				continue;
+			}
+			dispatch(record.getSequence(), entry);
+		}
+	}
+
+	@PreDestroy
+	public void stop() throws IOException, InterruptedException {
+		running = false;
+		for (ExecutorService drainer : drainers) {
+			drainer.shutdownNow();
+		}
+		for (ExecutorService drainer : drainers) {
+			drainer.awaitTermination(30, TimeUnit.SECONDS);
+		}
+		writeAheadLog.close();
+	}
+
+	/**
+	 * Verifies the user owns every task referenced by the batch, then durably records the batch for
+	 * asynchronous application.  Once this method returns the batch will survive a restart.
+	 */
+	public void enqueue(long userId, NewIFMBatch batch) {
+		ifmBatchService.assertAllBatchItemsAreAssociatedWithTasksOwnedByUser(userId, batch);
+		if (batch.isEmpty() || batchFingerprintStore.isRecorded(userId, batch)) {
+			return;
+		}
+
+		LocalDateTime receivedAt = timeService.now();
+		List<BatchLogEntry> entries = new ArrayList<>();
+		List<byte[]> payloads = new ArrayList<>();
+		for (Long taskId : getTaskIds(batch)) {
+			BatchLogEntry entry = BatchLogEntry.builder()
+					.userId(userId)
+					.taskId(taskId)
+					.receivedAt(receivedAt)
+					.batch(filterByTask(batch, taskId))
+					.build();
+			entries.add(entry);
+			payloads.add(toBytes(entry));
+		}
+
+		List<Long> sequences = appendAndDispatch(entries, payloads);
+		try {
+			writeAheadLog.awaitDurable(sequences.get(sequences.size() - 1));
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to force batch to write-ahead log", ex);
+		}
+		// recorded only once durable, a failed append must not cause the client's retry to be discarded
+		if (batchFingerprintStore.recordIfAbsent(userId, batch) == false) {
+			log.info("Duplicate batch received concurrently and queued twice, userId={}, batchId={}", userId, batch.getBatchId());
+		}
+	}
+
+	// appending and dispatching must happen together so that log order and drain order agree for each task; the log
+	// is forced after the lock is released, so concurrent enqueues share a force and drains wait for it
+	private synchronized List<Long> appendAndDispatch(List<BatchLogEntry> entries, List<byte[]> payloads) {
+		List<Long> sequences;
+		try {
+			sequences = writeAheadLog.writeAll(payloads);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to append batch to write-ahead log", ex);
+		}
+
+		for (int i = 0; i < entries.size(); i++) {
+			dispatch(sequences.get(i), entries.get(i));
+		}
+		return sequences;
+	}
+
+	private synchronized void dispatch(long sequence, BatchLogEntry entry) {
+		pendingSequenceToReceivedAt.put(sequence, entry.getReceivedAt());
+		int drainerIndex = (int) Math.floorMod(entry.getTaskId(), (long) drainers.length);
+		drainers[drainerIndex].execute(() -> drain(sequence, entry));
+	}
+
+	private void drain(long sequence, BatchLogEntry entry) {
+		try {
+			// a batch applied before it was durable would be applied again when the client retries the failed enqueue
+			writeAheadLog.awaitDurable(sequence);
+		} catch (IOException ex) {
+			log.error("Failed to force batch to write-ahead log, leaving it to be replayed on restart, sequence={}", sequence, ex);
+			pendingSequenceToReceivedAt.remove(sequence);
+			return;
+		}
+
+		if (applyOrDeadLetter(sequence, entry) == false) {
+			// shutting down, leave the record in the log so it is replayed on restart
+			return;
+		}
+
+		try {
+			writeAheadLog.acknowledge(sequence);
+		} catch (IOException ex) {
+			// the batch will be applied a second time on restart
+			log.error("Failed to acknowledge applied batch, sequence={}", sequence, ex);
+		}
+		pendingSequenceToReceivedAt.remove(sequence);
+	}
+
+	/**
+	 * @return true once the batch has been applied or moved to the dead-letter directory, whether or not the queue
+	 * is still running; false if it must stay in the log
+	 */
+	private boolean applyOrDeadLetter(long sequence, BatchLogEntry entry) {
+		NewIFMBatch batch = entry.getBatch();
+		Duration adjustment = Duration.between(batch.getTimeSent(), entry.getReceivedAt());
+
+		while (running) {
+			try {
+				ifmBatchService.applyIFMBatch(entry.getUserId(), batch, adjustment);
+				return true;
+			} catch (TransientDataAccessException | CannotCreateTransactionException ex) {
+				log.warn("Failed to apply batch, will retry, sequence={}, taskId={}", sequence, entry.getTaskId(), ex);
+				try {
+					Thread.sleep(retryDelayInMillis);
+				} catch (InterruptedException iex) {
+					return false;
+				}
+			} catch (Exception ex) {
+				// a failure caused by shutting down (e.g. an interrupted connection) is not the batch's fault
+				if (running == false) {
+					return false;
+				}
+				return deadLetter(sequence, entry, ex);
+			}
+		}
+		return false;
+	}
+
+	private boolean deadLetter(long sequence, BatchLogEntry entry, Exception cause) {
+		File deadLetterFile = new File(deadLetterDirectory, String.format("%020d.json", sequence));
+		try (FileOutputStream outputStream = new FileOutputStream(deadLetterFile)) {
+			outputStream.write(toBytes(entry));
+			outputStream.getFD().sync();
+		} catch (IOException | UncheckedIOException ex) {
+			log.error("Failed to dead-letter batch which could not be applied, leaving it in the log, sequence={}, taskId={}",
+					sequence, entry.getTaskId(), ex);
+			return false;
+		}
+
+		deadLetterCount.incrementAndGet();
+		log.error("Dead-lettered batch which could not be applied, sequence={}, taskId={}, path={}",
+				sequence, entry.getTaskId(), deadLetterFile.getAbsolutePath(), cause);
+		return true;
+	}
+
+	private byte[] toBytes(BatchLogEntry entry) {
+		try {
+			return mapper.writeValueAsBytes(entry);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to serialize batch", ex);
+		}
+	}
+
+	private Set<Long> getTaskIds(NewIFMBatch batch) {
+		Set<Long> taskIds = new TreeSet<>();
+		for (BatchItem item : batch.getBatchItems()) {
+			taskIds.add(item.getTaskId());
+		}
+		return taskIds;
+	}
+
+	private NewIFMBatch filterByTask(NewIFMBatch batch, Long taskId) {
+		return NewIFMBatch.builder()
+				.timeSent(batch.getTimeSent())
+				.editorActivityList(filterByTask(batch.getEditorActivityList(), taskId))
+				.externalActivityList(filterByTask(batch.getExternalActivityList(), taskId))
+				.idleActivityList(filterByTask(batch.getIdleActivityList(), taskId))
+				.executionActivityList(filterByTask(batch.getExecutionActivityList(), taskId))
+				.modificationActivityList(filterByTask(batch.getModificationActivityList(), taskId))
+				.blockActivityList(filterByTask(batch.getBlockActivityList(), taskId))
+				.eventList(filterByTask(batch.getEventList(), taskId))
+				.snippetEventList(filterByTask(batch.getSnippetEventList(), taskId))
+				.build();
+	}
+
+	private <T extends BatchItem> List<T> filterByTask(List<T> items, Long taskId) {
+		if (items == null) {
+			return Collections.emptyList();
+		}
+		return items.stream()
+				.filter(item -> taskId.equals(item.getTaskId()))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Map.Entry<Long, LocalDateTime> oldestPending = pendingSequenceToReceivedAt.firstEntry();
+		long drainLagInMillis = 0;
+		if (oldestPending != null) {
+			drainLagInMillis = Math.max(0, Duration.between(oldestPending.getValue(), timeService.now()).toMillis());
+		}
+
+		return Arrays.asList(
+				new Metric<>("ifm.batch.queue.depth", pendingSequenceToReceivedAt.size()),
+				new Metric<>("ifm.batch.queue.drainLagInMillis", drainLagInMillis),
+				new Metric<>("ifm.batch.queue.segmentCount", writeAheadLog.getSegmentCount()),
+				new Metric<>("ifm.batch.queue.deadLetterCount", deadLetterCount.get()),
+				new Metric<>("ifm.batch.queue.skippedLogBytes", writeAheadLog.getSkippedByteCount())
+		);
+	}
+
+}
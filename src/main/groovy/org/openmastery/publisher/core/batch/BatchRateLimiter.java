@@ -0,0 +1,143 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Shapes batch ingestion per user with two token buckets, one for rows (batch items) and one for request bytes,
+ * so a single client replaying a large backlog can't saturate the database for everyone else.  A limit of zero
+ * or less disables that bucket.
+ *
+ * The fast path is lock-free: the user's buckets are looked up without locking once created, and acquiring
+ * tokens is a compare-and-set.
+ */
+@Component
+public class BatchRateLimiter implements PublicMetrics {
+
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	private final long rowsPerSecond;
+	private final long bytesPerSecond;
+	private final long burstSeconds;
+	private final LongSupplier nanoClock;
+	private final Map<Long, UserLimit> userLimits = new ConcurrentHashMap<>();
+	// counts are not tagged by user, a tag per user would make the number of metrics grow with the user base
+	private final LongAdder admittedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	@Autowired
+	public BatchRateLimiter(@Value("${org.ideaflow.batch.rateLimit.rowsPerSecond:0}") long rowsPerSecond,
+	                        @Value("${org.ideaflow.batch.rateLimit.bytesPerSecond:0}") long bytesPerSecond,
+	                        @Value("${org.ideaflow.batch.rateLimit.burstSeconds:10}") long burstSeconds) {
+		this(rowsPerSecond, bytesPerSecond, burstSeconds, System::nanoTime);
+	}
+
+	BatchRateLimiter(long rowsPerSecond, long bytesPerSecond, long burstSeconds, LongSupplier nanoClock) {
+		this.rowsPerSecond = rowsPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+		this.burstSeconds = burstSeconds;
+		this.nanoClock = nanoClock;
+	}
+
+	public boolean isEnabled() {
+		return rowsPerSecond > 0 || bytesPerSecond > 0;
+	}
+
+	/**
+	 * Admits the batch if the user is within their limits.
+	 *
+	 * @return Duration.ZERO if the batch was admitted, otherwise how long the user should wait before retrying
+	 */
+	public Duration tryAcquire(long userId, long rows, long bytes) {
+		if (isEnabled() == false) {
+			return Duration.ZERO;
+		}
+
+		UserLimit userLimit = getUserLimit(userId);
+		long now = nanoClock.getAsLong();
+		long waitNanos = 0;
+		if (userLimit.rowBucket != null) {
+			waitNanos = userLimit.rowBucket.tryAcquire(rows, now);
+		}
+		if (waitNanos == 0 && userLimit.byteBucket != null) {
+			waitNanos = userLimit.byteBucket.tryAcquire(bytes, now);
+			if (waitNanos > 0 && userLimit.rowBucket != null) {
+				userLimit.rowBucket.release(rows);
+			}
+		}
+
+		if (waitNanos > 0) {
+			rejectedCount.increment();
+			return Duration.ofNanos(waitNanos);
+		}
+		admittedCount.increment();
+		return Duration.ZERO;
+	}
+
+	public static Response createTooManyRequestsResponse(Duration retryAfter) {
+		long retryAfterSeconds = (retryAfter.toMillis() + 999) / 1000;
+		return Response.status(TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+				.build();
+	}
+
+	private UserLimit getUserLimit(long userId) {
+		// get first, computeIfAbsent locks the bin even when the key is present
+		UserLimit userLimit = userLimits.get(userId);
+		if (userLimit == null) {
+			userLimit = userLimits.computeIfAbsent(userId, (key) -> new UserLimit(nanoClock.getAsLong()));
+		}
+		return userLimit;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<>("ifm.batch.throttle.admitted", admittedCount.sum()));
+		metrics.add(new Metric<>("ifm.batch.throttle.rejected", rejectedCount.sum()));
+		metrics.add(new Metric<>("ifm.batch.throttle.users", userLimits.size()));
+		return metrics;
+	}
+
+	private class UserLimit {
+
+		private final TokenBucket rowBucket;
+		private final TokenBucket byteBucket;
+
+		UserLimit(long nowNanos) {
+			rowBucket = rowsPerSecond > 0 ? new TokenBucket(rowsPerSecond, rowsPerSecond * burstSeconds, nowNanos) : null;
+			byteBucket = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond * burstSeconds, nowNanos) : null;
+		}
+
+	}
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import com.bancvue.rest.config.ObjectMapperContextResolver;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openmastery.publisher.api.activity.NewBlockActivity;
+import org.openmastery.publisher.api.activity.NewEditorActivity;
+import org.openmastery.publisher.api.activity.NewExecutionActivity;
+import org.openmastery.publisher.api.activity.NewExternalActivity;
+import org.openmastery.publisher.api.activity.NewIdleActivity;
+import org.openmastery.publisher.api.activity.NewModificationActivity;
+import org.openmastery.publisher.api.batch.NewBatchEvent;
+import org.openmastery.publisher.api.batch.NewIFMBatch;
+import org.openmastery.publisher.api.event.NewSnippetEvent;
+import org.openmastery.publisher.core.stub.JSONConverter;
+
+import javax.ws.rs.BadRequestException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally reads a newline-delimited JSON batch.  The first line is a header holding the time the
+ * batch was sent, each following line holds a single item keyed by its type name, e.g.
+ *
+ * <pre>
+ * {"timeSent": ...}
+ * {"EditorActivity": {"taskId": 1, ...}}
+ * {"Event": {"taskId": 1, ...}}
+ * </pre>
+ *
+ * Items are handed off in batches of at most chunkSize items so memory use does not depend on stream length.
+ */
+public class BatchStreamReader {
+
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+	private static final String TIME_SENT_FIELD = "timeSent";
+
+	private final Map<String, Class> typeNameToClassMap = JSONConverter.createIdToClassMap();
+	private final ObjectMapper mapper;
+
+	public BatchStreamReader() {
+		this(new ObjectMapperContextResolver().getContext(null));
+	}
+
+	public BatchStreamReader(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @return the total number of items read
+	 */
+	public int read(InputStream inputStream, int chunkSize, Consumer<NewIFMBatch> chunkConsumer) {
+		try (JsonParser parser = mapper.getFactory().createParser(inputStream)) {
+			LocalDateTime timeSent = readTimeSent(parser);
+
+			NewIFMBatch.NewIFMBatchBuilder chunk = NewIFMBatch.builder().timeSent(timeSent);
+			int chunkItemCount = 0;
+			int totalItemCount = 0;
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token != JsonToken.START_OBJECT) {
+					throw new BadRequestException("Expected batch item object at line " + getLine(parser));
+				}
+				addItem(chunk, readItem(parser));
+				totalItemCount++;
+
+				if (++chunkItemCount == chunkSize) {
+					chunkConsumer.accept(chunk.build());
+					chunk = NewIFMBatch.builder().timeSent(timeSent);
+					chunkItemCount = 0;
+				}
+			}
+
+			if (chunkItemCount > 0) {
+				chunkConsumer.accept(chunk.build());
+			}
+			return totalItemCount;
+		} catch (JsonParseException | JsonMappingException ex) {
+			throw new BadRequestException("Malformed batch stream: " + ex.getOriginalMessage(), ex);
+		} catch (IOException ex) {
+			throw new BadRequestException("Failed to read batch stream", ex);
+		}
+	}
+
+	private LocalDateTime readTimeSent(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT
+				|| parser.nextToken() != JsonToken.FIELD_NAME
+				|| TIME_SENT_FIELD.equals(parser.getCurrentName()) == false) {
+			throw new BadRequestException("Batch stream must start with a " + TIME_SENT_FIELD + " header");
+		}
+		parser.nextToken();
+		LocalDateTime timeSent = mapper.readValue(parser, LocalDateTime.class);
+		assertEndOfLine(parser);
+		return timeSent;
+	}
+
+	private Object readItem(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.FIELD_NAME) {
+			throw new BadRequestException("Expected batch item type name at line " + getLine(parser));
+		}
+		String typeName = parser.getCurrentName();
+		Class clazz = typeNameToClassMap.get(typeName);
+		if (clazz == null) {
+			throw new BadRequestException("Unknown batch item type '" + typeName + "' at line " + getLine(parser));
+		}
+
+		parser.nextToken();
+		Object item = mapper.readValue(parser, clazz);
+		assertEndOfLine(parser);
+		return item;
+	}
+
+	private void assertEndOfLine(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.END_OBJECT) {
+			throw new BadRequestException("Expected a single entry per line at line " + getLine(parser));
+		}
+	}
+
+	private int getLine(JsonParser parser) {
+		return parser.getCurrentLocation().getLineNr();
+	}
+
+	private void addItem(NewIFMBatch.NewIFMBatchBuilder chunk, Object item) {
+		if (item instanceof NewEditorActivity) {
+			chunk.editorActivity((NewEditorActivity) item);
+		} else if (item instanceof NewExternalActivity) {
+			chunk.externalActivity((NewExternalActivity) item);
+		} else if (item instanceof NewIdleActivity) {
+			chunk.idleActivity((NewIdleActivity) item);
+		} else if (item instanceof NewExecutionActivity) {
+			chunk.executionActivity((NewExecutionActivity) item);
+		} else if (item instanceof NewModificationActivity) {
+			chunk.modificationActivity((NewModificationActivity) item);
+		} else if (item instanceof NewBlockActivity) {
+			chunk.blockActivity((NewBlockActivity) item);
+		} else if (item instanceof NewSnippetEvent) {
+			chunk.snippetEvent((NewSnippetEvent) item);
+		} else if (item instanceof NewBatchEvent) {
+			chunk.event((NewBatchEvent) item);
+		} else {
+			throw new UnsupportedOperationException("Unsupported object type being added to batch! " + item);
+		}
+	}
+
+}
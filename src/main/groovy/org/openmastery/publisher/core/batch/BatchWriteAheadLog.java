@@ -0,0 +1,443 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented log of opaque records.  Records are written under the log's lock and forced to disk
+ * outside of it, so appends which arrive while the log is being forced share the next force (group commit).
+ * Each record is retained until acknowledged.  A segment file is deleted once it is no longer written to and
+ * every record in it has been acknowledged.
+ *
+ * A segment containing a corrupt record is moved to the corrupt directory beside the log, rather than deleted,
+ * once its readable records have been acknowledged.
+ *
+ * Record layout: [int payload length][long sequence][int crc32 of payload][payload]
+ */
+@Slf4j
+public class BatchWriteAheadLog implements Closeable {
+
+	private static final String SEGMENT_SUFFIX = ".segment";
+	private static final String ACK_SUFFIX = ".ack";
+	private static final String CORRUPT_DIRECTORY = "corrupt";
+	private static final int RECORD_HEADER_SIZE = 4 + 8 + 4;
+
+	private final File directory;
+	private final long maxSegmentSizeInBytes;
+	private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+	// held while forcing the log, taken before the log's lock and never the other way around
+	private final Object forceLock = new Object();
+	private Segment activeSegment;
+	private long nextSequence;
+	// every record with a lower sequence has been forced to disk
+	private volatile long durableSequence;
+	private long skippedByteCount;
+
+	public BatchWriteAheadLog(File directory, long maxSegmentSizeInBytes) {
+		this.directory = directory;
+		this.maxSegmentSizeInBytes = maxSegmentSizeInBytes;
+	}
+
+	/**
+	 * Opens the log, returning every record which was appended but never acknowledged, in sequence order.
+	 * A partially written record at the end of a segment (e.g. from a crash mid-append) is discarded.  A record
+	 * which fails its checksum is skipped and the records after it are still returned.
+	 */
+	public synchronized List<Record> open() throws IOException {
+		if (directory.exists() == false && directory.mkdirs() == false) {
+			throw new IOException("Failed to create write-ahead log directory, path=" + directory.getAbsolutePath());
+		}
+
+		List<Record> unacknowledgedRecords = new ArrayList<>();
+		for (long segmentId : findSegmentIds()) {
+			Segment segment = new Segment(segmentId);
+			Set<Long> acknowledgedSequences = segment.readAcknowledgedSequences();
+			nextSequence = Math.max(nextSequence, segmentId);
+
+			for (Record record : segment.readRecords()) {
+				nextSequence = Math.max(nextSequence, record.sequence + 1);
+				if (acknowledgedSequences.contains(record.sequence) == false) {
+					segment.pendingSequences.add(record.sequence);
+					unacknowledgedRecords.add(record);
+				}
+			}
+
+			if (segment.skippedBytes > 0) {
+				skippedByteCount += segment.skippedBytes;
+				if (segment.corrupt) {
+					log.error("Skipped corrupt records in write-ahead log segment, the segment will be moved to {} once " +
+							"its readable records are applied, path={}, skippedBytes={}", CORRUPT_DIRECTORY,
+							segment.segmentFile.getAbsolutePath(), segment.skippedBytes);
+				} else {
+					log.warn("Discarded partially written record at the end of write-ahead log segment, path={}, skippedBytes={}",
+							segment.segmentFile.getAbsolutePath(), segment.skippedBytes);
+				}
+			}
+
+			if (segment.pendingSequences.isEmpty()) {
+				segment.remove();
+			} else {
+				segment.openAckChannel();
+				segments.put(segmentId, segment);
+			}
+		}
+
+		rollSegment();
+		durableSequence = nextSequence;
+		return unacknowledgedRecords;
+	}
+
+	/**
+	 * Appends the payloads as consecutive records within a single segment and forces them to disk.
+	 *
+	 * @return the sequence assigned to each payload, in order
+	 */
+	public List<Long> appendAll(List<byte[]> payloads) throws IOException {
+		List<Long> sequences = writeAll(payloads);
+		awaitDurable(sequences.get(sequences.size() - 1));
+		return sequences;
+	}
+
+	/**
+	 * Appends the payloads as consecutive records within a single segment without forcing them to disk, the
+	 * records are not durable until {@link #awaitDurable(long)} returns for the last of them.
+	 *
+	 * @return the sequence assigned to each payload, in order
+	 */
+	public synchronized List<Long> writeAll(List<byte[]> payloads) throws IOException {
+		assertOpen();
+
+		int batchSize = 0;
+		for (byte[] payload : payloads) {
+			batchSize += RECORD_HEADER_SIZE + payload.length;
+		}
+		if (activeSegment.size > 0 && activeSegment.size + batchSize > maxSegmentSizeInBytes) {
+			rollSegment();
+		}
+
+		List<Long> sequences = new ArrayList<>(payloads.size());
+		ByteBuffer buffer = ByteBuffer.allocate(batchSize);
+		for (byte[] payload : payloads) {
+			long sequence = nextSequence + sequences.size();
+			buffer.putInt(payload.length);
+			buffer.putLong(sequence);
+			buffer.putInt(checksum(payload));
+			buffer.put(payload);
+			sequences.add(sequence);
+		}
+		buffer.flip();
+
+		try {
+			while (buffer.hasRemaining()) {
+				activeSegment.writeChannel.write(buffer);
+			}
+		} catch (IOException ex) {
+			// a partial record must stay at the end of its segment, where it reads as a torn write
+			try {
+				rollSegment();
+			} catch (IOException rollEx) {
+				ex.addSuppressed(rollEx);
+			}
+			throw ex;
+		}
+		nextSequence += sequences.size();
+		activeSegment.size += batchSize;
+		activeSegment.pendingSequences.addAll(sequences);
+		return sequences;
+	}
+
+	/**
+	 * Blocks until the record with the sequence, and every record before it, has been forced to disk.  Callers
+	 * which arrive while the log is being forced wait for that force to complete, then a single force covers every
+	 * record written in the meantime.
+	 */
+	public void awaitDurable(long sequence) throws IOException {
+		if (sequence < durableSequence) {
+			return;
+		}
+
+		synchronized (forceLock) {
+			if (sequence < durableSequence) {
+				return;
+			}
+
+			long writtenSequence;
+			FileChannel writeChannel;
+			synchronized (this) {
+				assertOpen();
+				writtenSequence = nextSequence;
+				writeChannel = activeSegment.writeChannel;
+			}
+			try {
+				writeChannel.force(false);
+			} catch (ClosedChannelException ex) {
+				// the segment was rolled or the log closed, both force the channel before closing it
+			}
+			durableSequence = writtenSequence;
+		}
+	}
+
+	/**
+	 * Marks the record as applied so it will not be returned by a subsequent {@link #open()}.
+	 */
+	public synchronized void acknowledge(long sequence) throws IOException {
+		assertOpen();
+
+		Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+		if (entry == null || entry.getValue().pendingSequences.remove(sequence) == false) {
+			return;
+		}
+
+		Segment segment = entry.getValue();
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(sequence);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			segment.ackChannel.write(buffer);
+		}
+		segment.ackChannel.force(false);
+
+		if (segment != activeSegment && segment.pendingSequences.isEmpty()) {
+			segments.remove(segment.id);
+			segment.remove();
+		}
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * @return the bytes of corrupt or partially written records skipped when the log was opened
+	 */
+	public synchronized long getSkippedByteCount() {
+		return skippedByteCount;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (Segment segment : segments.values()) {
+			segment.close();
+		}
+		segments.clear();
+		activeSegment = null;
+	}
+
+	private void assertOpen() {
+		if (activeSegment == null) {
+			throw new IllegalStateException("Write-ahead log is not open, path=" + directory.getAbsolutePath());
+		}
+	}
+
+	private void rollSegment() throws IOException {
+		if (activeSegment != null) {
+			activeSegment.closeWriteChannel();
+			if (activeSegment.pendingSequences.isEmpty()) {
+				segments.remove(activeSegment.id);
+				activeSegment.remove();
+			}
+		}
+
+		activeSegment = new Segment(nextSequence);
+		activeSegment.openWriteChannel();
+		activeSegment.openAckChannel();
+		segments.put(activeSegment.id, activeSegment);
+	}
+
+	private List<Long> findSegmentIds() {
+		List<Long> segmentIds = new ArrayList<>();
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				segmentIds.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+			}
+		}
+		segmentIds.sort(null);
+		return segmentIds;
+	}
+
+	private static int checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+
+	@Getter
+	@AllArgsConstructor
+	public static class Record {
+		private final long sequence;
+		private final byte[] payload;
+	}
+
+	private class Segment {
+
+		private final long id;
+		private final File segmentFile;
+		private final File ackFile;
+		private final Set<Long> pendingSequences = new HashSet<>();
+		private FileChannel writeChannel;
+		private FileChannel ackChannel;
+		private long size;
+		private long skippedBytes;
+		private boolean corrupt;
+
+		Segment(long id) {
+			this.id = id;
+			String baseName = String.format("%020d", id);
+			this.segmentFile = new File(directory, baseName + SEGMENT_SUFFIX);
+			this.ackFile = new File(directory, baseName + ACK_SUFFIX);
+		}
+
+		void openWriteChannel() throws IOException {
+			writeChannel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+			size = writeChannel.size();
+		}
+
+		void openAckChannel() throws IOException {
+			ackChannel = FileChannel.open(ackFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		}
+
+		List<Record> readRecords() throws IOException {
+			List<Record> records = new ArrayList<>();
+			try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+				long remaining = channel.size();
+				while (remaining >= RECORD_HEADER_SIZE) {
+					header.clear();
+					readFully(channel, header);
+					int length = header.getInt(0);
+					long sequence = header.getLong(4);
+					int crc = header.getInt(12);
+					remaining -= RECORD_HEADER_SIZE;
+					if (length < 0 || length > remaining) {
+						// without a usable length nothing after this point can be framed
+						corrupt |= length < 0;
+						skippedBytes += RECORD_HEADER_SIZE;
+						break;
+					}
+
+					ByteBuffer payload = ByteBuffer.allocate(length);
+					readFully(channel, payload);
+					remaining -= length;
+					if (checksum(payload.array()) != crc) {
+						// the length was readable, so the records after this one can still be read
+						corrupt = true;
+						skippedBytes += RECORD_HEADER_SIZE + length;
+						continue;
+					}
+					records.add(new Record(sequence, payload.array()));
+				}
+				skippedBytes += remaining;
+			}
+			return records;
+		}
+
+		Set<Long> readAcknowledgedSequences() throws IOException {
+			Set<Long> sequences = new HashSet<>();
+			if (ackFile.exists()) {
+				try (FileChannel channel = FileChannel.open(ackFile.toPath(), StandardOpenOption.READ)) {
+					ByteBuffer buffer = ByteBuffer.allocate(8);
+					for (long remaining = channel.size(); remaining >= 8; remaining -= 8) {
+						buffer.clear();
+						readFully(channel, buffer);
+						sequences.add(buffer.getLong(0));
+					}
+				}
+			}
+			return sequences;
+		}
+
+		void closeWriteChannel() throws IOException {
+			if (writeChannel != null) {
+				// records may have been written since the log was last forced, see awaitDurable
+				writeChannel.force(false);
+				writeChannel.close();
+				writeChannel = null;
+			}
+		}
+
+		void close() throws IOException {
+			closeWriteChannel();
+			if (ackChannel != null) {
+				ackChannel.close();
+				ackChannel = null;
+			}
+		}
+
+		void remove() throws IOException {
+			close();
+			if (corrupt) {
+				moveToCorruptDirectory();
+				return;
+			}
+
+			if (segmentFile.delete() == false && segmentFile.exists()) {
+				throw new IOException("Failed to delete segment, path=" + segmentFile.getAbsolutePath());
+			}
+			if (ackFile.delete() == false && ackFile.exists()) {
+				throw new IOException("Failed to delete segment acknowledgements, path=" + ackFile.getAbsolutePath());
+			}
+		}
+
+		private void moveToCorruptDirectory() throws IOException {
+			File corruptDirectory = new File(directory, CORRUPT_DIRECTORY);
+			if (corruptDirectory.exists() == false && corruptDirectory.mkdirs() == false) {
+				throw new IOException("Failed to create corrupt segment directory, path=" + corruptDirectory.getAbsolutePath());
+			}
+			Files.move(segmentFile.toPath(), new File(corruptDirectory, segmentFile.getName()).toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			if (ackFile.exists()) {
+				Files.move(ackFile.toPath(), new File(corruptDirectory, ackFile.getName()).toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			log.warn("Moved corrupt write-ahead log segment aside, path={}", new File(corruptDirectory, segmentFile.getName()).getAbsolutePath());
+		}
+
+		private void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Unexpected end of file, path=" + segmentFile.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+}
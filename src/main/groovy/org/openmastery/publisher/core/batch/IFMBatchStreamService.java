@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import com.google.common.io.CountingInputStream;
+import org.openmastery.publisher.api.batch.BatchItem;
+import org.openmastery.publisher.api.batch.NewIFMBatch;
+import org.openmastery.publisher.core.IFMBatchService;
+import org.openmastery.publisher.security.InvocationContext;
+import org.openmastery.time.TimeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.ClientErrorException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+@Component
+public class IFMBatchStreamService {
+
+	@Autowired
+	private IFMBatchService ifmBatchService;
+	@Autowired
+	private InvocationContext invocationContext;
+	@Autowired
+	private TimeService timeService;
+	@Autowired
+	private BatchRateLimiter batchRateLimiter;
+
+	@Value("${org.ideaflow.batch.stream.chunkSize:500}")
+	private int chunkSize;
+
+	private final BatchStreamReader batchStreamReader = new BatchStreamReader();
+
+	/**
+	 * Persists a newline-delimited batch as it is read, committing every chunkSize items.  If the stream is
+	 * malformed or references a task the caller does not own, chunks committed before that point are retained.
+	 * A chunk over the user's ingestion rate is rejected with 429 (Too Many Requests) and a Retry-After header,
+	 * as the batch endpoint does, rather than holding the request thread until the user is within the rate.
+	 *
+	 * @return the number of items persisted
+	 */
+	public int addIFMBatchStream(InputStream inputStream) {
+		long userId = invocationContext.getUserId();
+		// the clock skew is relative to when the upload started, not to when each chunk is read
+		LocalDateTime receivedAt = timeService.now();
+		Set<Long> verifiedTaskIds = new HashSet<>();
+		CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+		long[] bytesCharged = new long[1];
+
+		return batchStreamReader.read(countingInputStream, chunkSize, (NewIFMBatch chunk) -> {
+			long chunkBytes = countingInputStream.getCount() - bytesCharged[0];
+			bytesCharged[0] += chunkBytes;
+			rejectIfOverRateLimit(userId, chunk.getBatchItems().size(), chunkBytes);
+
+			Set<Long> unverifiedTaskIds = new HashSet<>();
+			for (BatchItem item : chunk.getBatchItems()) {
+				if (verifiedTaskIds.contains(item.getTaskId()) == false) {
+					unverifiedTaskIds.add(item.getTaskId());
+				}
+			}
+			ifmBatchService.assertAllTasksOwnedByUser(userId, unverifiedTaskIds);
+			verifiedTaskIds.addAll(unverifiedTaskIds);
+
+			Duration adjustment = Duration.between(chunk.getTimeSent(), receivedAt);
+			ifmBatchService.applyIFMBatch(userId, chunk, adjustment);
+		});
+	}
+
+	private void rejectIfOverRateLimit(long userId, int rows, long bytes) {
+		Duration retryAfter = batchRateLimiter.tryAcquire(userId, rows, bytes);
+		if (retryAfter.isZero() == false) {
+			throw new ClientErrorException(BatchRateLimiter.createTooManyRequestsResponse(retryAfter));
+		}
+	}
+
+}
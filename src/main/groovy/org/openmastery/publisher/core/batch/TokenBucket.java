@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm: rather than a token count, the bucket
+ * stores the time at which it will next be full, so acquiring is a single compare-and-set.
+ *
+ * An acquisition larger than the bucket capacity is allowed once the bucket is full, so an oversized request
+ * is delayed rather than rejected forever.
+ */
+class TokenBucket {
+
+	private final long nanosPerToken;
+	private final long capacityInNanos;
+	private final AtomicLong fullAtNanos;
+
+	TokenBucket(long tokensPerSecond, long burstCapacity, long nowNanos) {
+		this.nanosPerToken = Math.max(1, 1_000_000_000L / tokensPerSecond);
+		this.capacityInNanos = burstCapacity * nanosPerToken;
+		this.fullAtNanos = new AtomicLong(nowNanos);
+	}
+
+	/**
+	 * @return 0 if the tokens were acquired, otherwise the nanos until they can be acquired
+	 */
+	long tryAcquire(long tokens, long nowNanos) {
+		long cost = getCost(tokens);
+		while (true) {
+			long fullAt = fullAtNanos.get();
+			long newFullAt = Math.max(fullAt, nowNanos) + cost;
+			long waitNanos = newFullAt - nowNanos - capacityInNanos;
+			if (waitNanos > 0) {
+				return waitNanos;
+			}
+			if (fullAtNanos.compareAndSet(fullAt, newFullAt)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns tokens acquired by a request that was subsequently rejected by another bucket.
+	 */
+	void release(long tokens) {
+		long cost = getCost(tokens);
+		fullAtNanos.addAndGet(-cost);
+	}
+
+	private long getCost(long tokens) {
+		return Math.min(tokens * nanosPerToken, capacityInNanos);
+	}
+
+}
@@ -0,0 +1,671 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded;
+
+import org.openmastery.publisher.api.ideaflow.IdeaFlowStateType;
+import org.openmastery.publisher.core.annotation.AnnotationEntity;
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity;
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity;
+import org.openmastery.publisher.core.task.TaskEntity;
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity;
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateScope;
+import org.openmastery.publisher.ideaflow.IdeaFlowStateEntity;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import javax.persistence.DiscriminatorValue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Tasks, idea flow states and annotations, which are few and small, held in memory and made durable by a journal.
+ * Each journal record holds the changes of one operation with their assigned ids, so an operation is either
+ * replayed in full or not at all and replaying a record a second time has no further effect.  Changes are applied
+ * by decoding the journal record, so the catalog holds its own copies of saved entities.
+ *
+ * On open the snapshot is loaded and the journal replayed over it; writeSnapshot() replaces the snapshot with the
+ * current state and truncates the journal.  A journal record which was only partially written is discarded.
+ *
+ * Reads are lock free; changes are serialized so journal order matches the order they are applied in.
+ *
+ * Record layout (catalog.snapshot, catalog.journal): [int payload length][int crc32 of payload][payload]
+ */
+class EmbeddedCatalog implements Closeable {
+
+	private static final String SNAPSHOT_FILE = "catalog.snapshot";
+	private static final String JOURNAL_FILE = "catalog.journal";
+	private static final int RECORD_HEADER_SIZE = 4 + 4;
+
+	private static final byte NEXT_IDS = 1;
+	private static final byte SAVE_TASK = 2;
+	private static final byte DELETE_TASK = 3;
+	private static final byte SAVE_STATE = 4;
+	private static final byte SAVE_PARTIAL_STATE = 5;
+	private static final byte DELETE_PARTIAL_STATE = 6;
+	private static final byte SAVE_ANNOTATION = 7;
+	private static final byte DELETE_ANNOTATION = 8;
+
+	private static final List<Class<? extends AnnotationEntity>> ANNOTATION_TYPES = Arrays.asList(
+			FaqAnnotationEntity.class,
+			SnippetAnnotationEntity.class
+	);
+
+	private final File directory;
+	private final AtomicLong taskId = new AtomicLong(1L);
+	private final AtomicLong stateId = new AtomicLong(1L);
+	private final AtomicLong annotationId = new AtomicLong(1L);
+	private final ConcurrentMap<Long, TaskEntity> taskMap = new ConcurrentHashMap<>();
+	// owner id and name -> task, enforces the same uniqueness as the task table
+	private final ConcurrentMap<String, TaskEntity> taskByOwnerAndNameMap = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Long, TaskData> taskDataMap = new ConcurrentHashMap<>();
+	private FileChannel journal;
+	private long journalSize;
+
+	private static class TaskData {
+
+		private final ConcurrentSkipListMap<Long, IdeaFlowStateEntity> states = new ConcurrentSkipListMap<>();
+		private final ConcurrentMap<IdeaFlowPartialStateScope, IdeaFlowPartialStateEntity> partialStates = new ConcurrentHashMap<>();
+		private final ConcurrentSkipListMap<Long, AnnotationEntity> annotations = new ConcurrentSkipListMap<>();
+
+	}
+
+	EmbeddedCatalog(File directory) {
+		this.directory = directory;
+	}
+
+	synchronized void open() throws IOException {
+		for (byte[] payload : readRecords(new File(directory, SNAPSHOT_FILE))) {
+			apply(payload);
+		}
+
+		File journalFile = new File(directory, JOURNAL_FILE);
+		for (byte[] payload : readRecords(journalFile)) {
+			apply(payload);
+			journalSize += RECORD_HEADER_SIZE + payload.length;
+		}
+		journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		// drop a partially written record at the end of the journal
+		journal.truncate(journalSize);
+	}
+
+	long getJournalSize() {
+		return journalSize;
+	}
+
+	TaskEntity findTask(long taskId) {
+		return taskMap.get(taskId);
+	}
+
+	TaskEntity findTaskWithName(Long ownerId, String name) {
+		return taskByOwnerAndNameMap.get(taskNameKey(ownerId, name));
+	}
+
+	Collection<Long> getTaskIds() {
+		return taskMap.keySet();
+	}
+
+	Collection<TaskEntity> getTasks() {
+		return taskMap.values();
+	}
+
+	IdeaFlowPartialStateEntity getPartialState(long taskId, IdeaFlowPartialStateScope scope) {
+		TaskData taskData = taskDataMap.get(taskId);
+		return taskData != null ? taskData.partialStates.get(scope) : null;
+	}
+
+	List<IdeaFlowStateEntity> getStates(long taskId) {
+		TaskData taskData = taskDataMap.get(taskId);
+		return taskData != null ? new ArrayList<>(taskData.states.values()) : new ArrayList<>();
+	}
+
+	List<AnnotationEntity> getAnnotations(long taskId) {
+		TaskData taskData = taskDataMap.get(taskId);
+		return taskData != null ? new ArrayList<>(taskData.annotations.values()) : new ArrayList<>();
+	}
+
+	synchronized TaskEntity saveTask(TaskEntity task) throws IOException {
+		TaskEntity existingTask = task.getId() != null ? taskMap.get(task.getId()) : null;
+		TaskEntity taskWithName = taskByOwnerAndNameMap.get(taskNameKey(task.getOwnerId(), task.getName()));
+		if (taskWithName != null && taskWithName != existingTask) {
+			throw new DataIntegrityViolationException("Duplicate task");
+		}
+
+		if (existingTask == null) {
+			task.setId(taskId.getAndIncrement());
+		}
+		Changes changes = new Changes();
+		changes.saveTask(task);
+		commit(changes);
+		return task;
+	}
+
+	synchronized void deleteTask(long taskId) throws IOException {
+		Changes changes = new Changes();
+		changes.deleteTask(taskId);
+		commit(changes);
+	}
+
+	/**
+	 * Moves the modify date of each task forward to the given date; a modify date is never moved backwards.
+	 */
+	synchronized void updateTaskModifyDates(Map<Long, LocalDateTime> taskModifyDates) throws IOException {
+		Changes changes = new Changes();
+		for (Map.Entry<Long, LocalDateTime> entry : taskModifyDates.entrySet()) {
+			TaskEntity task = taskMap.get(entry.getKey());
+			if (task != null && (task.getModifyDate() == null || entry.getValue().isAfter(task.getModifyDate()))) {
+				changes.saveTask(new TaskEntity(task.getId(), task.getOwnerId(), task.getName(), task.getDescription(),
+						task.getProject(), task.getCreationDate(), entry.getValue()));
+			}
+		}
+		if (changes.isEmpty() == false) {
+			commit(changes);
+		}
+	}
+
+	synchronized void saveActiveState(IdeaFlowPartialStateEntity activeState, IdeaFlowPartialStateEntity containingState)
+			throws IOException {
+		Changes changes = new Changes();
+		addActiveStateChanges(changes, activeState, containingState);
+		commit(changes);
+	}
+
+	synchronized void saveTransition(IdeaFlowStateEntity stateToSave, IdeaFlowPartialStateEntity activeState)
+			throws IOException {
+		stateToSave.setId(stateId.getAndIncrement());
+		Changes changes = new Changes();
+		changes.saveState(stateToSave);
+		addActiveStateChanges(changes, activeState, null);
+		commit(changes);
+	}
+
+	synchronized <T extends AnnotationEntity> List<T> saveAnnotations(List<T> annotations) throws IOException {
+		Changes changes = new Changes();
+		for (T annotation : annotations) {
+			annotation.setId(annotationId.getAndIncrement());
+			changes.saveAnnotation(annotation);
+		}
+		commit(changes);
+		return annotations;
+	}
+
+	synchronized void deleteAnnotations(long eventId, Class<? extends AnnotationEntity> type) throws IOException {
+		Changes changes = new Changes();
+		for (TaskData taskData : taskDataMap.values()) {
+			for (AnnotationEntity annotation : taskData.annotations.values()) {
+				if (type.isInstance(annotation) && annotation.getEventId() != null
+						&& annotation.getEventId() == eventId) {
+					changes.deleteAnnotation(annotation);
+				}
+			}
+		}
+		if (changes.isEmpty() == false) {
+			commit(changes);
+		}
+	}
+
+	/**
+	 * Replaces the snapshot with the current state and truncates the journal.  The new snapshot is written beside
+	 * the old one and moved over it, so a crash leaves either the old snapshot and the full journal or the new
+	 * snapshot and a journal which it already includes.
+	 */
+	synchronized void writeSnapshot() throws IOException {
+		File snapshotFile = new File(directory, SNAPSHOT_FILE);
+		File tempFile = new File(directory, SNAPSHOT_FILE + ".tmp");
+		try (FileChannel snapshot = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			long position = writeChanges(snapshot, new Changes().nextIds(taskId.get(), stateId.get(), annotationId.get()), 0);
+			for (TaskEntity task : taskMap.values()) {
+				position += writeChanges(snapshot, new Changes().saveTask(task), position);
+			}
+			for (TaskData taskData : taskDataMap.values()) {
+				Changes changes = new Changes();
+				for (IdeaFlowStateEntity state : taskData.states.values()) {
+					changes.saveState(state);
+				}
+				for (IdeaFlowPartialStateEntity partialState : taskData.partialStates.values()) {
+					changes.savePartialState(partialState);
+				}
+				for (AnnotationEntity annotation : taskData.annotations.values()) {
+					changes.saveAnnotation(annotation);
+				}
+				if (changes.isEmpty() == false) {
+					position += writeChanges(snapshot, changes, position);
+				}
+			}
+			snapshot.force(false);
+		}
+
+		Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		journal.truncate(0);
+		journal.force(false);
+		journalSize = 0;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+
+	private void addActiveStateChanges(Changes changes, IdeaFlowPartialStateEntity activeState,
+	                                   IdeaFlowPartialStateEntity containingState) {
+		activeState.setScope(IdeaFlowPartialStateScope.ACTIVE);
+		changes.savePartialState(activeState);
+		if (containingState != null) {
+			containingState.setScope(IdeaFlowPartialStateScope.CONTAINING);
+			changes.savePartialState(containingState);
+		} else {
+			changes.deletePartialState(activeState.getTaskId(), IdeaFlowPartialStateScope.CONTAINING);
+		}
+	}
+
+	/**
+	 * Writes the changes to the journal, forces it to disk and only then applies them.
+	 */
+	private void commit(Changes changes) throws IOException {
+		if (journal == null) {
+			throw new IllegalStateException("Catalog is not open, path=" + directory.getAbsolutePath());
+		}
+
+		byte[] payload = changes.toPayload();
+		journalSize += writeRecord(journal, payload, journalSize);
+		journal.force(false);
+		apply(payload);
+	}
+
+	private long writeChanges(FileChannel channel, Changes changes, long position) throws IOException {
+		return writeRecord(channel, changes.toPayload(), position);
+	}
+
+	private static long writeRecord(FileChannel channel, byte[] payload, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+		buffer.putInt(payload.length);
+		buffer.putInt(checksum(payload));
+		buffer.put(payload);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+		return buffer.limit();
+	}
+
+	private static List<byte[]> readRecords(File file) throws IOException {
+		List<byte[]> payloads = new ArrayList<>();
+		if (file.exists() == false) {
+			return payloads;
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+			int length = buffer.getInt();
+			int crc = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				break;
+			}
+
+			byte[] payload = new byte[length];
+			buffer.get(payload);
+			if (checksum(payload) != crc) {
+				break;
+			}
+			payloads.add(payload);
+		}
+		return payloads;
+	}
+
+	private static int checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	private static String taskNameKey(Long ownerId, String name) {
+		return String.valueOf(ownerId) + ":" + name;
+	}
+
+	private TaskData getTaskData(long taskId) {
+		return taskDataMap.computeIfAbsent(taskId, key -> new TaskData());
+	}
+
+	private void apply(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		while (in.available() > 0) {
+			byte change = in.readByte();
+			switch (change) {
+				case NEXT_IDS:
+					raiseNextId(taskId, in.readLong());
+					raiseNextId(stateId, in.readLong());
+					raiseNextId(annotationId, in.readLong());
+					break;
+				case SAVE_TASK:
+					applySaveTask(readTask(in));
+					break;
+				case DELETE_TASK:
+					applyDeleteTask(in.readLong());
+					break;
+				case SAVE_STATE:
+					IdeaFlowStateEntity state = readState(in);
+					raiseNextId(stateId, state.getId() + 1);
+					getTaskData(state.getTaskId()).states.put(state.getId(), state);
+					break;
+				case SAVE_PARTIAL_STATE:
+					IdeaFlowPartialStateEntity partialState = readPartialState(in);
+					getTaskData(partialState.getTaskId()).partialStates.put(partialState.getScope(), partialState);
+					break;
+				case DELETE_PARTIAL_STATE:
+					long partialStateTaskId = in.readLong();
+					IdeaFlowPartialStateScope scope = IdeaFlowPartialStateScope.valueOf(in.readUTF());
+					TaskData taskData = taskDataMap.get(partialStateTaskId);
+					if (taskData != null) {
+						taskData.partialStates.remove(scope);
+					}
+					break;
+				case SAVE_ANNOTATION:
+					AnnotationEntity annotation = readAnnotation(in);
+					raiseNextId(annotationId, annotation.getId() + 1);
+					getTaskData(annotation.getTaskId()).annotations.put(annotation.getId(), annotation);
+					break;
+				case DELETE_ANNOTATION:
+					long annotationTaskId = in.readLong();
+					long deletedAnnotationId = in.readLong();
+					TaskData annotationTaskData = taskDataMap.get(annotationTaskId);
+					if (annotationTaskData != null) {
+						annotationTaskData.annotations.remove(deletedAnnotationId);
+					}
+					break;
+				default:
+					throw new IOException("Unknown catalog change " + change + ", path=" + directory.getAbsolutePath());
+			}
+		}
+	}
+
+	private void applySaveTask(TaskEntity task) {
+		raiseNextId(taskId, task.getId() + 1);
+		TaskEntity existingTask = taskMap.put(task.getId(), task);
+		if (existingTask != null) {
+			taskByOwnerAndNameMap.remove(taskNameKey(existingTask.getOwnerId(), existingTask.getName()), existingTask);
+		}
+		taskByOwnerAndNameMap.put(taskNameKey(task.getOwnerId(), task.getName()), task);
+	}
+
+	private void applyDeleteTask(long deletedTaskId) {
+		TaskEntity existingTask = taskMap.remove(deletedTaskId);
+		if (existingTask != null) {
+			taskByOwnerAndNameMap.remove(taskNameKey(existingTask.getOwnerId(), existingTask.getName()), existingTask);
+		}
+		taskDataMap.remove(deletedTaskId);
+	}
+
+	private static void raiseNextId(AtomicLong nextId, long value) {
+		nextId.accumulateAndGet(value, Math::max);
+	}
+
+
+	/**
+	 * The changes of one operation, encoded as [byte change type][change fields]...
+	 */
+	private static class Changes {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		boolean isEmpty() {
+			return bytes.size() == 0;
+		}
+
+		byte[] toPayload() {
+			return bytes.toByteArray();
+		}
+
+		Changes nextIds(long nextTaskId, long nextStateId, long nextAnnotationId) {
+			return write(() -> {
+				out.writeByte(NEXT_IDS);
+				out.writeLong(nextTaskId);
+				out.writeLong(nextStateId);
+				out.writeLong(nextAnnotationId);
+			});
+		}
+
+		Changes saveTask(TaskEntity task) {
+			return write(() -> {
+				out.writeByte(SAVE_TASK);
+				out.writeLong(task.getId());
+				writeNullableLong(out, task.getOwnerId());
+				writeNullableString(out, task.getName());
+				writeNullableString(out, task.getDescription());
+				writeNullableString(out, task.getProject());
+				writeTime(out, task.getCreationDate());
+				writeTime(out, task.getModifyDate());
+			});
+		}
+
+		Changes deleteTask(long taskId) {
+			return write(() -> {
+				out.writeByte(DELETE_TASK);
+				out.writeLong(taskId);
+			});
+		}
+
+		Changes saveState(IdeaFlowStateEntity state) {
+			return write(() -> {
+				out.writeByte(SAVE_STATE);
+				out.writeLong(state.getId());
+				out.writeLong(state.getTaskId());
+				writeNullableLong(out, state.getOwnerId());
+				writeNullableString(out, state.getType() != null ? state.getType().name() : null);
+				writeTime(out, state.getStart());
+				writeTime(out, state.getEnd());
+				writeNullableString(out, state.getStartingComment());
+				writeNullableString(out, state.getEndingComment());
+				out.writeBoolean(state.isLinkedToPrevious());
+				out.writeBoolean(state.isNested());
+			});
+		}
+
+		Changes savePartialState(IdeaFlowPartialStateEntity state) {
+			return write(() -> {
+				out.writeByte(SAVE_PARTIAL_STATE);
+				out.writeLong(state.getTaskId());
+				out.writeUTF(state.getScope().name());
+				writeNullableLong(out, state.getOwnerId());
+				writeNullableString(out, state.getType() != null ? state.getType().name() : null);
+				writeTime(out, state.getStart());
+				writeNullableString(out, state.getStartingComment());
+				out.writeBoolean(state.isLinkedToPrevious());
+				out.writeBoolean(state.isNested());
+			});
+		}
+
+		Changes deletePartialState(long taskId, IdeaFlowPartialStateScope scope) {
+			return write(() -> {
+				out.writeByte(DELETE_PARTIAL_STATE);
+				out.writeLong(taskId);
+				out.writeUTF(scope.name());
+			});
+		}
+
+		Changes saveAnnotation(AnnotationEntity annotation) {
+			return write(() -> {
+				out.writeByte(SAVE_ANNOTATION);
+				out.writeUTF(annotation.getClass().getAnnotation(DiscriminatorValue.class).value());
+				out.writeLong(annotation.getId());
+				out.writeLong(annotation.getTaskId());
+				writeNullableLong(out, annotation.getOwnerId());
+				writeNullableLong(out, annotation.getEventId());
+				writeNullableString(out, annotation.getMetadata());
+			});
+		}
+
+		Changes deleteAnnotation(AnnotationEntity annotation) {
+			return write(() -> {
+				out.writeByte(DELETE_ANNOTATION);
+				out.writeLong(annotation.getTaskId());
+				out.writeLong(annotation.getId());
+			});
+		}
+
+		private Changes write(ChangeWriter writer) {
+			try {
+				writer.write();
+			} catch (IOException ex) {
+				// only thrown by the underlying ByteArrayOutputStream, which never throws
+				throw new IllegalStateException(ex);
+			}
+			return this;
+		}
+
+	}
+
+	private interface ChangeWriter {
+		void write() throws IOException;
+	}
+
+	private static TaskEntity readTask(DataInputStream in) throws IOException {
+		return TaskEntity.builder()
+				.id(in.readLong())
+				.ownerId(readNullableLong(in))
+				.name(readNullableString(in))
+				.description(readNullableString(in))
+				.project(readNullableString(in))
+				.creationDate(readTime(in))
+				.modifyDate(readTime(in))
+				.build();
+	}
+
+	private static IdeaFlowStateEntity readState(DataInputStream in) throws IOException {
+		IdeaFlowStateEntity state = new IdeaFlowStateEntity();
+		state.setId(in.readLong());
+		state.setTaskId(in.readLong());
+		state.setOwnerId(readNullableLong(in));
+		String type = readNullableString(in);
+		state.setType(type != null ? IdeaFlowStateType.valueOf(type) : null);
+		state.setStart(readTime(in));
+		state.setEnd(readTime(in));
+		state.setStartingComment(readNullableString(in));
+		state.setEndingComment(readNullableString(in));
+		state.setLinkedToPrevious(in.readBoolean());
+		state.setNested(in.readBoolean());
+		return state;
+	}
+
+	private static IdeaFlowPartialStateEntity readPartialState(DataInputStream in) throws IOException {
+		IdeaFlowPartialStateEntity state = new IdeaFlowPartialStateEntity();
+		state.setTaskId(in.readLong());
+		state.setScope(IdeaFlowPartialStateScope.valueOf(in.readUTF()));
+		state.setOwnerId(readNullableLong(in));
+		String type = readNullableString(in);
+		state.setType(type != null ? IdeaFlowStateType.valueOf(type) : null);
+		state.setStart(readTime(in));
+		state.setStartingComment(readNullableString(in));
+		state.setLinkedToPrevious(in.readBoolean());
+		state.setNested(in.readBoolean());
+		return state;
+	}
+
+	private static AnnotationEntity readAnnotation(DataInputStream in) throws IOException {
+		String discriminator = in.readUTF();
+		AnnotationEntity annotation = newAnnotation(discriminator);
+		annotation.setId(in.readLong());
+		annotation.setTaskId(in.readLong());
+		annotation.setOwnerId(readNullableLong(in));
+		annotation.setEventId(readNullableLong(in));
+		String metadata = readNullableString(in);
+		annotation.setMetadata(metadata);
+		annotation.getMetadataContainer().fromJson(metadata);
+		return annotation;
+	}
+
+	private static AnnotationEntity newAnnotation(String discriminator) throws IOException {
+		for (Class<? extends AnnotationEntity> type : ANNOTATION_TYPES) {
+			if (type.getAnnotation(DiscriminatorValue.class).value().equals(discriminator)) {
+				try {
+					return type.newInstance();
+				} catch (ReflectiveOperationException ex) {
+					throw new IllegalStateException("Failed to create annotation of type " + type.getName(), ex);
+				}
+			}
+		}
+		throw new IOException("Unknown annotation type " + discriminator);
+	}
+
+	private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeLong(value);
+		}
+	}
+
+	private static Long readNullableLong(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readLong() : null;
+	}
+
+	// writeUTF is limited to 64k bytes, which a comment or snippet may exceed
+	private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readNullableString(DataInputStream in) throws IOException {
+		if (in.readBoolean() == false) {
+			return null;
+		}
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+		out.writeBoolean(time != null);
+		if (time != null) {
+			out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+			out.writeInt(time.getNano());
+		}
+	}
+
+	private static LocalDateTime readTime(DataInputStream in) throws IOException {
+		return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+	}
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded;
+
+import org.openmastery.publisher.api.event.EventType;
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.activity.BlockActivityEntity;
+import org.openmastery.publisher.core.activity.EditorActivityEntity;
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity;
+import org.openmastery.publisher.core.activity.ExternalActivityEntity;
+import org.openmastery.publisher.core.activity.IdleActivityEntity;
+import org.openmastery.publisher.core.activity.ModificationActivityEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-width record layouts of activities and events.  Strings (activity metadata, event type and comment) are
+ * written to the task's string heap and referenced by offset.  A null id or time is written as NULL_VALUE.
+ *
+ * Activity: [long start second][int start nano][byte type][3 unused][long id][long owner id][long end second]
+ *           [int end nano][4 unused][long metadata offset]
+ * Event:    [long position second][int position nano][4 unused][long id][long owner id][long type offset]
+ *           [long comment offset]
+ */
+final class EntityRecords {
+
+	static final int ACTIVITY_RECORD_SIZE = 56;
+	static final int EVENT_RECORD_SIZE = 48;
+
+	static final int ACTIVITY_TYPE_OFFSET = 12;
+	static final int OWNER_ID_OFFSET = 24;
+	static final int ACTIVITY_END_SECONDS_OFFSET = 32;
+	static final int ACTIVITY_END_NANOS_OFFSET = 40;
+	static final int ACTIVITY_METADATA_OFFSET = 48;
+	static final int EVENT_TYPE_OFFSET = 32;
+	static final int EVENT_COMMENT_OFFSET = 40;
+
+	static final long NULL_VALUE = Long.MIN_VALUE;
+
+	// the index of a type is its code in the activity record, so new types must only be added at the end
+	private static final List<Class<? extends ActivityEntity>> ACTIVITY_TYPES = Arrays.asList(
+			IdleActivityEntity.class,
+			EditorActivityEntity.class,
+			ExternalActivityEntity.class,
+			ModificationActivityEntity.class,
+			ExecutionActivityEntity.class,
+			BlockActivityEntity.class
+	);
+
+	private EntityRecords() {
+	}
+
+	static byte getActivityTypeCode(Class<? extends ActivityEntity> type) {
+		int code = ACTIVITY_TYPES.indexOf(type);
+		if (code < 0) {
+			throw new IllegalArgumentException("Unsupported activity type " + type.getName());
+		}
+		return (byte) code;
+	}
+
+	static void writeActivity(ActivityEntity activity, StringHeap heap, ByteBuffer record) throws IOException {
+		record.clear();
+		writeTime(record, activity.getStart());
+		record.put(getActivityTypeCode(activity.getClass()));
+		record.put(new byte[3]);
+		record.putLong(activity.getId());
+		record.putLong(nullToValue(activity.getOwnerId()));
+		writeTime(record, activity.getEnd());
+		record.putInt(0);
+		record.putLong(heap.append(activity.getMetadata()));
+		record.flip();
+	}
+
+	static ActivityEntity readActivity(RecordSegment segment, int slot, long taskId, StringHeap heap) throws IOException {
+		ActivityEntity activity = newActivity(ACTIVITY_TYPES.get(segment.getByte(slot, ACTIVITY_TYPE_OFFSET)));
+		activity.setId(segment.getLong(slot, RecordSegment.ID_OFFSET));
+		activity.setOwnerId(valueToNull(segment.getLong(slot, OWNER_ID_OFFSET)));
+		activity.setTaskId(taskId);
+		activity.setStart(readTime(segment, slot, RecordSegment.KEY_SECONDS_OFFSET, RecordSegment.KEY_NANOS_OFFSET));
+		activity.setEnd(readActivityEnd(segment, slot));
+
+		String metadata = heap.read(segment.getLong(slot, ACTIVITY_METADATA_OFFSET));
+		activity.setMetadata(metadata);
+		activity.getMetadataContainer().fromJson(metadata);
+		return activity;
+	}
+
+	static LocalDateTime readActivityEnd(RecordSegment segment, int slot) {
+		return readTime(segment, slot, ACTIVITY_END_SECONDS_OFFSET, ACTIVITY_END_NANOS_OFFSET);
+	}
+
+	static void writeActivityEnd(RecordSegment segment, int slot, LocalDateTime end) {
+		segment.putLong(slot, ACTIVITY_END_SECONDS_OFFSET, end.toEpochSecond(ZoneOffset.UTC));
+		segment.putInt(slot, ACTIVITY_END_NANOS_OFFSET, end.getNano());
+	}
+
+	static void writeEvent(EventEntity event, StringHeap heap, ByteBuffer record) throws IOException {
+		record.clear();
+		writeTime(record, event.getPosition());
+		record.putInt(0);
+		record.putLong(event.getId());
+		record.putLong(nullToValue(event.getOwnerId()));
+		record.putLong(heap.append(event.getType() != null ? event.getType().name() : null));
+		record.putLong(heap.append(event.getComment()));
+		record.flip();
+	}
+
+	static void writeEventComment(RecordSegment segment, int slot, StringHeap heap, String comment) throws IOException {
+		segment.putLong(slot, EVENT_COMMENT_OFFSET, heap.append(comment));
+	}
+
+	static EventEntity readEvent(RecordSegment segment, int slot, long taskId, StringHeap heap) throws IOException {
+		String type = heap.read(segment.getLong(slot, EVENT_TYPE_OFFSET));
+		return EventEntity.builder()
+				.id(segment.getLong(slot, RecordSegment.ID_OFFSET))
+				.ownerId(valueToNull(segment.getLong(slot, OWNER_ID_OFFSET)))
+				.taskId(taskId)
+				.position(readTime(segment, slot, RecordSegment.KEY_SECONDS_OFFSET, RecordSegment.KEY_NANOS_OFFSET))
+				.type(type != null ? EventType.valueOf(type) : null)
+				.comment(heap.read(segment.getLong(slot, EVENT_COMMENT_OFFSET)))
+				.build();
+	}
+
+	static LocalDateTime readTime(RecordSegment segment, int slot, int secondsOffset, int nanosOffset) {
+		long seconds = segment.getLong(slot, secondsOffset);
+		if (seconds == NULL_VALUE) {
+			return null;
+		}
+		return LocalDateTime.ofEpochSecond(seconds, segment.getInt(slot, nanosOffset), ZoneOffset.UTC);
+	}
+
+	private static void writeTime(ByteBuffer record, LocalDateTime time) {
+		if (time == null) {
+			record.putLong(NULL_VALUE);
+			record.putInt(0);
+		} else {
+			record.putLong(time.toEpochSecond(ZoneOffset.UTC));
+			record.putInt(time.getNano());
+		}
+	}
+
+	private static long nullToValue(Long value) {
+		return value != null ? value : NULL_VALUE;
+	}
+
+	private static Long valueToNull(long value) {
+		return value != NULL_VALUE ? value : null;
+	}
+
+	private static ActivityEntity newActivity(Class<? extends ActivityEntity> type) {
+		try {
+			return type.newInstance();
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalStateException("Failed to create activity of type " + type.getName(), ex);
+		}
+	}
+
+}
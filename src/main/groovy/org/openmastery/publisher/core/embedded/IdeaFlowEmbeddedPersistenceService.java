@@ -0,0 +1,617 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.openmastery.publisher.core.IdeaFlowPersistenceService;
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.activity.BlockActivityEntity;
+import org.openmastery.publisher.core.activity.EditorActivityEntity;
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity;
+import org.openmastery.publisher.core.activity.ExternalActivityEntity;
+import org.openmastery.publisher.core.activity.IdleActivityEntity;
+import org.openmastery.publisher.core.activity.ModificationActivityEntity;
+import org.openmastery.publisher.core.annotation.AnnotationEntity;
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity;
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+import org.openmastery.publisher.core.task.TaskCursor;
+import org.openmastery.publisher.core.task.TaskEntity;
+import org.openmastery.publisher.core.task.TaskListing;
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity;
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateScope;
+import org.openmastery.publisher.ideaflow.IdeaFlowStateEntity;
+import org.openmastery.time.TimeConverter;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Persistence for single box deployments which run without a database.  Activities and events, the bulk of the
+ * data, are written to per task files of fixed-width records which are read through memory mappings (see
+ * TaskStore).  Tasks, idea flow states and annotations are held in memory and journaled (see EmbeddedCatalog).
+ *
+ * Activity and event ids are resolved to their task through in memory maps which are rebuilt on open.  The data of
+ * a task which is no longer in the catalog is deleted on open, like the cascading task foreign keys of the
+ * relational schema.
+ *
+ * Compaction runs in the background: it rewrites the segments of tasks which need it into sorted segments (see
+ * TaskStore#compact) and replaces the catalog snapshot once the journal exceeds maxJournalSizeInBytes.
+ */
+@Slf4j
+public class IdeaFlowEmbeddedPersistenceService implements IdeaFlowPersistenceService, Closeable {
+
+	private static final String TASK_DIRECTORY = "tasks";
+	private static final List<Class<? extends ActivityEntity>> EDITOR_AND_EXTERNAL_TYPES = Arrays.asList(
+			EditorActivityEntity.class, ExternalActivityEntity.class);
+
+	private final File directory;
+	private final File taskDirectory;
+	private final int segmentCapacity;
+	private final Duration compactionIdleTime;
+	private final long maxJournalSizeInBytes;
+	private final EmbeddedCatalog catalog;
+	private final ConcurrentMap<Long, TaskStore> taskStores = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Long, Long> activityTaskIds = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Long, Long> eventTaskIds = new ConcurrentHashMap<>();
+	// owner id -> ids of the tasks with events of the owner
+	private final ConcurrentMap<Long, Set<Long>> ownerEventTaskIds = new ConcurrentHashMap<>();
+	private final AtomicLong activityId = new AtomicLong(1L);
+	private final AtomicLong eventId = new AtomicLong(1L);
+	private ScheduledExecutorService compactionExecutor;
+
+	public IdeaFlowEmbeddedPersistenceService(File directory, int segmentCapacity, Duration compactionIdleTime,
+	                                          long maxJournalSizeInBytes) {
+		this.directory = directory;
+		this.taskDirectory = new File(directory, TASK_DIRECTORY);
+		this.segmentCapacity = segmentCapacity;
+		this.compactionIdleTime = compactionIdleTime;
+		this.maxJournalSizeInBytes = maxJournalSizeInBytes;
+		this.catalog = new EmbeddedCatalog(directory);
+	}
+
+	public void open() throws IOException {
+		if (taskDirectory.exists() == false && taskDirectory.mkdirs() == false) {
+			throw new IOException("Failed to create data directory, path=" + taskDirectory.getAbsolutePath());
+		}
+
+		catalog.open();
+		File[] taskDirectories = taskDirectory.listFiles(File::isDirectory);
+		if (taskDirectories != null) {
+			for (File storeDirectory : taskDirectories) {
+				long taskId = Long.parseLong(storeDirectory.getName());
+				TaskStore store = new TaskStore(taskId, storeDirectory, segmentCapacity);
+				if (catalog.findTask(taskId) == null) {
+					log.info("Deleting data of deleted task, taskId={}", taskId);
+					store.delete();
+				} else {
+					indexTaskStore(store);
+					taskStores.put(taskId, store);
+				}
+			}
+		}
+	}
+
+	public void startCompaction(Duration compactionInterval) {
+		compactionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("embedded-compaction")
+				.setDaemon(true)
+				.build());
+		compactionExecutor.scheduleWithFixedDelay(this::compact, compactionInterval.toMillis(),
+				compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of tasks whose segments were compacted
+	 */
+	int compact() {
+		int compactedCount = 0;
+		for (TaskStore store : taskStores.values()) {
+			try {
+				if (store.needsCompaction(compactionIdleTime.toMillis())) {
+					store.compact();
+					compactedCount++;
+				}
+			} catch (IOException | RuntimeException ex) {
+				log.error("Failed to compact task segments, taskId={}", store.getTaskId(), ex);
+			}
+		}
+
+		try {
+			if (catalog.getJournalSize() > maxJournalSizeInBytes) {
+				catalog.writeSnapshot();
+			}
+		} catch (IOException | RuntimeException ex) {
+			log.error("Failed to write catalog snapshot, path={}", directory.getAbsolutePath(), ex);
+		}
+		return compactedCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (compactionExecutor != null) {
+			compactionExecutor.shutdownNow();
+		}
+		for (TaskStore store : taskStores.values()) {
+			store.close();
+		}
+		catalog.close();
+	}
+
+	@Override
+	public IdeaFlowPartialStateEntity getActiveState(long taskId) {
+		return catalog.getPartialState(taskId, IdeaFlowPartialStateScope.ACTIVE);
+	}
+
+	@Override
+	public IdeaFlowPartialStateEntity getContainingState(long taskId) {
+		return catalog.getPartialState(taskId, IdeaFlowPartialStateScope.CONTAINING);
+	}
+
+	@Override
+	public List<IdeaFlowStateEntity> getStateList(long taskId) {
+		return catalog.getStates(taskId);
+	}
+
+	@Override
+	public List<ActivityEntity> getActivityList(long taskId) {
+		return readActivities(taskId, null);
+	}
+
+	@Override
+	public List<IdleActivityEntity> getIdleActivityList(long taskId) {
+		return readActivities(taskId, IdleActivityEntity.class);
+	}
+
+	@Override
+	public List<ExternalActivityEntity> getExternalActivityList(long taskId) {
+		return readActivities(taskId, ExternalActivityEntity.class);
+	}
+
+	@Override
+	public List<EditorActivityEntity> getEditorActivityList(long taskId) {
+		return readActivities(taskId, EditorActivityEntity.class);
+	}
+
+	@Override
+	public List<ModificationActivityEntity> getModificationActivityList(long taskId) {
+		return readActivities(taskId, ModificationActivityEntity.class);
+	}
+
+	@Override
+	public List<ExecutionActivityEntity> getExecutionActivityList(long taskId) {
+		return readActivities(taskId, ExecutionActivityEntity.class);
+	}
+
+	@Override
+	public List<BlockActivityEntity> getBlockActivityList(long taskId) {
+		return readActivities(taskId, BlockActivityEntity.class);
+	}
+
+	@Override
+	public List<EventEntity> getEventList(long taskId) {
+		TaskStore store = taskStores.get(taskId);
+		if (store == null) {
+			return new ArrayList<>();
+		}
+
+		try {
+			return store.readEvents();
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to read events, taskId=" + taskId, ex);
+		}
+	}
+
+	@Override
+	public List<AnnotationEntity> getAnnotationList(long taskId) {
+		return catalog.getAnnotations(taskId);
+	}
+
+	@Override
+	public LocalDateTime getMostRecentActivityEnd(long taskId) {
+		TaskStore store = taskStores.get(taskId);
+		return store != null ? store.getMostRecentActivityEnd() : null;
+	}
+
+	@Override
+	public SortedMap<LocalDateTime, Long> getModificationCountsByWindow(long taskId, Duration window) {
+		SortedMap<LocalDateTime, Long> modificationCounts = new TreeMap<>();
+		for (ModificationActivityEntity activity : getModificationActivityList(taskId)) {
+			long startSeconds = activity.getStart().toEpochSecond(ZoneOffset.UTC);
+			long windowStartSeconds = Math.floorDiv(startSeconds, window.getSeconds()) * window.getSeconds();
+			LocalDateTime windowStart = LocalDateTime.ofEpochSecond(windowStartSeconds, 0, ZoneOffset.UTC);
+			modificationCounts.merge(windowStart, (long) activity.getModificationCount(), Long::sum);
+		}
+		return modificationCounts;
+	}
+
+	@Override
+	public void saveActiveState(IdeaFlowPartialStateEntity activeState) {
+		saveActiveState(activeState, null);
+	}
+
+	@Override
+	public void saveActiveState(IdeaFlowPartialStateEntity activeState, IdeaFlowPartialStateEntity containingState) {
+		try {
+			catalog.saveActiveState(activeState, containingState);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to save active state, taskId=" + activeState.getTaskId(), ex);
+		}
+	}
+
+	@Override
+	public void saveTransition(IdeaFlowStateEntity stateToSave, IdeaFlowPartialStateEntity activeState) {
+		try {
+			catalog.saveTransition(stateToSave, activeState);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to save transition, taskId=" + stateToSave.getTaskId(), ex);
+		}
+	}
+
+	@Override
+	public <T extends ActivityEntity> T saveActivity(T activity) {
+		saveActivities(Collections.singletonList(activity));
+		return activity;
+	}
+
+	@Override
+	public <T extends ActivityEntity> List<T> saveActivities(List<T> activities) {
+		Map<Long, List<T>> activitiesByTask = activities.stream()
+				.collect(Collectors.groupingBy(ActivityEntity::getTaskId));
+		activitiesByTask.forEach((taskId, taskActivities) -> {
+			try {
+				getOrCreateTaskStore(taskId).appendActivities(taskActivities, activityId);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Failed to save activities, taskId=" + taskId, ex);
+			}
+			for (T activity : taskActivities) {
+				activityTaskIds.put(activity.getId(), taskId);
+			}
+		});
+		return activities;
+	}
+
+	@Override
+	public List<ActivityEntity> findEditorAndExternalActivitiesEndingAt(Collection<Long> taskIds, Collection<LocalDateTime> endTimes) {
+		List<ActivityEntity> activities = new ArrayList<>();
+		if (endTimes.isEmpty()) {
+			return activities;
+		}
+
+		Set<LocalDateTime> endTimeSet = new HashSet<>(endTimes);
+		for (Long taskId : taskIds) {
+			TaskStore store = taskStores.get(taskId);
+			if (store != null) {
+				try {
+					activities.addAll(store.findActivitiesEndingAt(EDITOR_AND_EXTERNAL_TYPES, endTimeSet));
+				} catch (IOException ex) {
+					throw new UncheckedIOException("Failed to read activities, taskId=" + taskId, ex);
+				}
+			}
+		}
+		return activities;
+	}
+
+	@Override
+	public void updateActivityEndTimes(Map<Long, LocalDateTime> activityEndTimes) {
+		activityEndTimes.forEach((activityId, end) -> {
+			Long taskId = activityTaskIds.get(activityId);
+			TaskStore store = taskId != null ? taskStores.get(taskId) : null;
+			if (store != null) {
+				store.updateActivityEnd(activityId, end);
+			}
+		});
+	}
+
+	@Override
+	public EventEntity saveEvent(EventEntity event) {
+		saveEvents(Collections.singletonList(event));
+		return event;
+	}
+
+	@Override
+	public List<EventEntity> saveEvents(List<EventEntity> events) {
+		Map<Long, List<EventEntity>> eventsByTask = events.stream()
+				.collect(Collectors.groupingBy(EventEntity::getTaskId));
+		eventsByTask.forEach((taskId, taskEvents) -> {
+			try {
+				getOrCreateTaskStore(taskId).appendEvents(taskEvents, eventId);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Failed to save events, taskId=" + taskId, ex);
+			}
+			for (EventEntity event : taskEvents) {
+				indexEvent(event.getId(), taskId, event.getOwnerId());
+			}
+		});
+		return events;
+	}
+
+	@Override
+	public TaskEntity saveTask(TaskEntity task) {
+		try {
+			return catalog.saveTask(task);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to save task, name=" + task.getName(), ex);
+		}
+	}
+
+	@Override
+	public void deleteTask(TaskEntity task) {
+		try {
+			catalog.deleteTask(task.getId());
+			TaskStore store = taskStores.remove(task.getId());
+			if (store != null) {
+				store.forEachActivityId(activityTaskIds::remove);
+				store.forEachEventId(eventTaskIds::remove);
+				store.delete();
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to delete task, taskId=" + task.getId(), ex);
+		}
+	}
+
+	@Override
+	public void updateTaskModifyDates(Map<Long, LocalDateTime> taskModifyDates) {
+		try {
+			catalog.updateTaskModifyDates(taskModifyDates);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to update task modify dates", ex);
+		}
+	}
+
+	@Override
+	public <T extends AnnotationEntity> T saveAnnotation(T annotation) {
+		saveAnnotations(Collections.singletonList(annotation));
+		return annotation;
+	}
+
+	@Override
+	public <T extends AnnotationEntity> List<T> saveAnnotations(List<T> annotations) {
+		try {
+			return catalog.saveAnnotations(annotations);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to save annotations", ex);
+		}
+	}
+
+	@Override
+	public TaskEntity findTaskWithId(long taskId) {
+		return catalog.findTask(taskId);
+	}
+
+	@Override
+	public Map<Long, Long> findTaskOwnerIds(Collection<Long> taskIds) {
+		Map<Long, Long> taskOwnerIds = new HashMap<>();
+		for (Long taskId : taskIds) {
+			TaskEntity task = catalog.findTask(taskId);
+			if (task != null) {
+				taskOwnerIds.put(taskId, task.getOwnerId());
+			}
+		}
+		return taskOwnerIds;
+	}
+
+	@Override
+	public TaskEntity findTaskWithName(Long userId, String taskName) {
+		return catalog.findTaskWithName(userId, taskName);
+	}
+
+	@Override
+	public Page<TaskEntity> findRecentTasks(Long ownerId, String projectLike, Pageable pageable) {
+		return TaskListing.toPage(TaskListing.findRecent(catalog.getTasks(), ownerId, projectLike, task -> true), pageable);
+	}
+
+	@Override
+	public List<TaskEntity> findRecentTasksAfter(Long ownerId, String projectLike, TaskCursor cursor, int limit) {
+		return TaskListing.after(TaskListing.findRecent(catalog.getTasks(), ownerId, projectLike, task -> true), cursor, limit);
+	}
+
+	@Override
+	public int countTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags) {
+		return findTasksMatchingTags(ownerId, projectLike, normalizedTags).size();
+	}
+
+	@Override
+	public List<TaskEntity> findTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags,
+	                                              int limit, int offset) {
+		return TaskListing.slice(findTasksMatchingTags(ownerId, projectLike, normalizedTags), limit, offset);
+	}
+
+	@Override
+	public List<TaskEntity> findTasksMatchingTagsAfter(long ownerId, String projectLike, Collection<String> normalizedTags,
+	                                                   TaskCursor cursor, int limit) {
+		return TaskListing.after(findTasksMatchingTags(ownerId, projectLike, normalizedTags), cursor, limit);
+	}
+
+	// there is no tag index, the comments of the owner's tasks are scanned
+	private List<TaskEntity> findTasksMatchingTags(long ownerId, String projectLike, Collection<String> normalizedTags) {
+		return TaskListing.findRecent(catalog.getTasks(), ownerId, projectLike,
+				task -> hasAnyTag(task.getId(), normalizedTags));
+	}
+
+	private boolean hasAnyTag(long taskId, Collection<String> normalizedTags) {
+		for (EventEntity event : getEventList(taskId)) {
+			if (TaskListing.hasAnyTag(event.getComment(), normalizedTags)) {
+				return true;
+			}
+		}
+		for (FaqAnnotationEntity faq : getFaqAnnotationList(taskId)) {
+			if (TaskListing.hasAnyTag(faq.getComment(), normalizedTags)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public List<EventEntity> findRecentEvents(Long userId, Timestamp afterDate, Integer limit) {
+		LocalDateTime earliestPosition = TimeConverter.toLocalDateTime(afterDate);
+		List<EventEntity> events = new ArrayList<>();
+		for (Long taskId : ownerEventTaskIds.getOrDefault(userId, Collections.emptySet())) {
+			TaskStore store = taskStores.get(taskId);
+			if (store != null) {
+				try {
+					events.addAll(store.readEvents(userId, earliestPosition));
+				} catch (IOException ex) {
+					throw new UncheckedIOException("Failed to read events, taskId=" + taskId, ex);
+				}
+			}
+		}
+		events.sort(TaskStore.EVENT_ORDER);
+		return events.size() > limit ? new ArrayList<>(events.subList(0, limit)) : events;
+	}
+
+	@Override
+	public List<FaqAnnotationEntity> getFaqAnnotationList(long taskId) {
+		return findAnnotationsOfType(FaqAnnotationEntity.class, taskId);
+	}
+
+	@Override
+	public List<SnippetAnnotationEntity> getSnippetAnnotationList(long taskId) {
+		return findAnnotationsOfType(SnippetAnnotationEntity.class, taskId);
+	}
+
+	@Override
+	public EventEntity findEventById(long eventId) {
+		Long taskId = eventTaskIds.get(eventId);
+		TaskStore store = taskId != null ? taskStores.get(taskId) : null;
+		if (store == null) {
+			return null;
+		}
+
+		try {
+			return store.findEvent(eventId);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to read event, eventId=" + eventId, ex);
+		}
+	}
+
+	@Override
+	public EventEntity updateEventComment(long eventId, String comment) {
+		Long taskId = eventTaskIds.get(eventId);
+		TaskStore store = taskId != null ? taskStores.get(taskId) : null;
+		if (store == null) {
+			return null;
+		}
+
+		try {
+			return store.updateEventComment(eventId, comment) ? store.findEvent(eventId) : null;
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to update event, eventId=" + eventId, ex);
+		}
+	}
+
+	@Override
+	public void deleteFAQAnnotation(long eventId) {
+		try {
+			catalog.deleteAnnotations(eventId, FaqAnnotationEntity.class);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to delete faq annotation, eventId=" + eventId, ex);
+		}
+	}
+
+	@Override
+	public void deleteSnippetAnnotation(long eventId) {
+		try {
+			catalog.deleteAnnotations(eventId, SnippetAnnotationEntity.class);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to delete snippet annotation, eventId=" + eventId, ex);
+		}
+	}
+
+	private <T extends ActivityEntity> List<T> readActivities(long taskId, Class<T> type) {
+		TaskStore store = taskStores.get(taskId);
+		if (store == null) {
+			return new ArrayList<>();
+		}
+
+		try {
+			return store.readActivities(type);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Failed to read activities, taskId=" + taskId, ex);
+		}
+	}
+
+	private <T extends AnnotationEntity> List<T> findAnnotationsOfType(Class<T> type, long taskId) {
+		List<T> annotations = new ArrayList<>();
+		for (AnnotationEntity annotation : catalog.getAnnotations(taskId)) {
+			if (type.isInstance(annotation)) {
+				annotations.add(type.cast(annotation));
+			}
+		}
+		return annotations;
+	}
+
+	private TaskStore getOrCreateTaskStore(long taskId) {
+		return taskStores.computeIfAbsent(taskId, key -> {
+			try {
+				return new TaskStore(taskId, new File(taskDirectory, String.valueOf(taskId)), segmentCapacity);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Failed to open task store, taskId=" + taskId, ex);
+			}
+		});
+	}
+
+	private void indexTaskStore(TaskStore store) {
+		long taskId = store.getTaskId();
+		store.forEachActivityId(id -> {
+			activityTaskIds.put(id, taskId);
+			activityId.accumulateAndGet(id + 1, Math::max);
+		});
+		store.forEachEventId(id -> {
+			eventTaskIds.put(id, taskId);
+			eventId.accumulateAndGet(id + 1, Math::max);
+		});
+		for (Long ownerId : store.getEventOwnerIds()) {
+			ownerEventTaskIds.computeIfAbsent(ownerId, key -> ConcurrentHashMap.newKeySet()).add(taskId);
+		}
+	}
+
+	private void indexEvent(long id, long taskId, Long ownerId) {
+		eventTaskIds.put(id, taskId);
+		if (ownerId != null) {
+			ownerEventTaskIds.computeIfAbsent(ownerId, key -> ConcurrentHashMap.newKeySet()).add(taskId);
+		}
+	}
+
+}
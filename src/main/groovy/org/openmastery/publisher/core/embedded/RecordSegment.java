@@ -0,0 +1,224 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of fixed-width records, memory mapped in full.  The file is allocated at its full capacity when created,
+ * records are appended in place and fields may be rewritten in place.  Every record begins with its key, a long
+ * followed by an int (epoch second and nano of the record's time), and the record id at ID_OFFSET.
+ *
+ * A segment whose records are ordered by key is marked sorted and keeps a sparse index of every INDEX_INTERVAL-th
+ * key, so the records up to a key can be found without scanning the segment.
+ *
+ * Not thread-safe; callers must not read while a record is being appended or rewritten.
+ *
+ * Header layout: [int magic][int version][int record size][int capacity][int record count][int flags][8 unused]
+ */
+class RecordSegment {
+
+	static final int HEADER_SIZE = 32;
+	static final int KEY_SECONDS_OFFSET = 0;
+	static final int KEY_NANOS_OFFSET = 8;
+	static final int ID_OFFSET = 16;
+	static final int INDEX_INTERVAL = 64;
+
+	private static final int MAGIC = 0x49464d53;
+	private static final int VERSION = 1;
+	private static final int COUNT_OFFSET = 16;
+	private static final int FLAGS_OFFSET = 20;
+	private static final int SORTED_FLAG = 1;
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final int recordSize;
+	private final int capacity;
+	private final boolean sorted;
+	private int count;
+	private volatile long[] sparseIndex;
+
+	private RecordSegment(File file, MappedByteBuffer buffer, int recordSize, int capacity, int count, boolean sorted) {
+		this.file = file;
+		this.buffer = buffer;
+		this.recordSize = recordSize;
+		this.capacity = capacity;
+		this.count = count;
+		this.sorted = sorted;
+	}
+
+	static RecordSegment create(File file, int recordSize, int capacity, boolean sorted) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) recordSize * capacity);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, recordSize);
+			buffer.putInt(12, capacity);
+			buffer.putInt(COUNT_OFFSET, 0);
+			buffer.putInt(FLAGS_OFFSET, sorted ? SORTED_FLAG : 0);
+			return new RecordSegment(file, buffer, recordSize, capacity, 0, sorted);
+		}
+	}
+
+	static RecordSegment open(File file, int recordSize) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+					|| buffer.getInt(8) != recordSize) {
+				throw new IOException("Invalid segment header, path=" + file.getAbsolutePath());
+			}
+
+			int capacity = buffer.getInt(12);
+			int count = buffer.getInt(COUNT_OFFSET);
+			if (count < 0 || count > capacity || buffer.capacity() < HEADER_SIZE + (long) recordSize * capacity) {
+				throw new IOException("Segment is truncated, path=" + file.getAbsolutePath());
+			}
+			boolean sorted = (buffer.getInt(FLAGS_OFFSET) & SORTED_FLAG) != 0;
+			return new RecordSegment(file, buffer, recordSize, capacity, count, sorted);
+		}
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	boolean isFull() {
+		return count == capacity;
+	}
+
+	boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * Writes the record into the next free slot; the record count in the header is updated after the record itself.
+	 *
+	 * @return the slot of the record
+	 */
+	int append(ByteBuffer record) {
+		if (isFull()) {
+			throw new IllegalStateException("Segment is full, path=" + file.getAbsolutePath());
+		}
+		if (record.remaining() != recordSize) {
+			throw new IllegalArgumentException("Expected record of " + recordSize + " bytes, was " + record.remaining());
+		}
+
+		int slot = count;
+		ByteBuffer target = buffer.duplicate();
+		target.position(offset(slot));
+		target.put(record.duplicate());
+		count++;
+		buffer.putInt(COUNT_OFFSET, count);
+		sparseIndex = null;
+		return slot;
+	}
+
+	/**
+	 * Copies the record in the slot into the target buffer, at its position.
+	 */
+	void copyRecord(int slot, ByteBuffer target) {
+		ByteBuffer source = buffer.duplicate();
+		source.position(offset(slot));
+		source.limit(offset(slot) + recordSize);
+		target.put(source);
+	}
+
+	long getLong(int slot, int fieldOffset) {
+		return buffer.getLong(offset(slot) + fieldOffset);
+	}
+
+	int getInt(int slot, int fieldOffset) {
+		return buffer.getInt(offset(slot) + fieldOffset);
+	}
+
+	byte getByte(int slot, int fieldOffset) {
+		return buffer.get(offset(slot) + fieldOffset);
+	}
+
+	void putLong(int slot, int fieldOffset, long value) {
+		buffer.putLong(offset(slot) + fieldOffset, value);
+	}
+
+	void putInt(int slot, int fieldOffset, int value) {
+		buffer.putInt(offset(slot) + fieldOffset, value);
+	}
+
+	/**
+	 * @return the number of leading records with a key second at or before keySeconds; for an unsorted segment,
+	 * every record may match so this is the record count
+	 */
+	int countKeysAtOrBefore(long keySeconds) {
+		if (sorted == false) {
+			return count;
+		}
+
+		long[] index = getSparseIndex();
+		int low = 0;
+		int high = index.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (index[middle] <= keySeconds) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		// every record before the last indexed key at or before keySeconds is also at or before it
+		int slot = low == 0 ? 0 : (low - 1) * INDEX_INTERVAL;
+		while (slot < count && getLong(slot, KEY_SECONDS_OFFSET) <= keySeconds) {
+			slot++;
+		}
+		return slot;
+	}
+
+	void force() {
+		buffer.force();
+	}
+
+	void delete() throws IOException {
+		if (file.delete() == false && file.exists()) {
+			throw new IOException("Failed to delete segment, path=" + file.getAbsolutePath());
+		}
+	}
+
+	private long[] getSparseIndex() {
+		long[] index = sparseIndex;
+		if (index == null) {
+			index = new long[(count + INDEX_INTERVAL - 1) / INDEX_INTERVAL];
+			for (int i = 0; i < index.length; i++) {
+				index[i] = getLong(i * INDEX_INTERVAL, KEY_SECONDS_OFFSET);
+			}
+			sparseIndex = index;
+		}
+		return index;
+	}
+
+	private int offset(int slot) {
+		return HEADER_SIZE + slot * recordSize;
+	}
+
+}
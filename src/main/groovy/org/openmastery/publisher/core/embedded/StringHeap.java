@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of strings referenced by offset from fixed-width records.  Reads go through a read-only memory
+ * mapping of the file, which is re-mapped when a read falls beyond it.
+ *
+ * Entry layout: [int byte length][UTF-8 bytes]
+ */
+class StringHeap implements Closeable {
+
+	static final long NULL_OFFSET = -1L;
+
+	private final File file;
+	private final FileChannel channel;
+	private long size;
+	private volatile MappedByteBuffer mapping;
+
+	StringHeap(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.size = channel.size();
+		this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	/**
+	 * @return the offset of the entry, or NULL_OFFSET for a null value (which is not written)
+	 */
+	long append(String value) throws IOException {
+		if (value == null) {
+			return NULL_OFFSET;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+		entry.putInt(bytes.length);
+		entry.put(bytes);
+		entry.flip();
+
+		long offset = size;
+		while (entry.hasRemaining()) {
+			channel.write(entry, size + entry.position());
+		}
+		size += 4 + bytes.length;
+		return offset;
+	}
+
+	String read(long offset) throws IOException {
+		if (offset == NULL_OFFSET) {
+			return null;
+		}
+
+		MappedByteBuffer entries = getMapping(offset + 4);
+		int length = entries.getInt((int) offset);
+		entries = getMapping(offset + 4 + length);
+
+		byte[] bytes = new byte[length];
+		ByteBuffer source = entries.duplicate();
+		source.position((int) offset + 4);
+		source.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	void force() throws IOException {
+		channel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private MappedByteBuffer getMapping(long end) throws IOException {
+		MappedByteBuffer entries = mapping;
+		if (end > entries.capacity()) {
+			synchronized (this) {
+				entries = mapping;
+				if (end > entries.capacity()) {
+					long fileSize = channel.size();
+					if (end > fileSize) {
+						throw new IOException("String heap entry beyond end of file, path=" + file.getAbsolutePath());
+					}
+					entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+					mapping = entries;
+				}
+			}
+		}
+		return entries;
+	}
+
+}
@@ -0,0 +1,627 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded;
+
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * The activities and events of one task, in a directory of their own.  Each is appended to a list of segment files
+ * of fixed-width records (see EntityRecords); once the last segment is full a new one is started.  Activity end
+ * times and event comments are updated in place.
+ *
+ * Appended segments are in id order.  compact() rewrites all segments of the task into segments sorted by time
+ * and sized to fit, which lets reads skip to a time through the sparse index and returns the unused space of
+ * partially filled segments.  Compacted segments are written beside the old ones and a marker file is written once
+ * they are complete, so a compaction interrupted by a crash is either discarded or finished on open.
+ *
+ * Each record type keeps an in memory index of record id to slot, so a record is read or updated by id without
+ * scanning the segments.
+ *
+ * Reads may run concurrently; writes and compaction are exclusive.
+ */
+class TaskStore implements Closeable {
+
+	private static final String HEAP_FILE = "strings.heap";
+
+	private static final Comparator<ActivityEntity> ACTIVITY_ORDER = Comparator
+			.comparing(ActivityEntity::getStart)
+			.thenComparing(ActivityEntity::getId);
+	static final Comparator<EventEntity> EVENT_ORDER = Comparator
+			.comparing(EventEntity::getPosition)
+			.thenComparing(EventEntity::getId);
+
+	private final long taskId;
+	private final File directory;
+	private final int segmentCapacity;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final SegmentList activities;
+	private final SegmentList events;
+	private final StringHeap heap;
+	private final ByteBuffer activityRecord = ByteBuffer.allocate(EntityRecords.ACTIVITY_RECORD_SIZE);
+	private final ByteBuffer eventRecord = ByteBuffer.allocate(EntityRecords.EVENT_RECORD_SIZE);
+	private volatile long lastWriteMillis = System.currentTimeMillis();
+
+	TaskStore(long taskId, File directory, int segmentCapacity) throws IOException {
+		if (directory.exists() == false && directory.mkdirs() == false) {
+			throw new IOException("Failed to create task directory, path=" + directory.getAbsolutePath());
+		}
+
+		this.taskId = taskId;
+		this.directory = directory;
+		this.segmentCapacity = segmentCapacity;
+		this.activities = new SegmentList("activity", EntityRecords.ACTIVITY_RECORD_SIZE);
+		this.events = new SegmentList("event", EntityRecords.EVENT_RECORD_SIZE);
+		this.heap = new StringHeap(new File(directory, HEAP_FILE));
+	}
+
+	long getTaskId() {
+		return taskId;
+	}
+
+	/**
+	 * Assigns each activity the next id and appends it; the segments and heap are forced to disk before returning.
+	 */
+	void appendActivities(List<? extends ActivityEntity> activitiesToSave, AtomicLong ids) throws IOException {
+		lock.writeLock().lock();
+		try {
+			for (ActivityEntity activity : activitiesToSave) {
+				activity.setId(ids.getAndIncrement());
+				EntityRecords.writeActivity(activity, heap, activityRecord);
+				activities.append(activityRecord);
+			}
+			forceWrites(activities);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void appendEvents(List<EventEntity> eventsToSave, AtomicLong ids) throws IOException {
+		lock.writeLock().lock();
+		try {
+			for (EventEntity event : eventsToSave) {
+				event.setId(ids.getAndIncrement());
+				EntityRecords.writeEvent(event, heap, eventRecord);
+				events.append(eventRecord);
+			}
+			forceWrites(events);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param type the type of activity to read, or null for all types
+	 * @return the activities ordered by start
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends ActivityEntity> List<T> readActivities(Class<T> type) throws IOException {
+		int typeCode = type != null ? EntityRecords.getActivityTypeCode(type) : -1;
+		List<T> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (RecordSegment segment : activities.segments) {
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					if (typeCode < 0 || segment.getByte(slot, EntityRecords.ACTIVITY_TYPE_OFFSET) == typeCode) {
+						result.add((T) EntityRecords.readActivity(segment, slot, taskId, heap));
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		result.sort(ACTIVITY_ORDER);
+		return result;
+	}
+
+	/**
+	 * @return the activities of the given types which end at any of the given times
+	 */
+	List<ActivityEntity> findActivitiesEndingAt(Collection<Class<? extends ActivityEntity>> types,
+	                                            Set<LocalDateTime> endTimes) throws IOException {
+		Set<Byte> typeCodes = new HashSet<>();
+		for (Class<? extends ActivityEntity> type : types) {
+			typeCodes.add(EntityRecords.getActivityTypeCode(type));
+		}
+		// an activity can't start after it ends, so only activities starting by the latest end time can match
+		long latestStartSeconds = endTimes.stream().max(Comparator.naturalOrder()).get().toEpochSecond(ZoneOffset.UTC);
+
+		List<ActivityEntity> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (RecordSegment segment : activities.segments) {
+				int slotCount = segment.countKeysAtOrBefore(latestStartSeconds);
+				for (int slot = 0; slot < slotCount; slot++) {
+					if (typeCodes.contains(segment.getByte(slot, EntityRecords.ACTIVITY_TYPE_OFFSET))
+							&& endTimes.contains(EntityRecords.readActivityEnd(segment, slot))) {
+						result.add(EntityRecords.readActivity(segment, slot, taskId, heap));
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the end of the activity forward to the given time, in place.
+	 *
+	 * @return false if the activity is not in this task
+	 */
+	boolean updateActivityEnd(long activityId, LocalDateTime end) {
+		lock.writeLock().lock();
+		try {
+			long position = activities.findPosition(activityId);
+			if (position < 0) {
+				return false;
+			}
+
+			RecordSegment segment = activities.getSegment(position);
+			int slot = getSlot(position);
+			LocalDateTime currentEnd = EntityRecords.readActivityEnd(segment, slot);
+			if (currentEnd == null || end.isAfter(currentEnd)) {
+				EntityRecords.writeActivityEnd(segment, slot, end);
+				segment.force();
+				lastWriteMillis = System.currentTimeMillis();
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the comment of the event; the new comment is appended to the heap and the record updated in place.
+	 *
+	 * @return false if the event is not in this task
+	 */
+	boolean updateEventComment(long eventId, String comment) throws IOException {
+		lock.writeLock().lock();
+		try {
+			long position = events.findPosition(eventId);
+			if (position < 0) {
+				return false;
+			}
+
+			RecordSegment segment = events.getSegment(position);
+			EntityRecords.writeEventComment(segment, getSlot(position), heap, comment);
+			heap.force();
+			segment.force();
+			lastWriteMillis = System.currentTimeMillis();
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads only the end field of each record, no activity is created.
+	 */
+	LocalDateTime getMostRecentActivityEnd() {
+		lock.readLock().lock();
+		try {
+			LocalDateTime mostRecentEnd = null;
+			for (RecordSegment segment : activities.segments) {
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					LocalDateTime end = EntityRecords.readActivityEnd(segment, slot);
+					if (end != null && (mostRecentEnd == null || end.isAfter(mostRecentEnd))) {
+						mostRecentEnd = end;
+					}
+				}
+			}
+			return mostRecentEnd;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the events ordered by position
+	 */
+	List<EventEntity> readEvents() throws IOException {
+		return readEvents(null, null);
+	}
+
+	/**
+	 * @return the events of the owner at or after the given position, ordered by position
+	 */
+	List<EventEntity> readEvents(Long ownerId, LocalDateTime earliestPosition) throws IOException {
+		long earliestSeconds = earliestPosition != null ? earliestPosition.toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE;
+		List<EventEntity> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (RecordSegment segment : events.segments) {
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					if (ownerId != null && segment.getLong(slot, EntityRecords.OWNER_ID_OFFSET) != ownerId) {
+						continue;
+					}
+					if (segment.getLong(slot, RecordSegment.KEY_SECONDS_OFFSET) < earliestSeconds) {
+						continue;
+					}
+
+					EventEntity event = EntityRecords.readEvent(segment, slot, taskId, heap);
+					if (earliestPosition == null || event.getPosition().isBefore(earliestPosition) == false) {
+						result.add(event);
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		result.sort(EVENT_ORDER);
+		return result;
+	}
+
+	EventEntity findEvent(long eventId) throws IOException {
+		lock.readLock().lock();
+		try {
+			long position = events.findPosition(eventId);
+			if (position < 0) {
+				return null;
+			}
+			return EntityRecords.readEvent(events.getSegment(position), getSlot(position), taskId, heap);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	void forEachActivityId(LongConsumer consumer) {
+		forEachId(activities, consumer);
+	}
+
+	void forEachEventId(LongConsumer consumer) {
+		forEachId(events, consumer);
+	}
+
+	/**
+	 * @return the distinct owners of the task's events
+	 */
+	Set<Long> getEventOwnerIds() {
+		Set<Long> ownerIds = new HashSet<>();
+		lock.readLock().lock();
+		try {
+			for (RecordSegment segment : events.segments) {
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					long ownerId = segment.getLong(slot, EntityRecords.OWNER_ID_OFFSET);
+					if (ownerId != EntityRecords.NULL_VALUE) {
+						ownerIds.add(ownerId);
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return ownerIds;
+	}
+
+	/**
+	 * A task needs compaction once it has more than one unsorted segment, or once it has not been written to for
+	 * the idle time and has any unsorted segment.
+	 */
+	boolean needsCompaction(long idleMillis) {
+		lock.readLock().lock();
+		try {
+			boolean idle = System.currentTimeMillis() - lastWriteMillis >= idleMillis;
+			return activities.needsCompaction(idle) || events.needsCompaction(idle);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	void compact() throws IOException {
+		lock.writeLock().lock();
+		try {
+			activities.compact();
+			events.compact();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return activities.segments.size() + events.segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	void delete() throws IOException {
+		lock.writeLock().lock();
+		try {
+			close();
+			activities.clear();
+			events.clear();
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					Files.deleteIfExists(file.toPath());
+				}
+			}
+			Files.deleteIfExists(directory.toPath());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		heap.close();
+	}
+
+	private void forceWrites(SegmentList list) throws IOException {
+		heap.force();
+		list.forceModified();
+		lastWriteMillis = System.currentTimeMillis();
+	}
+
+	private static long toPosition(int segmentIndex, int slot) {
+		return ((long) segmentIndex << 32) | slot;
+	}
+
+	private static int getSlot(long position) {
+		return (int) position;
+	}
+
+	private void forEachId(SegmentList list, LongConsumer consumer) {
+		lock.readLock().lock();
+		try {
+			for (RecordSegment segment : list.segments) {
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					consumer.accept(segment.getLong(slot, RecordSegment.ID_OFFSET));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * The segments of one record type, named prefix-number.segment and ordered by number.
+	 */
+	private class SegmentList {
+
+		private static final String SEGMENT_SUFFIX = ".segment";
+		private static final String COMPACT_SUFFIX = ".compact";
+		private static final String COMPACTED_MARKER_SUFFIX = ".compacted";
+
+		private final String prefix;
+		private final int recordSize;
+		private final List<RecordSegment> segments = new ArrayList<>();
+		private final List<RecordSegment> modifiedSegments = new ArrayList<>();
+		// record id -> position, the index of the segment in segments in the high int and the slot in the low int
+		private final Map<Long, Long> positionsById = new HashMap<>();
+		private int nextSegmentNumber;
+
+		SegmentList(String prefix, int recordSize) throws IOException {
+			this.prefix = prefix;
+			this.recordSize = recordSize;
+			recoverCompaction();
+
+			for (int number : findSegmentNumbers(SEGMENT_SUFFIX)) {
+				segments.add(RecordSegment.open(segmentFile(number, SEGMENT_SUFFIX), recordSize));
+				nextSegmentNumber = number + 1;
+			}
+			indexPositions();
+		}
+
+		RecordSegment getSegment(long position) {
+			return segments.get((int) (position >>> 32));
+		}
+
+		/**
+		 * @return the position of the record, or -1 if there is no record with the id
+		 */
+		long findPosition(long id) {
+			Long position = positionsById.get(id);
+			return position != null ? position : -1L;
+		}
+
+		private void indexPositions() {
+			positionsById.clear();
+			for (int segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+				RecordSegment segment = segments.get(segmentIndex);
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					positionsById.put(segment.getLong(slot, RecordSegment.ID_OFFSET), toPosition(segmentIndex, slot));
+				}
+			}
+		}
+
+		void clear() {
+			segments.clear();
+			modifiedSegments.clear();
+			positionsById.clear();
+		}
+
+		void append(ByteBuffer record) throws IOException {
+			RecordSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if (segment == null || segment.isFull()) {
+				segment = RecordSegment.create(segmentFile(nextSegmentNumber++, SEGMENT_SUFFIX), recordSize,
+						segmentCapacity, false);
+				segments.add(segment);
+			}
+			int slot = segment.append(record);
+			positionsById.put(record.getLong(record.position() + RecordSegment.ID_OFFSET), toPosition(segments.size() - 1, slot));
+			if (modifiedSegments.contains(segment) == false) {
+				modifiedSegments.add(segment);
+			}
+		}
+
+		void forceModified() {
+			for (RecordSegment segment : modifiedSegments) {
+				segment.force();
+			}
+			modifiedSegments.clear();
+		}
+
+		boolean needsCompaction(boolean idle) {
+			int unsortedCount = 0;
+			for (RecordSegment segment : segments) {
+				if (segment.isSorted() == false) {
+					unsortedCount++;
+				}
+			}
+			return unsortedCount > 1 || (idle && unsortedCount > 0);
+		}
+
+		void compact() throws IOException {
+			if (segments.isEmpty()) {
+				return;
+			}
+
+			List<RecordRef> records = new ArrayList<>();
+			for (RecordSegment segment : segments) {
+				for (int slot = 0; slot < segment.getCount(); slot++) {
+					records.add(new RecordRef(segment, slot));
+				}
+			}
+			records.sort(RecordRef.ORDER);
+
+			int firstCompactedNumber = nextSegmentNumber;
+			List<RecordSegment> compactedSegments = new ArrayList<>();
+			ByteBuffer record = ByteBuffer.allocate(recordSize);
+			for (int start = 0; start < records.size(); start += segmentCapacity) {
+				int capacity = Math.min(segmentCapacity, records.size() - start);
+				RecordSegment compacted = RecordSegment.create(segmentFile(nextSegmentNumber++, COMPACT_SUFFIX),
+						recordSize, capacity, true);
+				for (RecordRef ref : records.subList(start, start + capacity)) {
+					record.clear();
+					ref.segment.copyRecord(ref.slot, record);
+					record.flip();
+					compacted.append(record);
+				}
+				compacted.force();
+				compactedSegments.add(compacted);
+			}
+
+			Files.write(markerFile().toPath(), String.valueOf(firstCompactedNumber).getBytes(StandardCharsets.UTF_8));
+			for (RecordSegment segment : segments) {
+				segment.delete();
+			}
+			segments.clear();
+			modifiedSegments.clear();
+			for (RecordSegment compacted : compactedSegments) {
+				File segmentFile = renameToSegment(compacted.getFile());
+				segments.add(RecordSegment.open(segmentFile, recordSize));
+			}
+			Files.delete(markerFile().toPath());
+			indexPositions();
+		}
+
+		/**
+		 * With a marker, the compacted segments are complete and replace every segment numbered before the first
+		 * compacted one; without, the compaction did not finish and its segments are discarded.
+		 */
+		private void recoverCompaction() throws IOException {
+			File marker = markerFile();
+			if (marker.exists()) {
+				int firstCompactedNumber = Integer.parseInt(new String(Files.readAllBytes(marker.toPath()),
+						StandardCharsets.UTF_8).trim());
+				for (int number : findSegmentNumbers(SEGMENT_SUFFIX)) {
+					if (number < firstCompactedNumber) {
+						Files.delete(segmentFile(number, SEGMENT_SUFFIX).toPath());
+					}
+				}
+				for (int number : findSegmentNumbers(COMPACT_SUFFIX)) {
+					renameToSegment(segmentFile(number, COMPACT_SUFFIX));
+				}
+				Files.delete(marker.toPath());
+			} else {
+				for (int number : findSegmentNumbers(COMPACT_SUFFIX)) {
+					Files.delete(segmentFile(number, COMPACT_SUFFIX).toPath());
+				}
+			}
+		}
+
+		private File renameToSegment(File compactFile) throws IOException {
+			String name = compactFile.getName();
+			File segmentFile = new File(directory, name.substring(0, name.length() - COMPACT_SUFFIX.length()) + SEGMENT_SUFFIX);
+			Files.move(compactFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			return segmentFile;
+		}
+
+		private List<Integer> findSegmentNumbers(String suffix) {
+			List<Integer> numbers = new ArrayList<>();
+			File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix + "-") && name.endsWith(suffix));
+			if (files != null) {
+				for (File file : files) {
+					String name = file.getName();
+					numbers.add(Integer.parseInt(name.substring(prefix.length() + 1, name.length() - suffix.length())));
+				}
+			}
+			numbers.sort(null);
+			return numbers;
+		}
+
+		private File segmentFile(int number, String suffix) {
+			return new File(directory, String.format("%s-%08d%s", prefix, number, suffix));
+		}
+
+		private File markerFile() {
+			return new File(directory, prefix + COMPACTED_MARKER_SUFFIX);
+		}
+
+	}
+
+	private static class RecordRef {
+
+		private static final Comparator<RecordRef> ORDER = Comparator
+				.comparingLong((RecordRef ref) -> ref.keySeconds)
+				.thenComparingInt(ref -> ref.keyNanos)
+				.thenComparingLong(ref -> ref.id);
+
+		private final RecordSegment segment;
+		private final int slot;
+		private final long keySeconds;
+		private final int keyNanos;
+		private final long id;
+
+		private RecordRef(RecordSegment segment, int slot) {
+			this.segment = segment;
+			this.slot = slot;
+			this.keySeconds = segment.getLong(slot, RecordSegment.KEY_SECONDS_OFFSET);
+			this.keyNanos = segment.getInt(slot, RecordSegment.KEY_NANOS_OFFSET);
+			this.id = segment.getLong(slot, RecordSegment.ID_OFFSET);
+		}
+
+	}
+
+}
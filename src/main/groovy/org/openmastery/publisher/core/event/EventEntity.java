@@ -21,6 +21,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.openmastery.publisher.api.event.EventType;
 
 import javax.persistence.Entity;
@@ -29,7 +31,6 @@ import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.SequenceGenerator;
 import java.time.LocalDateTime;
 
 @Entity(name = "event")
@@ -42,7 +43,12 @@ public class EventEntity {
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "event_seq_gen")
-	@SequenceGenerator(name = "event_seq_gen", sequenceName = "event_seq")
+	// pooled allocation, increment_size must match the increment of event_seq (see db/event/pool_event_seq.sql)
+	@GenericGenerator(name = "event_seq_gen", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+			@Parameter(name = "sequence_name", value = "event_seq"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled")
+	})
 	private Long id;
 	private Long taskId;
 	private Long ownerId;
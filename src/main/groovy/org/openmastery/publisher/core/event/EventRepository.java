@@ -26,19 +26,29 @@ import java.util.List;
 
 public interface EventRepository extends PagingAndSortingRepository<EventEntity, Long> {
 
+	@Query(nativeQuery = true, value = "select * from event where task_id = ?1 order by position, id")
 	List<EventEntity> findByTaskId(long taskId);
 
 	List<EventEntity> findByOwnerIdAndTaskId(long ownerId, long taskId);
 
-	@Query(nativeQuery = true, value = "select * from event where owner_id=:ownerId and position >= :position order by position asc limit :limit")
+	// events with a comment or faq are left as rows, the faq searches and entity_tag only find event rows
+	@Query(nativeQuery = true, value = "select * from event e where e.task_id = ?1 and coalesce(e.comment, '') = '' " +
+			"and not exists (select 1 from annotation a where a.task_id = e.task_id and a.type = 'faq' and a.event_id = e.id) " +
+			"order by position, id")
+	List<EventEntity> findArchivableByTaskId(long taskId);
+
+	@Query(nativeQuery = true, value = "select * from event where owner_id=:ownerId and position >= :position " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null) order by position asc limit :limit")
 	List<EventEntity> findRecentEvents(@Param("ownerId") Long userId, @Param("position") Timestamp afterDate,  @Param("limit") Integer limit);
 
 
-	@Query(nativeQuery = true, value = "select * from event where owner_id=(?1) and position between (?2) and (?3) order by position asc")
+	@Query(nativeQuery = true, value = "select * from event where owner_id=(?1) and position between (?2) and (?3) " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null) order by position asc")
 	List<EventEntity> findEventsWithinsRange(Long userId, Timestamp startTime, Timestamp endTime);
 
 
-	@Query(nativeQuery = true, value = "select * from event where owner_id=(?1) order by position asc")
+	@Query(nativeQuery = true, value = "select * from event where owner_id=(?1) " +
+			"and not exists (select 1 from task dt where dt.id = task_id and dt.deleted_at is not null) order by position asc")
 	List<EventEntity> findAllByUser(Long userId);
 
 	EventEntity findByOwnerIdAndId(Long ownerId, Long eventId);
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.mapper;
+
+import org.openmastery.publisher.api.activity.NewActivity;
+import org.openmastery.publisher.api.activity.NewBlockActivity;
+import org.openmastery.publisher.api.activity.NewEditorActivity;
+import org.openmastery.publisher.api.activity.NewExecutionActivity;
+import org.openmastery.publisher.api.activity.NewExternalActivity;
+import org.openmastery.publisher.api.activity.NewIdleActivity;
+import org.openmastery.publisher.api.activity.NewModificationActivity;
+import org.openmastery.publisher.api.batch.NewBatchEvent;
+import org.openmastery.publisher.api.event.NewSnippetEvent;
+import org.openmastery.publisher.core.activity.ActivityEntity;
+import org.openmastery.publisher.core.activity.BlockActivityEntity;
+import org.openmastery.publisher.core.activity.EditorActivityEntity;
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity;
+import org.openmastery.publisher.core.activity.ExternalActivityEntity;
+import org.openmastery.publisher.core.activity.IdleActivityEntity;
+import org.openmastery.publisher.core.activity.ModificationActivityEntity;
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Statically typed mappings from batch items to entities, used on the ingestion path in place of Dozer.
+ * Each mapping copies exactly the properties Dozer would copy; BatchItemEntityMapperSpec verifies the two agree.
+ */
+public final class BatchItemEntityMapper {
+
+	private static final Map<Class<? extends ActivityEntity>, Function<NewActivity, ? extends ActivityEntity>> ACTIVITY_MAPPERS = new HashMap<>();
+
+	static {
+		registerActivityMapper(NewEditorActivity.class, EditorActivityEntity.class, BatchItemEntityMapper::toEntity);
+		registerActivityMapper(NewExternalActivity.class, ExternalActivityEntity.class, BatchItemEntityMapper::toEntity);
+		registerActivityMapper(NewIdleActivity.class, IdleActivityEntity.class, BatchItemEntityMapper::toEntity);
+		registerActivityMapper(NewExecutionActivity.class, ExecutionActivityEntity.class, BatchItemEntityMapper::toEntity);
+		registerActivityMapper(NewModificationActivity.class, ModificationActivityEntity.class, BatchItemEntityMapper::toEntity);
+		registerActivityMapper(NewBlockActivity.class, BlockActivityEntity.class, BatchItemEntityMapper::toEntity);
+	}
+
+	private static <S extends NewActivity, D extends ActivityEntity> void registerActivityMapper(Class<S> sourceType, Class<D> entityType,
+	                                                                                             Function<S, D> mapper) {
+		ACTIVITY_MAPPERS.put(entityType, (NewActivity activity) -> mapper.apply(sourceType.cast(activity)));
+	}
+
+	private BatchItemEntityMapper() {
+	}
+
+	public static <D extends ActivityEntity> D toActivityEntity(NewActivity activity, Class<D> entityType) {
+		Function<NewActivity, ? extends ActivityEntity> mapper = ACTIVITY_MAPPERS.get(entityType);
+		if (mapper == null) {
+			throw new IllegalArgumentException("No mapper registered for activity entity type " + entityType.getName());
+		}
+		return activity == null ? null : entityType.cast(mapper.apply(activity));
+	}
+
+	public static EditorActivityEntity toEntity(NewEditorActivity activity) {
+		EditorActivityEntity entity = new EditorActivityEntity();
+		entity.setTaskId(activity.getTaskId());
+		entity.setFilePath(activity.getFilePath());
+		entity.setModified(activity.isModified());
+		return entity;
+	}
+
+	public static ExternalActivityEntity toEntity(NewExternalActivity activity) {
+		ExternalActivityEntity entity = new ExternalActivityEntity();
+		entity.setTaskId(activity.getTaskId());
+		entity.setComment(activity.getComment());
+		return entity;
+	}
+
+	public static IdleActivityEntity toEntity(NewIdleActivity activity) {
+		IdleActivityEntity entity = new IdleActivityEntity();
+		entity.setTaskId(activity.getTaskId());
+		return entity;
+	}
+
+	public static ExecutionActivityEntity toEntity(NewExecutionActivity activity) {
+		ExecutionActivityEntity entity = new ExecutionActivityEntity();
+		entity.setTaskId(activity.getTaskId());
+		entity.setProcessName(activity.getProcessName());
+		entity.setExitCode(activity.getExitCode());
+		entity.setExecutionTaskType(activity.getExecutionTaskType());
+		entity.setDebug(activity.isDebug());
+		return entity;
+	}
+
+	public static ModificationActivityEntity toEntity(NewModificationActivity activity) {
+		ModificationActivityEntity entity = new ModificationActivityEntity();
+		entity.setTaskId(activity.getTaskId());
+		entity.setModificationCount(activity.getModificationCount());
+		return entity;
+	}
+
+	public static BlockActivityEntity toEntity(NewBlockActivity activity) {
+		BlockActivityEntity entity = new BlockActivityEntity();
+		entity.setTaskId(activity.getTaskId());
+		entity.setComment(activity.getComment());
+		return entity;
+	}
+
+	public static EventEntity toEventEntity(NewBatchEvent event) {
+		if (event == null) {
+			return null;
+		}
+
+		EventEntity entity = new EventEntity();
+		entity.setTaskId(event.getTaskId());
+		entity.setComment(event.getComment());
+		entity.setType(event.getType());
+		entity.setPosition(event.getPosition());
+		return entity;
+	}
+
+	/**
+	 * Note the snippet's eventType is not copied to the event's type, callers must set it explicitly.
+	 */
+	public static EventEntity toEventEntity(NewSnippetEvent snippet) {
+		if (snippet == null) {
+			return null;
+		}
+
+		EventEntity entity = new EventEntity();
+		entity.setTaskId(snippet.getTaskId());
+		entity.setComment(snippet.getComment());
+		entity.setPosition(snippet.getPosition());
+		return entity;
+	}
+
+	public static SnippetAnnotationEntity toSnippetAnnotationEntity(NewSnippetEvent snippet) {
+		if (snippet == null) {
+			return null;
+		}
+
+		SnippetAnnotationEntity entity = new SnippetAnnotationEntity();
+		entity.setTaskId(snippet.getTaskId());
+		entity.setSource(snippet.getSource());
+		entity.setSnippet(snippet.getSnippet());
+		return entity;
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.partition;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs partition maintenance periodically, so a completed month is rolled out of the parent tables within one
+ * interval of the month ending.  The first run is delayed to keep it out of the way of startup.
+ */
+@Slf4j
+@Component
+public class PartitionMaintenanceScheduler {
+
+	@Autowired
+	private PartitionMaintenanceService partitionMaintenanceService;
+
+	@Value("${org.ideaflow.partition.maintenanceIntervalInHours:24}")
+	private long maintenanceIntervalInHours;
+	@Value("${org.ideaflow.partition.initialDelayInMinutes:10}")
+	private long initialDelayInMinutes;
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		if (maintenanceIntervalInHours <= 0) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("partition-maintenance")
+				.setDaemon(true)
+				.build());
+		executor.scheduleWithFixedDelay(this::maintainPartitions, TimeUnit.MINUTES.toMillis(initialDelayInMinutes),
+				TimeUnit.HOURS.toMillis(maintenanceIntervalInHours), TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void maintainPartitions() {
+		// an exception would cancel all later runs
+		try {
+			partitionMaintenanceService.maintainPartitions();
+		} catch (RuntimeException ex) {
+			log.error("Failed to maintain partitions", ex);
+		}
+	}
+
+}
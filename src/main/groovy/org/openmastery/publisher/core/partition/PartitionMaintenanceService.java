@@ -0,0 +1,66 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+
+/**
+ * Rolls completed months of activity and event rows out of the parent tables into monthly partitions and drops
+ * partitions past the retention period.  See db/partition/create_partition_functions.sql.
+ */
+@Slf4j
+@Component
+@Transactional
+public class PartitionMaintenanceService {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${org.ideaflow.partition.retentionInMonths:0}")
+	private int retentionInMonths;
+
+	@Value("${org.ideaflow.partition.rowsPerMove:10000}")
+	private int rowsPerMove;
+
+	/**
+	 * @return the number of rows moved from the parent tables into partitions
+	 */
+	public long maintainPartitions() {
+		long activityMovedCount = maintainPartitions("activity", "start_time", "activity_project_metadata");
+		long eventMovedCount = maintainPartitions("event", "position", "");
+		log.info("Maintained partitions, activityMovedCount={}, eventMovedCount={}, retentionInMonths={}",
+				activityMovedCount, eventMovedCount, retentionInMonths);
+		return activityMovedCount + eventMovedCount;
+	}
+
+	private long maintainPartitions(String table, String partitionColumn, String rowTriggerFunction) {
+		Query query = entityManager.createNativeQuery("select ideaflow_maintain_partitions(?1, ?2, ?3, nullif(?4, ''), ?5)");
+		query.setParameter(1, table);
+		query.setParameter(2, partitionColumn);
+		query.setParameter(3, retentionInMonths);
+		query.setParameter(4, rowTriggerFunction);
+		query.setParameter(5, rowsPerMove);
+		return ((Number) query.getSingleResult()).longValue();
+	}
+
+}
@@ -38,7 +38,7 @@ public class JSONConverter {
 		mapper = new ObjectMapperContextResolver().getContext(null);
 	}
 
-	private Map<String, Class> createIdToClassMap() {
+	public static Map<String, Class> createIdToClassMap() {
 		Map<String, Class> idToClassMap = new HashMap<String, Class>();
 		idToClassMap.put("EditorActivity", NewEditorActivity.class);
 		idToClassMap.put("ExecutionActivity", NewExecutionActivity.class);
@@ -51,7 +51,7 @@ public class JSONConverter {
 		return idToClassMap;
 	}
 
-	private Map<Class, String> createClassToIdMap() {
+	private static Map<Class, String> createClassToIdMap() {
 		Map<Class, String> classToIdMap = new HashMap<Class, String>();
 		for (Map.Entry<String, Class> entry : createIdToClassMap().entrySet()) {
 			classToIdMap.put(entry.getValue(), entry.getKey());
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.tag;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the entity tag backfill in the background after startup, pausing between chunks so it does not compete with
+ * ingestion, and stops once there is nothing left to backfill.
+ */
+@Slf4j
+@Component
+public class EntityTagBackfillScheduler {
+
+	@Autowired
+	private EntityTagBackfillService entityTagBackfillService;
+
+	@Value("${org.ideaflow.tags.backfillEnabled:true}")
+	private boolean backfillEnabled;
+	@Value("${org.ideaflow.tags.backfillPauseInMillis:100}")
+	private long backfillPauseInMillis;
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		if (backfillEnabled == false) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("entity-tag-backfill")
+				.setDaemon(true)
+				.build());
+		executor.scheduleWithFixedDelay(this::backfillNextChunk, backfillPauseInMillis, backfillPauseInMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void backfillNextChunk() {
+		// an exception would cancel all later runs
+		try {
+			if (entityTagBackfillService.backfillNextChunk() == false) {
+				executor.shutdown();
+			}
+		} catch (RuntimeException ex) {
+			log.error("Failed to backfill entity tags", ex);
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.tag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity;
+import org.openmastery.publisher.core.archive.TaskArchiveCodec;
+import org.openmastery.publisher.core.archive.TaskArchiveEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Indexes the tags of events and faqs written before entity_tag existed, one chunk of rows per call in ascending id
+ * order.  Progress is kept in entity_tag_backfill and the progress row is locked for the chunk, so the backfill
+ * resumes after a restart and several servers never index the same chunk.
+ *
+ * Events compacted into task_archive are no longer rows, so the archives are backfilled as a source of their own,
+ * one chunk of archives in ascending task id order.
+ *
+ * Rows written since are indexed on write as well; indexing replaces an entity's tags, so the overlap is harmless.
+ */
+@Slf4j
+@Component
+@Transactional
+public class EntityTagBackfillService {
+
+	private static final String ARCHIVE_BACKFILL_SOURCE = "archive";
+
+	@Autowired
+	private EntityTagIndex entityTagIndex;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${org.ideaflow.tags.backfillChunkSize:1000}")
+	private int chunkSize;
+
+	private TaskArchiveCodec taskArchiveCodec = new TaskArchiveCodec();
+
+	/**
+	 * @return false once every source has been backfilled
+	 */
+	public boolean backfillNextChunk() {
+		for (String source : new String[]{EntityTagIndex.EVENT_SOURCE, EntityTagIndex.FAQ_SOURCE, ARCHIVE_BACKFILL_SOURCE}) {
+			Query progressQuery = entityManager.createNativeQuery("select last_id from entity_tag_backfill " +
+					"where source = ?1 and completed = false for update");
+			progressQuery.setParameter(1, source);
+			List<?> progress = progressQuery.getResultList();
+			if (progress.isEmpty() == false) {
+				backfillChunk(source, ((Number) progress.get(0)).longValue());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void backfillChunk(String source, long lastId) {
+		long lastIndexedId;
+		int rowCount;
+		if (EntityTagIndex.EVENT_SOURCE.equals(source)) {
+			List<EventEntity> events = findChunk("select * from event where id > ?1 order by id limit ?2", EventEntity.class, lastId);
+			entityTagIndex.indexEvents(events);
+			rowCount = events.size();
+			lastIndexedId = rowCount > 0 ? events.get(rowCount - 1).getId() : lastId;
+		} else if (ARCHIVE_BACKFILL_SOURCE.equals(source)) {
+			List<TaskArchiveEntity> archives = findChunk("select * from task_archive where task_id > ?1 order by task_id limit ?2",
+					TaskArchiveEntity.class, lastId);
+			List<EventEntity> events = new ArrayList<>();
+			for (TaskArchiveEntity archive : archives) {
+				events.addAll(taskArchiveCodec.decode(archive.getTaskId(), archive.getData()).getEvents());
+			}
+			entityTagIndex.indexEvents(events);
+			rowCount = archives.size();
+			lastIndexedId = rowCount > 0 ? archives.get(rowCount - 1).getTaskId() : lastId;
+		} else {
+			List<FaqAnnotationEntity> faqs = findChunk("select * from annotation where type = 'faq' and id > ?1 order by id limit ?2",
+					FaqAnnotationEntity.class, lastId);
+			entityTagIndex.indexFaqs(faqs);
+			rowCount = faqs.size();
+			lastIndexedId = rowCount > 0 ? faqs.get(rowCount - 1).getId() : lastId;
+		}
+		// the entities are not needed past this chunk, keep the session from growing over the whole backfill
+		entityManager.flush();
+		entityManager.clear();
+
+		boolean completed = rowCount < chunkSize;
+		Query updateQuery = entityManager.createNativeQuery("update entity_tag_backfill set last_id = ?1, completed = ?2 where source = ?3");
+		updateQuery.setParameter(1, lastIndexedId);
+		updateQuery.setParameter(2, completed);
+		updateQuery.setParameter(3, source);
+		updateQuery.executeUpdate();
+
+		if (completed) {
+			log.info("Completed entity tag backfill, source={}, lastId={}", source, lastIndexedId);
+		} else {
+			log.debug("Backfilled entity tags, source={}, rowCount={}, lastId={}", source, rowCount, lastIndexedId);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> List<T> findChunk(String sql, Class<T> entityType, long lastId) {
+		Query query = entityManager.createNativeQuery(sql, entityType);
+		query.setParameter(1, lastId);
+		query.setParameter(2, chunkSize);
+		return query.getResultList();
+	}
+
+}
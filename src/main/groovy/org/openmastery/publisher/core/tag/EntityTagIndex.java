@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.tag;
+
+import org.openmastery.publisher.api.journey.TagsUtil;
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity;
+import org.openmastery.publisher.core.event.EventEntity;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maintains the entity_tag table, one row per hashtag (see TagsUtil.extractUniqueHashTags) of each event comment and
+ * faq comment.  Tags keep their case and are matched on lower(tag).
+ *
+ * Indexing an event or faq replaces all of its previous tags, so re-indexing is idempotent.
+ */
+@Component
+@Transactional
+public class EntityTagIndex {
+
+	public static final String EVENT_SOURCE = "event";
+	public static final String FAQ_SOURCE = "faq";
+
+	// five parameters per row, well below the jdbc limit of 32767 bind parameters per statement
+	private static final int CHUNK_SIZE = 500;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	public void indexEvents(Collection<EventEntity> events) {
+		List<Long> eventIds = new ArrayList<>(events.size());
+		List<Object[]> tagRows = new ArrayList<>();
+		for (EventEntity event : events) {
+			eventIds.add(event.getId());
+			if (event.getTaskId() == null) {
+				continue;
+			}
+			for (String tag : TagsUtil.extractUniqueHashTags(event.getComment())) {
+				tagRows.add(new Object[]{tag, event.getOwnerId(), event.getTaskId(), event.getId(), EVENT_SOURCE});
+			}
+		}
+		replaceTags(EVENT_SOURCE, eventIds, tagRows);
+	}
+
+	public void indexFaqs(Collection<FaqAnnotationEntity> faqs) {
+		List<Long> eventIds = new ArrayList<>(faqs.size());
+		List<Object[]> tagRows = new ArrayList<>();
+		for (FaqAnnotationEntity faq : faqs) {
+			eventIds.add(faq.getEventId());
+			for (String tag : TagsUtil.extractUniqueHashTags(faq.getComment())) {
+				tagRows.add(new Object[]{tag, faq.getOwnerId(), faq.getTaskId(), faq.getEventId(), FAQ_SOURCE});
+			}
+		}
+		replaceTags(FAQ_SOURCE, eventIds, tagRows);
+	}
+
+	public void deleteFaqTags(long eventId) {
+		replaceTags(FAQ_SOURCE, Collections.singletonList(eventId), Collections.emptyList());
+	}
+
+	/**
+	 * @return the distinct tags of all events and faqs of the task, including events compacted into task_archive
+	 * (their tags are kept on compaction and backfilled by EntityTagBackfillService for older archives)
+	 */
+	public List<String> findTagsForTask(long ownerId, long taskId) {
+		Query query = entityManager.createNativeQuery("select distinct tag from entity_tag where task_id = ?1 and owner_id = ?2");
+		query.setParameter(1, taskId);
+		query.setParameter(2, ownerId);
+
+		List<?> tags = query.getResultList();
+		List<String> result = new ArrayList<>(tags.size());
+		for (Object tag : tags) {
+			result.add((String) tag);
+		}
+		return result;
+	}
+
+	private void replaceTags(String source, List<Long> eventIds, List<Object[]> tagRows) {
+		for (int i = 0; i < eventIds.size(); i += CHUNK_SIZE) {
+			Query query = entityManager.createNativeQuery("delete from entity_tag where event_id in (?1) and source = ?2");
+			query.setParameter(1, eventIds.subList(i, Math.min(i + CHUNK_SIZE, eventIds.size())));
+			query.setParameter(2, source);
+			query.executeUpdate();
+		}
+
+		for (int i = 0; i < tagRows.size(); i += CHUNK_SIZE) {
+			insertTags(tagRows.subList(i, Math.min(i + CHUNK_SIZE, tagRows.size())));
+		}
+	}
+
+	private void insertTags(List<Object[]> tagRows) {
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < tagRows.size(); i++) {
+			values.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?)");
+		}
+		Query query = entityManager.createNativeQuery("insert into entity_tag (tag, owner_id, task_id, event_id, source) " +
+				"values " + values);
+
+		int position = 1;
+		for (Object[] tagRow : tagRows) {
+			for (Object value : tagRow) {
+				query.setParameter(position++, value);
+			}
+		}
+		query.executeUpdate();
+	}
+
+}
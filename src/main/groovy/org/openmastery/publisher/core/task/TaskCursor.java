@@ -0,0 +1,73 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.task;
+
+import lombok.Value;
+
+import javax.ws.rs.BadRequestException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the (coalesce(modify_date, creation_date) desc, id desc) ordering of tasks.  Encoded as an opaque url
+ * safe string and handed to clients as PagedResult.nextCursor; the next page is every task strictly after the cursor.
+ */
+@Value
+public class TaskCursor {
+
+	// sorts after every real task, used to fetch the first page
+	public static final TaskCursor FIRST = new TaskCursor(LocalDateTime.of(9999, 12, 31, 0, 0), Long.MAX_VALUE);
+
+	private static final String SEPARATOR = "|";
+
+	LocalDateTime modifyDate;
+	long id;
+
+	public static TaskCursor after(TaskEntity task) {
+		// tasks which were never modified are ordered by their creation date, as in the TaskRepository queries
+		LocalDateTime modifyDate = task.getModifyDate() != null ? task.getModifyDate() : task.getCreationDate();
+		return new TaskCursor(modifyDate, task.getId());
+	}
+
+	public static TaskCursor decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return FIRST;
+		}
+
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			int separatorIndex = value.lastIndexOf(SEPARATOR);
+			LocalDateTime modifyDate = LocalDateTime.parse(value.substring(0, separatorIndex));
+			long id = Long.parseLong(value.substring(separatorIndex + 1));
+			return new TaskCursor(modifyDate, id);
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException ex) {
+			throw new BadRequestException("Malformed task cursor: " + cursor, ex);
+		}
+	}
+
+	public String encode() {
+		String value = modifyDate + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public Timestamp getModifyDateAsTimestamp() {
+		return Timestamp.valueOf(modifyDate);
+	}
+
+}
@@ -21,6 +21,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -29,7 +30,9 @@ import javax.persistence.Id;
 import javax.persistence.SequenceGenerator;
 import java.time.LocalDateTime;
 
+// deleted tasks stay in the table until TaskPurgeService removes their rows, native queries must exclude them too
 @Entity(name = "task")
+@Where(clause = "deleted_at is null")
 @Data
 @EqualsAndHashCode(of = "id")
 @Builder
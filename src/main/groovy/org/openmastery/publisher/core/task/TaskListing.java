@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.task;
+
+import org.openmastery.publisher.api.journey.TagsUtil;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Lists tasks held in memory, for the embedded and in memory persistence services, with the filters and ordering of
+ * the TaskRepository listing queries: project like the pattern, most recently modified first (falling back to the
+ * creation date for tasks which were never modified), then highest id.  A null owner id lists the tasks of all owners.
+ */
+public class TaskListing {
+
+	private static final Comparator<TaskEntity> RECENT_FIRST = Comparator
+			.comparing(TaskListing::getOrderDate, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+			.thenComparing(TaskEntity::getId, Comparator.reverseOrder());
+
+	public static List<TaskEntity> findRecent(Collection<TaskEntity> tasks, Long ownerId, String projectLike,
+	                                          Predicate<TaskEntity> filter) {
+		Pattern projectPattern = toPattern(projectLike);
+		return tasks.stream()
+				.filter(task -> ownerId == null || ownerId.equals(task.getOwnerId()))
+				.filter(task -> task.getProject() != null && projectPattern.matcher(task.getProject()).matches())
+				.filter(filter)
+				.sorted(RECENT_FIRST)
+				.collect(Collectors.toList());
+	}
+
+	public static Page<TaskEntity> toPage(List<TaskEntity> recentTasks, Pageable pageable) {
+		return new PageImpl<>(slice(recentTasks, pageable.getPageSize(), pageable.getOffset()), pageable, recentTasks.size());
+	}
+
+	public static List<TaskEntity> slice(List<TaskEntity> recentTasks, int limit, int offset) {
+		int fromIndex = Math.min(offset, recentTasks.size());
+		int toIndex = Math.min(fromIndex + limit, recentTasks.size());
+		return new ArrayList<>(recentTasks.subList(fromIndex, toIndex));
+	}
+
+	/**
+	 * @return up to limit of the tasks strictly after the cursor
+	 */
+	public static List<TaskEntity> after(List<TaskEntity> recentTasks, TaskCursor cursor, int limit) {
+		return recentTasks.stream()
+				.filter(task -> isAfter(task, cursor))
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @param normalizedTags lower cased tags prefixed with #, see SearchUtils.normalizeTags
+	 * @return true if any hashtag of the comment matches any of the tags, as lower(entity_tag.tag) in (:tags) does
+	 */
+	public static boolean hasAnyTag(String comment, Collection<String> normalizedTags) {
+		for (String tag : TagsUtil.extractUniqueHashTags(comment)) {
+			if (normalizedTags.contains(tag.toLowerCase())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// a task without modify and creation date is never after a cursor, as the row comparison of the queries is null
+	private static boolean isAfter(TaskEntity task, TaskCursor cursor) {
+		LocalDateTime orderDate = getOrderDate(task);
+		if (orderDate == null) {
+			return false;
+		}
+		int comparison = orderDate.compareTo(cursor.getModifyDate());
+		return comparison < 0 || (comparison == 0 && task.getId() < cursor.getId());
+	}
+
+	private static LocalDateTime getOrderDate(TaskEntity task) {
+		return task.getModifyDate() != null ? task.getModifyDate() : task.getCreationDate();
+	}
+
+	// sql like, where % matches any sequence of characters and _ any single character
+	private static Pattern toPattern(String projectLike) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : projectLike.toCharArray()) {
+			if (c == '%' || c == '_') {
+				regex.append(Pattern.quote(literal.toString())).append(c == '%' ? ".*" : ".");
+				literal.setLength(0);
+			} else {
+				literal.append(c);
+			}
+		}
+		regex.append(Pattern.quote(literal.toString()));
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+}
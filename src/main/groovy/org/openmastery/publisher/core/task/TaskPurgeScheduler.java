@@ -0,0 +1,89 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.task;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically purges deleted tasks, one chunk per transaction, pausing between chunks so the purge does not compete
+ * with ingestion.
+ */
+@Slf4j
+@Component
+public class TaskPurgeScheduler {
+
+	@Autowired
+	private TaskPurgeService taskPurgeService;
+
+	@Value("${org.ideaflow.purge.intervalInSeconds:0}")
+	private long intervalInSeconds;
+	@Value("${org.ideaflow.purge.pauseInMillis:100}")
+	private long pauseInMillis;
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		if (intervalInSeconds <= 0) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("task-purge")
+				.setDaemon(true)
+				.build());
+		executor.scheduleWithFixedDelay(this::purgeDeletedTasks, intervalInSeconds, intervalInSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void purgeDeletedTasks() {
+		// an exception would cancel all later runs
+		try {
+			List<Long> taskIds = taskPurgeService.findDeletedTaskIds();
+			for (Long taskId : taskIds) {
+				try {
+					while (taskPurgeService.purgeNextChunk(taskId)) {
+						Thread.sleep(pauseInMillis);
+					}
+				} catch (RuntimeException ex) {
+					log.error("Failed to purge task, taskId={}", taskId, ex);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException ex) {
+			log.error("Failed to purge deleted tasks", ex);
+		}
+	}
+
+}
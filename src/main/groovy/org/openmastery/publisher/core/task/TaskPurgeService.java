@@ -0,0 +1,132 @@
+/**
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Removes the rows of deleted tasks (see IdeaFlowPersistenceService.deleteTask) at most chunkSize rows per call, so
+ * purging a task with months of data never holds locks or bloats a table for the length of one huge transaction.
+ * The task row is deleted last, once nothing refers to it; until then the task and its rows are hidden from reads.
+ */
+@Slf4j
+@Component
+@Transactional
+public class TaskPurgeService {
+
+	public static final String PENDING_TASKS_GAUGE = "ifm.purge.pendingTasks";
+	public static final String PURGED_ROWS_GAUGE = "ifm.purge.rows";
+	public static final String CHUNK_COUNTER = "ifm.purge.chunks";
+	public static final String PURGED_TASK_COUNTER = "ifm.purge.tasks";
+
+	// the tables referring to task, each paired with a column which identifies a row within the table; activity and
+	// event are partitioned, so their ctid is only unique within a partition
+	private static final List<String> CHUNK_DELETES = Arrays.asList(
+			chunkDelete("entity_tag", "ctid"),
+			chunkDelete("annotation", "id"),
+			chunkDelete("event", "id"),
+			chunkDelete("activity", "id"),
+			chunkDelete("idea_flow_state", "id"),
+			chunkDelete("idea_flow_partial_state", "ctid"),
+			chunkDelete("task_archive", "ctid")
+	);
+
+	@Autowired
+	private CounterService counterService;
+	@Autowired
+	private GaugeService gaugeService;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${org.ideaflow.purge.chunkSize:1000}")
+	private int chunkSize;
+	@Value("${org.ideaflow.purge.maxTasksPerRun:100}")
+	private int maxTasksPerRun;
+
+	private final AtomicLong purgedRowCount = new AtomicLong();
+
+	private static String chunkDelete(String table, String rowColumn) {
+		return "delete from " + table + " where " + rowColumn + " = any(array(" +
+				"select " + rowColumn + " from " + table + " where task_id = ?1 limit ?2))";
+	}
+
+	/**
+	 * @return the ids of the longest deleted tasks
+	 */
+	public List<Long> findDeletedTaskIds() {
+		Number pendingCount = (Number) entityManager.createNativeQuery("select count(*) from task where deleted_at is not null")
+				.getSingleResult();
+		gaugeService.submit(PENDING_TASKS_GAUGE, pendingCount.doubleValue());
+
+		Query query = entityManager.createNativeQuery("select id from task where deleted_at is not null " +
+				"order by deleted_at limit ?1");
+		query.setParameter(1, maxTasksPerRun);
+
+		List<?> taskIds = query.getResultList();
+		return taskIds.stream()
+				.map(taskId -> ((Number) taskId).longValue())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Deletes the next chunk of rows referring to the deleted task or, once there are none, the task itself.
+	 *
+	 * @return false once the task has been purged, or if it is not deleted or is being purged by another server
+	 */
+	public boolean purgeNextChunk(long taskId) {
+		// the task row lock is held for the chunk, so several servers never purge the same task at once
+		Query lockQuery = entityManager.createNativeQuery("select id from task where id = ?1 and deleted_at is not null " +
+				"for update skip locked");
+		lockQuery.setParameter(1, taskId);
+		if (lockQuery.getResultList().isEmpty()) {
+			return false;
+		}
+
+		for (String chunkDelete : CHUNK_DELETES) {
+			Query query = entityManager.createNativeQuery(chunkDelete);
+			query.setParameter(1, taskId);
+			query.setParameter(2, chunkSize);
+			int rowCount = query.executeUpdate();
+			if (rowCount > 0) {
+				counterService.increment(CHUNK_COUNTER);
+				gaugeService.submit(PURGED_ROWS_GAUGE, purgedRowCount.addAndGet(rowCount));
+				return true;
+			}
+		}
+
+		Query deleteQuery = entityManager.createNativeQuery("delete from task where id = ?1");
+		deleteQuery.setParameter(1, taskId);
+		deleteQuery.executeUpdate();
+		counterService.increment(PURGED_TASK_COUNTER);
+		log.info("Purged deleted task, taskId={}", taskId);
+		return false;
+	}
+
+}
@@ -17,45 +17,86 @@ package org.openmastery.publisher.core.task;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
 public interface TaskRepository extends PagingAndSortingRepository<TaskEntity, Long> {
 
 	TaskEntity findByOwnerIdAndName(Long ownerId, String name);
 
-	@Query(nativeQuery = true, value = "select * from task where owner_id=:ownerId order by modify_date desc limit :limit")
+	@Query(nativeQuery = true, value = "select * from task where owner_id=:ownerId and deleted_at is null order by modify_date desc limit :limit")
 	List<TaskEntity> findRecent(@Param("ownerId") Long userId, @Param("limit") int limit);
 
+	// tasks are ordered by modify date, falling back to the creation date for tasks which were never modified
+	@Query(value = "select t from task t where t.ownerId = :ownerId and t.project like :project " +
+			"order by coalesce(t.modifyDate, t.creationDate) desc, t.id desc",
+			countQuery = "select count(t) from task t where t.ownerId = :ownerId and t.project like :project")
 	Page<TaskEntity> findByOwnerIdAndProjectLike(@Param("ownerId") Long userId, @Param("project") String project, Pageable pageable);
+
+	@Query(value = "select t from task t where t.project like :project " +
+			"order by coalesce(t.modifyDate, t.creationDate) desc, t.id desc",
+			countQuery = "select count(t) from task t where t.project like :project")
 	Page<TaskEntity> findByProjectLike(@Param("project") String project, Pageable pageable);
 
 
-	@Query(nativeQuery = true, value = "select count(*) from task t where t.owner_id=:ownerId and t.project like :project and " +
-			"(exists (select 1 from event e where e.task_id=t.id and lower(e.comment) similar to (:pattern)) " +
-			"or exists (select 1 from annotation faq " +
-			"where faq.task_id=t.id and faq.type = 'faq' and lower(faq.metadata) similar to (:pattern))) ")
-	Integer countTasksMatchingTags(@Param("ownerId") Long userId, @Param("project") String project, @Param("pattern") String tagPattern);
+	// tasks with an event or faq tagged with any of the tags, see EntityTagIndex
+	@Query(nativeQuery = true, value = "select count(*) from task t where t.owner_id=:ownerId and t.project like :project and t.deleted_at is null and " +
+			"t.id in (select et.task_id from entity_tag et where lower(et.tag) in (:tags) and et.owner_id=:ownerId)")
+	Integer countTasksMatchingTags(@Param("ownerId") Long userId, @Param("project") String project, @Param("tags") Collection<String> tags);
 
-	@Query(nativeQuery = true, value = "select t.* from task t where t.owner_id=:ownerId and t.project like :project and " +
-			"(exists " +
-			"(select 1 from event e where e.task_id=t.id and lower(e.comment) similar to (:pattern)) " +
-			"or exists " +
-			"(select 1 from annotation faq where faq.task_id=t.id and faq.type = 'faq' and lower(faq.metadata) similar to (:pattern)) " +
-			") order by t.modify_date desc, t.id limit :limit offset :offset")
-	List<TaskEntity> findByOwnerIdAndMatchingTags(@Param("ownerId") Long userId, @Param("project") String project, @Param("pattern") String tagPattern,
+	@Query(nativeQuery = true, value = "select t.* from task t where t.owner_id=:ownerId and t.project like :project and t.deleted_at is null and " +
+			"t.id in (select et.task_id from entity_tag et where lower(et.tag) in (:tags) and et.owner_id=:ownerId) " +
+			"order by coalesce(t.modify_date, t.creation_date) desc, t.id desc limit :limit offset :offset")
+	List<TaskEntity> findByOwnerIdAndMatchingTags(@Param("ownerId") Long userId, @Param("project") String project, @Param("tags") Collection<String> tags,
 												  @Param("limit") int limit,  @Param("offset") int offset);
 
+	// keyset pagination, the row comparison walks the (owner_id, coalesce(modify_date, creation_date), id) index
+	// backwards from the cursor; see TaskCursor
+	@Query(nativeQuery = true, value = "select * from task where owner_id=:ownerId and project like :project and deleted_at is null " +
+			"and (coalesce(modify_date, creation_date), id) < (:modifyDate, :id) " +
+			"order by coalesce(modify_date, creation_date) desc, id desc limit :limit")
+	List<TaskEntity> findByOwnerIdAndProjectLikeAfter(@Param("ownerId") Long userId, @Param("project") String project,
+													  @Param("modifyDate") Timestamp modifyDate, @Param("id") Long id,
+													  @Param("limit") int limit);
+
+	@Query(nativeQuery = true, value = "select * from task where project like :project and deleted_at is null " +
+			"and (coalesce(modify_date, creation_date), id) < (:modifyDate, :id) " +
+			"order by coalesce(modify_date, creation_date) desc, id desc limit :limit")
+	List<TaskEntity> findByProjectLikeAfter(@Param("project") String project,
+											@Param("modifyDate") Timestamp modifyDate, @Param("id") Long id,
+											@Param("limit") int limit);
+
+	@Query(nativeQuery = true, value = "select t.* from task t where t.owner_id=:ownerId and t.project like :project and t.deleted_at is null " +
+			"and (coalesce(t.modify_date, t.creation_date), t.id) < (:modifyDate, :id) and " +
+			"t.id in (select et.task_id from entity_tag et where lower(et.tag) in (:tags) and et.owner_id=:ownerId) " +
+			"order by coalesce(t.modify_date, t.creation_date) desc, t.id desc limit :limit")
+	List<TaskEntity> findByOwnerIdAndMatchingTagsAfter(@Param("ownerId") Long userId, @Param("project") String project,
+													   @Param("tags") Collection<String> tags,
+													   @Param("modifyDate") Timestamp modifyDate, @Param("id") Long id,
+													   @Param("limit") int limit);
 
-	@Query(nativeQuery = true, value = "select * from task where owner_id=(?1) " +
+	@Query(nativeQuery = true, value = "select * from task where owner_id=(?1) and deleted_at is null " +
 			"and creation_date <= (?3) and modify_date >= (?2) order by modify_date desc")
 	List<TaskEntity> findTasksWithinRange(Long userId, Timestamp startTime, Timestamp endTime);
 
-	@Query(nativeQuery = true, value = "select * from task where owner_id=:ownerId and id in (:taskIds)")
+	@Query(nativeQuery = true, value = "select * from task where owner_id=:ownerId and id in (:taskIds) and deleted_at is null")
 	List<TaskEntity> findTasksWithIds(@Param("ownerId")Long userId, @Param("taskIds") List<Long> ids);
 
+	@Query(nativeQuery = true, value = "select id, owner_id from task where id in (:taskIds) and deleted_at is null")
+	List<Object[]> findIdAndOwnerIdWithIds(@Param("taskIds") Collection<Long> ids);
+
+	// the rows of a deleted task are hidden until they are purged, see TaskPurgeService
+	@Modifying(clearAutomatically = true)
+	@Query(nativeQuery = true, value = "update task set deleted_at = :deletedAt where id = :id and deleted_at is null")
+	int markDeleted(@Param("id") Long id, @Param("deletedAt") Timestamp deletedAt);
+
+	@Query(nativeQuery = true, value = "select count(*) > 0 from task where id = :id and deleted_at is not null")
+	boolean isDeleted(@Param("id") Long id);
+
 }
@@ -30,13 +30,6 @@ import org.openmastery.publisher.api.journey.SubtaskStory
 import org.openmastery.publisher.api.task.Task
 import org.openmastery.publisher.core.IdeaFlowPersistenceService
 import org.openmastery.publisher.core.TaskService
-import org.openmastery.publisher.core.activity.BlockActivityEntity
-import org.openmastery.publisher.core.activity.EditorActivityEntity
-import org.openmastery.publisher.core.activity.ExecutionActivityEntity
-import org.openmastery.publisher.core.activity.ExternalActivityEntity
-import org.openmastery.publisher.core.activity.IdleActivityEntity
-import org.openmastery.publisher.core.activity.ModificationActivityEntity
-import org.openmastery.publisher.core.event.EventEntity
 import org.openmastery.publisher.ideaflow.story.AnnotationDecorator
 import org.openmastery.publisher.ideaflow.story.CapacityDistributionDecorator
 import org.openmastery.publisher.ideaflow.story.HaystackListGenerator
@@ -50,10 +43,12 @@ import org.openmastery.storyweb.core.MetricsService
 import org.openmastery.storyweb.core.metrics.spc.MetricSet
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
 
 import java.time.LocalDateTime
 
 @Component
+@Transactional(readOnly = true)
 class IdeaFlowService {
 
 	private static final List<EventType> TASK_TIMELINE_EVENTS_TO_RETAIN = [
@@ -97,7 +92,8 @@ class IdeaFlowService {
 	 */
 	TaskTimelineOverview generateTimelineOverviewForTask(Long taskId) {
 		Task task = taskService.findTaskWithId(taskId)
-		IdeaFlowTaskTimeline timeline = generateTaskTimeline(task)
+		TaskActivitySnapshot snapshot = TaskActivitySnapshot.load(persistenceService, taskId)
+		IdeaFlowTaskTimeline timeline = generateTaskTimeline(task, snapshot)
 
 		if (timeline == null) {
 			return TaskTimelineOverview.builder().task(task).build()
@@ -164,14 +160,15 @@ class IdeaFlowService {
 
 	SubtaskTimelineOverview generateTimelineOverviewForSubtask(Long taskId, Long subtaskId) {
 		Task task = taskService.findTaskWithId(taskId)
-		IdeaFlowTaskTimeline taskTimeline = generateTaskTimeline(task);
+		TaskActivitySnapshot snapshot = TaskActivitySnapshot.load(persistenceService, taskId)
+		IdeaFlowTaskTimeline taskTimeline = generateTaskTimeline(task, snapshot)
 
 		IdeaFlowSubtaskTimeline subtaskTimeline = generateSubtaskTimeline(taskTimeline, subtaskId)
 
 		IdeaFlowStory story = storyGenerator.generateIdeaFlowStoryScopedToSubtask(taskTimeline, subtaskTimeline)
 
 		capacityDecorator.decorateStoryWithCapacityDistributions(story)
-		annotationDecorator.decorateStoryWithAnnotations(story)
+		annotationDecorator.decorateStoryWithAnnotations(story, snapshot)
 		MetricSet metricSet = metricsService.generateMetricsForTask(story)
 		metricsDecorator.decorateStoryWithMetrics(story, metricSet)
 
@@ -211,21 +208,15 @@ class IdeaFlowService {
 				.splitBySubtaskEvents()
 	}
 
-	private IdeaFlowTaskTimeline generateTaskTimeline(Task task) {
-
-		List<ModificationActivityEntity> modifications = persistenceService.getModificationActivityList(task.id)
-		List<EventEntity> events = persistenceService.getEventList(task.id)
-		List<ExecutionActivityEntity> executions = persistenceService.getExecutionActivityList(task.id)
-		List<BlockActivityEntity> blocks = persistenceService.getBlockActivityList(task.id)
-		List<IdleActivityEntity> idleActivities = persistenceService.getIdleActivityList(task.id)
+	private IdeaFlowTaskTimeline generateTaskTimeline(Task task, TaskActivitySnapshot snapshot) {
 
 		IdeaFlowTaskTimeline timeline = timelineGeneratorFactory.create()
 				.task(task)
-				.modificationActivities(modifications)
-				.events(events)
-				.executionActivities(executions)
-				.blockActivities(blocks)
-				.idleActivities(idleActivities)
+				.modificationActivities(snapshot.modificationActivities)
+				.events(snapshot.events)
+				.executionActivities(snapshot.executionActivities)
+				.blockActivities(snapshot.blockActivities)
+				.idleActivities(snapshot.idleActivities)
 				.generate()
 
 		return timeline
@@ -233,7 +224,8 @@ class IdeaFlowService {
 
 	TaskTimelineWithAllSubtasks generateTimelineWithAllSubtasks(Long taskId) {
 		Task task = taskService.findTaskWithId(taskId)
-		IdeaFlowTaskTimeline taskTimeline = generateTaskTimeline(task);
+		TaskActivitySnapshot snapshot = TaskActivitySnapshot.load(persistenceService, taskId)
+		IdeaFlowTaskTimeline taskTimeline = generateTaskTimeline(task, snapshot)
 		if (taskTimeline == null) {
 			throw new NotFoundException();
 		}
@@ -248,13 +240,13 @@ class IdeaFlowService {
 		IdeaFlowStory story = storyGenerator.generateIdeaFlowStory(taskTimeline)
 
 		capacityDecorator.decorateStoryWithCapacityDistributions(story)
-		annotationDecorator.decorateStoryWithAnnotations(story)
+		annotationDecorator.decorateStoryWithAnnotations(story, snapshot)
 		MetricSet metricSet = metricsService.generateMetricsForTask(story)
 		metricsDecorator.decorateStoryWithMetrics(story, metricSet)
 
 		cascadePainAndContextTags(story)
 
-		List<Haystack> haystacks = generateHaystacks(task, taskTimeline.start)
+		List<Haystack> haystacks = generateHaystacks(snapshot, taskTimeline.start)
 
 		TaskTimelineWithAllSubtasks.builder()
 				.task(task)
@@ -274,20 +266,14 @@ class IdeaFlowService {
 	RelativeTimeProcessor relativeTimeProcessor
 
 	// TODO: taskStart should be calculated within the generator, not passed in
-	private List<Haystack> generateHaystacks(Task task, LocalDateTime taskStart) {
-
-		List<EventEntity> events = persistenceService.getEventList(task.id)
-		List<ExecutionActivityEntity> executions = persistenceService.getExecutionActivityList(task.id)
-		List<IdleActivityEntity> idleActivities = persistenceService.getIdleActivityList(task.id)
-		List<ExternalActivityEntity> externalActivities = persistenceService.getExternalActivityList(task.id)
-		List<EditorActivityEntity> editorActivities = persistenceService.getEditorActivityList(task.id)
+	private List<Haystack> generateHaystacks(TaskActivitySnapshot snapshot, LocalDateTime taskStart) {
 
 		new HaystackListGenerator(relativeTimeProcessor, idleTimeProcessor)
-				.idleActivities(idleActivities)
-				.editorActivities(editorActivities)
-				.externalActivities(externalActivities)
-				.executionActivities(executions)
-				.events(events)
+				.idleActivities(snapshot.idleActivities)
+				.editorActivities(snapshot.editorActivities)
+				.externalActivities(snapshot.externalActivities)
+				.executionActivities(snapshot.executionActivities)
+				.events(snapshot.events)
 				.taskStart(taskStart)
 				.generate()
 	}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.ideaflow
+
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.activity.BlockActivityEntity
+import org.openmastery.publisher.core.activity.EditorActivityEntity
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity
+import org.openmastery.publisher.core.activity.ExternalActivityEntity
+import org.openmastery.publisher.core.activity.IdleActivityEntity
+import org.openmastery.publisher.core.activity.ModificationActivityEntity
+import org.openmastery.publisher.core.annotation.AnnotationEntity
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
+import org.openmastery.publisher.core.event.EventEntity
+
+/**
+ * All activities, events and annotations for a single task, loaded with one query per table and split by
+ * type in memory.  Shared by the timeline, haystack and annotation generators so a request reads each table once.
+ */
+class TaskActivitySnapshot {
+
+	final long taskId
+	final List<EventEntity> events
+
+	final List<ModificationActivityEntity> modificationActivities = []
+	final List<ExecutionActivityEntity> executionActivities = []
+	final List<BlockActivityEntity> blockActivities = []
+	final List<IdleActivityEntity> idleActivities = []
+	final List<EditorActivityEntity> editorActivities = []
+	final List<ExternalActivityEntity> externalActivities = []
+
+	final List<FaqAnnotationEntity> faqAnnotations = []
+	final List<SnippetAnnotationEntity> snippetAnnotations = []
+
+	static TaskActivitySnapshot load(IdeaFlowPersistenceService persistenceService, long taskId) {
+		new TaskActivitySnapshot(taskId,
+				persistenceService.getActivityList(taskId),
+				persistenceService.getEventList(taskId),
+				persistenceService.getAnnotationList(taskId))
+	}
+
+	TaskActivitySnapshot(long taskId, List<ActivityEntity> activities, List<EventEntity> events, List<AnnotationEntity> annotations) {
+		this.taskId = taskId
+		this.events = events
+		activities.each { ActivityEntity activity ->
+			addActivity(activity)
+		}
+		annotations.each { AnnotationEntity annotation ->
+			if (annotation instanceof FaqAnnotationEntity) {
+				faqAnnotations << annotation
+			} else if (annotation instanceof SnippetAnnotationEntity) {
+				snippetAnnotations << annotation
+			}
+		}
+	}
+
+	private void addActivity(ActivityEntity activity) {
+		if (activity instanceof ModificationActivityEntity) {
+			modificationActivities << activity
+		} else if (activity instanceof ExecutionActivityEntity) {
+			executionActivities << activity
+		} else if (activity instanceof BlockActivityEntity) {
+			blockActivities << activity
+		} else if (activity instanceof IdleActivityEntity) {
+			idleActivities << activity
+		} else if (activity instanceof EditorActivityEntity) {
+			editorActivities << activity
+		} else if (activity instanceof ExternalActivityEntity) {
+			externalActivities << activity
+		}
+	}
+
+}
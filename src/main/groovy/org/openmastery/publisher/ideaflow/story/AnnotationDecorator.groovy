@@ -18,24 +18,16 @@ package org.openmastery.publisher.ideaflow.story
 import org.openmastery.publisher.api.journey.IdeaFlowStory
 import org.openmastery.publisher.api.journey.SubtaskStory
 import org.openmastery.publisher.api.journey.TroubleshootingJourney
-import org.openmastery.publisher.core.annotation.AnnotationRespository
 import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
 import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
-import org.springframework.beans.factory.annotation.Autowired
+import org.openmastery.publisher.ideaflow.TaskActivitySnapshot
 import org.springframework.stereotype.Component
 
 @Component
 class AnnotationDecorator {
 
-	@Autowired
-	private AnnotationRespository annotationRespository;
-
-	void decorateStoryWithAnnotations(IdeaFlowStory story) {
-
-		List<FaqAnnotationEntity> faqs = annotationRespository.findFaqAnnotationsByTaskId(story.getId())
-		List<SnippetAnnotationEntity> snippets = annotationRespository.findSnippetsByTaskId(story.getId())
-
-		annotateStory(story, faqs, snippets)
+	void decorateStoryWithAnnotations(IdeaFlowStory story, TaskActivitySnapshot snapshot) {
+		annotateStory(story, snapshot.faqAnnotations, snapshot.snippetAnnotations)
 	}
 
 	void annotateStory(IdeaFlowStory story, List<FaqAnnotationEntity> faqs, List<SnippetAnnotationEntity> snippets) {
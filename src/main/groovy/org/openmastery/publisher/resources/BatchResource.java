@@ -15,16 +15,32 @@
  */
 package org.openmastery.publisher.resources;
 
+import com.google.common.io.CountingInputStream;
 import org.openmastery.publisher.api.ResourcePaths;
 import org.openmastery.publisher.api.batch.NewIFMBatch;
 import org.openmastery.publisher.core.IFMBatchService;
+import org.openmastery.publisher.core.batch.BatchIngestionQueue;
+import org.openmastery.publisher.core.batch.BatchRateLimiter;
+import org.openmastery.publisher.core.batch.BatchStreamReader;
+import org.openmastery.publisher.core.batch.IFMBatchStreamService;
+import org.openmastery.publisher.security.InvocationContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Providers;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.time.Duration;
 
 @Component
 @Path(ResourcePaths.IDEAFLOW_PATH + ResourcePaths.PUBLISHER_PATH + ResourcePaths.BATCH_PATH)
@@ -33,17 +49,76 @@ public class BatchResource {
 
 	@Autowired
 	private IFMBatchService ifmBatchService;
+	@Autowired
+	private IFMBatchStreamService ifmBatchStreamService;
+	@Autowired(required = false)
+	private BatchIngestionQueue batchIngestionQueue;
+	@Autowired
+	private BatchRateLimiter batchRateLimiter;
+	@Autowired
+	private InvocationContext invocationContext;
 
 	/**
 	 * Save a batch of miscellaneous Idea Flow Map activities and events generated with "Idea Flow" plugin
 	 * or other data collection tools.  Timestamps will be adjusted to server time on submission.
 	 *
+	 * When asynchronous ingestion is enabled, the batch is validated and durably queued and 202 (Accepted)
+	 * is returned before the batch is written to the database.
+	 *
+	 * The batch may be sent as JSON or as binary Jackson Smile, optionally with Content-Encoding: gzip.
+	 *
+	 * If the user has exceeded their ingestion rate, the batch is rejected with 429 (Too Many Requests) and
+	 * a Retry-After header giving the number of seconds to wait before resending it.
+	 *
 	 * @param batch miscellaneous batch of IFM activity
 	 */
 
 	@POST
-	public void addIFMBatch(NewIFMBatch batch) {
+	@Consumes({MediaType.APPLICATION_JSON, ResourcePaths.SMILE_MEDIA_TYPE})
+	public Response addIFMBatch(@Context HttpHeaders headers, @Context Providers providers,
+	                            InputStream inputStream) throws IOException {
+		// bytes are counted as the body is read rather than taken from Content-Length, which a chunked upload omits
+		CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+		NewIFMBatch batch = readBatch(headers, providers, countingInputStream);
+
+		Duration retryAfter = batchRateLimiter.tryAcquire(invocationContext.getUserId(), batch.getBatchItems().size(),
+				countingInputStream.getCount());
+		if (retryAfter.isZero() == false) {
+			return BatchRateLimiter.createTooManyRequestsResponse(retryAfter);
+		}
+
+		if (batchIngestionQueue != null) {
+			batchIngestionQueue.enqueue(invocationContext.getUserId(), batch);
+			return Response.accepted().build();
+		}
+
 		ifmBatchService.addIFMBatch(batch);
+		return Response.noContent().build();
+	}
+
+	private NewIFMBatch readBatch(HttpHeaders headers, Providers providers, InputStream inputStream) throws IOException {
+		Annotation[] annotations = new Annotation[0];
+		MediaType mediaType = headers.getMediaType();
+		MessageBodyReader<NewIFMBatch> reader = providers.getMessageBodyReader(NewIFMBatch.class, NewIFMBatch.class,
+				annotations, mediaType);
+		return reader.readFrom(NewIFMBatch.class, NewIFMBatch.class, annotations, mediaType,
+				headers.getRequestHeaders(), inputStream);
+	}
+
+	/**
+	 * Save a large batch as newline-delimited JSON, read and written incrementally.  The first line must be
+	 * a header of the form {"timeSent": ...}, each following line a single item keyed by its type name,
+	 * e.g. {"EditorActivity": {...}}.  Items are committed in chunks, so a failure part way through the
+	 * stream retains the chunks already written.  If a chunk exceeds the user's ingestion rate the upload fails
+	 * with 429 (Too Many Requests) and a Retry-After header giving the number of seconds to wait.
+	 *
+	 * @param inputStream newline-delimited batch of IFM activity
+	 */
+	@POST
+	@Path(ResourcePaths.BATCH_STREAM_PATH)
+	@Consumes(BatchStreamReader.NDJSON_MEDIA_TYPE)
+	public void addIFMBatchStream(InputStream inputStream) {
+		ifmBatchStreamService.addIFMBatchStream(inputStream);
 	}
 
 
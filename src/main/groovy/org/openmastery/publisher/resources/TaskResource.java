@@ -127,6 +127,8 @@ public class TaskResource {
 	 * @param project optional project name filter
 	 * @param pageNumber the page number to retrieve, defaults to page 0
 	 * @param elementsPerPage the number of tasks per page to retrieve, defaults to 10
+	 * @param cursor the nextCursor of the previous page, or empty for the first page.  When given, pageNumber is
+	 *               ignored and the total is not counted
 	 * @return PagedResult<Task>
 	 */
 
@@ -135,7 +137,16 @@ public class TaskResource {
 	public PagedResult<Task> findRecentTasks(@PathParam("id") Long userId, @QueryParam("tag") List<String> tags,
 											 @QueryParam("project") String project,
 											 @DefaultValue("0") @QueryParam("page_number") Integer pageNumber,
-									  		@DefaultValue("10") @QueryParam("per_page") Integer elementsPerPage ) {
+									  		@DefaultValue("10") @QueryParam("per_page") Integer elementsPerPage,
+											 @QueryParam("cursor") String cursor) {
+		if (cursor != null) {
+			if (tags != null && tags.size() > 0) {
+				return taskService.findRecentTasksMatchingTagsAfter(userId, project, tags, cursor, elementsPerPage);
+			} else {
+				return taskService.findRecentTasksAfter(userId, project, cursor, elementsPerPage);
+			}
+		}
+
 		if (tags != null && tags.size() > 0) {
 			return taskService.findRecentTasksMatchingTags(userId, project, tags, pageNumber, elementsPerPage);
 		} else {
@@ -149,6 +160,7 @@ public class TaskResource {
 	 * @param project
 	 * @param pageNumber
 	 * @param elementsPerPage
+	 * @param cursor
 	 * @return
 	 */
 
@@ -156,7 +168,11 @@ public class TaskResource {
 	public PagedResult<Task> findAllTasks(@QueryParam("tag") List<String> tags,
 										  @QueryParam("project") String project,
 										  @DefaultValue("0") @QueryParam("page_number") Integer pageNumber,
-										  @DefaultValue("10") @QueryParam("per_page") Integer elementsPerPage ) {
+										  @DefaultValue("10") @QueryParam("per_page") Integer elementsPerPage,
+										  @QueryParam("cursor") String cursor) {
+		if (cursor != null) {
+			return taskService.findRecentTasksForAllUsersAfter(project, cursor, elementsPerPage);
+		}
 			return taskService.findRecentTasksForAllUsers(project, pageNumber, elementsPerPage);
 
 	}
@@ -42,10 +42,12 @@ import org.openmastery.storyweb.core.metrics.spc.TaskData
 import org.openmastery.storyweb.core.metrics.spc.TaskDataGenerator
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
 
 import java.time.LocalDate
 
 @Component
+@Transactional(readOnly = true)
 class MetricsService {
 
 	@Autowired
@@ -19,13 +19,19 @@ package org.openmastery.storyweb.core
 class SearchUtils {
 
 	static String createSearchPattern(List<String> tags) {
-		List<String> prefixedHashtags = tags.collect {
+		return "%(" + normalizeTags(tags).join("|") + ")%";
+	}
+
+	/**
+	 * @return the tags lower cased and prefixed with #, for matching against lower(entity_tag.tag)
+	 */
+	static List<String> normalizeTags(List<String> tags) {
+		tags.collect {
 			if (it.startsWith('#')) {
 				return it.toLowerCase()
 			} else {
 				return "#" + it.toLowerCase()
 			}
 		}
-		return "%(" + prefixedHashtags.join("|") + ")%";
 	}
 }
@@ -15,7 +15,6 @@
  */
 package org.openmastery.storyweb.core
 
-import com.fasterxml.jackson.databind.ObjectMapper
 import org.openmastery.mapper.ValueObjectMapper
 import org.openmastery.publisher.core.annotation.AnnotationRespository
 import org.openmastery.publisher.security.InvocationContext
@@ -24,10 +23,12 @@ import org.openmastery.publisher.api.journey.TagsUtil
 import org.openmastery.time.TimeConverter
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
 
 import java.sql.Timestamp
 
 @Component
+@Transactional(readOnly = true)
 class StoryWebService {
 
 	@Autowired
@@ -38,25 +39,30 @@ class StoryWebService {
 
 	private ValueObjectMapper entityMapper = new ValueObjectMapper();
 
-	private ObjectMapper jsonMapper = new ObjectMapper()
-
 
 	public List<FaqSummary> findAllFaqMatchingTags(List<String> tags) {
-		String searchPattern = SearchUtils.createSearchPattern(tags)
+		List<Object[]> results = annotationRepository.findFaqsBySearchCriteria(SearchUtils.normalizeTags(tags))
+		return results.collect { Object[] row -> toFaqSummary(row) }
+	}
 
-		List<Object[]> results = annotationRepository.findFaqsBySearchCriteria(searchPattern)
-		List<FaqSummary> faqSummaries = results.collect { Object[] row ->
-			FaqSummary faqSummary = new FaqSummary()
-			faqSummary.taskId = (Long) row[0]
-			faqSummary.eventId = (Long) row[1]
-			faqSummary.eventComment = row[2]
-			faqSummary.faqComment = extractCommentFromJSON(row[3].toString())
-			faqSummary.position = TimeConverter.toLocalDateTime((Timestamp) row[4])
-			faqSummary.tags = extractUniqueTags(faqSummary.eventComment, faqSummary.faqComment)
-			return faqSummary
-		}
+	/**
+	 * @return the limit events whose comment or faq best match the words of the search text, most relevant first
+	 */
+	public List<FaqSummary> findTopFaqsMatchingText(String searchText, int limit) {
+		List<Object[]> results = annotationRepository.findFaqsMatchingText(searchText, limit)
+		return results.collect { Object[] row -> toFaqSummary(row) }
+	}
 
-		return faqSummaries;
+	private FaqSummary toFaqSummary(Object[] row) {
+		FaqSummary faqSummary = new FaqSummary()
+		faqSummary.taskId = (Long) row[0]
+		faqSummary.eventId = (Long) row[1]
+		faqSummary.eventComment = row[2]
+		// projected from the faq metadata on write, null when the event has no faq
+		faqSummary.faqComment = row[3]
+		faqSummary.position = TimeConverter.toLocalDateTime((Timestamp) row[4])
+		faqSummary.tags = extractUniqueTags(faqSummary.eventComment, faqSummary.faqComment)
+		return faqSummary
 	}
 
 
@@ -68,16 +74,4 @@ class StoryWebService {
 		return tagSet
 	}
 
-	private String extractCommentFromJSON(String jsonMetadata) {
-		CommentHolder commentHolder = jsonMapper.readValue(jsonMetadata, CommentHolder.class)
-		return commentHolder.comment
-	}
-
-
-	private static class CommentHolder {
-		String comment;
-
-		CommentHolder() {}
-	}
-
 }
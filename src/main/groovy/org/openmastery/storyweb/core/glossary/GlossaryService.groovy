@@ -18,10 +18,7 @@ package org.openmastery.storyweb.core.glossary
 import com.bancvue.rest.exception.ConflictException
 import com.bancvue.rest.exception.NotFoundException
 import org.openmastery.mapper.ValueObjectMapper
-import org.openmastery.publisher.core.annotation.AnnotationRespository
-import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
-import org.openmastery.publisher.core.event.EventEntity
-import org.openmastery.publisher.core.event.EventRepository
+import org.openmastery.publisher.core.tag.EntityTagIndex
 import org.openmastery.publisher.core.task.TaskEntity
 import org.openmastery.publisher.core.task.TaskRepository
 import org.openmastery.publisher.security.InvocationContext
@@ -31,6 +28,7 @@ import org.openmastery.publisher.api.journey.TagsUtil
 import org.openmastery.storyweb.core.SearchUtils
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
 
 @Component
 class GlossaryService {
@@ -42,16 +40,14 @@ class GlossaryService {
 	TaskRepository taskRepository
 
 	@Autowired
-	EventRepository eventRepository
-
-	@Autowired
-	AnnotationRespository annotationRespository
+	EntityTagIndex entityTagIndex
 
 	@Autowired
 	InvocationContext invocationContext
 
 	private ValueObjectMapper entityMapper = new ValueObjectMapper();
 
+	@Transactional(readOnly = true)
 	public Glossary findGlossaryDefinitionsByTag(List<String> tags) {
 		String searchPattern = SearchUtils.createSearchPattern(tags)
 		Glossary glossary = new Glossary()
@@ -60,6 +56,7 @@ class GlossaryService {
 	}
 
 
+	@Transactional(readOnly = true)
 	Glossary findAllGlossaryDefinitions() {
 		Glossary glossary = new Glossary()
 		glossary.definitions = entityMapper.mapList(glossaryRepository.findAll(), GlossaryDefinition.class);
@@ -126,25 +123,17 @@ class GlossaryService {
 	}
 
 
+	// not read only since missing definitions are created, which also keeps it off the read replica
+	@Transactional
 	Glossary findAllGlossaryDefinitionsByTask(Long taskId) {
 		TaskEntity taskEntity = taskRepository.findOne(taskId);
-		List<EventEntity> eventEntities = eventRepository.findByOwnerIdAndTaskId(invocationContext.userId, taskId)
-		List<FaqAnnotationEntity> annotationEntities = annotationRespository.findByOwnerIdAndTaskId(invocationContext.userId, taskId)
 
 		Set<String> hashTags = []
 		hashTags.addAll(TagsUtil.extractUniqueHashTags(taskEntity.description))
 
-		eventEntities.each { EventEntity eventEntity ->
-			hashTags.addAll( TagsUtil.extractUniqueHashTags(eventEntity.comment))
-		}
-
-		annotationEntities.each { FaqAnnotationEntity annotationEntity ->
-			hashTags.addAll( TagsUtil.extractUniqueHashTags(annotationEntity.comment))
-		}
+		//all event comment and faq tags of the task are already extracted into entity_tag
+		hashTags.addAll(entityTagIndex.findTagsForTask(invocationContext.userId, taskId))
 
-		//task description
-		//all event comment tags, subtask, milestone, wtf, yay
-		//all faq comments associated with the task
 		//collect all the tags across all of these, then findByTagsLike() and return the associated definition list
 		return createGlossaryDefinitionsWhenNotExists(hashTags.toList());
 	}
@@ -24,6 +24,8 @@ import org.openmastery.publisher.core.activity.ActivityRepository
 import org.openmastery.publisher.core.activity.IdleActivityEntity
 import org.openmastery.publisher.core.annotation.AnnotationRespository
 import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.archive.TaskArchive
+import org.openmastery.publisher.core.archive.TaskArchiveRangeReader
 import org.openmastery.publisher.core.event.EventEntity
 import org.openmastery.publisher.core.event.EventRepository
 import org.openmastery.publisher.core.task.TaskEntity
@@ -63,6 +65,9 @@ class FilterlessTaskDataGenerator {
 	@Autowired
 	TaskRepository taskRepository
 
+	@Autowired
+	TaskArchiveRangeReader taskArchiveRangeReader
+
 
 	ValueObjectMapper entityMapper = new ValueObjectMapper()
 
@@ -70,9 +75,10 @@ class FilterlessTaskDataGenerator {
 	List<TaskData> generate(long userId) {
 
 		Set<Long> collectedTaskIds = new HashSet<>();
+		TaskArchive archivedRows = taskArchiveRangeReader.findArchivedRows(userId)
 
-		List<Event> eventsWithinRange = findEventsWithinRange(collectedTaskIds, userId)
-		List<IdleTimeBandModel> idleBands = findIdleBandsWithinRange(collectedTaskIds, userId)
+		List<Event> eventsWithinRange = findEventsWithinRange(collectedTaskIds, userId, archivedRows)
+		List<IdleTimeBandModel> idleBands = findIdleBandsWithinRange(collectedTaskIds, userId, archivedRows)
 		List<FaqAnnotationEntity> faqAnnotations = findFaqsWithinRange(collectedTaskIds, userId)
 		List<Task> tasks = findTasksWithIds(collectedTaskIds, userId)
 
@@ -141,14 +147,16 @@ class FilterlessTaskDataGenerator {
 		return taskDataMap.values().toList().findAll { it.task != null}
 	}
 
-	private List<IdleTimeBandModel> findIdleBandsWithinRange(Set<Long> taskIds, Long userId) {
+	private List<IdleTimeBandModel> findIdleBandsWithinRange(Set<Long> taskIds, Long userId, TaskArchive archivedRows) {
 		List<IdleActivityEntity> idleActivities = activityRepository.findAllIdlesForUser(userId)
+		idleActivities = (idleActivities + archivedRows.getActivities(IdleActivityEntity)).sort { it.start }
 		taskIds.addAll(idleActivities.collect { it.taskId })
 		return entityMapper.mapList(idleActivities, IdleTimeBandModel)
 	}
 
-	private List<Event> findEventsWithinRange(Set<Long> taskIds, Long userId) {
+	private List<Event> findEventsWithinRange(Set<Long> taskIds, Long userId, TaskArchive archivedRows) {
 		List<EventEntity> eventEntities = eventRepository.findAllByUser(userId)
+		eventEntities = (eventEntities + archivedRows.events).sort { it.position }
 		taskIds.addAll(eventEntities.collect { it.taskId })
 		return eventEntities.collect { EventEntity entity ->
 			Event event = entityMapper.mapIfNotNull(entity, Event)
@@ -26,6 +26,8 @@ import org.openmastery.publisher.core.activity.ExecutionActivityEntity
 import org.openmastery.publisher.core.activity.IdleActivityEntity
 import org.openmastery.publisher.core.annotation.AnnotationRespository
 import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.archive.TaskArchive
+import org.openmastery.publisher.core.archive.TaskArchiveRangeReader
 import org.openmastery.publisher.core.event.EventEntity
 import org.openmastery.publisher.core.event.EventRepository
 import org.openmastery.publisher.core.task.TaskEntity
@@ -37,6 +39,7 @@ import org.openmastery.publisher.ideaflow.timeline.RelativeTimeProcessor
 import org.openmastery.time.TimeConverter
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
 
 import java.sql.Timestamp
 import java.time.Duration
@@ -45,6 +48,7 @@ import java.time.LocalDateTime
 
 @Slf4j
 @Component
+@Transactional(readOnly = true)
 class TaskDataGenerator {
 
 
@@ -69,6 +73,9 @@ class TaskDataGenerator {
 	@Autowired
 	TaskRepository taskRepository
 
+	@Autowired
+	TaskArchiveRangeReader taskArchiveRangeReader
+
 
 	ValueObjectMapper entityMapper = new ValueObjectMapper()
 
@@ -81,10 +88,11 @@ class TaskDataGenerator {
 		log.debug("generateTaskData from " + startTimestamp + ":" + endTimestamp)
 
 		Set<Long> collectedTaskIds = new HashSet<>();
+		TaskArchive archivedRows = taskArchiveRangeReader.findArchivedRowsWithinRange(userId, startTimestamp, endTimestamp)
 
-		List<Event> eventsWithinRange = findEventsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp)
-		List<IdleTimeBandModel> idleBands = findIdleBandsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp)
-		List<ExecutionEvent> executionEvents = findExecutionEventsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp)
+		List<Event> eventsWithinRange = findEventsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp, archivedRows)
+		List<IdleTimeBandModel> idleBands = findIdleBandsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp, archivedRows)
+		List<ExecutionEvent> executionEvents = findExecutionEventsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp, archivedRows)
 		List<FaqAnnotationEntity> faqAnnotations = findFaqsWithinRange(collectedTaskIds, userId, startTimestamp, endTimestamp)
 		List<Task> tasks = findTasksWithIds(collectedTaskIds, userId)
 
@@ -169,14 +177,18 @@ class TaskDataGenerator {
 		return TimeConverter.toSqlTimestamp(endOfDay)
 	}
 
-	private List<IdleTimeBandModel> findIdleBandsWithinRange(Set<Long> taskIds, Long userId, Timestamp startTimestamp, Timestamp endTimestamp) {
+	private List<IdleTimeBandModel> findIdleBandsWithinRange(Set<Long> taskIds, Long userId, Timestamp startTimestamp, Timestamp endTimestamp,
+															 TaskArchive archivedRows) {
 		List<IdleActivityEntity> idleActivities = activityRepository.findIdlesWithinRange(userId, startTimestamp, endTimestamp)
+		idleActivities = (idleActivities + archivedRows.getActivities(IdleActivityEntity)).sort { it.start }
 		taskIds.addAll(idleActivities.collect { it.taskId })
 		return entityMapper.mapList(idleActivities, IdleTimeBandModel)
 	}
 
-	private List<Event> findEventsWithinRange(Set<Long> taskIds, Long userId, Timestamp startTimestamp, Timestamp endTimestamp) {
+	private List<Event> findEventsWithinRange(Set<Long> taskIds, Long userId, Timestamp startTimestamp, Timestamp endTimestamp,
+											  TaskArchive archivedRows) {
 		List<EventEntity> eventEntities = eventRepository.findEventsWithinsRange(userId, startTimestamp, endTimestamp)
+		eventEntities = (eventEntities + archivedRows.events).sort { it.position }
 		taskIds.addAll(eventEntities.collect { it.taskId })
 		return eventEntities.collect { EventEntity entity ->
 			Event event = entityMapper.mapIfNotNull(entity, Event)
@@ -185,8 +197,10 @@ class TaskDataGenerator {
 		}
 	}
 
-	private List<ExecutionEvent> findExecutionEventsWithinRange(Set<Long> taskIds, Long userId, Timestamp startTimestamp, Timestamp endTimestamp) {
+	private List<ExecutionEvent> findExecutionEventsWithinRange(Set<Long> taskIds, Long userId, Timestamp startTimestamp, Timestamp endTimestamp,
+																TaskArchive archivedRows) {
 		List<ExecutionActivityEntity> eventEntities = activityRepository.findExecutionActivityWithinRange(userId, startTimestamp, endTimestamp)
+		eventEntities = (eventEntities + archivedRows.getActivities(ExecutionActivityEntity)).sort { it.start }
 		List<ExecutionEvent> executionEvents = []
 		eventEntities.each { ExecutionActivityEntity entity ->
 			ExecutionEvent execution = entityMapper.mapIfNotNull(entity, ExecutionEvent)
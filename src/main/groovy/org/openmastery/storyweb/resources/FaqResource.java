@@ -17,9 +17,11 @@ package org.openmastery.storyweb.resources;
 
 
 import org.openmastery.publisher.api.PagedResult;
+import org.openmastery.storyweb.api.FaqSummary;
 import org.openmastery.storyweb.api.StoryPoint;
 import org.openmastery.storyweb.api.ResourcePaths;
 import org.openmastery.storyweb.core.MetricsService;
+import org.openmastery.storyweb.core.StoryWebService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -32,10 +34,15 @@ import java.util.List;
 @Produces(MediaType.APPLICATION_JSON)
 public class FaqResource {
 
+	// bounds the response size and the top-n sort of the ranked matches
+	private static final int MAX_SEARCH_LIMIT = 100;
 
 	@Autowired
 	MetricsService metricsService;
 
+	@Autowired
+	StoryWebService storyWebService;
+
 	/**
 	 * Returns the most painful points in the StoryWeb, optionally filterable by tag
 	 * @param tags Can be contextTags, painTags or a mix of both
@@ -62,6 +69,34 @@ public class FaqResource {
 		return pagedResult;
 	}
 
+	/**
+	 * Full text search of FAQ and event comments, returns only the most relevant hits rather than every match
+	 * @param searchText words to search for, matched on their stems (e.g. "failing" matches "fails")
+	 * @param limit the number of hits to return, defaults to 10 and is capped at 100
+	 * @return PagedResult<FaqSummary> with the hits ordered by relevance and hasNext set if there are more
+	 */
+
+	@GET
+	@Path(ResourcePaths.FAQ_SEARCH_PATH)
+	public PagedResult<FaqSummary> findTopFaqsMatchingText(@QueryParam("q") String searchText,
+														   @DefaultValue("10") @QueryParam("limit") Integer limit) {
+		if (searchText == null || searchText.trim().isEmpty()) {
+			throw new BadRequestException("Search text is required");
+		}
+		if (limit <= 0) {
+			throw new BadRequestException("Limit must be positive, limit=" + limit);
+		}
+		limit = Math.min(limit, MAX_SEARCH_LIMIT);
+
+		// one extra hit tells whether there are more without counting the matches
+		List<FaqSummary> faqs = storyWebService.findTopFaqsMatchingText(searchText, limit + 1);
+		boolean hasNext = faqs.size() > limit;
+
+		PagedResult<FaqSummary> pagedResult = PagedResult.createWithoutTotal(hasNext, false, limit);
+		pagedResult.setContents(hasNext ? faqs.subList(0, limit) : faqs);
+		return pagedResult;
+	}
+
 
 
 
@@ -11,6 +11,9 @@ import java.util.List;
 @Data
 public class PagedResult<T> {
 
+	// totalPages and totalElements of a page fetched by cursor, which does not count the matching records
+	public static final int UNKNOWN_TOTAL = -1;
+
 	List<T> contents;
 
 	int totalPages;
@@ -24,6 +27,9 @@ public class PagedResult<T> {
 
 	List<SortOrder> propertySortOrders;
 
+	// opaque position of the last element, pass it back as the cursor to fetch the next page; null on the last page
+	String nextCursor;
+
 	public PagedResult() {
 		propertySortOrders = new ArrayList<SortOrder>();
 		contents = new ArrayList<T>();
@@ -44,6 +50,16 @@ public class PagedResult<T> {
 		return pagedResult;
 	}
 
+	public static PagedResult createWithoutTotal(boolean hasNext, boolean hasPrevious, int elementsPerPage) {
+		PagedResult pagedResult = new PagedResult();
+		pagedResult.hasNext = hasNext;
+		pagedResult.hasPrevious = hasPrevious;
+		pagedResult.totalPages = UNKNOWN_TOTAL;
+		pagedResult.totalElements = UNKNOWN_TOTAL;
+		pagedResult.elementsPerPage = elementsPerPage;
+		return pagedResult;
+	}
+
 	@NoArgsConstructor
 	@AllArgsConstructor
 	@Data
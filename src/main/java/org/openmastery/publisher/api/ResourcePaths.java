@@ -19,6 +19,8 @@ public class ResourcePaths {
 
 	public static final String API_KEY_HEADER = "X-API-KEY";
 
+	public static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+
 	public static final String ID_PATH = "/id";
 
 	// task paths
@@ -88,4 +90,5 @@ public class ResourcePaths {
 	//batch paths
 	public static final String PUBLISHER_PATH = "/publisher";
 	public static final String BATCH_PATH = "/batch";
+	public static final String BATCH_STREAM_PATH = "/stream";
 }
@@ -26,6 +26,8 @@ import java.util.List;
 public class NewIFMBatch {
 
 	private LocalDateTime timeSent;
+	// optional, identifies a batch across retries so a resent batch is only stored once
+	private String batchId;
 
 	@Singular("editorActivity") private List<NewEditorActivity> editorActivityList;
 	@Singular("externalActivity") private List<NewExternalActivity> externalActivityList;
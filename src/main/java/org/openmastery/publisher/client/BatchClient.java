@@ -1,19 +1,126 @@
 package org.openmastery.publisher.client;
 
+import com.bancvue.rest.config.ObjectMapperContextResolver;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
 import org.openmastery.publisher.api.ResourcePaths;
 import org.openmastery.publisher.api.batch.NewIFMBatch;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
 public class BatchClient extends IdeaFlowClient<Object, BatchClient> {
 
+	private static final String BATCH_PATH = ResourcePaths.IDEAFLOW_PATH +
+			ResourcePaths.PUBLISHER_PATH +
+			ResourcePaths.BATCH_PATH;
+
+	private final String baseUrl;
+	private String apiKey;
+	private boolean compressedTransport;
+	// the client properties set on this client, shared by the client which sends compressed batches
+	private final Map<String, Object> transportProperties = new HashMap<>();
+	private Client transportClient;
+	private ObjectMapper mapper;
+	private SmileFactory smileFactory;
+
 	public BatchClient(String baseUrl) {
-		super(baseUrl, ResourcePaths.IDEAFLOW_PATH +
-						ResourcePaths.PUBLISHER_PATH +
-						ResourcePaths.BATCH_PATH, Object.class);
+		super(baseUrl, BATCH_PATH, Object.class);
+		this.baseUrl = baseUrl;
+	}
+
+	@Override
+	public BatchClient apiKey(String apiKey) {
+		this.apiKey = apiKey;
+		return super.apiKey(apiKey);
+	}
+
+	@Override
+	public BatchClient readTimeout(int readTimeoutMillis) {
+		setTransportProperty(ClientProperties.READ_TIMEOUT, readTimeoutMillis);
+		return super.readTimeout(readTimeoutMillis);
+	}
+
+	@Override
+	public BatchClient connectTimeout(int connectTimeoutMillis) {
+		setTransportProperty(ClientProperties.CONNECT_TIMEOUT, connectTimeoutMillis);
+		return super.connectTimeout(connectTimeoutMillis);
+	}
+
+	private void setTransportProperty(String name, Object value) {
+		transportProperties.put(name, value);
+		if (transportClient != null) {
+			transportClient.property(name, value);
+		}
+	}
+
+	/**
+	 * Send batches as gzipped Jackson Smile rather than JSON.  If the server does not support it (responds
+	 * with 415 Unsupported Media Type), the client falls back to JSON for the batch and all later batches.
+	 * Compressed batches are sent with the api key and timeouts of this client.
+	 */
+	public BatchClient compressedTransport() {
+		compressedTransport = true;
+		ClientConfig transportConfig = new ClientConfig();
+		transportProperties.forEach(transportConfig::property);
+		transportClient = ClientBuilder.newClient(transportConfig);
+		mapper = new ObjectMapperContextResolver().getContext(null);
+		smileFactory = new SmileFactory();
+		return this;
 	}
 
 	public void addIFMBatch(NewIFMBatch batch) {
+		if (compressedTransport && addCompressedIFMBatch(batch)) {
+			return;
+		}
 
 		crudClientRequest.createWithPost(batch);
 	}
 
+	private boolean addCompressedIFMBatch(NewIFMBatch batch) {
+		Response response = transportClient.target(baseUrl)
+				.path(BATCH_PATH)
+				.request()
+				.header(ResourcePaths.API_KEY_HEADER, apiKey)
+				.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+				.post(Entity.entity(toCompressedSmile(batch), ResourcePaths.SMILE_MEDIA_TYPE));
+
+		try {
+			if (response.getStatus() == Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode()) {
+				compressedTransport = false;
+				return false;
+			}
+			if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+				throw new WebApplicationException("Failed to add batch, status=" + response.getStatus(), response);
+			}
+			return true;
+		} finally {
+			response.close();
+		}
+	}
+
+	private byte[] toCompressedSmile(NewIFMBatch batch) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream gzipStream = new GZIPOutputStream(bytes);
+		     JsonGenerator generator = smileFactory.createGenerator(gzipStream)) {
+			mapper.writeValue(generator, batch);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Failed to encode batch", ex);
+		}
+		return bytes.toByteArray();
+	}
+
 }
@@ -0,0 +1,313 @@
+package org.openmastery.publisher.client;
+
+import org.openmastery.publisher.api.activity.NewBlockActivity;
+import org.openmastery.publisher.api.activity.NewEditorActivity;
+import org.openmastery.publisher.api.activity.NewExecutionActivity;
+import org.openmastery.publisher.api.activity.NewExternalActivity;
+import org.openmastery.publisher.api.activity.NewIdleActivity;
+import org.openmastery.publisher.api.activity.NewModificationActivity;
+import org.openmastery.publisher.api.batch.BatchItem;
+import org.openmastery.publisher.api.batch.NewBatchEvent;
+import org.openmastery.publisher.api.batch.NewIFMBatch;
+import org.openmastery.publisher.api.event.NewSnippetEvent;
+import org.openmastery.time.LocalDateTimeService;
+import org.openmastery.time.TimeService;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accumulates batch items in memory and sends them to the server as a single NewIFMBatch when the buffer
+ * reaches maxBufferSize items, when the oldest buffered item is older than maxBufferAge, or on flush().
+ *
+ * Batches are sent by a single background thread.  At most maxPendingBatches full buffers wait to be sent;
+ * once that limit is reached, adding an item blocks for up to maxBlockTime and then fails, which bounds
+ * memory use when the server is slow or unavailable.  Room for the buffer is reserved before the item which fills
+ * it is added, so an add which fails has not buffered its item and can be retried without sending it twice.
+ *
+ * Item positions are in client time, so timeSent is set to the client time immediately before each send.
+ * Each batch is given a batchId so a send that is retried after a failure is only stored once.  A batch which
+ * fails to send is never dropped; it is retried with exponential backoff until it is sent or the client is
+ * closed, and later batches wait behind it so items are sent in order.
+ */
+public class BufferedBatchClient implements Closeable {
+
+	private static final long RETRY_BACKOFF_MILLIS = 500;
+	private static final long MAX_RETRY_BACKOFF_MILLIS = 30000;
+
+	private final BatchClient batchClient;
+	private final TimeService timeService;
+	private final int maxBufferSize;
+	private final long maxBufferAgeMillis;
+	private final long maxBlockTimeMillis;
+	private final BlockingQueue<NewIFMBatch> pendingBatches;
+	// one permit per free place in pendingBatches, taken before a buffer is queued and returned once it is taken off
+	private final Semaphore queueSlots;
+	private final Thread senderThread;
+
+	private final ReentrantLock bufferLock = new ReentrantLock();
+	private NewIFMBatch buffer;
+	private int bufferSize;
+	private long bufferStartMillis;
+
+	private final Object unsentLock = new Object();
+	private int unsentBatchCount;
+	private RuntimeException sendFailure;
+	private volatile boolean closed;
+
+	public BufferedBatchClient(BatchClient batchClient) {
+		this(batchClient, new LocalDateTimeService(), 500, Duration.ofSeconds(30), 10, Duration.ofSeconds(60));
+	}
+
+	public BufferedBatchClient(BatchClient batchClient, TimeService timeService, int maxBufferSize, Duration maxBufferAge,
+	                           int maxPendingBatches, Duration maxBlockTime) {
+		this.batchClient = batchClient;
+		this.timeService = timeService;
+		this.maxBufferSize = maxBufferSize;
+		this.maxBufferAgeMillis = maxBufferAge.toMillis();
+		this.maxBlockTimeMillis = maxBlockTime.toMillis();
+		this.pendingBatches = new ArrayBlockingQueue<>(maxPendingBatches);
+		this.queueSlots = new Semaphore(maxPendingBatches);
+
+		senderThread = new Thread(this::sendPendingBatches, "buffered-batch-client");
+		senderThread.setDaemon(true);
+		senderThread.start();
+	}
+
+	public void addIFMBatch(NewIFMBatch batch) {
+		batch.getBatchItems().forEach(this::add);
+	}
+
+	public void add(BatchItem item) {
+		assertNotClosed();
+		bufferLock.lock();
+		try {
+			boolean fillsBuffer = bufferSize + 1 >= maxBufferSize;
+			if (fillsBuffer) {
+				acquireQueueSlot();
+			}
+
+			if (buffer == null) {
+				buffer = createEmptyBatch();
+				bufferStartMillis = System.currentTimeMillis();
+			}
+			try {
+				addToBatch(buffer, item);
+			} catch (RuntimeException ex) {
+				if (fillsBuffer) {
+					queueSlots.release();
+				}
+				throw ex;
+			}
+			bufferSize++;
+
+			if (fillsBuffer) {
+				enqueueBuffer();
+			}
+		} finally {
+			bufferLock.unlock();
+		}
+	}
+
+	/**
+	 * Sends all buffered items and blocks for up to maxBlockTime until every pending batch has been sent.
+	 *
+	 * @throws IllegalStateException if batches are still unsent after maxBlockTime; they are kept and retried
+	 */
+	public void flush() {
+		bufferLock.lock();
+		try {
+			if (buffer != null) {
+				acquireQueueSlot();
+				enqueueBuffer();
+			}
+		} finally {
+			bufferLock.unlock();
+		}
+
+		long deadlineMillis = System.currentTimeMillis() + maxBlockTimeMillis;
+		synchronized (unsentLock) {
+			while (unsentBatchCount > 0) {
+				long remainingMillis = deadlineMillis - System.currentTimeMillis();
+				if (remainingMillis <= 0) {
+					throw new IllegalStateException("Timed out after " + maxBlockTimeMillis + "ms waiting to send " +
+							unsentBatchCount + " batches, they will be retried", sendFailure);
+				}
+				try {
+					unsentLock.wait(remainingMillis);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while flushing batches", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flushes the client and stops sending; batches which could not be sent by then are lost.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+
+		try {
+			flush();
+		} finally {
+			closed = true;
+			senderThread.interrupt();
+		}
+	}
+
+	private void assertNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("BufferedBatchClient is closed");
+		}
+	}
+
+	/**
+	 * Blocks for up to maxBlockTime if too many batches are pending.
+	 */
+	private void acquireQueueSlot() {
+		try {
+			if (queueSlots.tryAcquire(maxBlockTimeMillis, TimeUnit.MILLISECONDS) == false) {
+				throw new IllegalStateException("Timed out after " + maxBlockTimeMillis + "ms waiting to queue batch, " +
+						pendingBatches.size() + " batches are pending");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing batch", ex);
+		}
+	}
+
+	/**
+	 * Must be called while holding bufferLock and a queue slot, so the buffer is queued without blocking.
+	 */
+	private void enqueueBuffer() {
+		synchronized (unsentLock) {
+			unsentBatchCount++;
+		}
+		pendingBatches.add(buffer);
+
+		buffer = null;
+		bufferSize = 0;
+	}
+
+	private void sendPendingBatches() {
+		long pollMillis = Math.max(1, maxBufferAgeMillis / 4);
+		while (closed == false) {
+			try {
+				NewIFMBatch batch = pendingBatches.poll(pollMillis, TimeUnit.MILLISECONDS);
+				if (batch != null) {
+					queueSlots.release();
+					send(batch);
+				}
+				enqueueBufferIfExpired();
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Called from the sender thread, which must never block on the buffer; an adder holding the lock may itself be
+	 * waiting for the sender to drain the queue.
+	 */
+	private void enqueueBufferIfExpired() {
+		if (bufferLock.tryLock() == false) {
+			return;
+		}
+		try {
+			if (buffer != null && System.currentTimeMillis() - bufferStartMillis >= maxBufferAgeMillis
+					&& queueSlots.tryAcquire()) {
+				enqueueBuffer();
+			}
+		} finally {
+			bufferLock.unlock();
+		}
+	}
+
+	private void send(NewIFMBatch batch) {
+		for (int attempt = 1; closed == false; attempt++) {
+			try {
+				batch.setTimeSent(timeService.now());
+				batchClient.addIFMBatch(batch);
+				synchronized (unsentLock) {
+					sendFailure = null;
+				}
+				markBatchComplete();
+				return;
+			} catch (RuntimeException ex) {
+				synchronized (unsentLock) {
+					sendFailure = ex;
+				}
+				if (sleepBeforeRetry(attempt) == false) {
+					return;
+				}
+			}
+		}
+	}
+
+	private boolean sleepBeforeRetry(int attempt) {
+		long backoffMillis = Math.min(RETRY_BACKOFF_MILLIS << Math.min(attempt - 1, 16), MAX_RETRY_BACKOFF_MILLIS);
+		try {
+			Thread.sleep(backoffMillis);
+			return true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void markBatchComplete() {
+		synchronized (unsentLock) {
+			unsentBatchCount--;
+			unsentLock.notifyAll();
+		}
+	}
+
+	private NewIFMBatch createEmptyBatch() {
+		NewIFMBatch batch = new NewIFMBatch();
+		batch.setBatchId(UUID.randomUUID().toString());
+		batch.setEditorActivityList(new ArrayList<>());
+		batch.setExternalActivityList(new ArrayList<>());
+		batch.setIdleActivityList(new ArrayList<>());
+		batch.setExecutionActivityList(new ArrayList<>());
+		batch.setModificationActivityList(new ArrayList<>());
+		batch.setBlockActivityList(new ArrayList<>());
+		batch.setEventList(new ArrayList<>());
+		batch.setSnippetEventList(new ArrayList<>());
+		return batch;
+	}
+
+	private void addToBatch(NewIFMBatch batch, BatchItem item) {
+		if (item instanceof NewEditorActivity) {
+			batch.getEditorActivityList().add((NewEditorActivity) item);
+		} else if (item instanceof NewExternalActivity) {
+			batch.getExternalActivityList().add((NewExternalActivity) item);
+		} else if (item instanceof NewIdleActivity) {
+			batch.getIdleActivityList().add((NewIdleActivity) item);
+		} else if (item instanceof NewExecutionActivity) {
+			batch.getExecutionActivityList().add((NewExecutionActivity) item);
+		} else if (item instanceof NewModificationActivity) {
+			batch.getModificationActivityList().add((NewModificationActivity) item);
+		} else if (item instanceof NewBlockActivity) {
+			batch.getBlockActivityList().add((NewBlockActivity) item);
+		} else if (item instanceof NewSnippetEvent) {
+			batch.getSnippetEventList().add((NewSnippetEvent) item);
+		} else if (item instanceof NewBatchEvent) {
+			batch.getEventList().add((NewBatchEvent) item);
+		} else {
+			throw new IllegalArgumentException("Unsupported batch item type " + item.getClass().getName());
+		}
+	}
+
+}
@@ -65,6 +65,26 @@ public class TaskClient extends IdeaFlowClient<Task, TaskClient> {
 		return (PagedResult<Task>) withPagedResultType(request).find();
 	}
 
+	/**
+	 * Pass null for the first page and the nextCursor of the previous result after that.
+	 */
+	public PagedResult<Task> findRecentTasksAfter(String cursor, Integer perPage) {
+		CrudClientRequest request = getUntypedCrudClientRequest()
+				.queryParam("cursor", cursor != null ? cursor : "")
+				.queryParam("per_page", perPage);
+
+		return (PagedResult<Task>) withPagedResultType(request).find();
+	}
+
+	public PagedResult<Task> findRecentTasksForProjectAfter(String projectName, String cursor, Integer perPage) {
+		CrudClientRequest request = getUntypedCrudClientRequest()
+				.queryParam("cursor", cursor != null ? cursor : "")
+				.queryParam("per_page", perPage)
+				.queryParam("project", projectName);
+
+		return (PagedResult<Task>) withPagedResultType(request).find();
+	}
+
 	public PagedResult<Task> findRecentTasksMatchingTags(List<String> tags, Integer pageNumber, Integer perPage) {
 		CrudClientRequest request = getUntypedCrudClientRequest()
 				.queryParam("page_number", pageNumber)
@@ -38,6 +38,7 @@ public class ResourcePaths {
 
 
 	public static final String FAQ_PATH = "/faq";
+	public static final String FAQ_SEARCH_PATH = "/search";
 
 	public static final String METRICS_PATH = "/metrics";
 	public static final String METRICS_SPC_PATH = "/spc";
@@ -3,6 +3,7 @@ package org.openmastery.storyweb.client;
 import com.bancvue.rest.client.crud.CrudClientRequest;
 import com.bancvue.rest.client.crud.GenericTypeFactory;
 import org.openmastery.publisher.api.PagedResult;
+import org.openmastery.storyweb.api.FaqSummary;
 import org.openmastery.storyweb.api.StoryPoint;
 import org.openmastery.storyweb.api.ResourcePaths;
 
@@ -33,10 +34,23 @@ public class FaqClient extends StorywebClient<StoryPoint, FaqClient> {
 		return (PagedResult<StoryPoint>) withPagedResultType(request).find();
 	}
 
+	public PagedResult<FaqSummary> findTopFaqsMatchingText(String searchText, Integer limit) {
+		CrudClientRequest request = getUntypedCrudClientRequest()
+				.path(ResourcePaths.FAQ_SEARCH_PATH)
+				.queryParam("q", searchText)
+				.queryParam("limit", limit);
+
+		return (PagedResult<FaqSummary>) withPagedResultType(request, FaqSummary.class).find();
+	}
+
 	private static final GenericTypeFactory GENERIC_TYPE_FACTORY = GenericTypeFactory.getInstance();
 
 	private CrudClientRequest withPagedResultType(CrudClientRequest request) {
-		GenericType<PagedResult<StoryPoint>> entityType = GENERIC_TYPE_FACTORY.createGenericType(PagedResult.class, StoryPoint.class);
+		return withPagedResultType(request, StoryPoint.class);
+	}
+
+	private CrudClientRequest withPagedResultType(CrudClientRequest request, Class<?> contentType) {
+		GenericType<?> entityType = GENERIC_TYPE_FACTORY.createGenericType(PagedResult.class, contentType);
 		try {
 			Field entityField = request.getClass().getDeclaredField("entity");
 			entityField.setAccessible(true);
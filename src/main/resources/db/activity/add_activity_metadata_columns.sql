@@ -0,0 +1,34 @@
+--liquibase formatted sql
+
+--changeset activity:4
+-- metadata is written by jackson, so all existing values are valid json other than the empty string written on failure
+alter table activity alter column metadata type jsonb using nullif(metadata, '')::jsonb
+
+--changeset activity:5
+alter table activity
+add column file_path varchar(1000),
+add column modification_count integer,
+add column exit_code integer
+
+--changeset activity:6 splitStatements:false
+-- projects the hot metadata fields into typed columns so they can be filtered and aggregated in sql
+create or replace function activity_project_metadata() returns trigger as $$
+begin
+  new.file_path := new.metadata ->> 'filePath';
+  new.modification_count := (new.metadata ->> 'modificationCount')::integer;
+  new.exit_code := (new.metadata ->> 'exitCode')::integer;
+  return new;
+end;
+$$ language plpgsql
+
+--changeset activity:7
+create trigger activity_project_metadata_trigger
+before insert or update of metadata on activity
+for each row execute procedure activity_project_metadata()
+
+--changeset activity:8
+update activity
+set file_path = metadata ->> 'filePath',
+  modification_count = (metadata ->> 'modificationCount')::integer,
+  exit_code = (metadata ->> 'exitCode')::integer
+where metadata is not null
@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+--changeset activity:9
+create index activity_task_id_type_start_time_ix on activity (task_id, type, start_time)
+
+--changeset activity:10
+create index activity_owner_id_type_start_time_ix on activity (owner_id, type, start_time)
+
+--changeset activity:11
+-- activities are appended in roughly start order, so a brin index covers time range scans at a fraction of the size
+create index activity_start_time_bix on activity using brin (start_time)
@@ -0,0 +1,29 @@
+--liquibase formatted sql
+
+--changeset annotation:6
+alter table annotation
+add column comment varchar(1000),
+add column comment_search tsvector
+
+--changeset annotation:7 splitStatements:false
+-- projects the faq comment out of the metadata json and indexes its words, once per write rather than per search
+create or replace function annotation_project_metadata() returns trigger as $$
+begin
+  new.comment := nullif(new.metadata, '')::json ->> 'comment';
+  new.comment_search := to_tsvector('english', coalesce(new.comment, ''));
+  return new;
+end;
+$$ language plpgsql
+
+--changeset annotation:8
+create trigger annotation_project_metadata_trigger
+before insert or update of metadata on annotation
+for each row execute procedure annotation_project_metadata()
+
+--changeset annotation:9
+update annotation
+set comment = nullif(metadata, '')::json ->> 'comment',
+  comment_search = to_tsvector('english', coalesce(nullif(metadata, '')::json ->> 'comment', ''))
+
+--changeset annotation:10
+create index annotation_comment_search_ix on annotation using gin (comment_search) where type = 'faq'
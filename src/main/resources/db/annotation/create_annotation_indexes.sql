@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+--changeset annotation:4
+create index annotation_task_id_type_ix on annotation (task_id, type)
+
+--changeset annotation:5
+create index annotation_owner_id_type_ix on annotation (owner_id, type)
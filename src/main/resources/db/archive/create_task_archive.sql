@@ -0,0 +1,29 @@
+--liquibase formatted sql
+
+--changeset archive:1
+create table task_archive (
+  task_id bigint constraint task_archive_pk primary key references task(id) on delete cascade,
+  owner_id bigint not null,
+  activity_count integer not null,
+  event_count integer not null,
+  min_event_id bigint,
+  max_event_id bigint,
+  last_event_position timestamp without time zone,
+  archive_date timestamp without time zone not null,
+  data bytea not null
+)
+
+--changeset archive:2
+create index task_archive_owner_id_last_event_position_ix on task_archive (owner_id, last_event_position)
+
+--changeset archive:3
+create index task_archive_min_event_id_max_event_id_ix on task_archive (min_event_id, max_event_id)
+
+--changeset archive:4
+-- the time range covered by the archived activities and events, null for archives written before the range was
+-- recorded, which owner wide range reads always decode
+alter table task_archive add column first_position timestamp without time zone,
+  add column last_position timestamp without time zone
+
+--changeset archive:5
+create index task_archive_owner_id_last_position_ix on task_archive (owner_id, last_position)
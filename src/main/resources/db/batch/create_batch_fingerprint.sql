@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+--changeset batch:1
+create table batch_fingerprint (
+  fingerprint varchar(64) constraint batch_fingerprint_pk primary key,
+  owner_id bigint not null,
+  received_at timestamp without time zone not null
+)
+
+--changeset batch:2
+create index batch_fingerprint_received_at_ix on batch_fingerprint (received_at)
@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+--changeset event:4
+create index event_owner_id_position_ix on event (owner_id, position)
+
+--changeset event:5
+create index event_task_id_position_ix on event (task_id, position)
+
+--changeset event:6
+-- events are appended in roughly position order, so a brin index covers time range scans at a fraction of the size
+create index event_position_bix on event using brin (position)
+
+--changeset event:7
+-- full text search of comments, partitions created later copy the index (see db/partition/create_partition_functions.sql)
+create index event_comment_search_ix on event using gin (to_tsvector('english', coalesce(comment, '')))
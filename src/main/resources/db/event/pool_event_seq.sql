@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+--changeset event:3
+-- event_seq was consumed by the legacy hi/lo generator (ids = last_value * 50 + lo), so move past every id that could
+-- have been handed out before switching the sequence to pooled allocation
+select setval('event_seq', (select (last_value + 1) * 50 from event_seq));
+alter sequence event_seq increment by 50
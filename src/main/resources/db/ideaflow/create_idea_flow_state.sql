@@ -16,3 +16,6 @@ create table idea_flow_state (
   is_nested boolean,
   is_linked_to_previous boolean
 )
+
+--changeset ideaflowstate:3
+create index idea_flow_state_task_id_ix on idea_flow_state (task_id)
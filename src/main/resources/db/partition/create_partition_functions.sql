@@ -0,0 +1,197 @@
+--liquibase formatted sql
+
+-- activity and event are partitioned by month using table inheritance (postgres 9.5 has no declarative partitioning).
+-- The parent table holds the current month and any rows which arrive late; ideaflow_maintain_partitions rolls
+-- completed months out of the parent into monthly child tables, each with a check constraint on the partition column
+-- so range queries only scan the parent and the children covering the range (constraint_exclusion = partition).
+-- Inserts always go to the parent, a routing trigger would report 0 inserted rows which hibernate treats as a failure.
+
+--changeset partition:1 splitStatements:false
+create or replace function ideaflow_create_partition(parent_table text, partition_column text, month_start date,
+    row_trigger_function text) returns text as $$
+declare
+  partition_name text := parent_table || '_' || to_char(month_start, 'YYYY_MM');
+  month_end date := (month_start + interval '1 month')::date;
+begin
+  if to_regclass(partition_name) is null then
+    execute format('create table %I (check (%I >= %L and %I < %L)) inherits (%I)',
+        partition_name, partition_column, month_start, partition_column, month_end, parent_table);
+    -- primary keys, foreign keys, indexes and triggers are not inherited
+    execute format('alter table %I add primary key (id)', partition_name);
+    execute format('alter table %I add foreign key (task_id) references task(id) on delete cascade', partition_name);
+    execute format('create index on %I (owner_id, %I)', partition_name, partition_column);
+    execute format('create index on %I (task_id)', partition_name);
+    if row_trigger_function is not null then
+      execute format('create trigger %I before insert or update on %I for each row execute procedure %I()',
+          partition_name || '_trigger', partition_name, row_trigger_function);
+    end if;
+  end if;
+  return partition_name;
+end;
+$$ language plpgsql
+
+--changeset partition:2 splitStatements:false
+-- moves rows of completed months from the parent into monthly partitions and drops partitions older than
+-- retention_months (0 to retain everything), returns the number of rows moved
+create or replace function ideaflow_maintain_partitions(parent_table text, partition_column text, retention_months integer,
+    row_trigger_function text) returns bigint as $$
+declare
+  current_month date := date_trunc('month', localtimestamp)::date;
+  retain_from date := (current_month - make_interval(months => retention_months))::date;
+  month_start date;
+  partition_name text;
+  moved_count bigint;
+  total_moved_count bigint := 0;
+begin
+  if retention_months > 0 then
+    execute format('delete from only %I where %I < %L', parent_table, partition_column, retain_from);
+
+    for partition_name in
+        select child.relname from pg_inherits
+        join pg_class child on child.oid = pg_inherits.inhrelid
+        where pg_inherits.inhparent = parent_table::regclass
+        and child.relname < parent_table || '_' || to_char(retain_from, 'YYYY_MM')
+    loop
+      execute format('alter table %I no inherit %I', partition_name, parent_table);
+      execute format('drop table %I', partition_name);
+    end loop;
+  end if;
+
+  for month_start in
+      execute format('select distinct date_trunc(''month'', %I)::date from only %I where %I < %L',
+          partition_column, parent_table, partition_column, current_month)
+  loop
+    partition_name := ideaflow_create_partition(parent_table, partition_column, month_start, row_trigger_function);
+    execute format('with moved as (delete from only %I where %I >= %L and %I < %L returning *) ' ||
+        'insert into %I select * from moved',
+        parent_table, partition_column, month_start, partition_column, (month_start + interval '1 month')::date,
+        partition_name);
+    get diagnostics moved_count = row_count;
+    total_moved_count := total_moved_count + moved_count;
+  end loop;
+  return total_moved_count;
+end;
+$$ language plpgsql
+
+--changeset partition:3
+select ideaflow_maintain_partitions('activity', 'start_time', 0, 'activity_project_metadata');
+select ideaflow_maintain_partitions('event', 'position', 0, null)
+
+--changeset partition:4 splitStatements:false
+-- partitions copy the indexes of the parent, so indexes added to the parent apply to partitions created later
+create or replace function ideaflow_create_partition(parent_table text, partition_column text, month_start date,
+    row_trigger_function text) returns text as $$
+declare
+  partition_name text := parent_table || '_' || to_char(month_start, 'YYYY_MM');
+  month_end date := (month_start + interval '1 month')::date;
+begin
+  if to_regclass(partition_name) is null then
+    execute format('create table %I (like %I including defaults including indexes)', partition_name, parent_table);
+    execute format('alter table %I add check (%I >= %L and %I < %L)',
+        partition_name, partition_column, month_start, partition_column, month_end);
+    execute format('alter table %I inherit %I', partition_name, parent_table);
+    -- foreign keys and triggers are not copied
+    execute format('alter table %I add foreign key (task_id) references task(id) on delete cascade', partition_name);
+    if row_trigger_function is not null then
+      execute format('create trigger %I before insert or update on %I for each row execute procedure %I()',
+          partition_name || '_trigger', partition_name, row_trigger_function);
+    end if;
+  end if;
+  return partition_name;
+end;
+$$ language plpgsql
+
+--changeset partition:5 splitStatements:false
+-- replaces the indexes of partitions created before the parent indexes were added
+do $$
+declare
+  partition_name text;
+begin
+  for partition_name in
+      select child.relname from pg_inherits join pg_class child on child.oid = pg_inherits.inhrelid
+      where pg_inherits.inhparent = 'activity'::regclass
+  loop
+    execute format('drop index if exists %I', partition_name || '_owner_id_start_time_idx');
+    execute format('drop index if exists %I', partition_name || '_task_id_idx');
+    execute format('create index on %I (task_id, type, start_time)', partition_name);
+    execute format('create index on %I (owner_id, type, start_time)', partition_name);
+    execute format('create index on %I using brin (start_time)', partition_name);
+  end loop;
+
+  for partition_name in
+      select child.relname from pg_inherits join pg_class child on child.oid = pg_inherits.inhrelid
+      where pg_inherits.inhparent = 'event'::regclass
+  loop
+    execute format('drop index if exists %I', partition_name || '_task_id_idx');
+    execute format('create index on %I (task_id, position)', partition_name);
+    execute format('create index on %I using brin (position)', partition_name);
+  end loop;
+end;
+$$
+
+--changeset partition:6 splitStatements:false
+-- adds the comment search index to event partitions created before the parent index was added
+do $$
+declare
+  partition_name text;
+begin
+  for partition_name in
+      select child.relname from pg_inherits join pg_class child on child.oid = pg_inherits.inhrelid
+      where pg_inherits.inhparent = 'event'::regclass
+  loop
+    execute format('create index if not exists %I on %I using gin (to_tsvector(''english'', coalesce(comment, '''')))',
+        partition_name || '_comment_search_idx', partition_name);
+  end loop;
+end;
+$$
+
+--changeset partition:7
+drop function ideaflow_maintain_partitions(text, text, integer, text)
+
+--changeset partition:8 splitStatements:false
+-- moves each completed month in chunks of at most rows_per_move rows so no single statement buffers a whole month
+create or replace function ideaflow_maintain_partitions(parent_table text, partition_column text, retention_months integer,
+    row_trigger_function text, rows_per_move integer) returns bigint as $$
+declare
+  current_month date := date_trunc('month', localtimestamp)::date;
+  retain_from date := (current_month - make_interval(months => retention_months))::date;
+  month_start date;
+  month_end date;
+  partition_name text;
+  moved_count bigint;
+  total_moved_count bigint := 0;
+begin
+  if retention_months > 0 then
+    execute format('delete from only %I where %I < %L', parent_table, partition_column, retain_from);
+
+    for partition_name in
+        select child.relname from pg_inherits
+        join pg_class child on child.oid = pg_inherits.inhrelid
+        where pg_inherits.inhparent = parent_table::regclass
+        and child.relname < parent_table || '_' || to_char(retain_from, 'YYYY_MM')
+    loop
+      execute format('alter table %I no inherit %I', partition_name, parent_table);
+      execute format('drop table %I', partition_name);
+    end loop;
+  end if;
+
+  for month_start in
+      execute format('select distinct date_trunc(''month'', %I)::date from only %I where %I < %L',
+          partition_column, parent_table, partition_column, current_month)
+  loop
+    partition_name := ideaflow_create_partition(parent_table, partition_column, month_start, row_trigger_function);
+    month_end := (month_start + interval '1 month')::date;
+    loop
+      execute format('with moved as (delete from only %I where ctid = any(array(' ||
+          'select ctid from only %I where %I >= %L and %I < %L limit %s)) returning *) ' ||
+          'insert into %I select * from moved',
+          parent_table, parent_table, partition_column, month_start, partition_column, month_end, rows_per_move,
+          partition_name);
+      get diagnostics moved_count = row_count;
+      total_moved_count := total_moved_count + moved_count;
+      exit when moved_count < rows_per_move;
+    end loop;
+  end loop;
+  return total_moved_count;
+end;
+$$ language plpgsql
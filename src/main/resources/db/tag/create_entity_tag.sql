@@ -0,0 +1,35 @@
+--liquibase formatted sql
+
+--changeset tag:1
+-- hashtags of event comments and faq comments, maintained on write so tag searches are index lookups rather than
+-- pattern scans; no foreign key to event since event rows are partitioned and may be compacted into task_archive
+create table entity_tag (
+  tag text not null,
+  owner_id bigint not null,
+  task_id bigint not null references task(id) on delete cascade,
+  event_id bigint not null,
+  source varchar(16) not null
+)
+
+--changeset tag:2
+create index entity_tag_lower_tag_owner_id_task_id_ix on entity_tag (lower(tag), owner_id, task_id)
+
+--changeset tag:3
+create index entity_tag_event_id_ix on entity_tag (event_id)
+
+--changeset tag:4
+create index entity_tag_task_id_ix on entity_tag (task_id)
+
+--changeset tag:5
+-- progress of the one time indexing of rows written before entity_tag existed, see EntityTagBackfillService
+create table entity_tag_backfill (
+  source varchar(16) constraint entity_tag_backfill_pk primary key,
+  last_id bigint not null,
+  completed boolean not null
+);
+insert into entity_tag_backfill (source, last_id, completed) values ('event', 0, false);
+insert into entity_tag_backfill (source, last_id, completed) values ('faq', 0, false)
+
+--changeset tag:6
+-- events compacted into task_archive before their tags were indexed, last_id is the task id of the archive
+insert into entity_tag_backfill (source, last_id, completed) values ('archive', 0, false)
@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset task:9
+alter table task
+add column deleted_at timestamp without time zone;
+
+--changeset task:10
+create index task_deleted_id_ix on task (id) where deleted_at is not null
+
+--changeset task:11
+alter table task drop constraint task_owner_id_name_ux;
+create unique index task_owner_id_name_ux on task (owner_id, name) where deleted_at is null
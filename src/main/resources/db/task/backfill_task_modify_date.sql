@@ -0,0 +1,9 @@
+--liquibase formatted sql
+
+--changeset task:12
+update task set modify_date = creation_date where modify_date is null
+
+--changeset task:13
+drop index task_modify_date_id_ix;
+create index task_owner_id_sort_date_id_ix on task (owner_id, (coalesce(modify_date, creation_date)), id);
+create index task_sort_date_id_ix on task ((coalesce(modify_date, creation_date)), id)
@@ -0,0 +1,14 @@
+--liquibase formatted sql
+
+--changeset task:5
+create index task_owner_id_modify_date_ix on task (owner_id, modify_date)
+
+--changeset task:6
+create index task_creation_date_bix on task using brin (creation_date)
+
+--changeset task:7
+drop index task_owner_id_modify_date_ix;
+create index task_owner_id_modify_date_id_ix on task (owner_id, modify_date, id)
+
+--changeset task:8
+create index task_modify_date_id_ix on task (modify_date, id)
@@ -9,13 +9,21 @@ import org.openmastery.publisher.core.activity.ExternalActivityEntity.ExternalAc
 import org.openmastery.publisher.core.activity.IdleActivityEntity
 import org.openmastery.publisher.core.activity.IdleActivityEntity.IdleActivityEntityBuilder
 import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
+import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.task.TaskCursor
 import org.openmastery.publisher.core.task.TaskEntity
 import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity
 import org.openmastery.time.MockTimeService
 import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.data.domain.Page
+import org.springframework.data.domain.PageRequest
 import spock.lang.Ignore
 import spock.lang.Specification
 
+import java.time.Duration
+import java.time.LocalDateTime
+
 import static org.openmastery.publisher.ARandom.aRandom
 
 @Ignore
@@ -111,6 +119,48 @@ abstract class IdeaFlowPersistenceServiceSpec extends Specification {
 		assert activity.metadata.length() > 2
 	}
 
+	def "saveActivities should persist all activities and assign ids"() {
+		given:
+		List<ActivityEntity> activities = (1..120).collect {
+			aRandom.activityEntity().taskId(task.id).build()
+		}
+
+		when:
+		List<ActivityEntity> savedActivities = persistenceService.saveActivities(activities)
+
+		then:
+		assert savedActivities.size() == activities.size()
+		assert savedActivities.collect { it.id }.toSet().size() == activities.size()
+		assert persistenceService.getActivityList(task.id).size() == activities.size()
+	}
+
+	def "saveEvents should persist all events and assign ids"() {
+		given:
+		List<EventEntity> events = (1..120).collect {
+			aRandom.eventEntity().taskId(task.id).build()
+		}
+
+		when:
+		List<EventEntity> savedEvents = persistenceService.saveEvents(events)
+
+		then:
+		assert savedEvents.collect { it.id }.toSet().size() == events.size()
+		assert persistenceService.getEventList(task.id).size() == events.size()
+	}
+
+	def "updateEventComment SHOULD replace the comment of the event"() {
+		given:
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().taskId(task.id).comment("before").build())
+
+		when:
+		EventEntity updatedEvent = persistenceService.updateEventComment(event.id, "after")
+
+		then:
+		assert updatedEvent.comment == "after"
+		assert persistenceService.findEventById(event.id).comment == "after"
+		assert persistenceService.updateEventComment(event.id + 1000, "after") == null
+	}
+
 	def "saveAnnotation should persist metadata"() {
 		given:
 		FaqAnnotationEntity annotation = aRandom.faqAnnotationEntity().taskId(task.id).build()
@@ -123,6 +173,21 @@ abstract class IdeaFlowPersistenceServiceSpec extends Specification {
 		assert savedAnnotation.metadata.length() > 2
 	}
 
+	def "saveAnnotations should persist all annotations and assign ids"() {
+		given:
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().taskId(task.id).build())
+		List<SnippetAnnotationEntity> annotations = (1..60).collect {
+			aRandom.snippetAnnotationEntity().id(null).taskId(task.id).eventId(event.id).build()
+		}
+
+		when:
+		List<SnippetAnnotationEntity> savedAnnotations = persistenceService.saveAnnotations(annotations)
+
+		then:
+		assert savedAnnotations.collect { it.id }.toSet().size() == annotations.size()
+		assert persistenceService.getSnippetAnnotationList(task.id).size() == annotations.size()
+	}
+
 	def "findAnnotationsByTask should retrieve all available annotations"() {
 		given:
 		FaqAnnotationEntity annotation = aRandom.faqAnnotationEntity().taskId(task.id).build()
@@ -176,4 +241,179 @@ abstract class IdeaFlowPersistenceServiceSpec extends Specification {
 		assert persistenceService.getFaqAnnotationList(task.id) == []
 	}
 
+	def "findTaskOwnerIds SHOULD return owner of each existing task"() {
+		given:
+		TaskEntity task = persistenceService.saveTask(aRandom.taskEntity().build())
+		TaskEntity otherTask = persistenceService.saveTask(aRandom.taskEntity().build())
+		long missingTaskId = Math.max(task.id, otherTask.id) + 1
+
+		when:
+		Map<Long, Long> taskOwnerIds = persistenceService.findTaskOwnerIds([task.id, otherTask.id, missingTaskId])
+
+		then:
+		assert taskOwnerIds == [(task.id): task.ownerId, (otherTask.id): otherTask.ownerId]
+	}
+
+	def "findTaskOwnerIds SHOULD not return deleted task"() {
+		given:
+		TaskEntity task = persistenceService.saveTask(aRandom.taskEntity().build())
+		assert persistenceService.findTaskOwnerIds([task.id]) == [(task.id): task.ownerId]
+
+		when:
+		persistenceService.deleteTask(task)
+
+		then:
+		assert persistenceService.findTaskOwnerIds([task.id]) == [:]
+	}
+
+	def "findRecentTasks SHOULD page owner tasks like the project by modify date falling back to creation date"() {
+		given:
+		long ownerId = aRandom.id()
+		String project = aRandom.text(10)
+		LocalDateTime creationDate = LocalDateTime.of(2017, 1, 1, 12, 0)
+		TaskEntity oldest = saveTask(aRandom.taskEntity().ownerId(ownerId).project(project).creationDate(creationDate))
+		TaskEntity newest = saveTask(aRandom.taskEntity().ownerId(ownerId).project(project + "-web")
+				.creationDate(creationDate).modifyDate(creationDate.plusHours(2)))
+		TaskEntity middle = saveTask(aRandom.taskEntity().ownerId(ownerId).project(project).creationDate(creationDate.plusHours(1)))
+		saveTask(aRandom.taskEntity().ownerId(ownerId).project(aRandom.text(10)).creationDate(creationDate))
+
+		when:
+		Page<TaskEntity> firstPage = persistenceService.findRecentTasks(ownerId, project + "%", new PageRequest(0, 2))
+		Page<TaskEntity> secondPage = persistenceService.findRecentTasks(ownerId, project + "%", new PageRequest(1, 2))
+
+		then:
+		assert firstPage.content*.id == [newest.id, middle.id]
+		assert firstPage.totalElements == 3
+		assert firstPage.hasNext()
+		assert secondPage.content*.id == [oldest.id]
+		assert persistenceService.findRecentTasks(null, project, new PageRequest(0, 10)).content*.id == [middle.id, oldest.id]
+	}
+
+	def "findRecentTasksAfter SHOULD return tasks strictly after the cursor"() {
+		given:
+		long ownerId = aRandom.id()
+		String project = aRandom.text(10)
+		LocalDateTime creationDate = LocalDateTime.of(2017, 1, 1, 12, 0)
+		List<TaskEntity> tasks = (1..3).collect {
+			saveTask(aRandom.taskEntity().ownerId(ownerId).project(project).creationDate(creationDate))
+		}.sort { -it.id }
+
+		when:
+		List<TaskEntity> firstPage = persistenceService.findRecentTasksAfter(ownerId, project, TaskCursor.FIRST, 2)
+		List<TaskEntity> secondPage = persistenceService.findRecentTasksAfter(ownerId, project, TaskCursor.after(firstPage.last()), 2)
+
+		then:
+		assert firstPage*.id == tasks[0..1]*.id
+		assert secondPage*.id == [tasks[2].id]
+		assert persistenceService.findRecentTasksAfter(null, project, TaskCursor.FIRST, 10)*.id == tasks*.id
+	}
+
+	def "findTasksMatchingTags SHOULD find owner tasks with a tagged event or faq comment"() {
+		given:
+		long ownerId = aRandom.id()
+		String project = aRandom.text(10)
+		String tag = "#tag" + aRandom.id()
+		LocalDateTime creationDate = LocalDateTime.of(2017, 1, 1, 12, 0)
+		TaskEntity eventTask = saveTask(aRandom.taskEntity().ownerId(ownerId).project(project).creationDate(creationDate))
+		TaskEntity faqTask = saveTask(aRandom.taskEntity().ownerId(ownerId).project(project).creationDate(creationDate.plusHours(1)))
+		TaskEntity untaggedTask = saveTask(aRandom.taskEntity().ownerId(ownerId).project(project).creationDate(creationDate))
+		persistenceService.saveEvent(aRandom.eventEntity().ownerId(ownerId).taskId(eventTask.id).comment("about ${tag.replace("#tag", "#TAG")}").build())
+		EventEntity faqEvent = persistenceService.saveEvent(aRandom.eventEntity().ownerId(ownerId).taskId(faqTask.id).comment("no tags").build())
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().ownerId(ownerId).taskId(faqTask.id).eventId(faqEvent.id)
+				.comment("answer ${tag}").build())
+		persistenceService.saveEvent(aRandom.eventEntity().ownerId(ownerId).taskId(untaggedTask.id).comment("no tags").build())
+
+		expect:
+		assert persistenceService.countTasksMatchingTags(ownerId, project, [tag]) == 2
+		assert persistenceService.findTasksMatchingTags(ownerId, project, [tag], 10, 0)*.id == [faqTask.id, eventTask.id]
+		assert persistenceService.findTasksMatchingTags(ownerId, project, [tag], 10, 1)*.id == [eventTask.id]
+		assert persistenceService.findTasksMatchingTagsAfter(ownerId, project, [tag], TaskCursor.after(faqTask), 10)*.id == [eventTask.id]
+		assert persistenceService.countTasksMatchingTags(ownerId + 1, project, [tag]) == 0
+	}
+
+	def "updateTaskModifyDates SHOULD only move modify date forward"() {
+		given:
+		LocalDateTime modifyDate = LocalDateTime.of(2017, 1, 1, 12, 0)
+		TaskEntity task = persistenceService.saveTask(aRandom.taskEntity().modifyDate(modifyDate).build())
+		TaskEntity otherTask = persistenceService.saveTask(aRandom.taskEntity().modifyDate(modifyDate).build())
+
+		when:
+		persistenceService.updateTaskModifyDates([(task.id): modifyDate.plusHours(1), (otherTask.id): modifyDate.minusHours(1)])
+
+		then:
+		assert persistenceService.findTaskWithId(task.id).modifyDate == modifyDate.plusHours(1)
+		assert persistenceService.findTaskWithId(otherTask.id).modifyDate == modifyDate
+	}
+
+	def "findEditorAndExternalActivitiesEndingAt SHOULD find editor and external activities of the tasks ending at the times"() {
+		given:
+		LocalDateTime end = LocalDateTime.of(2017, 1, 1, 12, 0)
+		EditorActivityEntity editorActivity = saveEditorActivity(aRandom.editorActivityEntity().start(end.minusMinutes(1)).end(end))
+		ExternalActivityEntity externalActivity = saveExternalActivity(aRandom.externalActivityEntity().start(end.minusMinutes(1)).end(end))
+		saveIdleActivity(aRandom.idleActivityEntity().start(end.minusMinutes(1)).end(end))
+		saveEditorActivity(aRandom.editorActivityEntity().start(end.minusMinutes(2)).end(end.minusMinutes(1)))
+
+		when:
+		List<ActivityEntity> activities = persistenceService.findEditorAndExternalActivitiesEndingAt([task.id], [end, end.plusMinutes(1)])
+
+		then:
+		assert activities.collect { it.id }.toSet() == [editorActivity.id, externalActivity.id].toSet()
+	}
+
+	def "updateActivityEndTimes SHOULD only move end time forward"() {
+		given:
+		LocalDateTime end = LocalDateTime.of(2017, 1, 1, 12, 0)
+		EditorActivityEntity activity = saveEditorActivity(aRandom.editorActivityEntity().start(end.minusMinutes(1)).end(end))
+		EditorActivityEntity otherActivity = saveEditorActivity(aRandom.editorActivityEntity().start(end.minusMinutes(1)).end(end))
+
+		when:
+		persistenceService.updateActivityEndTimes([(activity.id): end.plusMinutes(5), (otherActivity.id): end.minusSeconds(30)])
+
+		then:
+		Map<Long, LocalDateTime> endTimes = persistenceService.getEditorActivityList(task.id).collectEntries { [(it.id): it.end] }
+		assert endTimes[activity.id] == end.plusMinutes(5)
+		assert endTimes[otherActivity.id] == end
+	}
+
+	def "getActivityList SHOULD return activities of all types ordered by start"() {
+		given:
+		LocalDateTime start = LocalDateTime.of(2017, 1, 1, 12, 0)
+		ActivityEntity idle = saveIdleActivity(aRandom.idleActivityEntity().start(start.plusMinutes(2)).end(start.plusMinutes(3)))
+		ActivityEntity editor = saveEditorActivity(aRandom.editorActivityEntity().start(start).end(start.plusMinutes(1)))
+		ActivityEntity external = saveExternalActivity(aRandom.externalActivityEntity().start(start.plusMinutes(1)).end(start.plusMinutes(2)))
+
+		when:
+		List<ActivityEntity> activities = persistenceService.getActivityList(task.id)
+
+		then:
+		assert activities.collect { it.id } == [editor.id, external.id, idle.id]
+	}
+
+	def "getAnnotationList SHOULD return annotations of all types for the task"() {
+		given:
+		FaqAnnotationEntity faq = persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().taskId(task.id).build())
+		SnippetAnnotationEntity snippet = persistenceService.saveAnnotation(aRandom.snippetAnnotationEntity().taskId(task.id).build())
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().taskId(task.id + 1).build())
+
+		expect:
+		assert persistenceService.getAnnotationList(task.id).collect { it.id }.toSet() == [faq.id, snippet.id].toSet()
+	}
+
+	def "getModificationCountsByWindow SHOULD sum modification counts by window of activity start"() {
+		given:
+		LocalDateTime start = LocalDateTime.of(2017, 1, 1, 12, 0)
+		[[0, 3], [4, 5], [10, 7], [25, 1]].each { List<Integer> minuteAndCount ->
+			LocalDateTime activityStart = start.plusMinutes(minuteAndCount[0])
+			saveActivity(aRandom.modificationActivityEntity().start(activityStart).end(activityStart.plusSeconds(30))
+					.modificationCount(minuteAndCount[1]))
+		}
+		saveEditorActivity(aRandom.editorActivityEntity().start(start).end(start.plusMinutes(1)))
+
+		when:
+		SortedMap<LocalDateTime, Long> modificationCounts = persistenceService.getModificationCountsByWindow(task.id, Duration.ofMinutes(10))
+
+		then:
+		assert modificationCounts == [(start): 8L, (start.plusMinutes(10)): 7L, (start.plusMinutes(20)): 1L]
+	}
+
 }
@@ -10,6 +10,7 @@ class NewIFMBatchTest extends Specification {
 		NewIFMBatch batch = NewIFMBatch.builder().build()
 		Map properties = batch.getProperties()
 		properties.remove("timeSent")
+		properties.remove("batchId")
 		properties.remove("class")
 		properties.remove("batchItemLists")
 		properties.remove("batchItems")
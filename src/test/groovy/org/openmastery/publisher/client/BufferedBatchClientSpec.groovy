@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.client
+
+import org.openmastery.publisher.api.batch.NewBatchEvent
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.event.EventType
+import org.openmastery.time.MockTimeService
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class BufferedBatchClientSpec extends Specification {
+
+	MockTimeService timeService = new MockTimeService()
+	List<NewIFMBatch> sentBatches = Collections.synchronizedList([])
+	BatchClient batchClient = Stub(BatchClient) {
+		addIFMBatch(_) >> { NewIFMBatch batch -> sentBatches << batch }
+	}
+	BufferedBatchClient bufferedClient
+
+	def cleanup() {
+		bufferedClient?.close()
+	}
+
+	private BufferedBatchClient createClient(int maxBufferSize, Duration maxBufferAge, int maxPendingBatches, Duration maxBlockTime) {
+		new BufferedBatchClient(batchClient, timeService, maxBufferSize, maxBufferAge, maxPendingBatches, maxBlockTime)
+	}
+
+	def "flush SHOULD send buffered items as a single batch"() {
+		given:
+		bufferedClient = createClient(100, Duration.ofMinutes(1), 10, Duration.ofSeconds(1))
+		NewBatchEvent event = aRandom.newBatchEvent().build()
+
+		when:
+		bufferedClient.add(aRandom.newEditorActivity().build())
+		bufferedClient.add(event)
+		timeService.plusMinutes(5)
+		bufferedClient.flush()
+
+		then:
+		assert sentBatches.size() == 1
+		assert sentBatches[0].editorActivityList.size() == 1
+		assert sentBatches[0].eventList == [event]
+		assert sentBatches[0].timeSent == timeService.now()
+		assert sentBatches[0].batchId != null
+	}
+
+	def "addIFMBatch SHOULD merge small batches"() {
+		given:
+		bufferedClient = createClient(100, Duration.ofMinutes(1), 10, Duration.ofSeconds(1))
+
+		when:
+		3.times {
+			bufferedClient.addIFMBatch(aRandom.batch()
+					.newEvent(1, timeService.now(), EventType.NOTE, "note")
+					.build())
+		}
+		bufferedClient.flush()
+
+		then:
+		assert sentBatches.size() == 1
+		assert sentBatches[0].eventList.size() == 3
+	}
+
+	def "SHOULD send batch when buffer is full"() {
+		given:
+		bufferedClient = createClient(2, Duration.ofMinutes(1), 10, Duration.ofSeconds(1))
+
+		when:
+		5.times {
+			bufferedClient.add(aRandom.newBatchEvent().build())
+		}
+		bufferedClient.flush()
+
+		then:
+		assert sentBatches.collect { it.eventList.size() } == [2, 2, 1]
+	}
+
+	def "SHOULD send batch when oldest item exceeds max age"() {
+		given:
+		bufferedClient = createClient(100, Duration.ofMillis(50), 10, Duration.ofSeconds(1))
+
+		when:
+		bufferedClient.add(aRandom.newBatchEvent().build())
+
+		then:
+		new PollingConditions(timeout: 2).eventually {
+			assert sentBatches.size() == 1
+		}
+	}
+
+	def "SHOULD fail to add once pending batch limit is reached and server does not respond"() {
+		given:
+		CountDownLatch releaseServer = new CountDownLatch(1)
+		batchClient = Stub(BatchClient) {
+			addIFMBatch(_) >> { releaseServer.await(5, TimeUnit.SECONDS) }
+		}
+		bufferedClient = createClient(1, Duration.ofMinutes(1), 1, Duration.ofMillis(50))
+
+		when:
+		3.times {
+			bufferedClient.add(aRandom.newBatchEvent().build())
+		}
+
+		then:
+		thrown(IllegalStateException)
+
+		cleanup:
+		releaseServer.countDown()
+	}
+
+	def "SHOULD not buffer an item whose add timed out, so retrying the add sends it once"() {
+		given:
+		CountDownLatch releaseServer = new CountDownLatch(1)
+		batchClient = Stub(BatchClient) {
+			addIFMBatch(_) >> { NewIFMBatch batch ->
+				releaseServer.await(5, TimeUnit.SECONDS)
+				sentBatches << batch
+			}
+		}
+		bufferedClient = createClient(1, Duration.ofMinutes(1), 1, Duration.ofMillis(50))
+		List<NewBatchEvent> events = (1..3).collect { aRandom.newBatchEvent().build() }
+		bufferedClient.add(events[0])
+		bufferedClient.add(events[1])
+
+		when:
+		bufferedClient.add(events[2])
+
+		then:
+		thrown(IllegalStateException)
+
+		when:
+		releaseServer.countDown()
+		bufferedClient.add(events[2])
+		bufferedClient.flush()
+
+		then:
+		assert sentBatches.collectMany { it.eventList } == events
+	}
+
+	def "flush SHOULD throw if batch could not be sent within max block time"() {
+		given:
+		batchClient = Stub(BatchClient) {
+			addIFMBatch(_) >> { throw new RuntimeException("server down") }
+		}
+		bufferedClient = createClient(100, Duration.ofMinutes(1), 10, Duration.ofSeconds(1))
+		bufferedClient.add(aRandom.newBatchEvent().build())
+
+		when:
+		bufferedClient.flush()
+
+		then:
+		IllegalStateException ex = thrown()
+		assert ex.cause.message == "server down"
+
+		cleanup:
+		closeExpectingUnsentBatches()
+	}
+
+	def "SHOULD keep retrying a batch which failed to send until it is sent"() {
+		given:
+		AtomicInteger attemptCount = new AtomicInteger()
+		batchClient = Stub(BatchClient) {
+			addIFMBatch(_) >> { NewIFMBatch batch ->
+				if (attemptCount.incrementAndGet() <= 3) {
+					throw new RuntimeException("server down")
+				}
+				sentBatches << batch
+			}
+		}
+		bufferedClient = createClient(100, Duration.ofMinutes(1), 10, Duration.ofSeconds(10))
+		NewBatchEvent event = aRandom.newBatchEvent().build()
+
+		when:
+		bufferedClient.add(event)
+		bufferedClient.flush()
+
+		then:
+		assert attemptCount.get() == 4
+		assert sentBatches.size() == 1
+		assert sentBatches[0].eventList == [event]
+	}
+
+	private void closeExpectingUnsentBatches() {
+		try {
+			bufferedClient.close()
+		} catch (IllegalStateException ex) {
+			// the unsent batch is lost on close
+		}
+		bufferedClient = null
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config
+
+import spock.lang.Specification
+
+import javax.ws.rs.ServerErrorException
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.Response
+import javax.ws.rs.core.UriInfo
+
+class EmbeddedModeRequestFilterSpec extends Specification {
+
+	EmbeddedModeRequestFilter filter = new EmbeddedModeRequestFilter()
+
+	private ContainerRequestContext requestFor(String path) {
+		UriInfo uriInfo = Stub(UriInfo) {
+			getPath() >> path
+		}
+		Stub(ContainerRequestContext) {
+			getUriInfo() >> uriInfo
+		}
+	}
+
+	def "should reject storyweb requests with 501"() {
+		when:
+		filter.filter(requestFor(path))
+
+		then:
+		ServerErrorException ex = thrown()
+		assert ex.response.status == Response.Status.NOT_IMPLEMENTED.statusCode
+
+		where:
+		path << ["storyweb/faq/search", "/storyweb/glossary/term", "storyweb/metrics/spc", "storyweb"]
+	}
+
+	def "should pass task, timeline and batch requests"() {
+		when:
+		filter.filter(requestFor(path))
+
+		then:
+		notThrown(ServerErrorException)
+
+		where:
+		path << ["ideaflow/task", "/ideaflow/timeline/task/1", "ideaflow/publisher/batch", "storywebs"]
+	}
+
+}
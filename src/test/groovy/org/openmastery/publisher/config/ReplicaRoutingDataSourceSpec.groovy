@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config
+
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.SQLException
+import java.time.Duration
+
+class ReplicaRoutingDataSourceSpec extends Specification {
+
+	private DataSource primary = Mock(DataSource)
+	private DataSource replicaOne = Mock(DataSource)
+	private DataSource replicaTwo = Mock(DataSource)
+	private Map<DataSource, Object> replicaLag = [:]
+
+	private ReplicaRoutingDataSource.LagProbe lagProbe = { DataSource replica ->
+		Object lag = replicaLag[replica]
+		if (lag instanceof Exception) {
+			throw lag
+		}
+		return lag as Duration
+	} as ReplicaRoutingDataSource.LagProbe
+
+	private ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, [replicaOne, replicaTwo],
+			Duration.ofSeconds(30), lagProbe)
+
+	def setup() {
+		replicaLag[replicaOne] = Duration.ZERO
+		replicaLag[replicaTwo] = Duration.ZERO
+	}
+
+	def cleanup() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false)
+	}
+
+	def "should route read-write transactions to primary"() {
+		given:
+		routingDataSource.checkReplicaLag()
+
+		when:
+		routingDataSource.getConnection()
+
+		then:
+		1 * primary.getConnection() >> Stub(Connection)
+		0 * replicaOne.getConnection()
+		0 * replicaTwo.getConnection()
+	}
+
+	def "should route read-only transactions to replicas round-robin"() {
+		given:
+		routingDataSource.checkReplicaLag()
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true)
+
+		when:
+		4.times { routingDataSource.getConnection() }
+
+		then:
+		2 * replicaOne.getConnection() >> Stub(Connection)
+		2 * replicaTwo.getConnection() >> Stub(Connection)
+		0 * primary.getConnection()
+	}
+
+	def "should not route to replicas before the first lag check"() {
+		given:
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true)
+
+		when:
+		routingDataSource.getConnection()
+
+		then:
+		1 * primary.getConnection() >> Stub(Connection)
+	}
+
+	def "should skip replica which lags primary or fails lag check"() {
+		given:
+		replicaLag[replicaOne] = replicaOneLag
+		routingDataSource.checkReplicaLag()
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true)
+
+		when:
+		4.times { routingDataSource.getConnection() }
+
+		then:
+		0 * replicaOne.getConnection()
+		4 * replicaTwo.getConnection() >> Stub(Connection)
+		0 * primary.getConnection()
+
+		where:
+		replicaOneLag << [Duration.ofSeconds(31), new SQLException("connection refused")]
+	}
+
+	def "should fall back to primary when no replica is available"() {
+		given:
+		replicaLag[replicaOne] = Duration.ofMinutes(5)
+		replicaLag[replicaTwo] = new IllegalStateException("recovery not in progress")
+		routingDataSource.checkReplicaLag()
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true)
+
+		when:
+		routingDataSource.getConnection()
+
+		then:
+		1 * primary.getConnection() >> Stub(Connection)
+	}
+
+	def "should resume routing to replica once it catches up"() {
+		given:
+		replicaLag[replicaOne] = Duration.ofMinutes(5)
+		replicaLag[replicaTwo] = Duration.ofMinutes(5)
+		routingDataSource.checkReplicaLag()
+		replicaLag[replicaTwo] = Duration.ofSeconds(1)
+		routingDataSource.checkReplicaLag()
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true)
+
+		when:
+		routingDataSource.getConnection()
+
+		then:
+		1 * replicaTwo.getConnection() >> Stub(Connection)
+		0 * primary.getConnection()
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.config
+
+import org.openmastery.publisher.api.ResourcePaths
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.batch.RandomNewIFMBatchBuilder
+import org.openmastery.publisher.api.event.EventType
+import spock.lang.Specification
+
+import javax.ws.rs.core.MediaType
+import javax.ws.rs.core.MultivaluedHashMap
+import java.lang.annotation.Annotation
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class SmileMessageBodyProviderSpec extends Specification {
+
+	SmileMessageBodyProvider provider = new SmileMessageBodyProvider()
+	MediaType smileMediaType = MediaType.valueOf(ResourcePaths.SMILE_MEDIA_TYPE)
+
+	private NewIFMBatch createBatch(int itemCount) {
+		LocalDateTime now = LocalDateTime.of(2017, 1, 1, 12, 0)
+		RandomNewIFMBatchBuilder builder = aRandom.batch().timeSent(now)
+		(1..itemCount).each { int i ->
+			builder.newEditorActivity(1, now.minusSeconds(i), 5, "src/main/java/org/openmastery/File${i % 20}.java", true)
+			builder.newEvent(1, now.minusSeconds(i), EventType.NOTE, "note ${i}")
+		}
+		builder.build()
+	}
+
+	private byte[] write(NewIFMBatch batch) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream()
+		provider.writeTo(batch, NewIFMBatch, NewIFMBatch, new Annotation[0], smileMediaType, new MultivaluedHashMap<String, Object>(), outputStream)
+		outputStream.toByteArray()
+	}
+
+	private NewIFMBatch read(byte[] bytes) {
+		(NewIFMBatch) provider.readFrom((Class) NewIFMBatch, NewIFMBatch, new Annotation[0], smileMediaType,
+				new MultivaluedHashMap<String, String>(), new ByteArrayInputStream(bytes))
+	}
+
+	def "SHOULD only handle smile media type"() {
+		expect:
+		assert provider.isReadable(NewIFMBatch, NewIFMBatch, new Annotation[0], smileMediaType)
+		assert provider.isWriteable(NewIFMBatch, NewIFMBatch, new Annotation[0], smileMediaType)
+		assert provider.isReadable(NewIFMBatch, NewIFMBatch, new Annotation[0], MediaType.APPLICATION_JSON_TYPE) == false
+	}
+
+	def "SHOULD round trip batch"() {
+		given:
+		NewIFMBatch batch = createBatch(10)
+
+		when:
+		NewIFMBatch result = read(write(batch))
+
+		then:
+		assert result == batch
+	}
+
+	def "SHOULD encode batch in fewer bytes than json"() {
+		given:
+		NewIFMBatch batch = createBatch(1000)
+		byte[] json = new CustomValueTypeResolver().getContext(null).writeValueAsBytes(batch)
+
+		when:
+		byte[] smile = write(batch)
+
+		then:
+		assert smile.length < json.length
+	}
+
+}
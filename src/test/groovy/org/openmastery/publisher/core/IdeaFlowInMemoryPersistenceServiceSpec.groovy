@@ -1,8 +1,18 @@
 package org.openmastery.publisher.core
 
-import spock.lang.Ignore
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.task.TaskEntity
+
+import java.sql.Timestamp
+import java.time.LocalDateTime
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+import static org.openmastery.publisher.ARandom.aRandom
 
-@Ignore
 class IdeaFlowInMemoryPersistenceServiceSpec extends IdeaFlowPersistenceServiceSpec {
 
 	IdeaFlowInMemoryPersistenceService persistenceService = new IdeaFlowInMemoryPersistenceService()
@@ -12,4 +22,48 @@ class IdeaFlowInMemoryPersistenceServiceSpec extends IdeaFlowPersistenceServiceS
 		return persistenceService
 	}
 
+	def "concurrent saves SHOULD assign unique ids and keep every row readable in order"() {
+		given:
+		TaskEntity task = persistenceService.saveTask(aRandom.taskEntity().build())
+		LocalDateTime start = LocalDateTime.of(2017, 1, 1, 12, 0)
+		ExecutorService executor = Executors.newFixedThreadPool(8)
+
+		when:
+		List<Future> futures = (0..<8).collect { int thread ->
+			executor.submit({
+				(0..<250).each { int i ->
+					LocalDateTime activityStart = start.plusSeconds(i * 8 + thread)
+					persistenceService.saveActivity(aRandom.idleActivityEntity().taskId(task.id)
+							.start(activityStart).end(activityStart.plusSeconds(1)).build())
+					persistenceService.saveEvent(aRandom.eventEntity().taskId(task.id).position(activityStart).build())
+					persistenceService.getActivityList(task.id)
+				}
+			} as Callable)
+		}
+		futures*.get()
+		executor.shutdown()
+
+		then:
+		List<ActivityEntity> activities = persistenceService.getActivityList(task.id)
+		List<EventEntity> events = persistenceService.getEventList(task.id)
+		assert activities.size() == 2000
+		assert activities*.id.toSet().size() == 2000
+		assert activities*.start == activities*.start.sort(false)
+		assert events*.id.toSet().size() == 2000
+		assert persistenceService.getIdleActivityList(task.id).size() == 2000
+	}
+
+	def "findRecentEvents SHOULD return the owner's events from the given date in position order"() {
+		given:
+		LocalDateTime start = LocalDateTime.of(2017, 1, 1, 12, 0)
+		EventEntity first = persistenceService.saveEvent(aRandom.eventEntity().ownerId(1).position(start.plusMinutes(2)).build())
+		EventEntity second = persistenceService.saveEvent(aRandom.eventEntity().ownerId(1).position(start.plusMinutes(3)).build())
+		persistenceService.saveEvent(aRandom.eventEntity().ownerId(1).position(start.plusMinutes(4)).build())
+		persistenceService.saveEvent(aRandom.eventEntity().ownerId(1).position(start.minusMinutes(1)).build())
+		persistenceService.saveEvent(aRandom.eventEntity().ownerId(2).position(start.plusMinutes(1)).build())
+
+		expect:
+		assert persistenceService.findRecentEvents(1, Timestamp.valueOf(start), 2)*.id == [first.id, second.id]
+	}
+
 }
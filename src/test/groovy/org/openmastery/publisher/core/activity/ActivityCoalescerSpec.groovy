@@ -0,0 +1,180 @@
+package org.openmastery.publisher.core.activity
+
+import org.openmastery.publisher.api.ideaflow.Haystack
+import org.openmastery.publisher.ideaflow.story.HaystackListGenerator
+import org.openmastery.publisher.ideaflow.timeline.IdleTimeProcessor
+import org.openmastery.publisher.ideaflow.timeline.RelativeTimeProcessor
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+class ActivityCoalescerSpec extends Specification {
+
+	LocalDateTime start = LocalDateTime.of(2017, 1, 1, 9, 0)
+
+	private EditorActivityEntity editor(long taskId, int startSecond, int durationInSeconds, String filePath, boolean modified = false) {
+		EditorActivityEntity activity = EditorActivityEntity.builder()
+				.taskId(taskId)
+				.start(start.plusSeconds(startSecond))
+				.end(start.plusSeconds(startSecond + durationInSeconds))
+				.filePath(filePath)
+				.isModified(modified)
+				.build()
+		activity.id = null
+		activity
+	}
+
+	private ExternalActivityEntity external(int startSecond, int durationInSeconds, String comment) {
+		ExternalActivityEntity activity = ExternalActivityEntity.builder()
+				.taskId(1)
+				.start(start.plusSeconds(startSecond))
+				.end(start.plusSeconds(startSecond + durationInSeconds))
+				.comment(comment)
+				.build()
+		activity.id = null
+		activity
+	}
+
+	private List<ActivityEntity> coalesce(List<ActivityEntity> activities) {
+		new ActivityCoalescer([]).coalesce(activities)
+	}
+
+	def "coalesce SHOULD merge contiguous activities for the same file"() {
+		when:
+		List<ActivityEntity> result = coalesce([editor(1, 0, 5, "a"), editor(1, 5, 5, "a"), editor(1, 10, 5, "a")])
+
+		then:
+		assert result.size() == 1
+		assert result[0].start == start
+		assert result[0].end == start.plusSeconds(15)
+	}
+
+	def "coalesce SHOULD merge activities regardless of order within batch"() {
+		when:
+		List<ActivityEntity> result = coalesce([editor(1, 10, 5, "a"), editor(1, 0, 5, "a"), editor(1, 5, 5, "a")])
+
+		then:
+		assert result.size() == 1
+		assert result[0].end == start.plusSeconds(15)
+	}
+
+	def "coalesce SHOULD not merge activities which differ in task, file, modified flag or are not contiguous"() {
+		when:
+		List<ActivityEntity> result = coalesce(activities)
+
+		then:
+		assert result.size() == 2
+
+		where:
+		activities << [
+				[editor(1, 0, 5, "a"), editor(2, 5, 5, "a")],
+				[editor(1, 0, 5, "a"), editor(1, 5, 5, "b")],
+				[editor(1, 0, 5, "a", false), editor(1, 5, 5, "a", true)],
+				[editor(1, 0, 5, "a"), editor(1, 6, 5, "a")],
+				[external(0, 5, "browser"), external(5, 5, "terminal")],
+		]
+	}
+
+	def "coalesce SHOULD merge contiguous external activities with the same comment"() {
+		when:
+		List<ActivityEntity> result = coalesce([external(0, 5, "browser"), external(5, 5, "browser")])
+
+		then:
+		assert result.size() == 1
+		assert result[0].end == start.plusSeconds(10)
+	}
+
+	def "coalesce SHOULD pass through activities which are not editor or external activities"() {
+		given:
+		IdleActivityEntity idle = IdleActivityEntity.builder().start(start).end(start.plusSeconds(5)).build()
+
+		when:
+		List<ActivityEntity> result = coalesce([idle, editor(1, 5, 5, "a")])
+
+		then:
+		assert result.size() == 2
+		assert result.contains(idle)
+	}
+
+	def "coalesce SHOULD extend stored activity continued by new activity"() {
+		given:
+		EditorActivityEntity stored = editor(1, 0, 5, "a")
+		stored.id = 42
+		ActivityCoalescer coalescer = new ActivityCoalescer([stored])
+
+		when:
+		List<ActivityEntity> result = coalescer.coalesce([editor(1, 5, 5, "a"), editor(1, 10, 5, "a"), editor(1, 15, 5, "b")])
+
+		then:
+		assert result.size() == 1
+		assert result[0].filePath == "b"
+		assert coalescer.extendedActivityEndTimes == [(42L): start.plusSeconds(15)]
+	}
+
+	def "coalesce SHOULD extend stored activity regardless of stored metadata formatting"() {
+		given:
+		EditorActivityEntity stored = editor(1, 0, 5, "a")
+		stored.id = 42
+		// jsonb reorders keys and adds whitespace
+		stored.metadata = '{"modified": false, "filePath": "a"}'
+		stored.postLoad()
+		ActivityCoalescer coalescer = new ActivityCoalescer([stored])
+
+		when:
+		List<ActivityEntity> result = coalescer.coalesce([editor(1, 5, 5, "a")])
+
+		then:
+		assert result.isEmpty()
+		assert coalescer.extendedActivityEndTimes == [(42L): start.plusSeconds(10)]
+	}
+
+	private List<ActivityEntity> createHourOfEditorActivity() {
+		List<ActivityEntity> activities = []
+		// an editor event every 5 seconds, switching between 3 files every 2 minutes and toggling modified every 5
+		(0..<720).each { int i ->
+			String filePath = "src/File${(i.intdiv(24)) % 3}.java"
+			boolean modified = i.intdiv(60) % 2 == 0
+			activities << editor(1, i * 5, 5, filePath, modified)
+		}
+		activities
+	}
+
+	private List<Haystack> generateHaystacks(List<ActivityEntity> activities) {
+		List<ExecutionActivityEntity> executions = (1..6).collect { int i ->
+			ExecutionActivityEntity.builder()
+					.start(start.plusMinutes(i * 10 - 3))
+					.end(start.plusMinutes(i * 10 - 3).plusSeconds(20))
+					.processName("test${i}")
+					.exitCode(0)
+					.build()
+		}
+		IdleActivityEntity idle = IdleActivityEntity.builder()
+				.start(start.plusMinutes(31).plusSeconds(7))
+				.end(start.plusMinutes(33))
+				.build()
+
+		new HaystackListGenerator(new RelativeTimeProcessor(), new IdleTimeProcessor())
+				.taskStart(start)
+				.editorActivities(activities.findAll { it instanceof EditorActivityEntity } as List<EditorActivityEntity>)
+				.externalActivities([])
+				.executionActivities(executions)
+				.idleActivities([idle])
+				.events([])
+				.generate()
+	}
+
+	def "coalesce SHOULD reduce row count without changing haystack activity summaries"() {
+		given:
+		List<ActivityEntity> activities = createHourOfEditorActivity()
+		List<Haystack> expectedHaystacks = generateHaystacks(createHourOfEditorActivity())
+
+		when:
+		List<ActivityEntity> result = coalesce(activities)
+
+		then:
+		assert activities.size() == 720
+		assert result.size() == 36
+		assert generateHaystacks(result) == expectedHaystacks
+	}
+
+}
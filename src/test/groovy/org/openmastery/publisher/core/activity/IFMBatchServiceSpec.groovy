@@ -4,8 +4,11 @@ import com.bancvue.rest.exception.ForbiddenException
 import org.openmastery.publisher.api.activity.NewEditorActivity
 import org.openmastery.publisher.api.batch.NewBatchEvent
 import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.event.EventType
 import org.openmastery.publisher.core.IFMBatchService
 import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
+import org.openmastery.publisher.core.batch.BatchFingerprintStore
 import org.openmastery.publisher.core.event.EventEntity
 import org.openmastery.publisher.core.task.TaskEntity
 import org.openmastery.publisher.security.InvocationContext
@@ -24,11 +27,16 @@ class IFMBatchServiceSpec extends Specification {
 	MockTimeService mockTimeService = new MockTimeService()
 	InvocationContext invocationContext = Mock(InvocationContext)
 	IdeaFlowPersistenceService persistenceService = Mock(IdeaFlowPersistenceService)
+	BatchFingerprintStore batchFingerprintStore = Mock(BatchFingerprintStore)
 
 	def setup() {
 		ifmBatchService.timeService = mockTimeService
 		ifmBatchService.invocationContext = invocationContext
 		ifmBatchService.persistenceService = persistenceService
+		ifmBatchService.batchFingerprintStore = batchFingerprintStore
+		batchFingerprintStore.recordIfAbsent(_, _) >> true
+		persistenceService.saveEvents(_) >> { List<EventEntity> events -> events }
+		persistenceService.findEditorAndExternalActivitiesEndingAt(_, _) >> []
 	}
 
 	def "determineTimeAdjustment SHOULD adjust for local clock being behind"() {
@@ -132,7 +140,7 @@ class IFMBatchServiceSpec extends Specification {
 				.event(NewBatchEvent.builder().taskId(taskEntity.id).build())
 				.build()
 		invocationContext.getUserId() >> taskEntity.ownerId + 1
-		persistenceService.findTaskWithId(taskEntity.id) >> taskEntity
+		persistenceService.findTaskOwnerIds([taskEntity.id] as Set) >> [(taskEntity.id): taskEntity.ownerId]
 
 		when:
 		ifmBatchService.addIFMBatch(batch)
@@ -141,4 +149,160 @@ class IFMBatchServiceSpec extends Specification {
 		thrown(ForbiddenException)
 	}
 
+	def "addIFMBatch SHOULD save all activities and events with a single bulk call each"() {
+		given:
+		TaskEntity taskEntity = TaskEntity.builder()
+				.id(2)
+				.ownerId(3)
+				.build()
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(mockTimeService.now())
+				.newEditorActivity(taskEntity.id, mockTimeService.now(), 5, "file1", true)
+				.newEditorActivity(taskEntity.id, mockTimeService.now(), 5, "file2", false)
+				.newIdleActivity(taskEntity.id, mockTimeService.now(), 30)
+				.newEvent(taskEntity.id, mockTimeService.now(), EventType.NOTE, "note")
+				.build()
+		invocationContext.getUserId() >> taskEntity.ownerId
+		persistenceService.findTaskOwnerIds([taskEntity.id] as Set) >> [(taskEntity.id): taskEntity.ownerId]
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		1 * persistenceService.saveActivities({ it.size() == 3 })
+		1 * persistenceService.saveEvents({ it.size() == 1 }) >> { List<EventEntity> events -> events }
+		0 * persistenceService.saveActivity(_)
+		0 * persistenceService.saveEvent(_)
+	}
+
+	def "addIFMBatch SHOULD save snippet events with other events and snippet annotations with a single bulk call"() {
+		given:
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(mockTimeService.now())
+				.newEvent(1, mockTimeService.now(), EventType.NOTE, "note")
+				.newSnippetEvent(1, mockTimeService.now(), "source1", "snippet1")
+				.newSnippetEvent(1, mockTimeService.now(), "source2", "snippet2")
+				.build()
+		invocationContext.getUserId() >> 3
+		persistenceService.findTaskOwnerIds(_) >> [(1L): 3L]
+		List<SnippetAnnotationEntity> savedAnnotations = null
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		1 * persistenceService.saveEvents({ it.size() == 3 }) >> { List<EventEntity> events ->
+			events.eachWithIndex { EventEntity event, int i -> event.id = 10 + i }
+			events
+		}
+		1 * persistenceService.saveAnnotations(_) >> { List<SnippetAnnotationEntity> annotations ->
+			savedAnnotations = annotations
+		}
+		0 * persistenceService.saveEvent(_)
+		0 * persistenceService.saveAnnotation(_)
+		assert savedAnnotations.collect { it.eventId } == [11L, 12L]
+		assert savedAnnotations.collect { it.snippet } == ["snippet1", "snippet2"]
+		assert savedAnnotations.every { it.ownerId == 3L }
+	}
+
+	def "addIFMBatch SHOULD coalesce contiguous editor activities and extend the stored activity they continue"() {
+		given:
+		LocalDateTime now = mockTimeService.now()
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(now)
+				.newEditorActivity(1, now.minusSeconds(10), 5, "file1", true)
+				.newEditorActivity(1, now.minusSeconds(5), 5, "file1", true)
+				.newEditorActivity(1, now, 5, "file1", true)
+				.build()
+		EditorActivityEntity storedActivity = EditorActivityEntity.builder()
+				.id(42)
+				.taskId(1)
+				.start(now.minusSeconds(20))
+				.end(now.minusSeconds(15))
+				.filePath("file1")
+				.isModified(true)
+				.build()
+		invocationContext.getUserId() >> 3
+		persistenceService.findTaskOwnerIds(_) >> [(1L): 3L]
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		1 * persistenceService.findEditorAndExternalActivitiesEndingAt([1L] as Set, _) >> [storedActivity]
+		1 * persistenceService.saveActivities([])
+		1 * persistenceService.updateActivityEndTimes([(42L): now])
+	}
+
+	def "addIFMBatch should throw Forbidden if task does not exist"() {
+		given:
+		NewIFMBatch batch = NewIFMBatch.builder()
+				.event(NewBatchEvent.builder().taskId(2).build())
+				.build()
+		invocationContext.getUserId() >> 3
+		persistenceService.findTaskOwnerIds(_) >> [:]
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		thrown(ForbiddenException)
+	}
+
+	def "addIFMBatch SHOULD verify ownership of all tasks with a single lookup"() {
+		given:
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(mockTimeService.now())
+				.newEvent(1, mockTimeService.now(), EventType.NOTE, "note")
+				.newEvent(2, mockTimeService.now(), EventType.NOTE, "note")
+				.newIdleActivity(2, mockTimeService.now(), 30)
+				.build()
+		invocationContext.getUserId() >> 3
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		1 * persistenceService.findTaskOwnerIds([1L, 2L] as Set) >> [(1L): 3L, (2L): 3L]
+	}
+
+	def "addIFMBatch SHOULD update modify date of all tasks with a single bulk call"() {
+		given:
+		LocalDateTime now = mockTimeService.now()
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(now)
+				.newEvent(1, now.minusMinutes(5), EventType.NOTE, "note")
+				.newIdleActivity(1, now.minusMinutes(10), 30)
+				.newEvent(2, now.minusMinutes(1), EventType.NOTE, "note")
+				.build()
+		invocationContext.getUserId() >> 3
+		persistenceService.findTaskOwnerIds(_) >> [(1L): 3L, (2L): 3L]
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		1 * persistenceService.updateTaskModifyDates([(1L): now.minusMinutes(5), (2L): now.minusMinutes(1)])
+		0 * persistenceService.saveTask(_)
+	}
+
+	def "addIFMBatch SHOULD not save duplicate batch"() {
+		given:
+		NewIFMBatch batch = aRandom.batch()
+				.timeSent(mockTimeService.now())
+				.newEvent(1, mockTimeService.now(), EventType.NOTE, "note")
+				.build()
+		invocationContext.getUserId() >> 3
+		persistenceService.findTaskOwnerIds(_) >> [(1L): 3L]
+
+		when:
+		ifmBatchService.addIFMBatch(batch)
+
+		then:
+		1 * batchFingerprintStore.recordIfAbsent(3, batch) >> false
+		0 * persistenceService.saveActivities(_)
+		0 * persistenceService.saveEvents(_)
+		0 * persistenceService.updateTaskModifyDates(_)
+	}
+
 }
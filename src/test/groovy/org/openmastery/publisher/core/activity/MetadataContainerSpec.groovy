@@ -0,0 +1,106 @@
+package org.openmastery.publisher.core.activity
+
+import spock.lang.Specification
+
+class MetadataContainerSpec extends Specification {
+
+	MetadataContainer container = new MetadataContainer()
+
+	def "should read typed values from json without decoding the full map"() {
+		given:
+		container.fromJson('{"filePath":"a/b.java","nested":{"x":[1,2]},"modified":true,"exitCode":-1,"count":12}')
+
+		expect:
+		assert container.getMetadataValue("filePath") == "a/b.java"
+		assert container.getMetadataValueAsBoolean("modified")
+		assert container.getMetadataValueAsInteger("exitCode") == -1
+		assert container.getMetadataValueAsInteger("count") == 12
+		assert container.getMetadataValue("count") == "12"
+		assert container.getMetadataValue("nested") == [x: [1, 2]].toString()
+	}
+
+	def "should read hot fields in one streaming pass without building the map"() {
+		given:
+		container.fromJson('{"nested":{"filePath":"x"},"filePath":"a/b.java","modified":true,"modificationCount":7,"exitCode":-1,"processName":"gradle"}')
+
+		expect:
+		assert container.getMetadataValue("filePath") == "a/b.java"
+		assert container.getMetadataValueAsBoolean("modified")
+		assert container.getMetadataValueAsInteger("modificationCount") == 7
+		assert container.getMetadataValueAsInteger("exitCode") == -1
+		assert container.getMetadataValue("processName") == "gradle"
+		assert container.@container == null
+	}
+
+	def "should read hot fields from the map once a field is set"() {
+		given:
+		container.fromJson('{"filePath":"a/b.java","modificationCount":7}')
+		container.getMetadataValue("filePath")
+
+		when:
+		container.setMetadataField("modificationCount", 8)
+
+		then:
+		assert container.getMetadataValueAsInteger("modificationCount") == 8
+		assert container.getMetadataValue("filePath") == "a/b.java"
+	}
+
+	def "should return defaults for missing or null values"() {
+		given:
+		container.fromJson('{"filePath":null}')
+
+		expect:
+		assert container.getMetadataValue("filePath") == null
+		assert container.getMetadataValue("missing") == null
+		assert container.getMetadataValueAsBoolean("missing") == false
+		assert container.getMetadataValueAsInteger("missing") == Integer.MIN_VALUE
+	}
+
+	def "should return defaults for null and malformed json"() {
+		expect:
+		container.fromJson(json)
+		assert container.getMetadataValue("filePath") == null
+
+		where:
+		json << [null, '{"filePath":', '[]']
+	}
+
+	def "setMetadataField should retain fields read from json"() {
+		given:
+		container.fromJson('{"filePath":"a/b.java","modified":false}')
+
+		when:
+		container.setMetadataField("modified", true)
+
+		then:
+		assert container.getMetadataValue("filePath") == "a/b.java"
+		assert container.getMetadataValueAsBoolean("modified")
+		assert new MetadataContainer().with {
+			fromJson(container.toJson())
+			getMetadataValue("filePath") == "a/b.java" && getMetadataValueAsBoolean("modified")
+		}
+	}
+
+	def "toJson should return loaded json unchanged if no field is set"() {
+		given:
+		String json = '{"comment":"hi"}'
+		container.fromJson(json)
+
+		expect:
+		assert container.toJson() == json
+	}
+
+	def "toJson should return loaded json unchanged if fields are only read"() {
+		given:
+		String json = '{"comment":"hi","count":1}'
+		container.fromJson(json)
+
+		when:
+		container.getMetadataValue("comment")
+		container.getMetadataValueAsInteger("count")
+
+		then:
+		assert container.toJson() == json
+	}
+
+}
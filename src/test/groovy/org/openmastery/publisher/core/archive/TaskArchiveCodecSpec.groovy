@@ -0,0 +1,100 @@
+package org.openmastery.publisher.core.archive
+
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.activity.BlockActivityEntity
+import org.openmastery.publisher.core.activity.EditorActivityEntity
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity
+import org.openmastery.publisher.core.activity.ExternalActivityEntity
+import org.openmastery.publisher.core.activity.IdleActivityEntity
+import org.openmastery.publisher.core.activity.ModificationActivityEntity
+import org.openmastery.publisher.core.event.EventEntity
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class TaskArchiveCodecSpec extends Specification {
+
+	private TaskArchiveCodec codec = new TaskArchiveCodec()
+	private long taskId = 7
+	private LocalDateTime start = LocalDateTime.of(2017, 1, 1, 9, 0)
+
+	private <T extends ActivityEntity> T activity(T activity, int startMinute) {
+		activity.taskId = taskId
+		activity.start = start.plusMinutes(startMinute)
+		activity.end = start.plusMinutes(startMinute + 1)
+		activity
+	}
+
+	private List<Map> toProperties(List entities) {
+		entities.collect { entity ->
+			entity.properties.findAll { it.key != "metadataContainer" && it.key != "metadata" && it.key != "class" } + [type: entity.class]
+		}
+	}
+
+	def "decode SHOULD restore all activity and event fields ordered by start and position"() {
+		given:
+		List<ActivityEntity> activities = [
+				activity(aRandom.modificationActivityEntity().build(), 5),
+				activity(aRandom.executionActivityEntity().exitCode(-1).build(), 4),
+				activity(aRandom.blockActivityEntity().build(), 3),
+				activity(aRandom.idleActivityEntity().build(), 2),
+				activity(aRandom.editorActivityEntity().build(), 1),
+				activity(aRandom.externalActivityEntity().build(), 0),
+		]
+		List<EventEntity> events = [
+				aRandom.eventEntity().taskId(taskId).position(start.plusMinutes(2).plusNanos(500)).build(),
+				aRandom.eventEntity().taskId(taskId).position(start.plusMinutes(1)).comment(null).build(),
+		]
+
+		when:
+		TaskArchive archive = codec.decode(taskId, codec.encode(activities, events))
+
+		then:
+		assert toProperties(archive.activities) == toProperties(activities.sort { it.start })
+		assert toProperties(archive.events) == toProperties(events.sort { it.position })
+	}
+
+	def "getActivities SHOULD filter by activity type"() {
+		given:
+		List<ActivityEntity> activities = [
+				activity(aRandom.idleActivityEntity().build(), 0),
+				activity(aRandom.editorActivityEntity().build(), 1),
+				activity(aRandom.idleActivityEntity().build(), 2),
+		]
+
+		when:
+		TaskArchive archive = codec.decode(taskId, codec.encode(activities, []))
+
+		then:
+		assert archive.getActivities(IdleActivityEntity)*.id == [activities[0].id, activities[2].id]
+		assert archive.getActivities(EditorActivityEntity)*.id == [activities[1].id]
+		assert archive.getActivities(BlockActivityEntity).isEmpty()
+		assert archive.events.isEmpty()
+	}
+
+	def "encode SHOULD store repeated file paths once"() {
+		given:
+		String filePath = "/src/main/java/" + "a" * 200 + ".java"
+		List<ActivityEntity> oneFile = (0..<100).collect { int i ->
+			activity(aRandom.editorActivityEntity().id(i + 1).ownerId(1).filePath(filePath).build(), i)
+		}
+
+		when:
+		byte[] data = codec.encode(oneFile, [])
+
+		then:
+		assert data.length < filePath.length() + 100
+		assert codec.decode(taskId, data).activities*.filePath.unique() == [filePath]
+	}
+
+	def "encode SHOULD fail for unsupported activity types"() {
+		when:
+		codec.encode([new ActivityEntity() {}], [])
+
+		then:
+		thrown(IllegalArgumentException)
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch
+
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.event.EventType
+import org.openmastery.time.MockTimeService
+import org.springframework.boot.actuate.metrics.CounterService
+import spock.lang.Specification
+
+import java.sql.Timestamp
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class BatchFingerprintStoreSpec extends Specification {
+
+	BatchFingerprintStore store = new BatchFingerprintStore()
+	BatchFingerprintRepository repository = Mock(BatchFingerprintRepository)
+	CounterService counterService = Mock(CounterService)
+	LocalDateTime position = LocalDateTime.of(2017, 1, 1, 12, 0)
+	MockTimeService timeService = new MockTimeService()
+
+	def setup() {
+		store.batchFingerprintRepository = repository
+		store.counterService = counterService
+		store.timeService = timeService
+		store.retentionInHours = 72
+		store.expectedFingerprints = 1000
+		repository.findAllFingerprints() >> []
+		store.reload()
+	}
+
+	private NewIFMBatch batch(String comment) {
+		aRandom.batch()
+				.newEvent(1, position, EventType.NOTE, comment)
+				.build()
+	}
+
+	def "createFingerprint SHOULD ignore timeSent"() {
+		given:
+		NewIFMBatch batch = batch("note")
+		NewIFMBatch resentBatch = batch("note")
+		resentBatch.timeSent = batch.timeSent.plusMinutes(1)
+
+		expect:
+		assert store.createFingerprint(1, batch) == store.createFingerprint(1, resentBatch)
+	}
+
+	def "createFingerprint SHOULD differ by content and user"() {
+		given:
+		NewIFMBatch batch = batch("note")
+
+		expect:
+		assert store.createFingerprint(1, batch) != store.createFingerprint(1, batch("other note"))
+		assert store.createFingerprint(1, batch) != store.createFingerprint(2, batch)
+	}
+
+	def "createFingerprint SHOULD use client batch id when available"() {
+		given:
+		NewIFMBatch batch = batch("note")
+		NewIFMBatch otherBatch = batch("other note")
+		batch.batchId = "batch-1"
+		otherBatch.batchId = "batch-1"
+
+		expect:
+		assert store.createFingerprint(1, batch) == store.createFingerprint(1, otherBatch)
+	}
+
+	def "recordIfAbsent SHOULD not read table for batch not previously seen"() {
+		when:
+		boolean recorded = store.recordIfAbsent(1, batch("note"))
+
+		then:
+		assert recorded
+		0 * repository.existsReceivedSince(_, _)
+		1 * repository.insertIfAbsent(_, 1, _, _) >> 1
+		1 * counterService.increment(BatchFingerprintStore.RECEIVED_COUNTER)
+		0 * counterService.increment(BatchFingerprintStore.DUPLICATE_COUNTER)
+	}
+
+	def "recordIfAbsent SHOULD reject batch found in table"() {
+		given:
+		NewIFMBatch batch = batch("note")
+		repository.insertIfAbsent(_, _, _, _) >> 1
+		store.recordIfAbsent(1, batch)
+
+		when:
+		boolean recorded = store.recordIfAbsent(1, batch)
+
+		then:
+		assert recorded == false
+		1 * repository.existsReceivedSince(store.createFingerprint(1, batch), _) >> true
+		0 * repository.insertIfAbsent(_, _, _, _)
+		1 * counterService.increment(BatchFingerprintStore.DUPLICATE_COUNTER)
+	}
+
+	def "recordIfAbsent SHOULD reject batch recorded concurrently"() {
+		when:
+		boolean recorded = store.recordIfAbsent(1, batch("note"))
+
+		then:
+		assert recorded == false
+		1 * repository.insertIfAbsent(_, _, _, _) >> 0
+		1 * counterService.increment(BatchFingerprintStore.DUPLICATE_COUNTER)
+	}
+
+	def "recordIfAbsent SHOULD accept a resend of a batch received before the retention period"() {
+		given:
+		NewIFMBatch batch = batch("note")
+		repository.insertIfAbsent(_, _, _, _) >> 1
+		store.recordIfAbsent(1, batch)
+		timeService.plusHours(73)
+		Timestamp oldestRetained = Timestamp.valueOf(timeService.now().minusHours(72))
+
+		when:
+		boolean recorded = store.recordIfAbsent(1, batch)
+
+		then:
+		assert recorded
+		1 * repository.existsReceivedSince(store.createFingerprint(1, batch), oldestRetained) >> false
+		1 * repository.insertIfAbsent(store.createFingerprint(1, batch), 1, _, oldestRetained) >> 1
+		0 * counterService.increment(BatchFingerprintStore.DUPLICATE_COUNTER)
+	}
+
+}
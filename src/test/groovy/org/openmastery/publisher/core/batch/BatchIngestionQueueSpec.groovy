@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.event.EventType
+import org.openmastery.publisher.core.IFMBatchService
+import org.openmastery.time.MockTimeService
+import org.springframework.boot.actuate.metrics.Metric
+import org.springframework.dao.QueryTimeoutException
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.LocalDateTime
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class BatchIngestionQueueSpec extends Specification {
+
+	@Rule
+	TemporaryFolder tempFolder = new TemporaryFolder()
+
+	File logDirectory
+	BatchFingerprintStore batchFingerprintStore = Mock(BatchFingerprintStore)
+	PollingConditions conditions = new PollingConditions(timeout: 5)
+	List<BatchIngestionQueue> startedQueues = []
+	LocalDateTime position = LocalDateTime.of(2017, 1, 1, 12, 0)
+
+	def setup() {
+		logDirectory = tempFolder.newFolder("wal")
+		batchFingerprintStore.isRecorded(_, _) >> false
+		batchFingerprintStore.recordIfAbsent(_, _) >> true
+	}
+
+	def cleanup() {
+		startedQueues.each { BatchIngestionQueue queue ->
+			queue.stop()
+		}
+	}
+
+	private BatchIngestionQueue startQueue(IFMBatchService ifmBatchService) {
+		BatchIngestionQueue queue = new BatchIngestionQueue()
+		queue.ifmBatchService = ifmBatchService
+		queue.timeService = new MockTimeService()
+		queue.batchFingerprintStore = batchFingerprintStore
+		queue.logDirectory = logDirectory.absolutePath
+		queue.maxSegmentSizeInBytes = 1024 * 1024
+		queue.drainerCount = 2
+		queue.retryDelayInMillis = 10
+		queue.start()
+		startedQueues << queue
+		queue
+	}
+
+	private void stopQueue(BatchIngestionQueue queue) {
+		startedQueues.remove(queue)
+		queue.stop()
+	}
+
+	/**
+	 * @return a service which records each batch applied
+	 */
+	private IFMBatchService recordingService(List<NewIFMBatch> appliedBatches) {
+		IFMBatchService ifmBatchService = Mock(IFMBatchService)
+		ifmBatchService.applyIFMBatch(_, _, _) >> { long userId, NewIFMBatch batch, adjustment -> appliedBatches << batch }
+		ifmBatchService
+	}
+
+	private NewIFMBatch batch(long taskId, String comment) {
+		aRandom.batch()
+				.newEvent(taskId, position, EventType.NOTE, comment)
+				.build()
+	}
+
+	private Map<String, Object> getMetricValues(BatchIngestionQueue queue) {
+		queue.metrics().collectEntries { Metric metric -> [(metric.name): metric.value] }
+	}
+
+	def "enqueue SHOULD split the batch by task and apply each part in the background"() {
+		given:
+		List<NewIFMBatch> appliedBatches = new CopyOnWriteArrayList<>()
+		BatchIngestionQueue queue = startQueue(recordingService(appliedBatches))
+		NewIFMBatch batch = aRandom.batch()
+				.newEvent(1, position, EventType.NOTE, "first")
+				.newEvent(2, position, EventType.NOTE, "second")
+				.build()
+
+		when:
+		queue.enqueue(-1, batch)
+
+		then:
+		conditions.eventually {
+			assert getMetricValues(queue)["ifm.batch.queue.depth"] == 0
+		}
+		assert appliedBatches.collect { it.eventList*.comment }.flatten().sort() == ["first", "second"]
+	}
+
+	def "enqueue SHOULD not queue a batch which was already received"() {
+		given:
+		List<NewIFMBatch> appliedBatches = new CopyOnWriteArrayList<>()
+		BatchIngestionQueue queue = startQueue(recordingService(appliedBatches))
+		BatchFingerprintStore recordedStore = Mock(BatchFingerprintStore)
+		recordedStore.isRecorded(_, _) >> true
+		queue.batchFingerprintStore = recordedStore
+
+		when:
+		queue.enqueue(-1, batch(1, "resent"))
+
+		then:
+		assert getMetricValues(queue)["ifm.batch.queue.depth"] == 0
+		assert appliedBatches == []
+	}
+
+	def "start SHOULD replay batches which were not applied before the queue stopped"() {
+		given:
+		IFMBatchService failingService = Mock(IFMBatchService)
+		int attemptCount = 0
+		failingService.applyIFMBatch(_, _, _) >> { attemptCount++; throw new QueryTimeoutException("database unavailable") }
+		BatchIngestionQueue queue = startQueue(failingService)
+		queue.enqueue(-1, batch(1, "unapplied"))
+		conditions.eventually {
+			assert attemptCount > 1
+		}
+
+		when:
+		stopQueue(queue)
+		List<NewIFMBatch> appliedBatches = new CopyOnWriteArrayList<>()
+		BatchIngestionQueue restartedQueue = startQueue(recordingService(appliedBatches))
+
+		then:
+		conditions.eventually {
+			assert appliedBatches.collect { it.eventList*.comment }.flatten() == ["unapplied"]
+			assert getMetricValues(restartedQueue)["ifm.batch.queue.depth"] == 0
+		}
+	}
+
+	def "drain SHOULD acknowledge a batch applied while the queue is stopping"() {
+		given:
+		BatchIngestionQueue queue
+		IFMBatchService stoppingService = Mock(IFMBatchService)
+		stoppingService.applyIFMBatch(_, _, _) >> { queue.running = false }
+		queue = startQueue(stoppingService)
+
+		when:
+		queue.enqueue(-1, batch(1, "applied"))
+		conditions.eventually {
+			assert getMetricValues(queue)["ifm.batch.queue.depth"] == 0
+		}
+		stopQueue(queue)
+		BatchIngestionQueue restartedQueue = startQueue(Mock(IFMBatchService))
+
+		then:
+		assert getMetricValues(restartedQueue)["ifm.batch.queue.depth"] == 0
+	}
+
+	def "drain SHOULD dead-letter a batch which fails with a non-transient error rather than drop it"() {
+		given:
+		IFMBatchService failingService = Mock(IFMBatchService)
+		failingService.applyIFMBatch(_, _, _) >> { throw new IllegalArgumentException("unknown event type") }
+		BatchIngestionQueue queue = startQueue(failingService)
+
+		when:
+		queue.enqueue(-1, batch(1, "poison"))
+
+		then:
+		conditions.eventually {
+			assert getMetricValues(queue)["ifm.batch.queue.deadLetterCount"] == 1
+			assert getMetricValues(queue)["ifm.batch.queue.depth"] == 0
+		}
+		File[] deadLetters = new File(logDirectory, "dead-letter").listFiles()
+		assert deadLetters.length == 1
+		assert deadLetters[0].text.contains("poison")
+
+		when:
+		stopQueue(queue)
+		BatchIngestionQueue restartedQueue = startQueue(Mock(IFMBatchService))
+
+		then:
+		assert getMetricValues(restartedQueue)["ifm.batch.queue.depth"] == 0
+		assert getMetricValues(restartedQueue)["ifm.batch.queue.deadLetterCount"] == 1
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch
+
+import org.springframework.boot.actuate.metrics.Metric
+import spock.lang.Specification
+
+import javax.ws.rs.core.Response
+import java.time.Duration
+import java.util.function.LongSupplier
+
+class BatchRateLimiterSpec extends Specification {
+
+	long nowNanos = 0
+	LongSupplier nanoClock = { nowNanos } as LongSupplier
+
+	private void advanceSeconds(double seconds) {
+		nowNanos += (long) (seconds * 1_000_000_000L)
+	}
+
+	private Map<String, Long> getMetricValues(BatchRateLimiter limiter) {
+		limiter.metrics().collectEntries { Metric metric -> [(metric.name): metric.value] }
+	}
+
+	def "tryAcquire SHOULD admit everything if no limits are configured"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(0, 0, 10, nanoClock)
+
+		expect:
+		assert limiter.tryAcquire(1, 1_000_000, 1_000_000) == Duration.ZERO
+	}
+
+	def "tryAcquire SHOULD admit rows up to burst capacity and then reject with time until capacity is available"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(100, 0, 2, nanoClock)
+
+		when:
+		Duration first = limiter.tryAcquire(1, 200, 0)
+		Duration second = limiter.tryAcquire(1, 50, 0)
+
+		then:
+		assert first == Duration.ZERO
+		assert second == Duration.ofMillis(500)
+
+		when:
+		advanceSeconds(0.5)
+
+		then:
+		assert limiter.tryAcquire(1, 50, 0) == Duration.ZERO
+	}
+
+	def "tryAcquire SHOULD limit bytes independently of rows"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(100, 1000, 1, nanoClock)
+
+		expect:
+		assert limiter.tryAcquire(1, 1, 1000) == Duration.ZERO
+		assert limiter.tryAcquire(1, 1, 500) == Duration.ofMillis(500)
+	}
+
+	def "tryAcquire SHOULD not charge rows for a batch rejected on bytes"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(100, 1000, 1, nanoClock)
+		limiter.tryAcquire(1, 1, 1000)
+
+		when:
+		limiter.tryAcquire(1, 99, 1000)
+
+		then:
+		assert limiter.tryAcquire(1, 99, 0) == Duration.ZERO
+	}
+
+	def "tryAcquire SHOULD track limits per user"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(100, 0, 1, nanoClock)
+
+		expect:
+		assert limiter.tryAcquire(1, 100, 0) == Duration.ZERO
+		assert limiter.tryAcquire(1, 100, 0) != Duration.ZERO
+		assert limiter.tryAcquire(2, 100, 0) == Duration.ZERO
+	}
+
+	def "tryAcquire SHOULD admit a batch larger than burst capacity once the bucket is full"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(100, 0, 1, nanoClock)
+
+		expect:
+		assert limiter.tryAcquire(1, 500, 0) == Duration.ZERO
+		assert limiter.tryAcquire(1, 500, 0) == Duration.ofSeconds(1)
+	}
+
+	def "metrics SHOULD include throttle counts across users without a metric per user"() {
+		given:
+		BatchRateLimiter limiter = new BatchRateLimiter(100, 0, 1, nanoClock)
+		limiter.tryAcquire(7, 100, 0)
+		limiter.tryAcquire(7, 100, 0)
+		limiter.tryAcquire(8, 100, 0)
+
+		when:
+		Map<String, Long> metrics = getMetricValues(limiter)
+
+		then:
+		assert metrics.keySet() == ["ifm.batch.throttle.admitted", "ifm.batch.throttle.rejected", "ifm.batch.throttle.users"] as Set
+		assert metrics["ifm.batch.throttle.admitted"] == 2
+		assert metrics["ifm.batch.throttle.rejected"] == 1
+		assert metrics["ifm.batch.throttle.users"] == 2
+	}
+
+	def "createTooManyRequestsResponse SHOULD round retry after up to whole seconds"() {
+		when:
+		Response response = BatchRateLimiter.createTooManyRequestsResponse(Duration.ofMillis(1200))
+
+		then:
+		assert response.status == 429
+		assert response.getHeaderString("Retry-After") == "2"
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch
+
+import com.bancvue.rest.config.ObjectMapperContextResolver
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.openmastery.publisher.api.activity.NewEditorActivity
+import org.openmastery.publisher.api.batch.NewBatchEvent
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import spock.lang.Specification
+
+import javax.ws.rs.BadRequestException
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class BatchStreamReaderSpec extends Specification {
+
+	ObjectMapper mapper = new ObjectMapperContextResolver().getContext(null)
+	BatchStreamReader reader = new BatchStreamReader(mapper)
+	LocalDateTime timeSent = LocalDateTime.of(2017, 1, 1, 12, 0)
+
+	private InputStream toStream(List<String> lines) {
+		new ByteArrayInputStream(lines.join("\n").getBytes("UTF-8"))
+	}
+
+	private String header() {
+		mapper.writeValueAsString([timeSent: timeSent])
+	}
+
+	private String line(String typeName, Object item) {
+		mapper.writeValueAsString([(typeName): item])
+	}
+
+	private List<NewIFMBatch> readAll(List<String> lines, int chunkSize) {
+		List<NewIFMBatch> chunks = []
+		reader.read(toStream(lines), chunkSize) { NewIFMBatch chunk -> chunks << chunk }
+		chunks
+	}
+
+	def "read SHOULD map each line to its item type"() {
+		given:
+		NewEditorActivity editorActivity = aRandom.newEditorActivity().build()
+		NewBatchEvent event = aRandom.newBatchEvent().build()
+
+		when:
+		List<NewIFMBatch> chunks = readAll([header(), line("EditorActivity", editorActivity), line("Event", event)], 10)
+
+		then:
+		assert chunks.size() == 1
+		assert chunks[0].timeSent == timeSent
+		assert chunks[0].editorActivityList == [editorActivity]
+		assert chunks[0].eventList == [event]
+	}
+
+	def "read SHOULD split items into chunks no larger than chunk size"() {
+		given:
+		List<String> lines = [header()]
+		5.times {
+			lines << line("EditorActivity", aRandom.newEditorActivity().build())
+		}
+
+		when:
+		List<NewIFMBatch> chunks = readAll(lines, 2)
+
+		then:
+		assert chunks.collect { it.batchItems.size() } == [2, 2, 1]
+		assert chunks.every { it.timeSent == timeSent }
+	}
+
+	def "read SHOULD not emit a chunk when stream has no items"() {
+		expect:
+		assert readAll([header()], 10) == []
+	}
+
+	def "read SHOULD fail if header is missing"() {
+		when:
+		readAll([line("EditorActivity", aRandom.newEditorActivity().build())], 10)
+
+		then:
+		thrown(BadRequestException)
+	}
+
+	def "read SHOULD fail on unknown item type"() {
+		when:
+		readAll([header(), line("Unknown", aRandom.newEditorActivity().build())], 10)
+
+		then:
+		thrown(BadRequestException)
+	}
+
+	def "read SHOULD fail on malformed line after emitting completed chunks"() {
+		given:
+		List<NewIFMBatch> chunks = []
+
+		when:
+		reader.read(toStream([header(), line("Event", aRandom.newBatchEvent().build()), "{not json"]), 1) { NewIFMBatch chunk ->
+			chunks << chunk
+		}
+
+		then:
+		thrown(BadRequestException)
+		assert chunks.size() == 1
+	}
+
+}
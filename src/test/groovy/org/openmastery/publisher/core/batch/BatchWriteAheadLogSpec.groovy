@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.batch
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class BatchWriteAheadLogSpec extends Specification {
+
+	@Rule
+	TemporaryFolder tempFolder = new TemporaryFolder()
+
+	File logDirectory
+	BatchWriteAheadLog writeAheadLog
+
+	def setup() {
+		logDirectory = tempFolder.newFolder("wal")
+		writeAheadLog = openLog(1024)
+	}
+
+	def cleanup() {
+		writeAheadLog.close()
+	}
+
+	private BatchWriteAheadLog openLog(long maxSegmentSizeInBytes) {
+		BatchWriteAheadLog log = new BatchWriteAheadLog(logDirectory, maxSegmentSizeInBytes)
+		log.open()
+		log
+	}
+
+	private List<String> reopenAndReadPayloads() {
+		writeAheadLog.close()
+		writeAheadLog = new BatchWriteAheadLog(logDirectory, 1024)
+		writeAheadLog.open().collect { new String(it.payload, "UTF-8") }
+	}
+
+	private static List<byte[]> payloads(String... values) {
+		values.collect { it.getBytes("UTF-8") }
+	}
+
+	def "appendAll SHOULD assign consecutive sequences"() {
+		when:
+		List<Long> first = writeAheadLog.appendAll(payloads("one", "two"))
+		List<Long> second = writeAheadLog.appendAll(payloads("three"))
+
+		then:
+		assert first == [0L, 1L]
+		assert second == [2L]
+	}
+
+	def "open SHOULD replay unacknowledged records in order"() {
+		given:
+		List<Long> sequences = writeAheadLog.appendAll(payloads("one", "two", "three"))
+		writeAheadLog.acknowledge(sequences[1])
+
+		when:
+		List<String> replayed = reopenAndReadPayloads()
+
+		then:
+		assert replayed == ["one", "three"]
+	}
+
+	def "open SHOULD continue sequence numbering after replay"() {
+		given:
+		writeAheadLog.appendAll(payloads("one", "two"))
+
+		when:
+		reopenAndReadPayloads()
+		List<Long> sequences = writeAheadLog.appendAll(payloads("three"))
+
+		then:
+		assert sequences == [2L]
+	}
+
+	def "acknowledge SHOULD delete rolled segment once all records are acknowledged"() {
+		given:
+		writeAheadLog.close()
+		writeAheadLog = openLog(64)
+		List<Long> firstSegment = writeAheadLog.appendAll(payloads("a" * 40))
+		List<Long> secondSegment = writeAheadLog.appendAll(payloads("b" * 40))
+		assert writeAheadLog.segmentCount == 2
+
+		when:
+		writeAheadLog.acknowledge(firstSegment[0])
+
+		then:
+		assert writeAheadLog.segmentCount == 1
+		assert logDirectory.listFiles().findAll { it.name.endsWith(".segment") }.size() == 1
+
+		when:
+		writeAheadLog.acknowledge(secondSegment[0])
+
+		then:
+		assert reopenAndReadPayloads() == []
+	}
+
+	def "open SHOULD discard a partially written record at the end of a segment"() {
+		given:
+		writeAheadLog.appendAll(payloads("complete", "torn"))
+		writeAheadLog.close()
+		File segment = logDirectory.listFiles().find { it.name.endsWith(".segment") }
+		new RandomAccessFile(segment, "rw").withCloseable { RandomAccessFile file ->
+			file.setLength(file.length() - 2)
+		}
+
+		when:
+		List<String> replayed = reopenAndReadPayloads()
+
+		then:
+		assert replayed == ["complete"]
+	}
+
+	def "open SHOULD discard a record with a corrupt payload"() {
+		given:
+		writeAheadLog.appendAll(payloads("complete", "corrupt"))
+		writeAheadLog.close()
+		File segment = logDirectory.listFiles().find { it.name.endsWith(".segment") }
+		new RandomAccessFile(segment, "rw").withCloseable { RandomAccessFile file ->
+			file.seek(file.length() - 1)
+			file.write('X' as char)
+		}
+
+		when:
+		List<String> replayed = reopenAndReadPayloads()
+
+		then:
+		assert replayed == ["complete"]
+	}
+
+	def "open SHOULD skip a corrupt record, replay the records after it and move the segment aside once applied"() {
+		given:
+		writeAheadLog.appendAll(payloads("one", "corrupt", "three"))
+		writeAheadLog.close()
+		File segment = logDirectory.listFiles().find { it.name.endsWith(".segment") }
+		// the payload of the second record follows the first record and its own 16 byte header
+		new RandomAccessFile(segment, "rw").withCloseable { RandomAccessFile file ->
+			file.seek(16 + 3 + 16)
+			file.write('X' as char)
+		}
+
+		when:
+		writeAheadLog = new BatchWriteAheadLog(logDirectory, 1024)
+		List<BatchWriteAheadLog.Record> replayed = writeAheadLog.open()
+
+		then:
+		assert replayed.collect { new String(it.payload, "UTF-8") } == ["one", "three"]
+		assert writeAheadLog.skippedByteCount == 16 + 7
+
+		when:
+		replayed.each { writeAheadLog.acknowledge(it.sequence) }
+
+		then:
+		assert segment.exists() == false
+		assert new File(logDirectory, "corrupt/" + segment.name).exists()
+	}
+
+	def "appendAll SHOULD make every record durable when appended concurrently"() {
+		when:
+		List<Thread> threads = (1..8).collect { int thread ->
+			Thread.start {
+				20.times { int i ->
+					writeAheadLog.appendAll(payloads("payload-${thread}-${i}".toString()))
+				}
+			}
+		}
+		threads*.join()
+
+		then:
+		assert reopenAndReadPayloads().size() == 160
+	}
+
+	def "awaitDurable SHOULD return once records written with writeAll are forced"() {
+		given:
+		List<Long> sequences = writeAheadLog.writeAll(payloads("one", "two"))
+
+		when:
+		writeAheadLog.awaitDurable(sequences[1])
+
+		then:
+		assert reopenAndReadPayloads() == ["one", "two"]
+	}
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.embedded
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.openmastery.publisher.api.ideaflow.IdeaFlowStateType
+import org.openmastery.publisher.core.IdeaFlowPersistenceService
+import org.openmastery.publisher.core.IdeaFlowPersistenceServiceSpec
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.activity.EditorActivityEntity
+import org.openmastery.publisher.core.activity.ExternalActivityEntity
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.event.EventEntity
+import org.openmastery.publisher.core.task.TaskEntity
+import org.openmastery.publisher.ideaflow.IdeaFlowPartialStateEntity
+import org.openmastery.publisher.ideaflow.IdeaFlowStateEntity
+
+import java.time.Duration
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class IdeaFlowEmbeddedPersistenceServiceSpec extends IdeaFlowPersistenceServiceSpec {
+
+	private static final int SEGMENT_CAPACITY = 16
+
+	@Rule
+	TemporaryFolder tempFolder = new TemporaryFolder()
+
+	private File dataDirectory
+	private IdeaFlowEmbeddedPersistenceService persistenceService
+
+	@Override
+	protected IdeaFlowPersistenceService getPersistenceService() {
+		// created on first use rather than in setup, the contract spec's setup runs first and saves a task
+		if (persistenceService == null) {
+			dataDirectory = tempFolder.newFolder("ideaflow")
+			persistenceService = openPersistenceService()
+		}
+		persistenceService
+	}
+
+	def cleanup() {
+		persistenceService?.close()
+	}
+
+	private IdeaFlowEmbeddedPersistenceService openPersistenceService() {
+		IdeaFlowEmbeddedPersistenceService service = new IdeaFlowEmbeddedPersistenceService(dataDirectory,
+				SEGMENT_CAPACITY, Duration.ofHours(1), 1024)
+		service.open()
+		service
+	}
+
+	private void reopen() {
+		persistenceService.close()
+		persistenceService = openPersistenceService()
+	}
+
+	private File getTaskDirectory(long taskId) {
+		new File(dataDirectory, "tasks/${taskId}")
+	}
+
+	private List<String> listSegmentFiles(long taskId) {
+		getTaskDirectory(taskId).list().findAll { it.endsWith(".segment") || it.endsWith(".compact") }.sort()
+	}
+
+	private TaskEntity saveTaskWithShuffledActivitiesAndEvents(int activityCount, int eventCount) {
+		TaskEntity task = getPersistenceService().saveTask(aRandom.taskEntity().build())
+		LocalDateTime start = LocalDateTime.of(2017, 1, 1, 12, 0)
+		List<Integer> offsets = (0..<activityCount).toList()
+		Collections.shuffle(offsets, new Random(7))
+		offsets.each { int offset ->
+			LocalDateTime activityStart = start.plusMinutes(offset)
+			persistenceService.saveActivity(aRandom.activityEntity().taskId(task.id)
+					.start(activityStart).end(activityStart.plusSeconds(30)).build())
+		}
+		persistenceService.saveEvents((0..<eventCount).collect { int i ->
+			aRandom.eventEntity().taskId(task.id).ownerId(task.ownerId).position(start.plusMinutes(eventCount - i)).build()
+		})
+		task
+	}
+
+	private Map readTask(long taskId) {
+		[
+				activities: persistenceService.getActivityList(taskId).collect { [it.id, it.class, it.start, it.end, it.metadata] },
+				events    : persistenceService.getEventList(taskId).collect { [it.id, it.position, it.type, it.comment, it.ownerId] },
+		]
+	}
+
+	def "data SHOULD be read back after reopen"() {
+		given:
+		TaskEntity task = getPersistenceService().saveTask(aRandom.taskEntity().build())
+		LocalDateTime end = LocalDateTime.of(2017, 1, 1, 12, 0)
+		EditorActivityEntity editorActivity = persistenceService.saveActivity(aRandom.editorActivityEntity()
+				.taskId(task.id).start(end.minusMinutes(1)).end(end).build())
+		ActivityEntity modificationActivity = persistenceService.saveActivity(aRandom.modificationActivityEntity()
+				.taskId(task.id).start(end).end(end.plusMinutes(1)).modificationCount(12).build())
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().taskId(task.id).ownerId(task.ownerId).build())
+		FaqAnnotationEntity annotation = persistenceService.saveAnnotation(aRandom.faqAnnotationEntity()
+				.taskId(task.id).eventId(event.id).build())
+		IdeaFlowPartialStateEntity activeState = aRandom.ideaFlowPartialStateEntity().taskId(task.id).build()
+		IdeaFlowStateEntity state = IdeaFlowStateEntity.builder().taskId(task.id).type(IdeaFlowStateType.LEARNING)
+				.start(end.minusHours(1)).end(end).startingComment("start").endingComment("end").build()
+		persistenceService.saveTransition(state, activeState)
+		persistenceService.updateActivityEndTimes([(editorActivity.id): end.plusMinutes(2)])
+		persistenceService.updateTaskModifyDates([(task.id): end])
+
+		when:
+		reopen()
+
+		then:
+		assert persistenceService.findTaskWithId(task.id) == task
+		assert persistenceService.findTaskWithId(task.id).modifyDate == end
+		assert persistenceService.findTaskWithName(task.ownerId, task.name).id == task.id
+		EditorActivityEntity reopenedEditorActivity = persistenceService.getEditorActivityList(task.id)[0]
+		assert reopenedEditorActivity.id == editorActivity.id
+		assert reopenedEditorActivity.filePath == editorActivity.filePath
+		assert reopenedEditorActivity.end == end.plusMinutes(2)
+		assert persistenceService.getModificationActivityList(task.id)*.id == [modificationActivity.id]
+		assert persistenceService.getModificationActivityList(task.id)[0].modificationCount == 12
+		assert persistenceService.getMostRecentActivityEnd(task.id) == end.plusMinutes(2)
+		assert persistenceService.findEventById(event.id) == event
+		assert persistenceService.getFaqAnnotationList(task.id)*.comment == [annotation.comment]
+		assert persistenceService.getStateList(task.id)*.id == [state.id]
+		assert persistenceService.getStateList(task.id)[0].endingComment == "end"
+		assert persistenceService.getActiveState(task.id) == activeState
+	}
+
+	def "ids SHOULD not be reused after reopen"() {
+		given:
+		TaskEntity task = getPersistenceService().saveTask(aRandom.taskEntity().build())
+		ActivityEntity activity = persistenceService.saveActivity(aRandom.activityEntity().taskId(task.id).build())
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().taskId(task.id).build())
+
+		when:
+		reopen()
+		TaskEntity otherTask = persistenceService.saveTask(aRandom.taskEntity().build())
+		ActivityEntity otherActivity = persistenceService.saveActivity(aRandom.activityEntity().taskId(task.id).build())
+		EventEntity otherEvent = persistenceService.saveEvent(aRandom.eventEntity().taskId(task.id).build())
+
+		then:
+		assert otherTask.id > task.id
+		assert otherActivity.id > activity.id
+		assert otherEvent.id > event.id
+	}
+
+	def "compact SHOULD rewrite segments sorted by time without changing what is read"() {
+		given:
+		TaskEntity task = saveTaskWithShuffledActivitiesAndEvents(50, 40)
+		Map taskData = readTask(task.id)
+		assert listSegmentFiles(task.id).size() == 4 + 3
+
+		when:
+		int compactedCount = persistenceService.compact()
+
+		then:
+		assert compactedCount == 1
+		assert listSegmentFiles(task.id).size() == 4 + 3
+		assert listSegmentFiles(task.id).every { String name ->
+			name.endsWith(".segment") && RecordSegment.open(new File(getTaskDirectory(task.id), name),
+					name.startsWith("activity") ? EntityRecords.ACTIVITY_RECORD_SIZE : EntityRecords.EVENT_RECORD_SIZE).sorted
+		}
+		assert readTask(task.id) == taskData
+		assert persistenceService.compact() == 0
+
+		when:
+		reopen()
+
+		then:
+		assert readTask(task.id) == taskData
+	}
+
+	def "end times SHOULD be found and updated in compacted segments"() {
+		given:
+		TaskEntity task = saveTaskWithShuffledActivitiesAndEvents(50, 0)
+		persistenceService.compact()
+		List<LocalDateTime> endTimes = (10..20).collect { int minute -> LocalDateTime.of(2017, 1, 1, 12, minute, 30) }
+		Set<Long> endingActivityIds = persistenceService.getActivityList(task.id).findAll {
+			endTimes.contains(it.end) && (it instanceof EditorActivityEntity || it instanceof ExternalActivityEntity)
+		}*.id.toSet()
+
+		when:
+		List<ActivityEntity> activities = persistenceService.findEditorAndExternalActivitiesEndingAt([task.id], endTimes)
+
+		then:
+		assert activities*.id.toSet() == endingActivityIds
+
+		when:
+		persistenceService.updateActivityEndTimes(persistenceService.getActivityList(task.id).collectEntries {
+			[(it.id): it.end.plusHours(1)]
+		})
+
+		then:
+		assert persistenceService.getMostRecentActivityEnd(task.id) == LocalDateTime.of(2017, 1, 1, 13, 49, 30)
+	}
+
+	def "compact SHOULD shrink the last segment of an idle task"() {
+		given:
+		persistenceService.close()
+		dataDirectory = tempFolder.newFolder("idle")
+		persistenceService = new IdeaFlowEmbeddedPersistenceService(dataDirectory, SEGMENT_CAPACITY, Duration.ZERO, 1024)
+		persistenceService.open()
+		TaskEntity task = saveTaskWithShuffledActivitiesAndEvents(3, 0)
+		File segmentFile = new File(getTaskDirectory(task.id), listSegmentFiles(task.id)[0])
+		long segmentSize = segmentFile.length()
+
+		when:
+		persistenceService.compact()
+
+		then:
+		File compactedFile = new File(getTaskDirectory(task.id), listSegmentFiles(task.id)[0])
+		assert compactedFile.length() == RecordSegment.HEADER_SIZE + 3 * EntityRecords.ACTIVITY_RECORD_SIZE
+		assert compactedFile.length() < segmentSize
+		assert persistenceService.getActivityList(task.id).size() == 3
+	}
+
+	def "deleteTask SHOULD delete the task directory"() {
+		given:
+		TaskEntity task = saveTaskWithShuffledActivitiesAndEvents(3, 3)
+		List<Long> eventIds = persistenceService.getEventList(task.id)*.id
+
+		when:
+		persistenceService.deleteTask(task)
+
+		then:
+		assert getTaskDirectory(task.id).exists() == false
+		assert eventIds.every { persistenceService.findEventById(it) == null }
+	}
+
+	def "open SHOULD delete the data of a task which is not in the catalog"() {
+		given:
+		long missingTaskId = getPersistenceService().saveTask(aRandom.taskEntity().build()).id + 100
+		persistenceService.saveActivity(aRandom.activityEntity().taskId(missingTaskId).build())
+		assert getTaskDirectory(missingTaskId).exists()
+
+		when:
+		reopen()
+
+		then:
+		assert getTaskDirectory(missingTaskId).exists() == false
+		assert persistenceService.getActivityList(missingTaskId) == []
+	}
+
+	def "open SHOULD discard a partially written journal record"() {
+		given:
+		TaskEntity task = getPersistenceService().saveTask(aRandom.taskEntity().build())
+		persistenceService.close()
+		new File(dataDirectory, "catalog.journal").append([0, 0, 0, 100, 1, 2] as byte[])
+
+		when:
+		persistenceService = openPersistenceService()
+		TaskEntity otherTask = persistenceService.saveTask(aRandom.taskEntity().build())
+		reopen()
+
+		then:
+		assert persistenceService.findTaskWithId(task.id) == task
+		assert persistenceService.findTaskWithId(otherTask.id) == otherTask
+	}
+
+	def "compact SHOULD replace the catalog snapshot once the journal is over the maximum size"() {
+		given:
+		List<TaskEntity> tasks = (1..40).collect { getPersistenceService().saveTask(aRandom.taskEntity().build()) }
+		persistenceService.deleteTask(tasks[0])
+		File journalFile = new File(dataDirectory, "catalog.journal")
+		assert journalFile.length() > 1024
+
+		when:
+		persistenceService.compact()
+
+		then:
+		assert journalFile.length() == 0
+
+		when:
+		reopen()
+		TaskEntity otherTask = persistenceService.saveTask(aRandom.taskEntity().build())
+
+		then:
+		assert persistenceService.findTaskWithId(tasks[0].id) == null
+		assert tasks.tail().every { persistenceService.findTaskWithId(it.id) == it }
+		assert otherTask.id > tasks*.id.max()
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 New Iron Group, Inc.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE, Version 3 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.gnu.org/licenses/gpl-3.0.en.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.openmastery.publisher.core.mapper
+
+import org.openmastery.mapper.ValueObjectMapper
+import org.openmastery.publisher.api.batch.NewIFMBatch
+import org.openmastery.publisher.api.event.EventType
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.activity.BlockActivityEntity
+import org.openmastery.publisher.core.activity.EditorActivityEntity
+import org.openmastery.publisher.core.activity.ExecutionActivityEntity
+import org.openmastery.publisher.core.activity.ExternalActivityEntity
+import org.openmastery.publisher.core.activity.IdleActivityEntity
+import org.openmastery.publisher.core.activity.ModificationActivityEntity
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
+import org.openmastery.publisher.core.event.EventEntity
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+/**
+ * Differential tests, the hand-written mappings must produce the same entities Dozer produced before them.
+ */
+class BatchItemEntityMapperSpec extends Specification {
+
+	private static ValueObjectMapper dozerMapper = new ValueObjectMapper()
+
+	private static NewIFMBatch randomBatch() {
+		Long taskId = aRandom.id()
+		aRandom.batch()
+				.newEditorActivity(taskId, aRandom.dayOfYear(), aRandom.id(), aRandom.text(20), aRandom.coinFlip())
+				.newExternalActivity(taskId, aRandom.dayOfYear(), aRandom.id(), aRandom.text(20))
+				.newIdleActivity(taskId, aRandom.dayOfYear(), aRandom.id())
+				.newExecutionActivity(taskId, aRandom.dayOfYear(), aRandom.id(), aRandom.text(20), aRandom.text(10),
+						aRandom.intBetween(-1, 3), aRandom.coinFlip())
+				.newModificationActivity(taskId, aRandom.dayOfYear(), aRandom.id(), aRandom.intBetween(0, 500))
+				.newBlockActivity(taskId, aRandom.dayOfYear(), aRandom.id(), aRandom.text(20))
+				.newEvent(taskId, aRandom.dayOfYear(), aRandom.item(EventType.values()), aRandom.text(20))
+				.newSnippetEvent(taskId, aRandom.dayOfYear(), aRandom.text(20), aRandom.text(50))
+				.build()
+	}
+
+	private static NewIFMBatch batchWithNullValues() {
+		aRandom.batch()
+				.newEditorActivity(null, null, null, null, false)
+				.newExternalActivity(null, null, null, null)
+				.newIdleActivity(null, null, null)
+				.newExecutionActivity(null, null, null, null, null, 0, false)
+				.newModificationActivity(null, null, null, 0)
+				.newBlockActivity(null, null, null, null)
+				.newEvent(null, null, null, null)
+				.newSnippetEvent(null, null, null, null)
+				.build()
+	}
+
+	private static List<List> activitiesWithEntityType(NewIFMBatch batch) {
+		[
+				[batch.editorActivityList[0], EditorActivityEntity],
+				[batch.externalActivityList[0], ExternalActivityEntity],
+				[batch.idleActivityList[0], IdleActivityEntity],
+				[batch.executionActivityList[0], ExecutionActivityEntity],
+				[batch.modificationActivityList[0], ModificationActivityEntity],
+				[batch.blockActivityList[0], BlockActivityEntity],
+		]
+	}
+
+	private static List<List> activityCases() {
+		activitiesWithEntityType(randomBatch()) + activitiesWithEntityType(batchWithNullValues())
+	}
+
+	private static Map activityProperties(ActivityEntity entity) {
+		[class: entity.class, id: entity.id, taskId: entity.taskId, ownerId: entity.ownerId,
+		 start: entity.start, end: entity.end, metadata: entity.metadata]
+	}
+
+	private static Map annotationProperties(SnippetAnnotationEntity entity) {
+		[id: entity.id, taskId: entity.taskId, ownerId: entity.ownerId, eventId: entity.eventId,
+		 metadata: entity.metadata, source: entity.source, snippet: entity.snippet]
+	}
+
+	@Unroll
+	def "toActivityEntity SHOULD match dozer mapping for #entityType.simpleName"() {
+		when:
+		ActivityEntity expected = dozerMapper.mapIfNotNull(activity, entityType)
+		ActivityEntity actual = BatchItemEntityMapper.toActivityEntity(activity, entityType)
+
+		then:
+		assert activityProperties(actual) == activityProperties(expected)
+
+		where:
+		[activity, entityType] << activityCases()
+	}
+
+	def "toActivityEntity SHOULD return null for null activity"() {
+		expect:
+		assert BatchItemEntityMapper.toActivityEntity(null, EditorActivityEntity) == null
+	}
+
+	def "toActivityEntity SHOULD fail for unregistered entity type"() {
+		when:
+		BatchItemEntityMapper.toActivityEntity(aRandom.newEditorActivity().build(), ActivityEntity)
+
+		then:
+		thrown(IllegalArgumentException)
+	}
+
+	@Unroll
+	def "toEventEntity SHOULD match dozer mapping for batch event"() {
+		when:
+		EventEntity expected = dozerMapper.mapIfNotNull(event, EventEntity)
+		EventEntity actual = BatchItemEntityMapper.toEventEntity(event)
+
+		then:
+		assert actual.properties == expected.properties
+
+		where:
+		event << [randomBatch().eventList[0], batchWithNullValues().eventList[0]]
+	}
+
+	@Unroll
+	def "toEventEntity SHOULD match dozer mapping for snippet event"() {
+		when:
+		EventEntity expected = dozerMapper.mapIfNotNull(snippet, EventEntity)
+		EventEntity actual = BatchItemEntityMapper.toEventEntity(snippet)
+
+		then:
+		assert actual.properties == expected.properties
+
+		where:
+		snippet << [randomBatch().snippetEventList[0], batchWithNullValues().snippetEventList[0]]
+	}
+
+	@Unroll
+	def "toSnippetAnnotationEntity SHOULD match dozer mapping"() {
+		when:
+		SnippetAnnotationEntity expected = dozerMapper.mapIfNotNull(snippet, SnippetAnnotationEntity)
+		SnippetAnnotationEntity actual = BatchItemEntityMapper.toSnippetAnnotationEntity(snippet)
+
+		then:
+		assert annotationProperties(actual) == annotationProperties(expected)
+
+		where:
+		snippet << [randomBatch().snippetEventList[0], batchWithNullValues().snippetEventList[0]]
+	}
+
+}
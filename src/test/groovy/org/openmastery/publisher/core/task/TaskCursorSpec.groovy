@@ -0,0 +1,51 @@
+package org.openmastery.publisher.core.task
+
+import spock.lang.Specification
+
+import javax.ws.rs.BadRequestException
+import java.time.LocalDateTime
+
+class TaskCursorSpec extends Specification {
+
+	def "decode SHOULD return the encoded cursor"() {
+		given:
+		TaskCursor cursor = new TaskCursor(LocalDateTime.of(2017, 3, 4, 5, 6, 7, 123456000), 42)
+
+		expect:
+		assert TaskCursor.decode(cursor.encode()) == cursor
+	}
+
+	def "after SHOULD use the creation date WHEN the task was never modified"() {
+		given:
+		LocalDateTime creationDate = LocalDateTime.of(2017, 3, 4, 5, 6)
+		TaskEntity task = TaskEntity.builder().id(42).creationDate(creationDate).build()
+
+		when:
+		TaskCursor cursor = TaskCursor.after(task)
+
+		then:
+		assert cursor == new TaskCursor(creationDate, 42)
+		assert TaskCursor.decode(cursor.encode()) == cursor
+	}
+
+	def "decode SHOULD start at the first task WHEN cursor is #cursor"() {
+		expect:
+		assert TaskCursor.decode(cursor).is(TaskCursor.FIRST)
+
+		where:
+		cursor << [null, ""]
+	}
+
+	def "decode SHOULD fail with bad request WHEN cursor is malformed"() {
+		when:
+		TaskCursor.decode(cursor)
+
+		then:
+		thrown(BadRequestException)
+
+		where:
+		cursor << ["not base64!", Base64.urlEncoder.encodeToString("no-separator".bytes),
+				   Base64.urlEncoder.encodeToString("2017-03-04T05:06|abc".bytes)]
+	}
+
+}
@@ -48,8 +48,8 @@ class TimelineTestSupport {
 
 	List<IdeaFlowStateEntity> getStateListWithActiveCompleted() {
 		List<IdeaFlowStateEntity> stateList = new ArrayList(persistenceService.getStateList(taskId))
-		completeAndAddStateIfNotNull(stateList, persistenceService.activeState)
-		completeAndAddStateIfNotNull(stateList, persistenceService.containingState)
+		completeAndAddStateIfNotNull(stateList, persistenceService.getActiveState(taskId))
+		completeAndAddStateIfNotNull(stateList, persistenceService.getContainingState(taskId))
 		stateList
 	}
 
@@ -0,0 +1,80 @@
+package org.openmastery.publisher.ideaflow
+
+import org.openmastery.publisher.core.IdeaFlowInMemoryPersistenceService
+import org.openmastery.publisher.core.activity.ActivityEntity
+import org.openmastery.publisher.core.annotation.FaqAnnotationEntity
+import org.openmastery.publisher.core.annotation.SnippetAnnotationEntity
+import org.openmastery.publisher.core.event.EventEntity
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+
+import static org.openmastery.publisher.ARandom.aRandom
+
+class TaskActivitySnapshotSpec extends Specification {
+
+	IdeaFlowInMemoryPersistenceService persistenceService = new IdeaFlowInMemoryPersistenceService()
+	LocalDateTime start = LocalDateTime.of(2017, 1, 1, 9, 0)
+	long taskId = 1
+
+	private <T extends ActivityEntity> T saveActivity(T activity, int startMinute) {
+		activity.taskId = taskId
+		activity.start = start.plusMinutes(startMinute)
+		activity.end = start.plusMinutes(startMinute + 1)
+		persistenceService.saveActivity(activity)
+	}
+
+	def "load SHOULD split activities and annotations by type"() {
+		given:
+		ActivityEntity modification = saveActivity(aRandom.modificationActivityEntity().build(), 0)
+		ActivityEntity execution = saveActivity(aRandom.executionActivityEntity().build(), 1)
+		ActivityEntity block = saveActivity(aRandom.blockActivityEntity().build(), 2)
+		ActivityEntity idle = saveActivity(aRandom.idleActivityEntity().build(), 3)
+		ActivityEntity editor = saveActivity(aRandom.editorActivityEntity().build(), 4)
+		ActivityEntity external = saveActivity(aRandom.externalActivityEntity().build(), 5)
+		EventEntity event = persistenceService.saveEvent(aRandom.eventEntity().taskId(taskId).build())
+		FaqAnnotationEntity faq = persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().taskId(taskId).build())
+		SnippetAnnotationEntity snippet = persistenceService.saveAnnotation(aRandom.snippetAnnotationEntity().taskId(taskId).build())
+
+		when:
+		TaskActivitySnapshot snapshot = TaskActivitySnapshot.load(persistenceService, taskId)
+
+		then:
+		assert snapshot.modificationActivities == [modification]
+		assert snapshot.executionActivities == [execution]
+		assert snapshot.blockActivities == [block]
+		assert snapshot.idleActivities == [idle]
+		assert snapshot.editorActivities == [editor]
+		assert snapshot.externalActivities == [external]
+		assert snapshot.events == [event]
+		assert snapshot.faqAnnotations == [faq]
+		assert snapshot.snippetAnnotations == [snippet]
+	}
+
+	def "load SHOULD preserve start order within each type"() {
+		given:
+		ActivityEntity laterIdle = saveActivity(aRandom.idleActivityEntity().build(), 10)
+		saveActivity(aRandom.editorActivityEntity().build(), 5)
+		ActivityEntity earlierIdle = saveActivity(aRandom.idleActivityEntity().build(), 0)
+
+		when:
+		TaskActivitySnapshot snapshot = TaskActivitySnapshot.load(persistenceService, taskId)
+
+		then:
+		assert snapshot.idleActivities == [earlierIdle, laterIdle]
+	}
+
+	def "load SHOULD exclude data from other tasks"() {
+		given:
+		saveActivity(aRandom.idleActivityEntity().build(), 0)
+		persistenceService.saveAnnotation(aRandom.faqAnnotationEntity().taskId(taskId).build())
+
+		when:
+		TaskActivitySnapshot snapshot = TaskActivitySnapshot.load(persistenceService, taskId + 1)
+
+		then:
+		assert snapshot.idleActivities == []
+		assert snapshot.faqAnnotations == []
+	}
+
+}
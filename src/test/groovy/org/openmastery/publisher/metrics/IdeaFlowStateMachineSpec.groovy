@@ -28,32 +28,33 @@ class IdeaFlowStateMachineSpec extends Specification {
 	}
 
 
+	long taskId = 123L
 	IdeaFlowStateMachine stateMachine
 	IdeaFlowInMemoryPersistenceService persistenceService
 
 	def setup() {
 		persistenceService = new IdeaFlowInMemoryPersistenceService()
 		InvocationContext invocationContext = new InvocationContext(userId: -1L)
-		stateMachine = new IdeaFlowStateMachine(123L, new TestTimeService(), invocationContext, persistenceService)
+		stateMachine = new IdeaFlowStateMachine(taskId, new TestTimeService(), invocationContext, persistenceService)
 	}
 
 	private IdeaFlowStateEntity getPersistedState(IdeaFlowStateType type) {
-		persistenceService.stateList.find { it.type == type }
+		persistenceService.getStateList(taskId).find { it.type == type }
 	}
 
 	private List<IdeaFlowStateEntity> getPersistedStatesOrderdByStartTime() {
-		persistenceService.stateList.sort { it.start }
+		persistenceService.getStateList(taskId).sort { it.start }
 	}
 
 	private void assertActiveState(IdeaFlowStateType expectedType) {
-		assert persistenceService.activeState.isOfType(expectedType)
+		assert persistenceService.getActiveState(taskId).isOfType(expectedType)
 	}
 
 	private void assertContainingState(IdeaFlowStateType expectedType) {
 		if (expectedType == null) {
-			assert persistenceService.containingState == null
+			assert persistenceService.getContainingState(taskId) == null
 		} else {
-			assert persistenceService.containingState.isOfType(expectedType)
+			assert persistenceService.getContainingState(taskId).isOfType(expectedType)
 		}
 	}
 
@@ -88,7 +89,7 @@ class IdeaFlowStateMachineSpec extends Specification {
 		then:
 		assertExpectedStates(PROGRESS, LEARNING)
 		assertActiveState(REWORK)
-		assert persistenceService.activeState.isLinkedToPrevious()
+		assert persistenceService.getActiveState(taskId).isLinkedToPrevious()
 		assert getPersistedState(LEARNING).endingComment == "rework" //TODO is this what we really want to do?
 	}
 
@@ -244,7 +245,7 @@ class IdeaFlowStateMachineSpec extends Specification {
 		then:
 		assertContainingState(LEARNING)
 		assertActiveState(TROUBLESHOOTING)
-		assert persistenceService.activeState.isNested()
+		assert persistenceService.getActiveState(taskId).isNested()
 
 		when:
 		stateMachine.endLearning("learning")
@@ -253,8 +254,8 @@ class IdeaFlowStateMachineSpec extends Specification {
 		assertExpectedStates(PROGRESS, LEARNING)
 		assertActiveState(TROUBLESHOOTING)
 		assertContainingState(null);
-		assert persistenceService.activeState.isNested() == false
-		assert persistenceService.activeState.isLinkedToPrevious() == true
+		assert persistenceService.getActiveState(taskId).isNested() == false
+		assert persistenceService.getActiveState(taskId).isLinkedToPrevious() == true
 
 	}
 
@@ -267,7 +268,7 @@ class IdeaFlowStateMachineSpec extends Specification {
 		then:
 		assertContainingState(REWORK)
 		assertActiveState(TROUBLESHOOTING)
-		assert persistenceService.activeState.isNested()
+		assert persistenceService.getActiveState(taskId).isNested()
 
 		when:
 		stateMachine.endRework("rework")
@@ -276,8 +277,8 @@ class IdeaFlowStateMachineSpec extends Specification {
 		assertExpectedStates(PROGRESS, REWORK)
 		assertActiveState(TROUBLESHOOTING)
 		assertContainingState(null);
-		assert persistenceService.activeState.isNested() == false
-		assert persistenceService.activeState.isLinkedToPrevious() == true
+		assert persistenceService.getActiveState(taskId).isNested() == false
+		assert persistenceService.getActiveState(taskId).isLinkedToPrevious() == true
 	}
 
 	def "WHEN LearningNestedConflict SHOULD NOT allow start Rework (disabled)"() {